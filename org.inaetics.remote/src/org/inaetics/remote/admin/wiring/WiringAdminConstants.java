@@ -30,6 +30,13 @@ public interface WiringAdminConstants {
      */
     String PATH_CONFIG_KEY = "org.inaetics.remote.admin.wiring.path";
 
+    /**
+     * Configuration property: time in ms a remote method invocation may take, including the remote method
+     * invocations it makes in turn. An invocation made while handling a remote invocation gets at most the
+     * remaining time of that one. Zero or less only uses the inherited time.
+     */
+    String INVOCATION_TIMEOUT_CONFIG_KEY = "org.inaetics.remote.admin.wiring.invocationtimeout";
+
     /**
      * Configuration Type identifier
      */
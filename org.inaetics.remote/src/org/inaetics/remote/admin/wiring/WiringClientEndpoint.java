@@ -18,6 +18,7 @@ import java.security.PrivilegedAction;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import org.codehaus.jackson.JsonFactory;
@@ -25,7 +26,10 @@ import org.codehaus.jackson.JsonGenerator;
 import org.codehaus.jackson.JsonNode;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.codehaus.jackson.type.JavaType;
+import org.inaetics.remote.ServiceUtil;
 import org.inaetics.wiring.endpoint.WiringConstants;
+import org.inaetics.wiring.endpoint.WiringCircuitBreaker;
+import org.inaetics.wiring.endpoint.WiringDeadline;
 import org.inaetics.wiring.endpoint.WiringSender;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceException;
@@ -39,7 +43,8 @@ import org.osgi.service.remoteserviceadmin.EndpointDescription;
  */
 public final class WiringClientEndpoint implements InvocationHandler {
 
-    private static final int FATAL_ERROR_COUNT = 5;
+    private static final int CIRCUIT_OPEN_TIME = 5000;
+    private static final int DEFAULT_INVOCATION_TIMEOUT = 60000;
 
     private final ObjectMapper m_objectMapper = new ObjectMapper();
     private final JsonFactory m_JsonFactory = new JsonFactory(m_objectMapper);
@@ -47,9 +52,10 @@ public final class WiringClientEndpoint implements InvocationHandler {
     private final Map<Method, String> m_interfaceMethods;
     private final EndpointDescription m_endpoint;
     private final Object m_proxy;
+    private final int m_invocationTimeout;
 
     private ClientEndpointProblemListener m_problemListener;
-    private int m_remoteErrors;
+    private final WiringCircuitBreaker m_circuitBreaker = new WiringCircuitBreaker(CIRCUIT_OPEN_TIME);
     
     private volatile WiringSender m_sender;
 
@@ -60,8 +66,9 @@ public final class WiringClientEndpoint implements InvocationHandler {
         m_interfaceMethods = new HashMap<Method, String>();
         m_endpoint = endpoint;
         m_proxy = Proxy.newProxyInstance(getClass().getClassLoader(), interfaceClasses, this);
-        m_remoteErrors = 0;
         m_sender = wiringSender;
+        m_invocationTimeout = ServiceUtil.getConfigIntValue(bundleContext,
+            WiringAdminConstants.INVOCATION_TIMEOUT_CONFIG_KEY, null, DEFAULT_INVOCATION_TIMEOUT);
         
         for (Class<?> interfaceClass : interfaceClasses) {
             for (Method method : interfaceClass.getMethods()) {
@@ -101,14 +108,15 @@ public final class WiringClientEndpoint implements InvocationHandler {
     }
 
     /**
-     * Handles I/O exceptions by counting the number of times they occurred, and if a certain
-     * threshold is exceeded closes the import registration for this endpoint.
+     * Handles exceptions of the wire by recording them in the circuit breaker. The problem listener gets an
+     * error when the failure opens the breaker, and a warning otherwise.
      * 
      * @param e the exception to handle.
      */
-    private void handleRemoteException(IOException e) {
+    private void handleRemoteException(Exception e) {
+        boolean opened = m_circuitBreaker.recordFailure();
         if (m_problemListener != null) {
-            if (++m_remoteErrors > FATAL_ERROR_COUNT) {
+            if (opened) {
                 m_problemListener.handleEndpointError(e);
             }
             else {
@@ -156,6 +164,10 @@ public final class WiringClientEndpoint implements InvocationHandler {
      * <p>
      * This method assumes that all security checks (if needed) are processed!
      * </p>
+     * <p>
+     * The invocation gets a deadline of its own, bounded by the deadline of the invocation that is being handled
+     * by the calling thread, if any. The wire passes it on to the remote endpoint.
+     * </p>
      * 
      * @param method the actual method to invoke;
      * @param arguments the arguments of the method to invoke;
@@ -172,8 +184,41 @@ public final class WiringClientEndpoint implements InvocationHandler {
             outputStream = new ByteArrayOutputStream();
             writeMethodInvocationJSON(outputStream, method, arguments);
             String message = outputStream.toString();
+
+            WiringDeadline deadline = WiringDeadline.earliest(WiringDeadline.current(),
+                m_invocationTimeout > 0 ? WiringDeadline.after(m_invocationTimeout) : null);
+            if (deadline != null && deadline.isExpired()) {
+                throw new ServiceException("Remote service invocation failed: deadline expired before invoking endpoint "
+                    + m_endpoint.getId(), ServiceException.REMOTE);
+            }
             
-            String response = m_sender.sendMessage(message);
+            if (!m_circuitBreaker.allowRequest()) {
+                throw new ServiceException("Remote service invocation failed: circuit breaker of endpoint "
+                    + m_endpoint.getId() + " is open", ServiceException.REMOTE);
+            }
+            String response;
+            WiringDeadline previous = WiringDeadline.attach(deadline);
+            try {
+                response = m_sender.sendMessage(message);
+            }
+            catch (Exception e) {
+                if (deadline != null && deadline.isExpired()) {
+                    // the caller ran out of time, that says nothing about the endpoint
+                    m_circuitBreaker.recordCancelled();
+                }
+                else if (e instanceof RejectedExecutionException) {
+                    // backpressure of the wire, the endpoint is overloaded rather than unreachable
+                    m_circuitBreaker.recordCancelled();
+                }
+                else {
+                    handleRemoteException(e);
+                }
+                throw e;
+            }
+            finally {
+                WiringDeadline.detach(previous);
+            }
+            m_circuitBreaker.recordSuccess();
             
             JsonNode tree = m_objectMapper.readTree(response);
             if (tree != null) {
@@ -190,12 +235,11 @@ public final class WiringClientEndpoint implements InvocationHandler {
                     }
                 }
             }
-
-            // Reset this error counter upon each successful request...
-            m_remoteErrors = 0;
         }
         catch (IOException e) {
-            handleRemoteException(e);
+            if (m_problemListener != null) {
+                m_problemListener.handleEndpointWarning(e);
+            }
             throw new ServiceException("Remote service invocation failed: " + e.getMessage(), ServiceException.REMOTE, e);
         }
         finally {
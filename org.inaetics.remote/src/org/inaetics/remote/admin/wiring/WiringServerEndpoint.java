@@ -19,6 +19,7 @@ import java.util.Hashtable;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -31,6 +32,7 @@ import org.codehaus.jackson.JsonNode;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.codehaus.jackson.node.ArrayNode;
 import org.codehaus.jackson.type.JavaType;
+import org.inaetics.wiring.endpoint.WiringDeadline;
 import org.inaetics.wiring.endpoint.WiringReceiver;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
@@ -46,7 +48,8 @@ import org.osgi.service.remoteserviceadmin.RemoteServiceAdmin;
  */
 public final class WiringServerEndpoint {
 
-    private static final int FATAL_ERROR_COUNT = 5;
+    /** the number of failed calls in a row that is reported as an error */
+    private static final int ERROR_THRESHOLD = 5;
 
     private static final String APPLICATION_JSON = "application/json";
 
@@ -58,7 +61,8 @@ public final class WiringServerEndpoint {
     private final Map<String, Method> m_interfaceMethods;
 
     private ServerEndpointProblemListener m_problemListener;
-    private int m_localErrors;
+    /** the number of calls that failed since the last successful one */
+    private final AtomicInteger m_failures = new AtomicInteger();
 
     private WiringReceiver m_receiver;
     private volatile DependencyManager m_dependencyManager;
@@ -127,6 +131,12 @@ public final class WiringServerEndpoint {
 	            if (requestNode == null) {
 	            	throw new Exception("error reading request");
 	            }
+
+	            // the wire attaches the deadline of the caller, invocations made by the service inherit it
+	            WiringDeadline deadline = WiringDeadline.current();
+	            if (deadline != null && deadline.isExpired()) {
+	            	throw new Exception("deadline expired, invocation skipped");
+	            }
 				
 				return invokeService(requestNode.toString());
 			}
@@ -247,8 +257,8 @@ public final class WiringServerEndpoint {
             }
             gen.close();
 
-            // All is fine.. reset the local error count
-            m_localErrors = 0;
+            // All is fine.. start counting failures again
+            m_failures.set(0);
             
             return output.toString();
         }
@@ -260,14 +270,15 @@ public final class WiringServerEndpoint {
     }
 
     /**
-     * Handles I/O exceptions by counting the number of times they occurred, and if a certain
-     * threshold is exceeded closes the import registration for this endpoint.
+     * Handles I/O exceptions by counting them. The problem listener gets an error when {@value #ERROR_THRESHOLD}
+     * calls in a row failed, and a warning otherwise. A successful call resets the count.
      * 
      * @param e the exception to handle.
      */
     private void handleLocalException(IOException e) {
+        boolean tripped = m_failures.incrementAndGet() == ERROR_THRESHOLD;
         if (m_problemListener != null) {
-            if (++m_localErrors > FATAL_ERROR_COUNT) {
+            if (tripped) {
                 m_problemListener.handleEndpointError(e);
             }
             else {
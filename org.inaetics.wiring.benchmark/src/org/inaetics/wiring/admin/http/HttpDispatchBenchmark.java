@@ -0,0 +1,198 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.http;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.inaetics.wiring.WiringEndpointDescription;
+
+/**
+ * Measures the cost of routing a request to its server endpoint, from the path info of the request to the
+ * {@link HttpServerEndpoint} that handles it, at 1, 8 and 32 threads for two variants:
+ * <ul>
+ * <li><b>regex + lock</b>: the path is matched by a regular expression and the endpoint is looked up in a map
+ * guarded by a read-write lock, as the {@link HttpServerEndpointHandler} did before,</li>
+ * <li><b>lock-free</b>: the path is parsed by {@link HttpServerEndpointHandler#parseWireId(String)} and the endpoint
+ * is looked up in the concurrent map of the handler.</li>
+ * </ul>
+ * The requests are spread over a number of registered endpoints. The reported cost is the average time a thread
+ * spends per request, so it grows with the number of threads once they contend or outnumber the cores. Run it with:
+ *
+ * <pre>
+ * java -cp org.inaetics.wiring.base.jar:org.inaetics.wiring.endpoint.jar:org.inaetics.wiring.admin.http.jar:\
+ *     org.inaetics.wiring.benchmark/bin \
+ *     org.inaetics.wiring.admin.http.HttpDispatchBenchmark [&lt;requests per thread&gt;]
+ * </pre>
+ *
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+public final class HttpDispatchBenchmark {
+
+    private static final int ENDPOINTS = 64;
+    private static final int[] THREADS = { 1, 8, 32 };
+    private static final int ROUNDS = 3;
+
+    private HttpDispatchBenchmark() {
+    }
+
+    /**
+     * @param args optionally the number of requests per thread and round
+     */
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+
+        String[] paths = new String[ENDPOINTS];
+        HttpServerEndpointHandler handler = new HttpServerEndpointHandler(null, createConfiguration());
+        Map<String, HttpServerEndpoint> lockedHandlers = new HashMap<String, HttpServerEndpoint>();
+        for (int i = 0; i < ENDPOINTS; i++) {
+            WiringEndpointDescription endpoint = new WiringEndpointDescription();
+            endpoint.setId("wire-" + i);
+            // the receiver is never invoked, only the route to it is measured
+            lockedHandlers.put(endpoint.getId(), handler.addEndpoint(endpoint, null));
+            paths[i] = "/" + endpoint.getId() + "/";
+        }
+
+        System.out.printf("%d endpoints, %d requests per thread, %d cores%n", ENDPOINTS, requests,
+            Runtime.getRuntime().availableProcessors());
+        for (int threads : THREADS) {
+            // the first rounds warm up the code, the last one is reported
+            double regexCost = 0;
+            double lockFreeCost = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                regexCost = run(new RegexDispatcher(lockedHandlers), paths, threads, requests);
+                lockFreeCost = run(new LockFreeDispatcher(handler), paths, threads, requests);
+            }
+            System.out.printf("%2d threads  regex + lock %8.1f ns/request  lock-free %8.1f ns/request%n", threads,
+                regexCost, lockFreeCost);
+        }
+    }
+
+    /**
+     * @return the average time in ns a thread spent per request
+     */
+    private static double run(final Dispatcher dispatcher, final String[] paths, int threads, final int requests)
+        throws InterruptedException {
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final int[] routed = new int[threads];
+        for (int t = 0; t < threads; t++) {
+            final int index = t;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    int count = 0;
+                    int path = index;
+                    try {
+                        start.await();
+                        for (int i = 0; i < requests; i++) {
+                            if (dispatcher.dispatch(paths[path]) != null) {
+                                count++;
+                            }
+                            path = (path + 1) % paths.length;
+                        }
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    finally {
+                        routed[index] = count;
+                        done.countDown();
+                    }
+                }
+            }, "dispatch-benchmark-" + t);
+            thread.start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - begin;
+
+        for (int count : routed) {
+            if (count != requests) {
+                throw new IllegalStateException("Not all requests were routed: " + count);
+            }
+        }
+        return elapsed / (double) requests;
+    }
+
+    /**
+     * Routes the path info of a request to its server endpoint.
+     */
+    private interface Dispatcher {
+
+        HttpServerEndpoint dispatch(String pathInfo);
+    }
+
+    private static final class RegexDispatcher implements Dispatcher {
+
+        private final Pattern PATH_PATTERN = Pattern.compile("^\\/{0,1}([A-Za-z0-9-_]+)\\/{0,1}$");
+
+        private final ReentrantReadWriteLock m_lock = new ReentrantReadWriteLock();
+        private final Map<String, HttpServerEndpoint> m_handlers;
+
+        RegexDispatcher(Map<String, HttpServerEndpoint> handlers) {
+            m_handlers = handlers;
+        }
+
+        @Override
+        public HttpServerEndpoint dispatch(String pathInfo) {
+            Matcher matcher = PATH_PATTERN.matcher(pathInfo);
+            if (!matcher.matches()) {
+                return null;
+            }
+            m_lock.readLock().lock();
+            try {
+                return m_handlers.get(matcher.group(1));
+            }
+            finally {
+                m_lock.readLock().unlock();
+            }
+        }
+    }
+
+    private static final class LockFreeDispatcher implements Dispatcher {
+
+        private final HttpServerEndpointHandler m_handler;
+
+        LockFreeDispatcher(HttpServerEndpointHandler handler) {
+            m_handler = handler;
+        }
+
+        @Override
+        public HttpServerEndpoint dispatch(String pathInfo) {
+            String wireId = HttpServerEndpointHandler.parseWireId(pathInfo);
+            if (wireId == null) {
+                return null;
+            }
+            return m_handler.getHandler(wireId);
+        }
+    }
+
+    /**
+     * @return a configuration without dispatch threads, so that the endpoints start no executors
+     */
+    private static HttpAdminConfiguration createConfiguration() {
+        return (HttpAdminConfiguration) Proxy.newProxyInstance(HttpAdminConfiguration.class.getClassLoader(),
+            new Class<?>[] { HttpAdminConfiguration.class }, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if (method.getReturnType() == int.class) {
+                        return 0;
+                    }
+                    return null;
+                }
+            });
+    }
+}
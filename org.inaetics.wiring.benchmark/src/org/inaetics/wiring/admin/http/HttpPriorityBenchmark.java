@@ -0,0 +1,191 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.http;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+
+import org.inaetics.wiring.WiringEndpointDescription;
+import org.inaetics.wiring.endpoint.WiringPriority;
+import org.inaetics.wiring.endpoint.WiringReceiver;
+
+/**
+ * Measures the latency of high priority messages to a server endpoint whose dispatch executor is saturated with bulk
+ * messages, for two variants:
+ * <ul>
+ * <li><b>single lane</b>: the probes are sent with bulk priority as well, so that they queue behind the bulk
+ * messages, as they did before there were priority lanes,</li>
+ * <li><b>priority lanes</b>: the probes are sent with high priority and are taken from their own lane of the
+ * {@link org.inaetics.wiring.base.PriorityDispatchQueue} as soon as a dispatch thread is free.</li>
+ * </ul>
+ * A bulk producer keeps the bulk lane full for the whole run; its throughput is reported as well, to show that it
+ * still gets its share. The receiver simulates a fixed amount of blocking work per message. Run it with:
+ *
+ * <pre>
+ * java -cp org.inaetics.wiring.base.jar:org.inaetics.wiring.endpoint.jar:org.inaetics.wiring.admin.http.jar:\
+ *     org.inaetics.wiring.benchmark/bin \
+ *     org.inaetics.wiring.admin.http.HttpPriorityBenchmark [&lt;probes&gt; [&lt;work us&gt;]]
+ * </pre>
+ *
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+public final class HttpPriorityBenchmark {
+
+    private static final int DISPATCH_THREADS = 4;
+    private static final int DISPATCH_QUEUE_SIZE = 256;
+    private static final int WARMUP = 100;
+    private static final long PROBE_INTERVAL = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private HttpPriorityBenchmark() {
+    }
+
+    /**
+     * @param args optionally the number of probes per variant and the work per message in us
+     */
+    public static void main(String[] args) throws Exception {
+        int probes = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        long work = TimeUnit.MICROSECONDS.toNanos(args.length > 1 ? Long.parseLong(args[1]) : 500);
+
+        System.out.printf("%d probes, %d dispatch threads, %d queued messages per lane, %d us work per message%n",
+            probes, DISPATCH_THREADS, DISPATCH_QUEUE_SIZE, TimeUnit.NANOSECONDS.toMicros(work));
+        run("single lane", WiringPriority.BULK, probes, work);
+        run("priority lanes", WiringPriority.HIGH, probes, work);
+        System.exit(0);
+    }
+
+    private static void run(String variant, WiringPriority probePriority, int probes, final long work)
+        throws Exception {
+
+        WiringEndpointDescription endpoint = new WiringEndpointDescription();
+        endpoint.setId("benchmark");
+        final HttpServerEndpoint serverEndpoint = new HttpServerEndpoint(endpoint, new WiringReceiver() {
+            @Override
+            public String messageReceived(String message) {
+                return message;
+            }
+
+            @Override
+            public byte[] messageReceived(byte[] message) {
+                LockSupport.parkNanos(work);
+                return message;
+            }
+
+            @Override
+            public void wiringEndpointAdded(String wireId) {
+            }
+
+            @Override
+            public void wiringEndpointRemoved(String wireId) {
+            }
+        }, createConfiguration());
+        final Executor fallback = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        };
+
+        final byte[] message = new byte[256];
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicLong bulkMessages = new AtomicLong();
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                // keeps all dispatch threads busy and the bulk lane full, except for one slot for a bulk probe
+                final Semaphore outstanding = new Semaphore(DISPATCH_QUEUE_SIZE - 1);
+                WiringPriority.attach(WiringPriority.BULK);
+                while (running.get()) {
+                    outstanding.acquireUninterruptibly();
+                    serverEndpoint.receiveAsync(message, fallback).whenComplete(new BiConsumer<byte[], Throwable>() {
+                        @Override
+                        public void accept(byte[] result, Throwable exception) {
+                            if (exception == null) {
+                                bulkMessages.incrementAndGet();
+                            }
+                            outstanding.release();
+                        }
+                    });
+                }
+            }
+        }, "priority-benchmark-bulk");
+        producer.setDaemon(true);
+        producer.start();
+
+        // let the bulk lane fill up
+        Thread.sleep(200);
+
+        long[] latencies = new long[probes];
+        long bulkStart = 0;
+        long start = 0;
+        for (int i = -WARMUP; i < probes; i++) {
+            if (i == 0) {
+                bulkStart = bulkMessages.get();
+                start = System.nanoTime();
+            }
+            long sent = System.nanoTime();
+            CompletableFuture<byte[]> future;
+            WiringPriority previous = WiringPriority.attach(probePriority);
+            try {
+                future = serverEndpoint.receiveAsync(message, fallback);
+            }
+            finally {
+                WiringPriority.detach(previous);
+            }
+            future.get();
+            if (i >= 0) {
+                latencies[i] = System.nanoTime() - sent;
+            }
+            LockSupport.parkNanos(PROBE_INTERVAL);
+        }
+        long elapsed = System.nanoTime() - start;
+        long bulk = bulkMessages.get() - bulkStart;
+        running.set(false);
+        serverEndpoint.close();
+
+        Arrays.sort(latencies);
+        System.out.printf("%-15s probe p50 %8.1f us  p99 %8.1f us  max %8.1f us  bulk %8.0f messages/s%n", variant,
+            percentile(latencies, 50), percentile(latencies, 99), latencies[latencies.length - 1] / 1000.0,
+            bulk * (double) TimeUnit.SECONDS.toNanos(1) / elapsed);
+    }
+
+    /**
+     * @return the percentile of the sorted latencies in us
+     */
+    private static double percentile(long[] sorted, int percentile) {
+        int index = (int) Math.ceil(sorted.length * percentile / 100.0) - 1;
+        return sorted[Math.max(0, index)] / 1000.0;
+    }
+
+    /**
+     * @return a configuration with the dispatch settings of the benchmark, and defaults for all other settings
+     */
+    private static HttpAdminConfiguration createConfiguration() {
+        return (HttpAdminConfiguration) Proxy.newProxyInstance(HttpAdminConfiguration.class.getClassLoader(),
+            new Class<?>[] { HttpAdminConfiguration.class }, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if (method.getName().equals("getDispatchThreads")) {
+                        return DISPATCH_THREADS;
+                    }
+                    if (method.getName().equals("getDispatchQueueSize")) {
+                        return DISPATCH_QUEUE_SIZE;
+                    }
+                    if (method.getReturnType() == int.class) {
+                        return 0;
+                    }
+                    return null;
+                }
+            });
+    }
+}
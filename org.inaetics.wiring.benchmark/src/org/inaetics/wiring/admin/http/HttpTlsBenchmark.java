@@ -0,0 +1,205 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.http;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Enumeration;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Compares the latency of secure wire messages over a loopback HTTPS server for the three ways to get a connection:
+ * <ul>
+ * <li><b>handshake per request</b>: a new connection with a full handshake for every message, as sending every message
+ * over a connection of its own would do,</li>
+ * <li><b>resumed</b>: a new connection for every message, but resuming the session of the previous connection from the
+ * client session cache,</li>
+ * <li><b>pooled</b>: one keep-alive connection for all messages, as the {@link HttpConnectionPool} does.</li>
+ * </ul>
+ * The benchmark needs a key store whose certificate is valid for <code>localhost</code>, it serves as trust store as
+ * well, for example:
+ *
+ * <pre>
+ * keytool -genkeypair -alias wiring -keyalg EC -dname CN=localhost -ext san=dns:localhost -validity 365 \
+ *     -keystore wiring.p12 -storetype PKCS12 -storepass changeit
+ * java -cp org.inaetics.wiring.admin.http.jar:org.inaetics.wiring.benchmark/bin \
+ *     org.inaetics.wiring.admin.http.HttpTlsBenchmark wiring.p12 changeit PKCS12
+ * </pre>
+ *
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+public final class HttpTlsBenchmark {
+
+    private static final int TIMEOUT = 5000;
+    private static final int MESSAGE_SIZE = 256;
+    private static final int WARMUP = 100;
+    private static final String PATH = "/org.inaetics.wiring.admin.http/benchmark";
+
+    private HttpTlsBenchmark() {
+    }
+
+    /**
+     * @param args the key store path, its password, optionally its type and the number of messages per variant
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("usage: HttpTlsBenchmark <keystore> <password> [<type> [<messages>]]");
+            System.exit(1);
+        }
+        String type = args.length > 2 ? args[2] : "PKCS12";
+        int messages = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+
+        SSLContext serverContext = HttpTlsContext.create(args[0], args[1], null, null, type, 0, 3600);
+        SSLContext clientContext = HttpTlsContext.create(null, null, args[0], args[1], type, 256, 3600);
+
+        SSLServerSocket serverSocket =
+            (SSLServerSocket) serverContext.getServerSocketFactory().createServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        startServer(serverSocket);
+
+        String host = "localhost";
+        int port = serverSocket.getLocalPort();
+        byte[] message = new byte[MESSAGE_SIZE];
+
+        System.out.printf("%d messages of %d bytes to %s:%d%n", messages, message.length, host, port);
+        run("handshake per request", clientContext, host, port, message, messages, false, true);
+        run("resumed", clientContext, host, port, message, messages, false, false);
+        run("pooled", clientContext, host, port, message, messages, true, false);
+        serverSocket.close();
+    }
+
+    private static void run(String variant, SSLContext context, String host, int port, byte[] message, int messages,
+        boolean pooled, boolean fullHandshake) throws IOException {
+
+        SSLSocketFactory socketFactory = context.getSocketFactory();
+        HttpConnection connection = null;
+        long start = 0;
+        for (int i = -WARMUP; i < messages; i++) {
+            if (i == 0) {
+                start = System.nanoTime();
+            }
+            if (fullHandshake) {
+                invalidateSessions(context.getClientSessionContext());
+            }
+            if (connection == null) {
+                connection = new HttpConnection(host, port, TIMEOUT, socketFactory, MESSAGE_SIZE);
+            }
+            HttpConnection.Response response = connection.post(host, PATH, null, message, TIMEOUT);
+            if (response.getStatus() != 200) {
+                throw new IOException("Unexpected status " + response.getStatus());
+            }
+            if (!pooled) {
+                connection.close();
+                connection = null;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (connection != null) {
+            connection.close();
+        }
+        System.out.printf("%-22s %8.1f us/message %10.0f messages/s%n", variant,
+            elapsed / 1000.0 / messages, messages * (double) TimeUnit.SECONDS.toNanos(1) / elapsed);
+    }
+
+    private static void invalidateSessions(SSLSessionContext sessionContext) {
+        Enumeration<byte[]> ids = sessionContext.getIds();
+        while (ids.hasMoreElements()) {
+            SSLSession session = sessionContext.getSession(ids.nextElement());
+            if (session != null) {
+                session.invalidate();
+            }
+        }
+    }
+
+    private static void startServer(final SSLServerSocket serverSocket) {
+        Thread acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        final Socket socket = serverSocket.accept();
+                        Thread handler = new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                serve(socket);
+                            }
+                        });
+                        handler.setDaemon(true);
+                        handler.start();
+                    }
+                }
+                catch (IOException e) {
+                    // server socket closed
+                }
+            }
+        }, "tls-benchmark-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Answers every request of a keep-alive connection with its own body.
+     */
+    private static void serve(Socket socket) {
+        try {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            String requestLine;
+            while ((requestLine = readLine(in)) != null && !requestLine.isEmpty()) {
+                int contentLength = 0;
+                String header;
+                while ((header = readLine(in)) != null && !header.isEmpty()) {
+                    if (header.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+                        contentLength = Integer.parseInt(header.substring(15).trim());
+                    }
+                }
+                byte[] body = new byte[contentLength];
+                in.readFully(body);
+                out.write(("HTTP/1.1 200 OK\r\nContent-Length: " + contentLength + "\r\n\r\n")
+                    .getBytes(StandardCharsets.ISO_8859_1));
+                out.write(body);
+                out.flush();
+            }
+        }
+        catch (IOException e) {
+            // connection closed by the client
+        }
+        finally {
+            try {
+                socket.close();
+            }
+            catch (IOException e) {
+                // Ignore...
+            }
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        if (b == -1 && line.size() == 0) {
+            return null;
+        }
+        return new String(line.toByteArray(), StandardCharsets.ISO_8859_1);
+    }
+}
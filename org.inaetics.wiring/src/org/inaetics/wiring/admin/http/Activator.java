@@ -3,20 +3,50 @@
  */
 package org.inaetics.wiring.admin.http;
 
+import static org.inaetics.wiring.admin.http.HttpAdminConstants.BATCH_MAX_SIZE_CONFIG_KEY;
+import static org.inaetics.wiring.admin.http.HttpAdminConstants.BATCH_WINDOW_CONFIG_KEY;
+import static org.inaetics.wiring.admin.http.HttpAdminConstants.BREAKER_OPEN_TIME_CONFIG_KEY;
+import static org.inaetics.wiring.admin.http.HttpAdminConstants.COMPRESSION_CODEC_CONFIG_KEY;
+import static org.inaetics.wiring.admin.http.HttpAdminConstants.COMPRESSION_THRESHOLD_CONFIG_KEY;
 import static org.inaetics.wiring.admin.http.HttpAdminConstants.CONNECT_TIMEOUT_CONFIG_KEY;
+import static org.inaetics.wiring.admin.http.HttpAdminConstants.CREDIT_WAIT_CONFIG_KEY;
+import static org.inaetics.wiring.admin.http.HttpAdminConstants.DISPATCH_QUEUE_SIZE_CONFIG_KEY;
+import static org.inaetics.wiring.admin.http.HttpAdminConstants.DISPATCH_THREADS_CONFIG_KEY;
+import static org.inaetics.wiring.admin.http.HttpAdminConstants.DISPATCH_WAITING_CONFIG_KEY;
+import static org.inaetics.wiring.admin.http.HttpAdminConstants.IDLE_TIMEOUT_CONFIG_KEY;
+import static org.inaetics.wiring.admin.http.HttpAdminConstants.KEYSTORE_CONFIG_KEY;
+import static org.inaetics.wiring.admin.http.HttpAdminConstants.KEYSTORE_PASSWORD_CONFIG_KEY;
+import static org.inaetics.wiring.admin.http.HttpAdminConstants.KEYSTORE_TYPE_CONFIG_KEY;
+import static org.inaetics.wiring.admin.http.HttpAdminConstants.MAX_BODY_SIZE_CONFIG_KEY;
+import static org.inaetics.wiring.admin.http.HttpAdminConstants.MAX_CONNECTIONS_CONFIG_KEY;
+import static org.inaetics.wiring.admin.http.HttpAdminConstants.MAX_DECOMPRESSED_SIZE_CONFIG_KEY;
+import static org.inaetics.wiring.admin.http.HttpAdminConstants.MAX_IN_FLIGHT_CONFIG_KEY;
+import static org.inaetics.wiring.admin.http.HttpAdminConstants.MIN_TIMEOUT_CONFIG_KEY;
 import static org.inaetics.wiring.admin.http.HttpAdminConstants.NODE_CONFIG_KEY;
 import static org.inaetics.wiring.admin.http.HttpAdminConstants.PATH_CONFIG_KEY;
 import static org.inaetics.wiring.admin.http.HttpAdminConstants.PROTOCOL_NAME;
 import static org.inaetics.wiring.admin.http.HttpAdminConstants.PROTOCOL_VERSION;
 import static org.inaetics.wiring.admin.http.HttpAdminConstants.READ_TIMEOUT_CONFIG_KEY;
+import static org.inaetics.wiring.admin.http.HttpAdminConstants.RETRY_AFTER_CONFIG_KEY;
+import static org.inaetics.wiring.admin.http.HttpAdminConstants.SECURE_CONFIG_KEY;
 import static org.inaetics.wiring.admin.http.HttpAdminConstants.SERVICE_PID;
+import static org.inaetics.wiring.admin.http.HttpAdminConstants.SESSION_CACHE_SIZE_CONFIG_KEY;
+import static org.inaetics.wiring.admin.http.HttpAdminConstants.SESSION_TIMEOUT_CONFIG_KEY;
+import static org.inaetics.wiring.admin.http.HttpAdminConstants.SPOOL_DIR_CONFIG_KEY;
+import static org.inaetics.wiring.admin.http.HttpAdminConstants.SPOOL_MAX_SEGMENTS_CONFIG_KEY;
+import static org.inaetics.wiring.admin.http.HttpAdminConstants.SPOOL_SEGMENT_SIZE_CONFIG_KEY;
+import static org.inaetics.wiring.admin.http.HttpAdminConstants.TRUSTSTORE_CONFIG_KEY;
+import static org.inaetics.wiring.admin.http.HttpAdminConstants.TRUSTSTORE_PASSWORD_CONFIG_KEY;
+import static org.inaetics.wiring.admin.http.HttpAdminConstants.VALIDATE_AFTER_INACTIVITY_CONFIG_KEY;
 import static org.inaetics.wiring.admin.http.HttpAdminConstants.ZONE_CONFIG_KEY;
 import static org.inaetics.wiring.base.ServiceUtil.getConfigIntValue;
 import static org.inaetics.wiring.base.ServiceUtil.getConfigStringValue;
 
 import java.net.URL;
+import java.security.KeyStore;
 import java.util.Dictionary;
 import java.util.Hashtable;
+import java.util.Objects;
 
 import org.apache.felix.dm.Component;
 import org.apache.felix.dm.DependencyActivatorBase;
@@ -44,6 +74,27 @@ public final class Activator extends DependencyActivatorBase implements ManagedS
    
 	private static final int DEFAULT_CONNECT_TIMEOUT = 5000;
     private static final int DEFAULT_READ_TIMEOUT = 60000;
+    private static final int DEFAULT_MAX_CONNECTIONS = 8;
+    private static final int DEFAULT_IDLE_TIMEOUT = 20000;
+    private static final int DEFAULT_VALIDATE_AFTER_INACTIVITY = 2000;
+    private static final int DEFAULT_MAX_IN_FLIGHT = 64;
+    private static final int DEFAULT_BATCH_WINDOW = 0;
+    private static final int DEFAULT_BATCH_MAX_SIZE = 64;
+    private static final String DEFAULT_COMPRESSION_CODEC = "none";
+    private static final int DEFAULT_COMPRESSION_THRESHOLD = 1024;
+    private static final int DEFAULT_MAX_DECOMPRESSED_SIZE = 64 * 1024 * 1024;
+    private static final int DEFAULT_MAX_BODY_SIZE = 64 * 1024 * 1024;
+    private static final int DEFAULT_DISPATCH_THREADS = 8;
+    private static final int DEFAULT_DISPATCH_QUEUE_SIZE = 64;
+    private static final int DEFAULT_DISPATCH_WAITING = 8;
+    private static final int DEFAULT_RETRY_AFTER = 1;
+    private static final int DEFAULT_BREAKER_OPEN_TIME = 5000;
+    private static final int DEFAULT_MIN_TIMEOUT = 1000;
+    private static final int DEFAULT_CREDIT_WAIT = 1000;
+    private static final int DEFAULT_SESSION_CACHE_SIZE = 256;
+    private static final int DEFAULT_SESSION_TIMEOUT = 3600;
+    private static final int DEFAULT_SPOOL_SEGMENT_SIZE = 4 * 1024 * 1024;
+    private static final int DEFAULT_SPOOL_MAX_SEGMENTS = 64;
 
     private volatile BundleContext m_context;
     private volatile DependencyManager m_dependencyManager;
@@ -55,6 +106,33 @@ public final class Activator extends DependencyActivatorBase implements ManagedS
     private volatile URL m_baseUrl;
     private volatile int m_connectTimeout;
     private volatile int m_readTimeout;
+    private volatile int m_maxConnections;
+    private volatile int m_idleTimeout;
+    private volatile int m_validateAfterInactivity;
+    private volatile int m_maxInFlight;
+    private volatile int m_batchWindow;
+    private volatile int m_batchMaxSize;
+    private volatile String m_compressionCodec;
+    private volatile int m_compressionThreshold;
+    private volatile int m_maxDecompressedSize;
+    private volatile int m_maxBodySize;
+    private volatile int m_dispatchThreads;
+    private volatile int m_dispatchQueueSize;
+    private volatile int m_dispatchWaiting;
+    private volatile int m_retryAfter;
+    private volatile int m_breakerOpenTime;
+    private volatile int m_minTimeout;
+    private volatile int m_creditWait;
+    private volatile int m_sessionCacheSize;
+    private volatile int m_sessionTimeout;
+    private volatile int m_spoolSegmentSize;
+    private volatile int m_spoolMaxSegments;
+    private volatile String m_keyStore;
+    private volatile String m_keyStorePassword;
+    private volatile String m_keyStoreType;
+    private volatile String m_trustStore;
+    private volatile String m_trustStorePassword;
+    private volatile String m_spoolDir;
     private volatile String m_zone;
     private volatile String m_node;
     
@@ -66,6 +144,33 @@ public final class Activator extends DependencyActivatorBase implements ManagedS
 
         int connectTimeout = getConfigIntValue(context, CONNECT_TIMEOUT_CONFIG_KEY, null, DEFAULT_CONNECT_TIMEOUT);
         int readTimeout = getConfigIntValue(context, READ_TIMEOUT_CONFIG_KEY, null, DEFAULT_READ_TIMEOUT);
+        int maxConnections = getConfigIntValue(context, MAX_CONNECTIONS_CONFIG_KEY, null, DEFAULT_MAX_CONNECTIONS);
+        int idleTimeout = getConfigIntValue(context, IDLE_TIMEOUT_CONFIG_KEY, null, DEFAULT_IDLE_TIMEOUT);
+        int validateAfterInactivity = getConfigIntValue(context, VALIDATE_AFTER_INACTIVITY_CONFIG_KEY, null, DEFAULT_VALIDATE_AFTER_INACTIVITY);
+        int maxInFlight = getConfigIntValue(context, MAX_IN_FLIGHT_CONFIG_KEY, null, DEFAULT_MAX_IN_FLIGHT);
+        int batchWindow = getConfigIntValue(context, BATCH_WINDOW_CONFIG_KEY, null, DEFAULT_BATCH_WINDOW);
+        int batchMaxSize = getConfigIntValue(context, BATCH_MAX_SIZE_CONFIG_KEY, null, DEFAULT_BATCH_MAX_SIZE);
+        String compressionCodec = getConfigStringValue(context, COMPRESSION_CODEC_CONFIG_KEY, null, DEFAULT_COMPRESSION_CODEC);
+        int compressionThreshold = getConfigIntValue(context, COMPRESSION_THRESHOLD_CONFIG_KEY, null, DEFAULT_COMPRESSION_THRESHOLD);
+        int maxDecompressedSize = getConfigIntValue(context, MAX_DECOMPRESSED_SIZE_CONFIG_KEY, null, DEFAULT_MAX_DECOMPRESSED_SIZE);
+        int maxBodySize = getConfigIntValue(context, MAX_BODY_SIZE_CONFIG_KEY, null, DEFAULT_MAX_BODY_SIZE);
+        int dispatchThreads = getConfigIntValue(context, DISPATCH_THREADS_CONFIG_KEY, null, DEFAULT_DISPATCH_THREADS);
+        int dispatchQueueSize = getConfigIntValue(context, DISPATCH_QUEUE_SIZE_CONFIG_KEY, null, DEFAULT_DISPATCH_QUEUE_SIZE);
+        int dispatchWaiting = getConfigIntValue(context, DISPATCH_WAITING_CONFIG_KEY, null, DEFAULT_DISPATCH_WAITING);
+        int retryAfter = getConfigIntValue(context, RETRY_AFTER_CONFIG_KEY, null, DEFAULT_RETRY_AFTER);
+        int breakerOpenTime = getConfigIntValue(context, BREAKER_OPEN_TIME_CONFIG_KEY, null, DEFAULT_BREAKER_OPEN_TIME);
+        int minTimeout = getConfigIntValue(context, MIN_TIMEOUT_CONFIG_KEY, null, DEFAULT_MIN_TIMEOUT);
+        int creditWait = getConfigIntValue(context, CREDIT_WAIT_CONFIG_KEY, null, DEFAULT_CREDIT_WAIT);
+        int sessionCacheSize = getConfigIntValue(context, SESSION_CACHE_SIZE_CONFIG_KEY, null, DEFAULT_SESSION_CACHE_SIZE);
+        int sessionTimeout = getConfigIntValue(context, SESSION_TIMEOUT_CONFIG_KEY, null, DEFAULT_SESSION_TIMEOUT);
+        String keyStore = getConfiguredStoreValue(KEYSTORE_CONFIG_KEY, "org.apache.felix.https.keystore", null);
+        String keyStorePassword = getConfiguredStoreValue(KEYSTORE_PASSWORD_CONFIG_KEY, "org.apache.felix.https.keystore.password", null);
+        String keyStoreType = getConfigStringValue(context, KEYSTORE_TYPE_CONFIG_KEY, null, KeyStore.getDefaultType());
+        String trustStore = getConfiguredStoreValue(TRUSTSTORE_CONFIG_KEY, "org.apache.felix.https.truststore", null);
+        String trustStorePassword = getConfiguredStoreValue(TRUSTSTORE_PASSWORD_CONFIG_KEY, "org.apache.felix.https.truststore.password", null);
+        int spoolSegmentSize = getConfigIntValue(context, SPOOL_SEGMENT_SIZE_CONFIG_KEY, null, DEFAULT_SPOOL_SEGMENT_SIZE);
+        int spoolMaxSegments = getConfigIntValue(context, SPOOL_MAX_SEGMENTS_CONFIG_KEY, null, DEFAULT_SPOOL_MAX_SEGMENTS);
+        String spoolDir = getConfigStringValue(context, SPOOL_DIR_CONFIG_KEY, null, null);
         String zone = getConfiguredZone(null);
         String node = getConfiguredNode(null);
         
@@ -73,6 +178,33 @@ public final class Activator extends DependencyActivatorBase implements ManagedS
             m_baseUrl = parseConfiguredBaseUrl(null);
             m_connectTimeout = connectTimeout;
             m_readTimeout = readTimeout;
+            m_maxConnections = maxConnections;
+            m_idleTimeout = idleTimeout;
+            m_validateAfterInactivity = validateAfterInactivity;
+            m_maxInFlight = maxInFlight;
+            m_batchWindow = batchWindow;
+            m_batchMaxSize = batchMaxSize;
+            m_compressionCodec = compressionCodec;
+            m_compressionThreshold = compressionThreshold;
+            m_maxDecompressedSize = maxDecompressedSize;
+            m_maxBodySize = maxBodySize;
+            m_dispatchThreads = dispatchThreads;
+            m_dispatchQueueSize = dispatchQueueSize;
+            m_dispatchWaiting = dispatchWaiting;
+            m_retryAfter = retryAfter;
+            m_breakerOpenTime = breakerOpenTime;
+            m_minTimeout = minTimeout;
+            m_creditWait = creditWait;
+            m_sessionCacheSize = sessionCacheSize;
+            m_sessionTimeout = sessionTimeout;
+            m_keyStore = keyStore;
+            m_keyStorePassword = keyStorePassword;
+            m_keyStoreType = keyStoreType;
+            m_trustStore = trustStore;
+            m_trustStorePassword = trustStorePassword;
+            m_spoolSegmentSize = spoolSegmentSize;
+            m_spoolMaxSegments = spoolMaxSegments;
+            m_spoolDir = spoolDir;
             m_zone = zone;
             m_node = node;
             registerFactoryService();
@@ -97,6 +229,33 @@ public final class Activator extends DependencyActivatorBase implements ManagedS
         // assign values to fields after baseUrl was successfully
         int connectTimeout = getConfigIntValue(m_context, CONNECT_TIMEOUT_CONFIG_KEY, properties, DEFAULT_CONNECT_TIMEOUT);
         int readTimeout = getConfigIntValue(m_context, READ_TIMEOUT_CONFIG_KEY, properties, DEFAULT_READ_TIMEOUT);
+        int maxConnections = getConfigIntValue(m_context, MAX_CONNECTIONS_CONFIG_KEY, properties, DEFAULT_MAX_CONNECTIONS);
+        int idleTimeout = getConfigIntValue(m_context, IDLE_TIMEOUT_CONFIG_KEY, properties, DEFAULT_IDLE_TIMEOUT);
+        int validateAfterInactivity = getConfigIntValue(m_context, VALIDATE_AFTER_INACTIVITY_CONFIG_KEY, properties, DEFAULT_VALIDATE_AFTER_INACTIVITY);
+        int maxInFlight = getConfigIntValue(m_context, MAX_IN_FLIGHT_CONFIG_KEY, properties, DEFAULT_MAX_IN_FLIGHT);
+        int batchWindow = getConfigIntValue(m_context, BATCH_WINDOW_CONFIG_KEY, properties, DEFAULT_BATCH_WINDOW);
+        int batchMaxSize = getConfigIntValue(m_context, BATCH_MAX_SIZE_CONFIG_KEY, properties, DEFAULT_BATCH_MAX_SIZE);
+        String compressionCodec = getConfigStringValue(m_context, COMPRESSION_CODEC_CONFIG_KEY, properties, DEFAULT_COMPRESSION_CODEC);
+        int compressionThreshold = getConfigIntValue(m_context, COMPRESSION_THRESHOLD_CONFIG_KEY, properties, DEFAULT_COMPRESSION_THRESHOLD);
+        int maxDecompressedSize = getConfigIntValue(m_context, MAX_DECOMPRESSED_SIZE_CONFIG_KEY, properties, DEFAULT_MAX_DECOMPRESSED_SIZE);
+        int maxBodySize = getConfigIntValue(m_context, MAX_BODY_SIZE_CONFIG_KEY, properties, DEFAULT_MAX_BODY_SIZE);
+        int dispatchThreads = getConfigIntValue(m_context, DISPATCH_THREADS_CONFIG_KEY, properties, DEFAULT_DISPATCH_THREADS);
+        int dispatchQueueSize = getConfigIntValue(m_context, DISPATCH_QUEUE_SIZE_CONFIG_KEY, properties, DEFAULT_DISPATCH_QUEUE_SIZE);
+        int dispatchWaiting = getConfigIntValue(m_context, DISPATCH_WAITING_CONFIG_KEY, properties, DEFAULT_DISPATCH_WAITING);
+        int retryAfter = getConfigIntValue(m_context, RETRY_AFTER_CONFIG_KEY, properties, DEFAULT_RETRY_AFTER);
+        int breakerOpenTime = getConfigIntValue(m_context, BREAKER_OPEN_TIME_CONFIG_KEY, properties, DEFAULT_BREAKER_OPEN_TIME);
+        int minTimeout = getConfigIntValue(m_context, MIN_TIMEOUT_CONFIG_KEY, properties, DEFAULT_MIN_TIMEOUT);
+        int creditWait = getConfigIntValue(m_context, CREDIT_WAIT_CONFIG_KEY, properties, DEFAULT_CREDIT_WAIT);
+        int sessionCacheSize = getConfigIntValue(m_context, SESSION_CACHE_SIZE_CONFIG_KEY, properties, DEFAULT_SESSION_CACHE_SIZE);
+        int sessionTimeout = getConfigIntValue(m_context, SESSION_TIMEOUT_CONFIG_KEY, properties, DEFAULT_SESSION_TIMEOUT);
+        String keyStore = getConfiguredStoreValue(KEYSTORE_CONFIG_KEY, "org.apache.felix.https.keystore", properties);
+        String keyStorePassword = getConfiguredStoreValue(KEYSTORE_PASSWORD_CONFIG_KEY, "org.apache.felix.https.keystore.password", properties);
+        String keyStoreType = getConfigStringValue(m_context, KEYSTORE_TYPE_CONFIG_KEY, properties, KeyStore.getDefaultType());
+        String trustStore = getConfiguredStoreValue(TRUSTSTORE_CONFIG_KEY, "org.apache.felix.https.truststore", properties);
+        String trustStorePassword = getConfiguredStoreValue(TRUSTSTORE_PASSWORD_CONFIG_KEY, "org.apache.felix.https.truststore.password", properties);
+        int spoolSegmentSize = getConfigIntValue(m_context, SPOOL_SEGMENT_SIZE_CONFIG_KEY, properties, DEFAULT_SPOOL_SEGMENT_SIZE);
+        int spoolMaxSegments = getConfigIntValue(m_context, SPOOL_MAX_SEGMENTS_CONFIG_KEY, properties, DEFAULT_SPOOL_MAX_SEGMENTS);
+        String spoolDir = getConfigStringValue(m_context, SPOOL_DIR_CONFIG_KEY, properties, null);
         String zone = getConfiguredZone(properties);
         String node = getConfiguredNode(properties);
         
@@ -105,10 +264,44 @@ public final class Activator extends DependencyActivatorBase implements ManagedS
         try {
             m_connectTimeout = connectTimeout;
             m_readTimeout = readTimeout;
+            m_maxConnections = maxConnections;
+            m_idleTimeout = idleTimeout;
+            m_validateAfterInactivity = validateAfterInactivity;
+            m_maxInFlight = maxInFlight;
+            m_batchWindow = batchWindow;
+            m_batchMaxSize = batchMaxSize;
+            m_compressionCodec = compressionCodec;
+            m_compressionThreshold = compressionThreshold;
+            m_maxDecompressedSize = maxDecompressedSize;
+            m_maxBodySize = maxBodySize;
+            m_dispatchThreads = dispatchThreads;
+            m_dispatchQueueSize = dispatchQueueSize;
+            m_dispatchWaiting = dispatchWaiting;
+            m_retryAfter = retryAfter;
+            m_breakerOpenTime = breakerOpenTime;
+            m_minTimeout = minTimeout;
+            m_creditWait = creditWait;
+            m_sessionCacheSize = sessionCacheSize;
+            m_sessionTimeout = sessionTimeout;
+            m_spoolSegmentSize = spoolSegmentSize;
+            m_spoolMaxSegments = spoolMaxSegments;
+            m_spoolDir = spoolDir;
             m_zone = zone;
             m_node = node;
+
+            // client endpoints keep using the TLS context they were created with
+            boolean storesChanged = !Objects.equals(keyStore, m_keyStore)
+                || !Objects.equals(keyStorePassword, m_keyStorePassword)
+                || !Objects.equals(keyStoreType, m_keyStoreType)
+                || !Objects.equals(trustStore, m_trustStore)
+                || !Objects.equals(trustStorePassword, m_trustStorePassword);
+            m_keyStore = keyStore;
+            m_keyStorePassword = keyStorePassword;
+            m_keyStoreType = keyStoreType;
+            m_trustStore = trustStore;
+            m_trustStorePassword = trustStorePassword;
             
-            if (!baseUrl.equals(m_baseUrl)) {
+            if (!baseUrl.equals(m_baseUrl) || storesChanged) {
                 m_baseUrl = baseUrl;
 
                 unregisterFactoryService();
@@ -184,9 +377,16 @@ public final class Activator extends DependencyActivatorBase implements ManagedS
             host = getConfigStringValue(m_context, "org.apache.felix.http.host", properties, "localhost");
         }
 
+        boolean secure = Boolean.parseBoolean(getConfigStringValue(m_context, SECURE_CONFIG_KEY, properties, "false"));
+
         int port = getConfigIntValue(m_context, HttpAdminConstants.PORT_CONFIG_KEY, properties, -1);
         if (port == -1) {
-            port = getConfigIntValue(m_context, "org.osgi.service.http.port", properties, 8080);
+            if (secure) {
+                port = getConfigIntValue(m_context, "org.osgi.service.http.port.secure", properties, 8443);
+            }
+            else {
+                port = getConfigIntValue(m_context, "org.osgi.service.http.port", properties, 8080);
+            }
         }
 
         String path = getConfigStringValue(m_context, PATH_CONFIG_KEY, properties, SERVICE_PID);
@@ -198,13 +398,23 @@ public final class Activator extends DependencyActivatorBase implements ManagedS
         }
 
         try {
-            return new URL("http", host, port, path);
+            return new URL(secure ? "https" : "http", host, port, path);
         }
         catch (Exception e) {
             throw new ConfigurationException("unknown", e.getMessage(), e);
         }
     }
 
+    private String getConfiguredStoreValue(String key, String httpServiceKey, Dictionary<String, ?> properties)
+        throws ConfigurationException {
+        String value = getConfigStringValue(m_context, key, properties, null);
+        if (value == null) {
+            // the http service might be set up with the same stores
+            value = getConfigStringValue(m_context, httpServiceKey, properties, null);
+        }
+        return value;
+    }
+
     private String getConfiguredZone(Dictionary<String, ?> properties) throws ConfigurationException {
         return getConfigStringValue(m_context, ZONE_CONFIG_KEY, properties, "");
     }
@@ -228,6 +438,141 @@ public final class Activator extends DependencyActivatorBase implements ManagedS
         return m_readTimeout;
     }
 
+    @Override
+    public int getMaxConnections() {
+        return m_maxConnections;
+    }
+
+    @Override
+    public int getIdleTimeout() {
+        return m_idleTimeout;
+    }
+
+    @Override
+    public int getValidateAfterInactivity() {
+        return m_validateAfterInactivity;
+    }
+
+    @Override
+    public int getMaxInFlight() {
+        return m_maxInFlight;
+    }
+
+    @Override
+    public int getBatchWindow() {
+        return m_batchWindow;
+    }
+
+    @Override
+    public int getBatchMaxSize() {
+        return m_batchMaxSize;
+    }
+
+    @Override
+    public String getCompressionCodec() {
+        return m_compressionCodec;
+    }
+
+    @Override
+    public int getCompressionThreshold() {
+        return m_compressionThreshold;
+    }
+
+    @Override
+    public int getMaxDecompressedSize() {
+        return m_maxDecompressedSize;
+    }
+
+    @Override
+    public int getMaxBodySize() {
+        return m_maxBodySize;
+    }
+
+    @Override
+    public int getDispatchThreads() {
+        return m_dispatchThreads;
+    }
+
+    @Override
+    public int getDispatchQueueSize() {
+        return m_dispatchQueueSize;
+    }
+
+    @Override
+    public int getDispatchWaiting() {
+        return m_dispatchWaiting;
+    }
+
+    @Override
+    public int getRetryAfter() {
+        return m_retryAfter;
+    }
+
+    @Override
+    public int getBreakerOpenTime() {
+        return m_breakerOpenTime;
+    }
+
+    @Override
+    public int getMinTimeout() {
+        return m_minTimeout;
+    }
+
+    @Override
+    public int getCreditWait() {
+        return m_creditWait;
+    }
+
+    @Override
+    public int getSessionCacheSize() {
+        return m_sessionCacheSize;
+    }
+
+    @Override
+    public int getSessionTimeout() {
+        return m_sessionTimeout;
+    }
+
+    @Override
+    public String getKeyStore() {
+        return m_keyStore;
+    }
+
+    @Override
+    public String getKeyStorePassword() {
+        return m_keyStorePassword;
+    }
+
+    @Override
+    public String getKeyStoreType() {
+        return m_keyStoreType;
+    }
+
+    @Override
+    public String getTrustStore() {
+        return m_trustStore;
+    }
+
+    @Override
+    public String getTrustStorePassword() {
+        return m_trustStorePassword;
+    }
+
+    @Override
+    public int getSpoolSegmentSize() {
+        return m_spoolSegmentSize;
+    }
+
+    @Override
+    public int getSpoolMaxSegments() {
+        return m_spoolMaxSegments;
+    }
+
+    @Override
+    public String getSpoolDir() {
+        return m_spoolDir;
+    }
+
 	@Override
 	public String getZone() {
 		return m_zone;
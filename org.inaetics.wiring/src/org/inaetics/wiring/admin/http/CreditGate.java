@@ -0,0 +1,105 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.http;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Credit based flow control for the messages of a single remote endpoint.
+ * <p>
+ * Messages are numbered in the order they are sent. Every response of the remote endpoint grants credits: the
+ * number of further messages it can accept for the wire without queueing them beyond its dispatch queue. Since the
+ * messages that were sent after the answered one might not have arrived yet, they still have to fit in the granted
+ * credits, so the response to message <i>n</i> with <i>c</i> credits allows messages up to number <i>n + c</i>.
+ * Asynchronous messages beyond that wait until a response grants new credits, or are rejected if that takes too
+ * long, so that a fast producer is slowed down to the pace of its receiver instead of piling up messages in memory.
+ * Synchronous messages never wait, their senders are held up by the message itself already.
+ * <p>
+ * Until the first response arrives, {@value #INITIAL_CREDITS} messages can be sent. Endpoints that answer without
+ * granting credits do not limit messages at all. A message is always let through if none of the messages of this
+ * gate is outstanding, since there would be no response left to grant new credits otherwise.
+ *
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+final class CreditGate {
+
+    private static final int INITIAL_CREDITS = 16;
+
+    /** the number of the next message */
+    private long m_next;
+    /** messages with a lower number may be sent */
+    private long m_limit = INITIAL_CREDITS;
+    /** the number of the message whose response set the limit */
+    private long m_granted = -1;
+    private int m_outstanding;
+
+    /**
+     * Takes a credit for a message, waiting for one if necessary. Every successful call must be followed by a
+     * call to {@link #release(int)} once the message completed.
+     *
+     * @param wait the maximum time to wait in ms
+     * @return the number of the message, or <code>-1</code> if no credit was granted in time
+     * @throws InterruptedException if the calling thread was interrupted while waiting
+     */
+    synchronized long acquire(long wait) throws InterruptedException {
+        if (m_next >= m_limit && m_outstanding > 0) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(wait);
+            do {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return -1;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            while (m_next >= m_limit && m_outstanding > 0);
+        }
+        m_outstanding++;
+        return m_next++;
+    }
+
+    /**
+     * Counts a message that does not wait for credits. It must be followed by a call to {@link #release(int)} once
+     * the message completed.
+     *
+     * @return the number of the message
+     */
+    synchronized long enter() {
+        m_outstanding++;
+        return m_next++;
+    }
+
+    /**
+     * @return the number of the last message that was counted
+     */
+    synchronized long last() {
+        return m_next - 1;
+    }
+
+    /**
+     * Records that messages of this gate completed.
+     *
+     * @param messages the number of completed messages
+     */
+    synchronized void release(int messages) {
+        m_outstanding -= messages;
+        notifyAll();
+    }
+
+    /**
+     * Records the credits granted by a response of the remote endpoint. Responses to messages that were sent
+     * before the message of the last grant are ignored, their credits are outdated.
+     *
+     * @param message the number of the answered message
+     * @param credits the number of further messages the remote endpoint can accept, {@link Integer#MAX_VALUE} if it
+     *        does not limit them
+     */
+    synchronized void grant(long message, int credits) {
+        if (message < m_granted) {
+            return;
+        }
+        m_granted = message;
+        m_limit = credits == Integer.MAX_VALUE ? Long.MAX_VALUE : message + 1 + Math.max(0, credits);
+        notifyAll();
+    }
+}
@@ -57,7 +57,10 @@ public final class ExportedEndpointImpl implements ExportRegistration, ExportRef
     		m_endpointDescription.setProtocolName(HttpAdminConstants.PROTOCOL_NAME);
  
     		m_endpointDescription.setProperty(HttpWiringEndpointProperties.VERSION, HttpAdminConstants.PROTOCOL_VERSION);
-    		m_endpointDescription.setProperty(WiringConstants.PROPERTY_SECURE, HttpAdminConstants.SECURE);
+    		boolean secure = "https".equals(m_configuration.getBaseUrl().getProtocol());
+    		m_endpointDescription.setProperty(WiringConstants.PROPERTY_SECURE, secure ? HttpAdminConstants.SECURE_YES : HttpAdminConstants.SECURE);
+    		m_endpointDescription.setProperty(HttpWiringEndpointProperties.BATCH, "true");
+    		m_endpointDescription.setProperty(HttpWiringEndpointProperties.CODECS, HttpCompression.SUPPORTED_CODECS);
     		
     		try {
     			m_endpointDescription.setProperty(HttpWiringEndpointProperties.URL, new URL(m_configuration.getBaseUrl().toString() + m_endpointDescription.getId()).toString());
@@ -32,6 +32,196 @@ public interface HttpAdminConfiguration {
      * @return read timeout in ms
      */
     public int getReadTimeout();
+
+    /**
+     * returns the maximum number of pooled connections per remote node
+     * 
+     * @return max connections per host:port
+     */
+    public int getMaxConnections();
+
+    /**
+     * returns the time after which idle pooled connections are closed
+     * 
+     * @return idle timeout in ms
+     */
+    public int getIdleTimeout();
+
+    /**
+     * returns the time of inactivity after which a pooled connection is validated before reuse
+     * 
+     * @return validate after inactivity in ms
+     */
+    public int getValidateAfterInactivity();
+
+    /**
+     * returns the maximum number of asynchronous messages in flight per client endpoint
+     * 
+     * @return max messages in flight
+     */
+    public int getMaxInFlight();
+    
+    /**
+     * returns the time during which client messages to the same wire are collected into one batch request
+     * 
+     * @return batch window in ms, 0 if batching is disabled
+     */
+    public int getBatchWindow();
+    
+    /**
+     * returns the maximum number of messages in one batch request
+     * 
+     * @return max messages per batch
+     */
+    public int getBatchMaxSize();
+    
+    /**
+     * returns the codec used to compress message bodies
+     * 
+     * @return the codec, or <code>none</code> if messages are not compressed
+     */
+    public String getCompressionCodec();
+    
+    /**
+     * returns the minimum size of a message body before it is compressed
+     * 
+     * @return compression threshold in bytes
+     */
+    public int getCompressionThreshold();
+    
+    /**
+     * returns the maximum size of a message body after it is decompressed
+     * 
+     * @return maximum decompressed size in bytes
+     */
+    public int getMaxDecompressedSize();
+    
+    /**
+     * returns the maximum size of a message body as it is sent, before it is decompressed
+     * 
+     * @return maximum body size in bytes
+     */
+    public int getMaxBodySize();
+    
+    /**
+     * returns the maximum number of threads per server endpoint that invoke the receiver
+     * 
+     * @return dispatch threads per wire, 0 if the receiver is invoked on the servlet thread
+     */
+    public int getDispatchThreads();
+    
+    /**
+     * returns the maximum number of requests per server endpoint that wait for a dispatch thread
+     * 
+     * @return dispatch queue size per wire
+     */
+    public int getDispatchQueueSize();
+    
+    /**
+     * returns the maximum number of servlet threads per server endpoint and priority that wait for the result of a
+     * dispatched request
+     * 
+     * @return waiting servlet threads per wire and priority
+     */
+    public int getDispatchWaiting();
+    
+    /**
+     * returns the Retry-After value of requests that are rejected because the server endpoint is overloaded
+     * 
+     * @return retry after in seconds
+     */
+    public int getRetryAfter();
+    
+    /**
+     * returns the time an open circuit breaker rejects calls before it lets a probe through
+     * 
+     * @return open time in ms
+     */
+    public int getBreakerOpenTime();
+    
+    /**
+     * returns the lower bound of the read timeout that adapts to the observed latency
+     * 
+     * @return minimum read timeout in ms
+     */
+    public int getMinTimeout();
+    
+    /**
+     * returns the time an asynchronous send waits for the remote endpoint to grant credits
+     * 
+     * @return credit wait in ms, 0 if sends without credits are rejected immediately
+     */
+    public int getCreditWait();
+    
+    /**
+     * returns the path of the key store with the key of this node
+     * 
+     * @return the key store path, or <code>null</code> if this node has no key
+     */
+    public String getKeyStore();
+    
+    /**
+     * returns the password of the key store and its key
+     * 
+     * @return the key store password, or <code>null</code>
+     */
+    public String getKeyStorePassword();
+    
+    /**
+     * returns the type of the key and trust store
+     * 
+     * @return the key store type
+     */
+    public String getKeyStoreType();
+    
+    /**
+     * returns the path of the trust store with the certificates of trusted nodes
+     * 
+     * @return the trust store path, or <code>null</code> to use the trust store of the JVM
+     */
+    public String getTrustStore();
+    
+    /**
+     * returns the password of the trust store
+     * 
+     * @return the trust store password, or <code>null</code>
+     */
+    public String getTrustStorePassword();
+    
+    /**
+     * returns the maximum number of TLS sessions that are cached for resumption of secure connections
+     * 
+     * @return session cache size
+     */
+    public int getSessionCacheSize();
+    
+    /**
+     * returns the time a cached TLS session can be resumed
+     * 
+     * @return session timeout in seconds
+     */
+    public int getSessionTimeout();
+    
+    /**
+     * returns the directory of the spools of one-way messages that could not be delivered
+     * 
+     * @return the spool directory, or <code>null</code> if spooling is disabled
+     */
+    public String getSpoolDir();
+    
+    /**
+     * returns the size of the segment files of the spool of a wire
+     * 
+     * @return segment size in bytes
+     */
+    public int getSpoolSegmentSize();
+    
+    /**
+     * returns the maximum number of segment files of the spool of a wire
+     * 
+     * @return max segments
+     */
+    public int getSpoolMaxSegments();
     
     /**
      * returns the zone id
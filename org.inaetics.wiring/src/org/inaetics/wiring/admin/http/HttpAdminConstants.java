@@ -50,6 +50,152 @@ public interface HttpAdminConstants {
      */
     String NODE_CONFIG_KEY = SERVICE_PID + ".node";
 
+    /**
+     * Configuration property: maximum number of pooled connections per remote node (host:port)
+     */
+    String MAX_CONNECTIONS_CONFIG_KEY = SERVICE_PID + ".maxconnections";
+
+    /**
+     * Configuration property: time in ms after which an idle pooled connection is closed
+     */
+    String IDLE_TIMEOUT_CONFIG_KEY = SERVICE_PID + ".idletimeout";
+
+    /**
+     * Configuration property: time in ms of inactivity after which a pooled connection is checked
+     * for staleness before it is reused
+     */
+    String VALIDATE_AFTER_INACTIVITY_CONFIG_KEY = SERVICE_PID + ".validateafterinactivity";
+
+    /**
+     * Configuration property: maximum number of asynchronous messages in flight per client endpoint
+     */
+    String MAX_IN_FLIGHT_CONFIG_KEY = SERVICE_PID + ".maxinflight";
+
+    /**
+     * Configuration property: time in ms during which messages to the same wire are collected into one batch request, 0 disables batching
+     */
+    String BATCH_WINDOW_CONFIG_KEY = SERVICE_PID + ".batchwindow";
+
+    /**
+     * Configuration property: maximum number of messages in one batch request
+     */
+    String BATCH_MAX_SIZE_CONFIG_KEY = SERVICE_PID + ".batchmaxsize";
+
+    /**
+     * Configuration property: codec used to compress message bodies, one of <code>lzf</code>,
+     * <code>deflate</code> or <code>none</code>
+     */
+    String COMPRESSION_CODEC_CONFIG_KEY = SERVICE_PID + ".compression";
+
+    /**
+     * Configuration property: minimum size in bytes of a message body before it is compressed
+     */
+    String COMPRESSION_THRESHOLD_CONFIG_KEY = SERVICE_PID + ".compressionthreshold";
+
+    /**
+     * Configuration property: maximum size in bytes of a decompressed message body, larger bodies are rejected
+     */
+    String MAX_DECOMPRESSED_SIZE_CONFIG_KEY = SERVICE_PID + ".maxdecompressedsize";
+
+    /**
+     * Configuration property: maximum size in bytes of a message body as it is sent, larger request bodies are rejected with 413 and larger response bodies are not read
+     */
+    String MAX_BODY_SIZE_CONFIG_KEY = SERVICE_PID + ".maxbodysize";
+
+    /**
+     * Configuration property: maximum number of threads per server endpoint that invoke the receiver, 0 invokes the receiver on the servlet thread
+     */
+    String DISPATCH_THREADS_CONFIG_KEY = SERVICE_PID + ".dispatchthreads";
+
+    /**
+     * Configuration property: maximum number of requests per server endpoint that wait for a dispatch thread, further requests are rejected with 503
+     */
+    String DISPATCH_QUEUE_SIZE_CONFIG_KEY = SERVICE_PID + ".dispatchqueuesize";
+
+    /**
+     * Configuration property: maximum number of servlet threads per server endpoint and priority that wait for the result of a dispatched request, further requests are rejected with 503
+     */
+    String DISPATCH_WAITING_CONFIG_KEY = SERVICE_PID + ".dispatchwaiting";
+
+    /**
+     * Configuration property: Retry-After value in seconds of rejected requests
+     */
+    String RETRY_AFTER_CONFIG_KEY = SERVICE_PID + ".retryafter";
+
+    /**
+     * Configuration property: time a client endpoint stops calling a failing remote endpoint before it probes it again
+     */
+    String BREAKER_OPEN_TIME_CONFIG_KEY = SERVICE_PID + ".breakeropentime";
+
+    /**
+     * Configuration property: lower bound of the adaptive read timeout
+     */
+    String MIN_TIMEOUT_CONFIG_KEY = SERVICE_PID + ".mintimeout";
+
+    /**
+     * Configuration property: time an asynchronous send waits for credits of the remote endpoint before it is rejected, 0 rejects immediately
+     */
+    String CREDIT_WAIT_CONFIG_KEY = SERVICE_PID + ".creditwait";
+
+    /**
+     * Configuration property: <code>true</code> to export endpoints over HTTPS, the HTTPS port of the http
+     * service must be configured as well
+     */
+    String SECURE_CONFIG_KEY = SERVICE_PID + ".secure";
+
+    /**
+     * Configuration property: path of the key store with the key of this node, presented to nodes that require client
+     * authentication
+     */
+    String KEYSTORE_CONFIG_KEY = SERVICE_PID + ".keystore";
+
+    /**
+     * Configuration property: password of the key store and its key
+     */
+    String KEYSTORE_PASSWORD_CONFIG_KEY = SERVICE_PID + ".keystorepassword";
+
+    /**
+     * Configuration property: type of the key and trust store, <code>JKS</code> or <code>PKCS12</code>
+     */
+    String KEYSTORE_TYPE_CONFIG_KEY = SERVICE_PID + ".keystoretype";
+
+    /**
+     * Configuration property: path of the trust store with the certificates of trusted nodes, the trust store of the
+     * JVM is used if not set
+     */
+    String TRUSTSTORE_CONFIG_KEY = SERVICE_PID + ".truststore";
+
+    /**
+     * Configuration property: password of the trust store
+     */
+    String TRUSTSTORE_PASSWORD_CONFIG_KEY = SERVICE_PID + ".truststorepassword";
+
+    /**
+     * Configuration property: maximum number of TLS sessions a client keeps for resumption
+     */
+    String SESSION_CACHE_SIZE_CONFIG_KEY = SERVICE_PID + ".sessioncachesize";
+
+    /**
+     * Configuration property: time in seconds a cached TLS session can be resumed
+     */
+    String SESSION_TIMEOUT_CONFIG_KEY = SERVICE_PID + ".sessiontimeout";
+
+    /**
+     * Configuration property: directory of the spools of one-way messages that could not be delivered, replayed once
+     * their wire is reachable again. Spooling is disabled if not set.
+     */
+    String SPOOL_DIR_CONFIG_KEY = SERVICE_PID + ".spooldir";
+
+    /**
+     * Configuration property: size in bytes of the segment files of a spool
+     */
+    String SPOOL_SEGMENT_SIZE_CONFIG_KEY = SERVICE_PID + ".spoolsegmentsize";
+
+    /**
+     * Configuration property: maximum number of segment files of the spool of a wire, further messages are rejected
+     */
+    String SPOOL_MAX_SEGMENTS_CONFIG_KEY = SERVICE_PID + ".spoolmaxsegments";
+
     /**
      * Configuration Type identifier
      */
@@ -73,4 +219,5 @@ public interface HttpAdminConstants {
     String PROTOCOL_NAME = "inaetics.wiring.http";
     String PROTOCOL_VERSION = "1.0";
     String SECURE = "no";
+    String SECURE_YES = "yes";
 }
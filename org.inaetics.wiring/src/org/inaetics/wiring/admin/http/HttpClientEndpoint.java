@@ -3,38 +3,98 @@
  */
 package org.inaetics.wiring.admin.http;
 
+import static java.net.HttpURLConnection.HTTP_ACCEPTED;
+import static java.net.HttpURLConnection.HTTP_GATEWAY_TIMEOUT;
 import static java.net.HttpURLConnection.HTTP_OK;
-import static org.inaetics.wiring.base.IOUtil.closeSilently;
+import static java.net.HttpURLConnection.HTTP_UNAVAILABLE;
 
+import java.io.EOFException;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
 
 import org.inaetics.wiring.WiringEndpointDescription;
-import org.inaetics.wiring.base.IOUtil;
+import org.inaetics.wiring.endpoint.WiringCircuitBreaker;
+import org.inaetics.wiring.endpoint.WiringDeadline;
+import org.inaetics.wiring.endpoint.WiringPriority;
 import org.osgi.framework.ServiceException;
 
 /**
- * Implementation of an http client that can send messages to remote wiring endpoints
+ * Implementation of an http client that can send messages to remote wiring endpoints. Connections
+ * are taken from a {@link HttpConnectionPool} that is shared by all endpoints of the same remote node.
+ * One-way messages are queued and sent by a single drain task, which pipelines them on one connection.
+ * The remaining time of the {@link WiringDeadline} of the sending thread is sent along with a message and
+ * bounds the time to wait for its response. Asynchronous and one-way messages are subject to the credits
+ * that the remote endpoint grants, see {@link CreditGate}.
+ * <p>
+ * Messages are sent in the lane of the {@link WiringPriority} of the sending thread. Every lane has a connection pool,
+ * credits, in-flight limit and one-way queue of its own, so that a saturated bulk lane neither takes the connections
+ * nor the credits of urgent messages. Only normal messages are batched.
+ * <p>
+ * A pooled connection can be closed by the remote node just when a request is written to it. Only one-way messages
+ * are sent again in that case: a two-way message might have been processed already, and a receiver is not required
+ * to be idempotent.
  *
  * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
  */
 public final class HttpClientEndpoint {
 
-    private static final int FATAL_ERROR_COUNT = 5;
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final int MAX_PIPELINE_DEPTH = 32;
+
+    private static final Map<String, String> REQUEST_HEADERS =
+        Collections.singletonMap("Content-Type", "application/octet-stream");
 
     private final WiringEndpointDescription m_endpoint;
     private final HttpAdminConfiguration m_configuration;
+    private final URL m_url;
+    private final String m_hostHeader;
+    private final String m_codec;
+    private final WiringCircuitBreaker m_circuitBreaker;
+    private final Lane[] m_lanes;
 
     private ClientEndpointProblemListener m_problemListener;
-    private int m_remoteErrors;
+    private volatile HttpMessageBatcher m_batcher;
 
-    public HttpClientEndpoint(WiringEndpointDescription endpoint, HttpAdminConfiguration configuration) {
+    /**
+     * @param pools the connection pools of the lanes, indexed by the ordinal of their {@link WiringPriority}
+     */
+    public HttpClientEndpoint(WiringEndpointDescription endpoint, HttpAdminConfiguration configuration,
+        HttpConnectionPool[] pools, URL url) {
         m_endpoint = endpoint;
         m_configuration = configuration;
-        m_remoteErrors = 0;
+        m_url = url;
+        m_hostHeader = url.getPort() == -1 ? url.getHost() : url.getHost() + ":" + url.getPort();
+        m_codec = HttpCompression.negotiate(configuration.getCompressionCodec(),
+            endpoint.getProperty(HttpWiringEndpointProperties.CODECS));
+        Map<String, String> requestHeaders = REQUEST_HEADERS;
+        if (m_codec != null) {
+            requestHeaders = new HashMap<String, String>(REQUEST_HEADERS);
+            requestHeaders.put(HttpCompression.ACCEPT_ENCODING, m_codec);
+        }
+        WiringPriority[] priorities = WiringPriority.values();
+        m_lanes = new Lane[priorities.length];
+        for (WiringPriority priority : priorities) {
+            m_lanes[priority.ordinal()] = new Lane(priority, pools[priority.ordinal()], requestHeaders,
+                configuration.getMaxInFlight());
+        }
+        m_circuitBreaker = new WiringCircuitBreaker(configuration.getBreakerOpenTime(), configuration.getMinTimeout(),
+            configuration.getReadTimeout());
     }
 
     /**
@@ -45,14 +105,15 @@ public final class HttpClientEndpoint {
     }
 
     /**
-     * Handles I/O exceptions by counting the number of times they occurred, and if a certain
-     * threshold is exceeded closes the import registration for this endpoint.
+     * Handles I/O exceptions by recording them in the circuit breaker. The problem listener gets an error
+     * when the failure opens the breaker, and a warning otherwise.
      * 
      * @param e the exception to handle.
      */
     private void handleRemoteException(IOException e) {
+        boolean opened = m_circuitBreaker.recordFailure();
         if (m_problemListener != null) {
-            if (++m_remoteErrors > FATAL_ERROR_COUNT) {
+            if (opened) {
                 m_problemListener.handleEndpointError(e);
             }
             else {
@@ -62,64 +123,768 @@ public final class HttpClientEndpoint {
     }
 
 
+    WiringEndpointDescription getEndpoint() {
+        return m_endpoint;
+    }
+
+    /**
+     * @return <code>true</code> if the circuit breaker of this endpoint is closed
+     */
+    boolean isAvailable() {
+        return m_circuitBreaker.getState() == WiringCircuitBreaker.State.CLOSED;
+    }
+
+    /**
+     * @return the 95th percentile of the latency of this endpoint in ns, or <code>-1</code> if it is not known yet
+     */
+    long getHedgeDelay() {
+        return m_circuitBreaker.getHedgeDelay();
+    }
+
+    /**
+     * @param batcher the batcher that collects the messages of this endpoint, or <code>null</code> to
+     *        send every message in its own request.
+     */
+    void setBatcher(HttpMessageBatcher batcher) {
+        m_batcher = batcher;
+    }
+
+    /**
+     * @return the lane of the priority of the calling thread
+     */
+    private Lane getLane() {
+        return m_lanes[WiringPriority.current().ordinal()];
+    }
+
     /**
      * Does the actual invocation of the remote method.
      * <p>
      * This method assumes that all security checks (if needed) are processed!
      * </p>
      * 
-     * @param method the actual method to invoke;
-     * @param arguments the arguments of the method to invoke;
+     * @param message the message to send
      * @return the result of the method invocation, can be <code>null</code>.
-     * @throws Exception in case the invocation failed in some way.
+     * @throws Exception in case the invocation failed in some way, a {@link RejectedExecutionException}
+     *         if the remote endpoint is overloaded.
+     */
+    byte[] sendMessage(byte[] message) throws Exception {
+        // synchronous messages do not wait for credits, but they do hold dispatch slots of the remote endpoint
+        Lane lane = getLane();
+        long number = lane.m_creditGate.enter();
+        try {
+            return send(message, lane, number);
+        }
+        finally {
+            lane.m_creditGate.release(1);
+        }
+    }
+
+    /**
+     * @param number the number of the message in the {@link CreditGate} of its lane
      */
-    String sendMessage(String message) throws Exception {
+    private byte[] send(byte[] message, Lane lane, long number) throws Exception {
+
+        HttpMessageBatcher batcher = lane.m_priority == WiringPriority.NORMAL ? m_batcher : null;
+        if (batcher != null) {
+            // batches share one request, only an expired deadline is taken into account
+            WiringDeadline deadline = WiringDeadline.current();
+            if (deadline != null && deadline.isExpired()) {
+                throw deadlineExpired();
+            }
+            try {
+                return batcher.submit(message).get();
+            }
+            catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                }
+                throw e;
+            }
+        }
 
-        HttpURLConnection connection = null;
-        OutputStream outputStream = null;
-        InputStream inputStream = null;
-        String result = null;
         try {
-        	
-        	URL url = new URL(m_endpoint.getProperty(HttpWiringEndpointProperties.URL));
-            connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestMethod("POST");
-            connection.setUseCaches(false);
-            connection.setDoOutput(true);
-            connection.setConnectTimeout(m_configuration.getConnectTimeout());
-            connection.setReadTimeout(m_configuration.getReadTimeout());
-            connection.setRequestProperty("Content-Type", "text/plain;charset=utf-8");
-            connection.connect();
-            outputStream = connection.getOutputStream();
-            
-            outputStream.write(message.getBytes("UTF-8"));
-            outputStream.flush();
-
-            int rc = connection.getResponseCode();
-            switch (rc) {
-                case HTTP_OK:
-                    inputStream = connection.getInputStream();
-                    result = IOUtil.convertStreamToString(inputStream, "UTF-8");
-                    break;
-                default:
-                    throw new IOException("Unexpected HTTP response: " + rc + " " + connection.getResponseMessage());
-            }
-            // Reset this error counter upon each successful request...
-            m_remoteErrors = 0;
+            return invoke(message, lane.m_requestHeaders, 1, lane, number);
         }
         catch (IOException e) {
+            throw new ServiceException("Remote service invocation failed: " + e.getMessage(), ServiceException.REMOTE, e);
+        }
+    }
+
+    /**
+     * Sends a message and returns the response while it is still being received. The stream reads from the
+     * pooled connection, which is handed back to the pool when the stream is closed.
+     * 
+     * @param message the message to send
+     * @return the response stream, must be closed by the caller
+     * @throws Exception in case the invocation failed in some way, a {@link RejectedExecutionException}
+     *         if the remote endpoint is overloaded.
+     */
+    InputStream sendMessageStreaming(byte[] message) throws Exception {
+
+        Lane lane = getLane();
+        WiringDeadline deadline = WiringDeadline.current();
+        Map<String, String> headers = withDeadline(lane.m_requestHeaders, deadline);
+        int readTimeout = getReadTimeout(m_configuration.getReadTimeout(), deadline);
+
+        checkCircuit();
+
+        byte[] body = message;
+        if (m_codec != null && body.length >= m_configuration.getCompressionThreshold()) {
+            body = HttpCompression.compress(m_codec, body);
+            headers = new HashMap<String, String>(headers);
+            headers.put(HttpCompression.CONTENT_ENCODING, m_codec);
+        }
+
+        try {
+            return openStream(lane, body, headers, readTimeout);
+        }
+        catch (IOException e) {
+            if (deadline != null && deadline.isExpired()) {
+                m_circuitBreaker.recordCancelled();
+                throw deadlineExpired();
+            }
             handleRemoteException(e);
             throw new ServiceException("Remote service invocation failed: " + e.getMessage(), ServiceException.REMOTE, e);
         }
+    }
+
+    private InputStream openStream(Lane lane, byte[] body, Map<String, String> headers, int readTimeout)
+        throws IOException {
+        HttpConnection connection = lane.m_pool.acquire();
+        boolean released = false;
+        boolean streaming = false;
+        // like a synchronous message, a stream does not wait for credits
+        long number = lane.m_creditGate.enter();
+        try {
+            connection.write(m_hostHeader, m_url.getFile(), headers, body);
+            HttpConnection.StreamingResponse response = connection.readStreaming(readTimeout);
+            grantCredits(lane, response.getHeader(HttpServerEndpoint.CREDITS_HEADER), number);
+
+            int rc = response.getStatus();
+            if (rc == HTTP_OK) {
+                m_circuitBreaker.recordSuccess(-1);
+                // the stream takes over the connection and the permit only once it is handed out, if decompressing
+                // fails they are released below
+                InputStream in = HttpCompression.decompress(response.getHeader(HttpCompression.CONTENT_ENCODING),
+                    new ResponseStream(lane, connection, response), m_configuration.getMaxDecompressedSize());
+                released = true;
+                streaming = true;
+                return in;
+            }
+
+            // error responses are small, read them completely so that the connection can be reused
+            HttpConnection.BodyInputStream errorBody = response.getBody();
+            byte[] buffer = new byte[1024];
+            while (errorBody.read(buffer) != -1) {
+                // skip
+            }
+            lane.m_pool.release(connection, response.isKeepAlive());
+            released = true;
+
+            if (rc == HTTP_UNAVAILABLE || rc == HTTP_TOO_MANY_REQUESTS) {
+                // backpressure of a healthy remote endpoint, does not count as an error
+                m_circuitBreaker.recordSuccess(-1);
+                throw new RejectedExecutionException("Remote endpoint " + m_endpoint.getId()
+                    + " is overloaded, retry after " + response.getHeader("Retry-After") + "s");
+            }
+            if (rc == HTTP_GATEWAY_TIMEOUT) {
+                // the remote endpoint dropped the message, the deadline passed while it was queued
+                m_circuitBreaker.recordSuccess(-1);
+                throw deadlineExpired();
+            }
+            throw new IOException("Unexpected HTTP response: " + rc + " " + response.getReason());
+        }
+        catch (EOFException e) {
+            throw new IOException("Connection closed by remote node", e);
+        }
+        finally {
+            if (!released) {
+                lane.m_pool.release(connection, false);
+            }
+            if (!streaming) {
+                lane.m_creditGate.release(1);
+            }
+        }
+    }
+
+    /**
+     * Sends several messages in one batch request of the normal lane and completes their futures with the results.
+     * 
+     * @param messages the messages to send
+     * @param futures the futures of the messages, in the same order
+     */
+    void sendBatch(List<byte[]> messages, List<CompletableFuture<byte[]>> futures) {
+        Lane lane = m_lanes[WiringPriority.NORMAL.ordinal()];
+        // the batcher does not know the numbers of its messages, all messages counted so far are about as old
+        long number = lane.m_creditGate.last();
+        try {
+            if (messages.size() == 1) {
+                futures.get(0).complete(invoke(messages.get(0), lane.m_requestHeaders, 1, lane, number));
+                return;
+            }
+
+            int size = 0;
+            for (byte[] message : messages) {
+                size += 4 + message.length;
+            }
+            HttpMessageBatch batch = new HttpMessageBatch(size);
+            for (byte[] message : messages) {
+                batch.addMessage(message);
+            }
+
+            Map<String, String> headers = new HashMap<String, String>(lane.m_requestHeaders);
+            headers.put(HttpMessageBatch.HEADER, String.valueOf(messages.size()));
+
+            HttpMessageBatch.completeResults(invoke(batch.toByteArray(), headers, messages.size(), lane, number),
+                futures);
+        }
+        catch (IOException e) {
+            ServiceException exception =
+                new ServiceException("Remote service invocation failed: " + e.getMessage(), ServiceException.REMOTE, e);
+            for (CompletableFuture<byte[]> future : futures) {
+                future.completeExceptionally(exception);
+            }
+        }
+        catch (RejectedExecutionException | ServiceException e) {
+            for (CompletableFuture<byte[]> future : futures) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Sends a message on the given executor. At most {@link HttpAdminConfiguration#getMaxInFlight()} messages
+     * per lane can be in flight at once, further messages are rejected immediately. If the remote endpoint granted
+     * no credits for the lane, the calling thread waits for them.
+     * 
+     * @param message the message to send
+     * @param executor the executor that performs the actual request
+     * @return the future result of the invocation
+     */
+    CompletableFuture<byte[]> sendMessageAsync(final byte[] message, Executor executor) {
+        final CompletableFuture<byte[]> future = new CompletableFuture<byte[]>();
+        final WiringDeadline deadline = WiringDeadline.current();
+        final Lane lane = getLane();
+        final long number;
+        try {
+            number = acquire(lane);
+        }
+        catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+        HttpMessageBatcher batcher = lane.m_priority == WiringPriority.NORMAL ? m_batcher : null;
+        if (batcher != null) {
+            CompletableFuture<byte[]> result = batcher.submit(message);
+            result.whenComplete(new BiConsumer<byte[], Throwable>() {
+                @Override
+                public void accept(byte[] result, Throwable exception) {
+                    release(lane, 1);
+                }
+            });
+            return result;
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    WiringDeadline previous = WiringDeadline.attach(deadline);
+                    try {
+                        // skip messages that were cancelled while queued, e.g. the losing request of a hedge
+                        if (!future.isDone()) {
+                            future.complete(send(message, lane, number));
+                        }
+                    }
+                    catch (Throwable e) {
+                        future.completeExceptionally(e);
+                    }
+                    finally {
+                        WiringDeadline.detach(previous);
+                        release(lane, 1);
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            release(lane, 1);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Queues a one-way message in its lane. The queue of every lane is drained on the given executor by at most
+     * one task at a time, which pipelines up to {@value #MAX_PIPELINE_DEPTH} messages on a single connection before it reads
+     * their acknowledgements.
+     * 
+     * @param message the message to send
+     * @param executor the executor that drains the queue
+     * @return the future that is completed once the remote endpoint accepted the message
+     */
+    CompletableFuture<Void> sendOneWay(byte[] message, Executor executor) {
+        CompletableFuture<Void> future = new CompletableFuture<Void>();
+        final Lane lane = getLane();
+        long number;
+        try {
+            number = acquire(lane);
+        }
+        catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+        lane.m_oneWayQueue.add(new OneWayMessage(message, future, WiringDeadline.current(), number));
+        if (lane.m_oneWayDraining.compareAndSet(false, true)) {
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        drainOneWay(lane);
+                    }
+                });
+            }
+            catch (RejectedExecutionException e) {
+                lane.m_oneWayDraining.set(false);
+                OneWayMessage queued;
+                while ((queued = lane.m_oneWayQueue.poll()) != null) {
+                    queued.m_future.completeExceptionally(e);
+                    release(lane, 1);
+                }
+            }
+        }
+        return future;
+    }
+
+    private void drainOneWay(Lane lane) {
+        List<OneWayMessage> messages = new ArrayList<OneWayMessage>(MAX_PIPELINE_DEPTH);
+        while (true) {
+            OneWayMessage message;
+            while (messages.size() < MAX_PIPELINE_DEPTH && (message = lane.m_oneWayQueue.poll()) != null) {
+                messages.add(message);
+            }
+            if (messages.isEmpty()) {
+                lane.m_oneWayDraining.set(false);
+                // a message might have been queued after the last poll, but before the flag was reset
+                if (lane.m_oneWayQueue.isEmpty() || !lane.m_oneWayDraining.compareAndSet(false, true)) {
+                    return;
+                }
+                continue;
+            }
+            try {
+                checkCircuit();
+                try {
+                    pipeline(lane, messages);
+                }
+                catch (EOFException e) {
+                    // the remote node might have closed a pooled connection concurrently, retry the messages that
+                    // were not answered once on a new one
+                    pipeline(lane, messages);
+                }
+            }
+            catch (IOException e) {
+                handleRemoteException(e);
+                ServiceException exception =
+                    new ServiceException("Remote service invocation failed: " + e.getMessage(), ServiceException.REMOTE, e);
+                for (OneWayMessage failed : messages) {
+                    failed.m_future.completeExceptionally(exception);
+                }
+            }
+            catch (ServiceException e) {
+                for (OneWayMessage failed : messages) {
+                    failed.m_future.completeExceptionally(e);
+                }
+            }
+            catch (RuntimeException | Error e) {
+                // do not leave the lane marked as draining, the next message starts a new drain
+                for (OneWayMessage failed : messages) {
+                    failed.m_future.completeExceptionally(e);
+                }
+                lane.m_oneWayDraining.set(false);
+                throw e;
+            }
+            finally {
+                release(lane, messages.size());
+                messages.clear();
+            }
+        }
+    }
+
+    /**
+     * Writes all messages that are not acknowledged yet to one connection and then reads their responses.
+     * 
+     * @throws EOFException if a pooled connection turned out to be closed before any response was read
+     */
+    private void pipeline(Lane lane, List<OneWayMessage> messages) throws IOException {
+        HttpConnection connection = lane.m_pool.acquire();
+        boolean reusable = false;
+        boolean answered = false;
+        try {
+            List<OneWayMessage> pending = new ArrayList<OneWayMessage>(messages.size());
+            for (OneWayMessage message : messages) {
+                if (message.m_future.isDone()) {
+                    continue;
+                }
+                Map<String, String> headers;
+                try {
+                    headers = withDeadline(lane.m_oneWayHeaders, message.m_deadline);
+                }
+                catch (ServiceException e) {
+                    // expired while queued, nobody is interested in it anymore
+                    message.m_future.completeExceptionally(e);
+                    continue;
+                }
+                byte[] body = message.m_body;
+                if (m_codec != null && body.length >= m_configuration.getCompressionThreshold()) {
+                    body = HttpCompression.compress(m_codec, body);
+                    headers = new HashMap<String, String>(headers);
+                    headers.put(HttpCompression.CONTENT_ENCODING, m_codec);
+                }
+                connection.write(m_hostHeader, m_url.getFile(), headers, body);
+                pending.add(message);
+            }
+            if (pending.isEmpty()) {
+                // all messages expired, the remote node was not contacted and the connection is still unused
+                m_circuitBreaker.recordCancelled();
+                reusable = true;
+                return;
+            }
+            for (int i = 0; i < pending.size(); i++) {
+                HttpConnection.Response response = connection.read(m_configuration.getReadTimeout());
+                answered = true;
+                grantCredits(lane, response.getHeader(HttpServerEndpoint.CREDITS_HEADER), pending.get(i).m_number);
+                acknowledge(pending.get(i), response);
+                if (!response.isKeepAlive()) {
+                    if (i < pending.size() - 1) {
+                        throw new IOException("Connection closed by remote node after " + (i + 1) + " of "
+                            + pending.size() + " pipelined messages");
+                    }
+                    m_circuitBreaker.recordSuccess(-1);
+                    return;
+                }
+            }
+            reusable = true;
+            m_circuitBreaker.recordSuccess(-1);
+        }
+        catch (EOFException e) {
+            if (connection.isReused() && !answered) {
+                throw e;
+            }
+            throw new IOException("Connection closed by remote node", e);
+        }
         finally {
-            closeSilently(inputStream);
-            closeSilently(outputStream);
-            if (connection != null) {
-                connection.disconnect();
+            lane.m_pool.release(connection, reusable);
+        }
+    }
+
+    private void acknowledge(OneWayMessage message, HttpConnection.Response response) {
+        int rc = response.getStatus();
+        switch (rc) {
+            case HTTP_ACCEPTED:
+            case HTTP_OK:
+                message.m_future.complete(null);
+                break;
+            case HTTP_UNAVAILABLE:
+            case HTTP_TOO_MANY_REQUESTS:
+                message.m_future.completeExceptionally(new RejectedExecutionException("Remote endpoint "
+                    + m_endpoint.getId() + " is overloaded, retry after " + response.getHeader("Retry-After") + "s"));
+                break;
+            case HTTP_GATEWAY_TIMEOUT:
+                message.m_future.completeExceptionally(deadlineExpired());
+                break;
+            default:
+                IOException e = new IOException("Unexpected HTTP response: " + rc + " " + response.getReason());
+                if (m_problemListener != null) {
+                    m_problemListener.handleEndpointWarning(e);
+                }
+                message.m_future.completeExceptionally(
+                    new ServiceException("Remote service invocation failed: " + e.getMessage(), ServiceException.REMOTE, e));
+                break;
+        }
+    }
+
+    /**
+     * Posts a request, unless the circuit breaker is open, and records its outcome in the breaker.
+     * 
+     * @param body the request body
+     * @param headers the request headers
+     * @param messages the number of messages in the request, only the latency of single messages is representative
+     *        for the adaptive timeout
+     * @param lane the lane of the request
+     * @param number the number of the (last) message of the request in the {@link CreditGate} of the lane
+     * @return the response body
+     * @throws IOException if the remote endpoint could not be reached
+     * @throws ServiceException if the circuit breaker is open
+     * @throws RejectedExecutionException if the remote endpoint is overloaded
+     */
+    private byte[] invoke(byte[] body, Map<String, String> headers, int messages, Lane lane, long number)
+        throws IOException {
+
+        boolean single = messages == 1;
+        WiringDeadline deadline = WiringDeadline.current();
+        headers = withDeadline(headers, deadline);
+
+        checkCircuit();
+
+        if (m_codec != null && body.length >= m_configuration.getCompressionThreshold()) {
+            body = HttpCompression.compress(m_codec, body);
+            headers = new HashMap<String, String>(headers);
+            headers.put(HttpCompression.CONTENT_ENCODING, m_codec);
+        }
+
+        int readTimeout = getReadTimeout(single ? m_circuitBreaker.getTimeout() : m_configuration.getReadTimeout(),
+            deadline);
+        long start = System.nanoTime();
+        HttpConnection.Response response;
+        try {
+            response = post(lane, body, headers, readTimeout);
+        }
+        catch (IOException e) {
+            if (deadline != null && deadline.isExpired()) {
+                // cut short by the caller, not a failure of the remote endpoint
+                m_circuitBreaker.recordCancelled();
+                throw deadlineExpired();
             }
+            handleRemoteException(e);
+            throw e;
+        }
+
+        grantCredits(lane, response.getHeader(HttpServerEndpoint.CREDITS_HEADER), number);
+        int rc = response.getStatus();
+        switch (rc) {
+            case HTTP_OK:
+                m_circuitBreaker.recordSuccess(single ? System.nanoTime() - start : -1);
+                return HttpCompression.decompress(response.getHeader(HttpCompression.CONTENT_ENCODING), response.getBody(),
+                    m_configuration.getMaxDecompressedSize());
+            case HTTP_UNAVAILABLE:
+            case HTTP_TOO_MANY_REQUESTS:
+                // backpressure of a healthy remote endpoint, does not count as an error
+                m_circuitBreaker.recordSuccess(-1);
+                throw new RejectedExecutionException("Remote endpoint " + m_endpoint.getId()
+                    + " is overloaded, retry after " + response.getHeader("Retry-After") + "s");
+            case HTTP_GATEWAY_TIMEOUT:
+                // the remote endpoint dropped the message, the deadline passed while it was queued
+                m_circuitBreaker.recordSuccess(-1);
+                throw deadlineExpired();
+            default:
+                IOException e = new IOException("Unexpected HTTP response: " + rc + " " + response.getReason());
+                handleRemoteException(e);
+                throw e;
         }
+    }
 
+    /**
+     * @throws ServiceException if the circuit breaker of this endpoint rejects the call
+     */
+    private void checkCircuit() {
+        if (!m_circuitBreaker.allowRequest()) {
+            throw new ServiceException("Remote service invocation failed: circuit breaker of endpoint "
+                + m_endpoint.getId() + " is open", ServiceException.REMOTE);
+        }
+    }
+
+    /**
+     * Takes a slot for an asynchronous or one-way message in its lane: a credit of the remote endpoint, waiting
+     * for it at most {@link HttpAdminConfiguration#getCreditWait()} ms, and one of the local in-flight permits.
+     * 
+     * @return the number of the message in the credit gate of the lane
+     * @throws RejectedExecutionException if the remote endpoint granted no credit in time, or too many messages
+     *         are in flight
+     */
+    private long acquire(Lane lane) {
+        long number;
+        try {
+            number = lane.m_creditGate.acquire(m_configuration.getCreditWait());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            number = -1;
+        }
+        if (number < 0) {
+            throw new RejectedExecutionException("Remote endpoint " + m_endpoint.getId() + " granted no credits within "
+                + m_configuration.getCreditWait() + " ms");
+        }
+        if (!lane.m_inFlight.tryAcquire()) {
+            lane.m_creditGate.release(1);
+            throw new RejectedExecutionException("Too many " + lane.m_priority.getName()
+                + " messages in flight for wire " + m_endpoint.getId());
+        }
+        return number;
+    }
+
+    /**
+     * Gives back the slots of completed asynchronous or one-way messages.
+     */
+    private static void release(Lane lane, int messages) {
+        lane.m_inFlight.release(messages);
+        lane.m_creditGate.release(messages);
+    }
+
+    /**
+     * @param lane the lane of the answered message
+     * @param credits the credits header of a response
+     * @param number the number of the answered message
+     */
+    private static void grantCredits(Lane lane, String credits, long number) {
+        if (credits == null) {
+            // the remote endpoint does not do flow control
+            lane.m_creditGate.grant(number, Integer.MAX_VALUE);
+            return;
+        }
+        try {
+            lane.m_creditGate.grant(number, Integer.parseInt(credits.trim()));
+        }
+        catch (NumberFormatException e) {
+            // ignore, the credits stay as they are
+        }
+    }
+
+    /**
+     * @return the headers with the remaining time of the deadline, or the given headers if there is no deadline
+     * @throws ServiceException if the deadline has passed
+     */
+    private Map<String, String> withDeadline(Map<String, String> headers, WiringDeadline deadline) {
+        if (deadline == null) {
+            return headers;
+        }
+        long remaining = deadline.getRemaining();
+        if (remaining <= 0) {
+            throw deadlineExpired();
+        }
+        Map<String, String> result = new HashMap<String, String>(headers);
+        result.put(HttpServerEndpoint.DEADLINE_HEADER, String.valueOf(remaining));
         return result;
     }
 
+    /**
+     * @return the given read timeout, or the remaining time of the deadline if that is shorter
+     */
+    private static int getReadTimeout(int readTimeout, WiringDeadline deadline) {
+        if (deadline == null) {
+            return readTimeout;
+        }
+        // a zero timeout would block forever
+        return (int) Math.max(1, Math.min(readTimeout, deadline.getRemaining()));
+    }
+
+    private ServiceException deadlineExpired() {
+        return new ServiceException("Remote service invocation failed: deadline of message for endpoint "
+            + m_endpoint.getId() + " expired", ServiceException.REMOTE);
+    }
+
+    private HttpConnection.Response post(Lane lane, byte[] body, Map<String, String> headers, int readTimeout)
+        throws IOException {
+        HttpConnection connection = lane.m_pool.acquire();
+        boolean reusable = false;
+        try {
+            HttpConnection.Response response =
+                connection.post(m_hostHeader, m_url.getFile(), headers, body, readTimeout);
+            reusable = response.isKeepAlive();
+            return response;
+        }
+        catch (EOFException e) {
+            throw new IOException("Connection closed by remote node", e);
+        }
+        finally {
+            lane.m_pool.release(connection, reusable);
+        }
+    }
+
+    /**
+     * The body of a streamed response. Closing it gives the connection back to the pool, which can reuse it
+     * only if the body was read completely.
+     */
+    private final class ResponseStream extends FilterInputStream {
+
+        private final Lane m_lane;
+        private final HttpConnection m_connection;
+        private final HttpConnection.StreamingResponse m_response;
+        private boolean m_closed;
+
+        ResponseStream(Lane lane, HttpConnection connection, HttpConnection.StreamingResponse response) {
+            super(response.getBody());
+            m_lane = lane;
+            m_connection = connection;
+            m_response = response;
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                return super.read();
+            }
+            catch (IOException e) {
+                handleRemoteException(e);
+                throw e;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            try {
+                return super.read(b, off, len);
+            }
+            catch (IOException e) {
+                handleRemoteException(e);
+                throw e;
+            }
+        }
+
+        @Override
+        public synchronized void close() {
+            if (m_closed) {
+                return;
+            }
+            m_closed = true;
+            m_lane.m_pool.release(m_connection, m_response.isKeepAlive() && m_response.getBody().isComplete());
+            m_lane.m_creditGate.release(1);
+        }
+    }
+
+    /**
+     * The connections, flow control and one-way queue of the messages of one priority.
+     */
+    private static final class Lane {
+
+        private final WiringPriority m_priority;
+        private final HttpConnectionPool m_pool;
+        private final Map<String, String> m_requestHeaders;
+        private final Map<String, String> m_oneWayHeaders;
+        private final Semaphore m_inFlight;
+        private final CreditGate m_creditGate = new CreditGate();
+        private final Queue<OneWayMessage> m_oneWayQueue = new ConcurrentLinkedQueue<OneWayMessage>();
+        private final AtomicBoolean m_oneWayDraining = new AtomicBoolean();
+
+        Lane(WiringPriority priority, HttpConnectionPool pool, Map<String, String> requestHeaders, int maxInFlight) {
+            m_priority = priority;
+            m_pool = pool;
+            if (priority != WiringPriority.NORMAL) {
+                requestHeaders = new HashMap<String, String>(requestHeaders);
+                requestHeaders.put(HttpServerEndpoint.PRIORITY_HEADER, priority.getName());
+            }
+            m_requestHeaders = Collections.unmodifiableMap(requestHeaders);
+            Map<String, String> oneWayHeaders = new HashMap<String, String>(requestHeaders);
+            oneWayHeaders.put(HttpServerEndpoint.ONE_WAY_HEADER, "true");
+            m_oneWayHeaders = Collections.unmodifiableMap(oneWayHeaders);
+            m_inFlight = new Semaphore(Math.max(1, maxInFlight));
+        }
+    }
+
+    /**
+     * A queued one-way message.
+     */
+    private static final class OneWayMessage {
+
+        private final byte[] m_body;
+        private final CompletableFuture<Void> m_future;
+        private final WiringDeadline m_deadline;
+        private final long m_number;
+
+        OneWayMessage(byte[] body, CompletableFuture<Void> future, WiringDeadline deadline, long number) {
+            m_body = body;
+            m_future = future;
+            m_deadline = deadline;
+            m_number = number;
+        }
+    }
+
 }
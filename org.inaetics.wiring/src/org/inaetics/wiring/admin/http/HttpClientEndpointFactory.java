@@ -3,14 +3,55 @@
  */
 package org.inaetics.wiring.admin.http;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import javax.net.ssl.SSLSocketFactory;
 
 import org.inaetics.wiring.WiringEndpointDescription;
 import org.inaetics.wiring.base.AbstractComponentDelegate;
+import org.inaetics.wiring.endpoint.WiringConstants;
+import org.inaetics.wiring.endpoint.WiringDeadline;
+import org.inaetics.wiring.endpoint.WiringPriority;
+import org.inaetics.wiring.endpoint.WiringSender;
+import org.osgi.framework.ServiceException;
 
 /**
  * Provides a factory that creates a {@link HttpClientEndpoint} for each bundle that is getting the endpoint.
+ * Client endpoints that target the same remote node share one {@link HttpConnectionPool} per {@link WiringPriority},
+ * so that messages never wait for a connection that is busy with messages of a lower priority. The pools of a remote
+ * node are closed once its last client endpoint is removed. Client endpoints of
+ * the same group ({@link WiringConstants#PROPERTY_GROUP}) are equivalent, idempotent messages are hedged among them.
+ * Endpoints that are exported as secure ({@link WiringConstants#PROPERTY_SECURE}) are called over TLS, with one
+ * {@link HttpTlsContext} for all of them.
+ * <p>
+ * If a spool directory is configured, one-way messages that cannot be delivered are appended to the
+ * {@link MessageSpool} of their wire instead of failing, and replayed once the wire is reachable again. Spools are
+ * identified by the zone, node and durable name ({@link WiringConstants#PROPERTY_DURABLE}) of the endpoint, or its id
+ * if it has no durable name, so that the messages for a wire whose node was restarted are replayed to the endpoint it
+ * exports after the restart. Replays are sent with {@link WiringPriority#BULK} priority. The spool of a wire that
+ * is removed is deleted as soon as it is empty.
  * 
  * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
  */
@@ -18,7 +59,26 @@ public class HttpClientEndpointFactory extends AbstractComponentDelegate impleme
 
 	private Map<String, HttpClientEndpoint> m_clients =
 			new ConcurrentHashMap<String, HttpClientEndpoint>();
+
+	/** the connection pools by scheme, remote node and priority, guarded by itself */
+	private final Map<String, PoolReference> m_pools = new HashMap<String, PoolReference>();
+
+	private final ConcurrentHashMap<String, List<HttpClientEndpoint>> m_groups =
+			new ConcurrentHashMap<String, List<HttpClientEndpoint>>();
+	private final AtomicInteger m_hedgeIndex = new AtomicInteger();
+
+	private static final int REPLAY_BATCH_SIZE = 16;
+
+	private final ConcurrentHashMap<String, MessageSpool> m_spools = new ConcurrentHashMap<String, MessageSpool>();
+	/** the current client endpoint of every spool key */
+	private final ConcurrentHashMap<String, HttpClientEndpoint> m_spoolClients =
+			new ConcurrentHashMap<String, HttpClientEndpoint>();
+
+	private volatile ScheduledExecutorService m_scheduledExecutor;
+	private volatile ExecutorService m_asyncExecutor;
+	private volatile SSLSocketFactory m_sslSocketFactory;
 	
+    private final WiringAdminFactory m_factory;
     private ClientEndpointProblemListener m_problemListener;
     private HttpAdminConfiguration m_configuration;
 
@@ -27,30 +87,530 @@ public class HttpClientEndpointFactory extends AbstractComponentDelegate impleme
      */
     public HttpClientEndpointFactory(WiringAdminFactory factory, HttpAdminConfiguration configuration) {
     	super(factory);
+    	m_factory = factory;
         m_configuration = configuration;
     }
 
-    public WiringSenderImpl addEndpoint(WiringEndpointDescription endpoint) {
-    	HttpClientEndpoint client = m_clients.get(endpoint);
+    @Override
+    protected void startComponentDelegate() {
+        m_asyncExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger m_count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "wiring-http-client-" + m_count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        m_scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
+        m_scheduledExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                for (HttpConnectionPool pool : getConnectionPools()) {
+                    pool.evictIdleConnections();
+                }
+                // retries spools whose replay failed, and drops the spools of departed wires once they are empty
+                for (String key : m_spools.keySet()) {
+                    if (m_spoolClients.containsKey(key)) {
+                        replay(key);
+                    }
+                    else {
+                        deleteSpoolIfEmpty(key);
+                    }
+                }
+            }
+        }, 1, 1, TimeUnit.SECONDS);
+    }
+
+    @Override
+    protected void stopComponentDelegate() {
+        m_scheduledExecutor.shutdown();
+        m_scheduledExecutor = null;
+        m_asyncExecutor.shutdown();
+        m_asyncExecutor = null;
+        for (HttpConnectionPool pool : getConnectionPools()) {
+            pool.close();
+        }
+        synchronized (m_pools) {
+            m_pools.clear();
+        }
+        m_sslSocketFactory = null;
+        for (MessageSpool spool : m_spools.values()) {
+            spool.close();
+        }
+        m_spools.clear();
+        m_spoolClients.clear();
+    }
+
+    public WiringSender addEndpoint(WiringEndpointDescription endpoint) throws IOException, GeneralSecurityException {
+    	if (isLocal(endpoint)) {
+    		return new LoopbackWiringSender(m_factory.getServerEndpointHandler(), endpoint, m_asyncExecutor);
+    	}
+    	HttpClientEndpoint client = m_clients.get(endpoint.getId());
     	if (client == null) {
-    		client = new HttpClientEndpoint(endpoint, m_configuration);
+    		URL url = new URL(endpoint.getProperty(HttpWiringEndpointProperties.URL));
+    		client = new HttpClientEndpoint(endpoint, m_configuration, acquireConnectionPools(url, isSecure(endpoint)), url);
     		m_clients.put(endpoint.getId(), client);
     		client.setProblemListener(this);
+    		if (m_configuration.getBatchWindow() > 0
+    				&& Boolean.parseBoolean(endpoint.getProperty(HttpWiringEndpointProperties.BATCH))) {
+    			client.setBatcher(new HttpMessageBatcher(client, m_configuration, m_scheduledExecutor, m_asyncExecutor));
+    		}
+    		String group = endpoint.getProperty(WiringConstants.PROPERTY_GROUP);
+    		if (group != null) {
+    			List<HttpClientEndpoint> members = m_groups.get(group);
+    			if (members == null) {
+    				List<HttpClientEndpoint> newMembers = new CopyOnWriteArrayList<HttpClientEndpoint>();
+    				members = m_groups.putIfAbsent(group, newMembers);
+    				if (members == null) {
+    					members = newMembers;
+    				}
+    			}
+    			members.add(client);
+    		}
+    		if (m_configuration.getSpoolDir() != null) {
+    			String key = getSpoolKey(endpoint);
+    			m_spoolClients.put(key, client);
+    			if (m_spools.containsKey(key) || getSpoolDirectory(key).isDirectory()) {
+    				// the wire is back, or messages were spooled for it before a restart of this node
+    				getSpool(key);
+    				replay(key);
+    			}
+    		}
     	}
 		return new WiringSenderImpl(this, m_configuration, endpoint);
     }
     
     public void removeEndpoint(WiringEndpointDescription endpoint) {
-    	m_clients.remove(endpoint);
+    	HttpClientEndpoint client = m_clients.remove(endpoint.getId());
+    	String group = endpoint.getProperty(WiringConstants.PROPERTY_GROUP);
+    	if (client != null && group != null) {
+    		List<HttpClientEndpoint> members = m_groups.get(group);
+    		if (members != null) {
+    			members.remove(client);
+    		}
+    	}
+    	if (client != null) {
+    		String key = getSpoolKey(endpoint);
+    		if (m_spoolClients.remove(key, client)) {
+    			deleteSpoolIfEmpty(key);
+    		}
+    		releaseConnectionPools(endpoint);
+    	}
+    }
+
+    /**
+     * @return <code>true</code> if the endpoint is exported by this framework
+     */
+    private boolean isLocal(WiringEndpointDescription endpoint) {
+    	return m_configuration.getZone().equals(endpoint.getZone())
+    		&& m_configuration.getNode().equals(endpoint.getNode())
+    		&& m_factory.getServerEndpointHandler().getHandler(endpoint.getId()) != null;
+    }
+
+    private static boolean isSecure(WiringEndpointDescription endpoint) {
+    	return HttpAdminConstants.SECURE_YES.equals(endpoint.getProperty(WiringConstants.PROPERTY_SECURE));
     }
 
-    public String sendMessage(String wireId, String message) throws Exception {
+    /**
+     * Takes a reference to the connection pools of a remote node for a new client endpoint, creating them if it is
+     * the first one.
+     * 
+     * @return the connection pools of the remote node, indexed by the ordinal of their {@link WiringPriority}
+     */
+    private HttpConnectionPool[] acquireConnectionPools(URL url, boolean secure) throws IOException, GeneralSecurityException {
+        SSLSocketFactory sslSocketFactory = secure ? getSslSocketFactory() : null;
+        WiringPriority[] priorities = WiringPriority.values();
+        HttpConnectionPool[] pools = new HttpConnectionPool[priorities.length];
+        synchronized (m_pools) {
+            for (WiringPriority priority : priorities) {
+                String key = getPoolKey(url, secure, priority);
+                PoolReference reference = m_pools.get(key);
+                if (reference == null) {
+                    reference = new PoolReference(
+                        new HttpConnectionPool(url.getHost(), getPort(url, secure), m_configuration, sslSocketFactory));
+                    m_pools.put(key, reference);
+                }
+                reference.m_users++;
+                pools[priority.ordinal()] = reference.m_pool;
+            }
+        }
+        return pools;
+    }
+
+    /**
+     * Gives back the references of a removed client endpoint to the connection pools of its remote node, closing
+     * them if it was the last one.
+     */
+    private void releaseConnectionPools(WiringEndpointDescription endpoint) {
+        URL url;
+        try {
+            url = new URL(endpoint.getProperty(HttpWiringEndpointProperties.URL));
+        }
+        catch (IOException e) {
+            // cannot happen, the client endpoint was created with the same url
+            return;
+        }
+        boolean secure = isSecure(endpoint);
+        synchronized (m_pools) {
+            for (WiringPriority priority : WiringPriority.values()) {
+                String key = getPoolKey(url, secure, priority);
+                PoolReference reference = m_pools.get(key);
+                if (reference != null && --reference.m_users == 0) {
+                    m_pools.remove(key);
+                    reference.m_pool.close();
+                }
+            }
+        }
+    }
+
+    private List<HttpConnectionPool> getConnectionPools() {
+        synchronized (m_pools) {
+            List<HttpConnectionPool> pools = new ArrayList<HttpConnectionPool>(m_pools.size());
+            for (PoolReference reference : m_pools.values()) {
+                pools.add(reference.m_pool);
+            }
+            return pools;
+        }
+    }
+
+    private static String getPoolKey(URL url, boolean secure, WiringPriority priority) {
+        return (secure ? "https://" : "http://") + HttpConnectionPool.getKey(url.getHost(), getPort(url, secure)) + "#"
+            + priority.getName();
+    }
+
+    private static int getPort(URL url, boolean secure) {
+        return url.getPort() != -1 ? url.getPort() : secure ? 443 : 80;
+    }
+
+    /**
+     * @return the factory of TLS connections, created on first use since plain setups need no stores
+     */
+    private synchronized SSLSocketFactory getSslSocketFactory() throws IOException, GeneralSecurityException {
+        SSLSocketFactory factory = m_sslSocketFactory;
+        if (factory == null) {
+            factory = HttpTlsContext.create(m_configuration).getSocketFactory();
+            m_sslSocketFactory = factory;
+        }
+        return factory;
+    }
+
+    public byte[] sendMessage(String wireId, byte[] message) throws Exception {
 		HttpClientEndpoint httpClientEndpoint = m_clients.get(wireId);
 		if (httpClientEndpoint == null) {
 	    	throw new Exception("remote endpoint not found");
 		}			
 		return httpClientEndpoint.sendMessage(message);
     }
+
+    public InputStream sendMessageStreaming(String wireId, byte[] message) throws Exception {
+		HttpClientEndpoint httpClientEndpoint = m_clients.get(wireId);
+		if (httpClientEndpoint == null) {
+	    	throw new Exception("remote endpoint not found");
+		}
+		return httpClientEndpoint.sendMessageStreaming(message);
+    }
+
+    public CompletableFuture<byte[]> sendMessageAsync(String wireId, byte[] message) {
+		HttpClientEndpoint httpClientEndpoint = m_clients.get(wireId);
+		if (httpClientEndpoint == null) {
+			CompletableFuture<byte[]> future = new CompletableFuture<byte[]>();
+			future.completeExceptionally(new Exception("remote endpoint not found"));
+			return future;
+		}
+		return httpClientEndpoint.sendMessageAsync(message, m_asyncExecutor);
+    }
+
+    /**
+     * Sends an idempotent message. If the wire belongs to a group of equivalent endpoints and the message is
+     * still outstanding after the 95th percentile of the latency of the wire, the message is sent once more to
+     * another available endpoint of the group. The first response wins; the other request is cancelled, or its
+     * response is discarded if it is already on its way.
+     */
+    public CompletableFuture<byte[]> sendIdempotentAsync(String wireId, final byte[] message) {
+		final HttpClientEndpoint primary = m_clients.get(wireId);
+		if (primary == null) {
+			CompletableFuture<byte[]> future = new CompletableFuture<byte[]>();
+			future.completeExceptionally(new Exception("remote endpoint not found"));
+			return future;
+		}
+		long hedgeDelay = primary.getHedgeDelay();
+		String group = primary.getEndpoint().getProperty(WiringConstants.PROPERTY_GROUP);
+		final List<HttpClientEndpoint> members = group != null ? m_groups.get(group) : null;
+		if (hedgeDelay < 0 || members == null || members.size() < 2) {
+			return primary.sendMessageAsync(message, m_asyncExecutor);
+		}
+
+		final CompletableFuture<byte[]> result = new CompletableFuture<byte[]>();
+		final AtomicInteger outstanding = new AtomicInteger(1);
+		final WiringDeadline deadline = WiringDeadline.current();
+		race(result, primary.sendMessageAsync(message, m_asyncExecutor), outstanding);
+		final ScheduledFuture<?> hedge = m_scheduledExecutor.schedule(new Runnable() {
+			@Override
+			public void run() {
+				if (result.isDone()) {
+					return;
+				}
+				HttpClientEndpoint alternative = selectAlternative(members, primary);
+				if (alternative != null) {
+					outstanding.incrementAndGet();
+					// the hedge has the same deadline as the original request
+					WiringDeadline previous = WiringDeadline.attach(deadline);
+					try {
+						race(result, alternative.sendMessageAsync(message, m_asyncExecutor), outstanding);
+					}
+					finally {
+						WiringDeadline.detach(previous);
+					}
+				}
+			}
+		}, hedgeDelay, TimeUnit.NANOSECONDS);
+		result.whenComplete(new BiConsumer<byte[], Throwable>() {
+			@Override
+			public void accept(byte[] response, Throwable exception) {
+				hedge.cancel(false);
+			}
+		});
+		return result;
+    }
+
+    /**
+     * Completes the result with the first successful response, or with the last failure if all requests failed,
+     * and cancels the request once the result is known.
+     */
+    private static void race(final CompletableFuture<byte[]> result, final CompletableFuture<byte[]> request,
+    		final AtomicInteger outstanding) {
+    	request.whenComplete(new BiConsumer<byte[], Throwable>() {
+    		@Override
+    		public void accept(byte[] response, Throwable exception) {
+    			if (exception == null) {
+    				result.complete(response);
+    			}
+    			else if (outstanding.decrementAndGet() == 0) {
+    				result.completeExceptionally(exception);
+    			}
+    		}
+    	});
+    	result.whenComplete(new BiConsumer<byte[], Throwable>() {
+    		@Override
+    		public void accept(byte[] response, Throwable exception) {
+    			request.cancel(false);
+    		}
+    	});
+    }
+
+    /**
+     * @return the next available group member other than the given endpoint, or <code>null</code> if there is none
+     */
+    private HttpClientEndpoint selectAlternative(List<HttpClientEndpoint> members, HttpClientEndpoint primary) {
+    	Object[] candidates = members.toArray();
+    	int start = m_hedgeIndex.getAndIncrement() & Integer.MAX_VALUE;
+    	for (int i = 0; i < candidates.length; i++) {
+    		HttpClientEndpoint candidate = (HttpClientEndpoint) candidates[(start + i) % candidates.length];
+    		if (candidate != primary && candidate.isAvailable()) {
+    			return candidate;
+    		}
+    	}
+    	return null;
+    }
+
+    public CompletableFuture<Void> sendOneWay(WiringEndpointDescription endpoint, final byte[] message) {
+		HttpClientEndpoint httpClientEndpoint = m_clients.get(endpoint.getId());
+		if (m_configuration.getSpoolDir() == null) {
+			if (httpClientEndpoint == null) {
+				CompletableFuture<Void> future = new CompletableFuture<Void>();
+				future.completeExceptionally(new Exception("remote endpoint not found"));
+				return future;
+			}
+			return httpClientEndpoint.sendOneWay(message, m_asyncExecutor);
+		}
+
+		// messages are queued behind the spooled ones until the spool is replayed, to keep them in order
+		final String key = getSpoolKey(endpoint);
+		MessageSpool spool = m_spools.get(key);
+		if (httpClientEndpoint == null || (spool != null && !spool.isEmpty())) {
+			return spool(key, message);
+		}
+		final WiringDeadline deadline = WiringDeadline.current();
+		final CompletableFuture<Void> result = new CompletableFuture<Void>();
+		httpClientEndpoint.sendOneWay(message, m_asyncExecutor).whenComplete(new BiConsumer<Void, Throwable>() {
+			@Override
+			public void accept(Void response, Throwable exception) {
+				if (exception == null) {
+					result.complete(null);
+				}
+				else if (deadline != null && deadline.isExpired()) {
+					// nobody waits for it anymore
+					result.completeExceptionally(exception);
+				}
+				else {
+					spool(key, message).whenComplete(new BiConsumer<Void, Throwable>() {
+						@Override
+						public void accept(Void response, Throwable spoolException) {
+							if (spoolException == null) {
+								result.complete(null);
+							}
+							else {
+								result.completeExceptionally(spoolException);
+							}
+						}
+					});
+				}
+			}
+		});
+		return result;
+    }
+
+    /**
+     * Appends a one-way message to the spool of its wire.
+     *
+     * @return the future that is completed once the message is spooled
+     */
+    private CompletableFuture<Void> spool(String key, byte[] message) {
+    	CompletableFuture<Void> future = new CompletableFuture<Void>();
+    	try {
+    		MessageSpool spool = getSpool(key);
+    		try {
+    			spool.append(message);
+    		}
+    		catch (IOException e) {
+    			if (!spool.isClosed()) {
+    				throw e;
+    			}
+    			// the spool was deleted with its wire meanwhile, start a new one
+    			getSpool(key).append(message);
+    		}
+    		future.complete(null);
+    		replay(key);
+    	}
+    	catch (IOException e) {
+    		future.completeExceptionally(
+    			new ServiceException("Message could not be spooled: " + e.getMessage(), ServiceException.REMOTE, e));
+    	}
+    	return future;
+    }
+
+    /**
+     * Starts to replay a spool, unless it is empty, replayed already or its wire is not available.
+     */
+    private void replay(final String key) {
+    	final MessageSpool spool = m_spools.get(key);
+    	final HttpClientEndpoint client = m_spoolClients.get(key);
+    	final ExecutorService executor = m_asyncExecutor;
+    	if (spool == null || client == null || executor == null || spool.isEmpty() || !spool.startReplay()) {
+    		return;
+    	}
+    	try {
+    		executor.execute(new Runnable() {
+    			@Override
+    			public void run() {
+    				boolean drained = false;
+    				try {
+    					drained = replay(spool, client, executor);
+    				}
+    				finally {
+    					spool.endReplay();
+    				}
+    				if (drained) {
+    					// messages might have been spooled after the last batch
+    					replay(key);
+    				}
+    			}
+    		});
+    	}
+    	catch (RejectedExecutionException e) {
+    		spool.endReplay();
+    	}
+    }
+
+    /**
+     * Sends the spooled messages in batches, and removes them from the spool once they are acknowledged. Delivery
+     * is at least once: the messages of a batch after a failed one might have been delivered already, they are sent
+     * again on the next replay.
+     *
+     * @return <code>true</code> if the spool was replayed completely
+     */
+    private boolean replay(MessageSpool spool, HttpClientEndpoint client, ExecutorService executor) {
+    	try {
+    		while (true) {
+    			List<byte[]> messages = spool.peek(REPLAY_BATCH_SIZE);
+    			if (messages.isEmpty()) {
+    				return true;
+    			}
+    			List<CompletableFuture<Void>> futures = new ArrayList<CompletableFuture<Void>>(messages.size());
+    			// the backlog must not crowd out the live traffic of other wires to the node
+    			WiringPriority previous = WiringPriority.attach(WiringPriority.BULK);
+    			try {
+    				for (byte[] message : messages) {
+    					futures.add(client.sendOneWay(message, executor));
+    				}
+    			}
+    			finally {
+    				WiringPriority.detach(previous);
+    			}
+    			int delivered = 0;
+    			for (CompletableFuture<Void> future : futures) {
+    				try {
+    					future.get();
+    				}
+    				catch (ExecutionException e) {
+    					break;
+    				}
+    				delivered++;
+    			}
+    			spool.acknowledge(delivered);
+    			if (delivered < messages.size()) {
+    				return false;
+    			}
+    		}
+    	}
+    	catch (IOException e) {
+    		logError("failed to replay spool %s", e, spool);
+    		return false;
+    	}
+    	catch (InterruptedException e) {
+    		Thread.currentThread().interrupt();
+    		return false;
+    	}
+    }
+
+    private MessageSpool getSpool(String key) throws IOException {
+    	MessageSpool spool = m_spools.get(key);
+    	if (spool == null || spool.isClosed()) {
+    		synchronized (m_spools) {
+    			spool = m_spools.get(key);
+    			if (spool == null || spool.isClosed()) {
+    				spool = new MessageSpool(getSpoolDirectory(key), m_configuration.getSpoolSegmentSize(),
+    					m_configuration.getSpoolMaxSegments());
+    				m_spools.put(key, spool);
+    			}
+    		}
+    	}
+    	return spool;
+    }
+
+    /**
+     * Closes and deletes the spool of a wire that has no client endpoint anymore, unless it still holds messages.
+     * Those are kept until the wire is back, or until they are replayed after a restart of this node.
+     */
+    private void deleteSpoolIfEmpty(String key) {
+    	synchronized (m_spools) {
+    		MessageSpool spool = m_spools.get(key);
+    		if (spool != null && !m_spoolClients.containsKey(key) && spool.deleteIfEmpty()) {
+    			m_spools.remove(key);
+    		}
+    	}
+    }
+
+    private File getSpoolDirectory(String key) throws IOException {
+    	return new File(m_configuration.getSpoolDir(), URLEncoder.encode(key, "UTF-8"));
+    }
+
+    private static String getSpoolKey(WiringEndpointDescription endpoint) {
+    	String durable = endpoint.getProperty(WiringConstants.PROPERTY_DURABLE);
+    	return endpoint.getZone() + "/" + endpoint.getNode() + "/" + (durable != null ? durable : endpoint.getId());
+    }
     
     @Override
     public synchronized void handleEndpointError(Throwable exception) {
@@ -73,4 +633,16 @@ public class HttpClientEndpointFactory extends AbstractComponentDelegate impleme
         m_problemListener = problemListener;
     }
 
+    /**
+     * A connection pool and the number of client endpoints that use it.
+     */
+    private static final class PoolReference {
+
+        private final HttpConnectionPool m_pool;
+        private int m_users;
+
+        PoolReference(HttpConnectionPool pool) {
+            m_pool = pool;
+        }
+    }
 }
@@ -0,0 +1,238 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import com.ning.compress.lzf.LZFDecoder;
+import com.ning.compress.lzf.LZFEncoder;
+import com.ning.compress.lzf.LZFInputStream;
+
+/**
+ * Payload compression for wire messages. The codec of a compressed body is given by the standard
+ * <code>Content-Encoding</code> header; the codec a client is able to decode by <code>Accept-Encoding</code>.
+ * <p>
+ * Compressed bodies come from the network, so their decompressed size is limited: a small body can otherwise
+ * expand into more data than fits the heap.
+ *
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+final class HttpCompression {
+
+    static final String CONTENT_ENCODING = "Content-Encoding";
+    static final String ACCEPT_ENCODING = "Accept-Encoding";
+
+    static final String LZF = "lzf";
+    static final String DEFLATE = "deflate";
+
+    /** the codecs that are advertised by exported endpoints, in order of preference */
+    static final String SUPPORTED_CODECS = LZF + "," + DEFLATE;
+
+    private HttpCompression() {
+    }
+
+    /**
+     * Selects the codec to use for a remote endpoint.
+     * 
+     * @param configured the configured codec, can be <code>null</code>
+     * @param advertised the comma separated codecs supported by the remote endpoint, can be <code>null</code>
+     * @return the codec, or <code>null</code> if messages must not be compressed
+     */
+    static String negotiate(String configured, String advertised) {
+        if (configured == null || advertised == null || !isSupported(configured)) {
+            return null;
+        }
+        for (String codec : advertised.split(",")) {
+            if (codec.trim().equalsIgnoreCase(configured)) {
+                return configured.toLowerCase();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Selects the codec for a response from the value of an <code>Accept-Encoding</code> header.
+     * 
+     * @param accepted the header value, can be <code>null</code>
+     * @return the first supported codec, or <code>null</code> if there is none
+     */
+    static String select(String accepted) {
+        if (accepted == null) {
+            return null;
+        }
+        for (String codec : accepted.split(",")) {
+            int parameters = codec.indexOf(';');
+            codec = (parameters >= 0 ? codec.substring(0, parameters) : codec).trim().toLowerCase();
+            if (isSupported(codec)) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    static boolean isSupported(String codec) {
+        return LZF.equalsIgnoreCase(codec) || DEFLATE.equalsIgnoreCase(codec);
+    }
+
+    static byte[] compress(String codec, byte[] data) throws IOException {
+        if (LZF.equals(codec)) {
+            return LZFEncoder.encode(data);
+        }
+        if (DEFLATE.equals(codec)) {
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                deflater.setInput(data);
+                deflater.finish();
+                ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 2));
+                byte[] buffer = new byte[4096];
+                while (!deflater.finished()) {
+                    out.write(buffer, 0, deflater.deflate(buffer));
+                }
+                return out.toByteArray();
+            }
+            finally {
+                deflater.end();
+            }
+        }
+        throw new IOException("Unsupported codec: " + codec);
+    }
+
+    /**
+     * Wraps a body stream with a decompressing stream.
+     * 
+     * @param codec the value of the <code>Content-Encoding</code> header, can be <code>null</code>
+     * @param in the body stream
+     * @param maxSize the maximum number of decompressed bytes, reading beyond it fails with an {@link IOException}
+     * @return the decompressing stream, or the stream itself if the body is not compressed
+     * @throws IOException if the codec is not supported
+     */
+    static InputStream decompress(String codec, InputStream in, int maxSize) throws IOException {
+        if (codec == null || codec.isEmpty() || "identity".equalsIgnoreCase(codec)) {
+            return in;
+        }
+        if (LZF.equalsIgnoreCase(codec)) {
+            // the safe decoder does not trust the input, which comes from the network
+            return new LimitedInputStream(new LZFInputStream(LZFDecoder.safeDecoder(), in), maxSize);
+        }
+        if (DEFLATE.equalsIgnoreCase(codec)) {
+            return new LimitedInputStream(new InflaterInputStream(in), maxSize);
+        }
+        throw new IOException("Unsupported codec: " + codec);
+    }
+
+    /**
+     * Decompresses a body.
+     * 
+     * @param codec the value of the <code>Content-Encoding</code> header, can be <code>null</code>
+     * @param data the body
+     * @param maxSize the maximum size of the decompressed body
+     * @return the decompressed body, or the body itself if it is not compressed
+     * @throws IOException if the codec is not supported, the body is corrupt or it decompresses to more than
+     *         <code>maxSize</code> bytes
+     */
+    static byte[] decompress(String codec, byte[] data, int maxSize) throws IOException {
+        if (codec == null || codec.isEmpty() || "identity".equalsIgnoreCase(codec)) {
+            return data;
+        }
+        if (LZF.equalsIgnoreCase(codec)) {
+            InputStream in = decompress(codec, new ByteArrayInputStream(data), maxSize);
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(maxSize, data.length * 3L));
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+        if (DEFLATE.equalsIgnoreCase(codec)) {
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(data);
+                ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(maxSize, data.length * 3L));
+                byte[] buffer = new byte[4096];
+                while (!inflater.finished()) {
+                    int n = inflater.inflate(buffer);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new IOException("Truncated deflate body");
+                    }
+                    if (n > maxSize - out.size()) {
+                        throw tooLarge(maxSize);
+                    }
+                    out.write(buffer, 0, n);
+                }
+                return out.toByteArray();
+            }
+            catch (DataFormatException e) {
+                throw new IOException("Corrupt deflate body", e);
+            }
+            finally {
+                inflater.end();
+            }
+        }
+        throw new IOException("Unsupported codec: " + codec);
+    }
+
+    private static IOException tooLarge(int maxSize) {
+        return new IOException("Decompressed body exceeds " + maxSize + " bytes");
+    }
+
+    /**
+     * Fails reading once more than a maximum number of bytes were read.
+     */
+    private static final class LimitedInputStream extends FilterInputStream {
+
+        private final int m_maxSize;
+        private long m_read;
+
+        LimitedInputStream(InputStream in, int maxSize) {
+            super(in);
+            m_maxSize = maxSize;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void count(long n) throws IOException {
+            m_read += n;
+            if (m_read > m_maxSize) {
+                throw tooLarge(m_maxSize);
+            }
+        }
+    }
+}
@@ -0,0 +1,614 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.http;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import org.inaetics.wiring.base.SizeLimitExceededException;
+
+/**
+ * A single persistent HTTP/1.1 connection to a remote node. Instances are handed out by a
+ * {@link HttpConnectionPool} and are not thread-safe; a connection is used by one request at a time.
+ *
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+final class HttpConnection implements Closeable {
+
+    private static final byte[] CRLF = new byte[] { '\r', '\n' };
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_INITIAL_BODY_SIZE = 64 * 1024;
+
+    private final Socket m_socket;
+    private final InputStream m_in;
+    private final OutputStream m_out;
+    private final int m_maxBodySize;
+
+    private volatile long m_lastUsed;
+    private boolean m_reused;
+
+    /**
+     * Opens a connection.
+     *
+     * @param host the remote host
+     * @param port the remote port
+     * @param connectTimeout the timeout in ms of the TCP connect and of the TLS handshake
+     * @param sslSocketFactory the factory of the TLS layer on top of the TCP connection, or <code>null</code> for
+     *        plain HTTP. It should be created from one shared {@link javax.net.ssl.SSLContext}, whose session cache
+     *        allows to resume the sessions of earlier connections to the same node with an abbreviated handshake.
+     * @param maxBodySize the maximum size in bytes of a response body that is read completely
+     * @throws IOException if the connection could not be opened or the handshake failed
+     */
+    HttpConnection(String host, int port, int connectTimeout, SSLSocketFactory sslSocketFactory, int maxBodySize)
+        throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            socket.connect(new InetSocketAddress(host, port), connectTimeout);
+            if (sslSocketFactory != null) {
+                SSLSocket sslSocket = (SSLSocket) sslSocketFactory.createSocket(socket, host, port, true);
+                socket = sslSocket;
+                SSLParameters parameters = sslSocket.getSSLParameters();
+                parameters.setEndpointIdentificationAlgorithm("HTTPS");
+                sslSocket.setSSLParameters(parameters);
+                sslSocket.setSoTimeout(connectTimeout);
+                sslSocket.startHandshake();
+            }
+            m_in = new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE);
+            m_out = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+        }
+        catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        m_socket = socket;
+        m_maxBodySize = maxBodySize;
+        m_lastUsed = System.currentTimeMillis();
+    }
+
+    /**
+     * Sends a POST request and reads the complete response.
+     *
+     * @param host the value of the Host header
+     * @param path the request path
+     * @param headers additional request headers, can be <code>null</code>
+     * @param body the request body
+     * @param readTimeout the read timeout in ms
+     * @return the response, never <code>null</code>
+     * @throws IOException in case of any I/O problem, the connection must not be reused in that case
+     */
+    Response post(String host, String path, Map<String, String> headers, byte[] body, int readTimeout)
+        throws IOException {
+
+        write(host, path, headers, body);
+        return read(readTimeout);
+    }
+
+    /**
+     * Writes a POST request without waiting for its response. Several requests can be written before their
+     * responses are read with {@link #read(int)}, in the same order (HTTP pipelining).
+     *
+     * @param host the value of the Host header
+     * @param path the request path
+     * @param headers additional request headers, can be <code>null</code>
+     * @param body the request body
+     * @throws IOException in case of any I/O problem, the connection must not be reused in that case
+     */
+    void write(String host, String path, Map<String, String> headers, byte[] body) throws IOException {
+        writeLine("POST " + path + " HTTP/1.1");
+        writeLine("Host: " + host);
+        writeLine("Content-Length: " + body.length);
+        if (headers != null) {
+            for (Entry<String, String> header : headers.entrySet()) {
+                writeLine(header.getKey() + ": " + header.getValue());
+            }
+        }
+        m_out.write(CRLF);
+        m_out.write(body);
+    }
+
+    /**
+     * Flushes all written requests and reads the response to the oldest request that was not answered yet.
+     *
+     * @param readTimeout the read timeout in ms
+     * @return the response, never <code>null</code>
+     * @throws IOException in case of any I/O problem, the connection must not be reused in that case
+     */
+    Response read(int readTimeout) throws IOException {
+        m_out.flush();
+        m_socket.setSoTimeout(readTimeout);
+        Response response = readResponse();
+        m_lastUsed = System.currentTimeMillis();
+        return response;
+    }
+
+    /**
+     * Flushes all written requests and reads the status line and headers of the response to the oldest request that
+     * was not answered yet. The body is not read: it is returned as a stream that reads from the connection through
+     * its fixed size buffer while it is consumed. The connection must not be used for another request before that
+     * stream is exhausted.
+     *
+     * @param readTimeout the read timeout in ms, applies to every read of the body as well
+     * @return the response, never <code>null</code>
+     * @throws IOException in case of any I/O problem, the connection must not be reused in that case
+     */
+    StreamingResponse readStreaming(int readTimeout) throws IOException {
+        m_out.flush();
+        m_socket.setSoTimeout(readTimeout);
+
+        String statusLine = readStatusLine();
+        int status = parseStatus(statusLine);
+        Map<String, String> headers = readHeaders();
+
+        boolean keepAlive = !statusLine.startsWith("HTTP/1.0") && !"close".equalsIgnoreCase(headers.get("connection"));
+        String transferEncoding = headers.get("transfer-encoding");
+        String contentLength = headers.get("content-length");
+        BodyInputStream body;
+        if (status == 204 || status == 304) {
+            body = new BodyInputStream(false, 0);
+        }
+        else if (transferEncoding != null && transferEncoding.toLowerCase().contains("chunked")) {
+            body = new BodyInputStream(true, 0);
+        }
+        else if (contentLength != null) {
+            body = new BodyInputStream(false, parseLength(contentLength.trim(), 10));
+        }
+        else {
+            body = new BodyInputStream(false, -1);
+            keepAlive = false;
+        }
+        m_lastUsed = System.currentTimeMillis();
+        return new StreamingResponse(status, getReason(statusLine), headers, body, keepAlive);
+    }
+
+    /**
+     * @return <code>true</code> if this connection was taken from the pool rather than freshly opened.
+     */
+    boolean isReused() {
+        return m_reused;
+    }
+
+    void setReused(boolean reused) {
+        m_reused = reused;
+    }
+
+    /**
+     * @return the time in ms since this connection was last used
+     */
+    long getIdleTime() {
+        return System.currentTimeMillis() - m_lastUsed;
+    }
+
+    /**
+     * Checks whether the remote side has closed this idle connection. A connection with unexpected pending
+     * data is considered stale as well, since its request/response stream is out of sync.
+     *
+     * @return <code>true</code> if the connection must not be reused
+     */
+    boolean isStale() {
+        if (m_socket.isClosed() || m_socket.isInputShutdown() || m_socket.isOutputShutdown()) {
+            return true;
+        }
+        try {
+            int soTimeout = m_socket.getSoTimeout();
+            try {
+                m_socket.setSoTimeout(1);
+                m_in.mark(1);
+                if (m_in.read() == -1) {
+                    return true;
+                }
+                m_in.reset();
+                return true;
+            }
+            finally {
+                m_socket.setSoTimeout(soTimeout);
+            }
+        }
+        catch (SocketTimeoutException e) {
+            // nothing to read, the connection is alive
+            return false;
+        }
+        catch (IOException e) {
+            return true;
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            m_socket.close();
+        }
+        catch (IOException e) {
+            // Ignore...
+        }
+    }
+
+    private void writeLine(String line) throws IOException {
+        m_out.write(line.getBytes(StandardCharsets.ISO_8859_1));
+        m_out.write(CRLF);
+    }
+
+    private Response readResponse() throws IOException {
+
+        String statusLine = readStatusLine();
+        int status = parseStatus(statusLine);
+        Map<String, String> headers = readHeaders();
+
+        boolean keepAlive = !statusLine.startsWith("HTTP/1.0") && !"close".equalsIgnoreCase(headers.get("connection"));
+        byte[] body;
+        String transferEncoding = headers.get("transfer-encoding");
+        String contentLength = headers.get("content-length");
+        if (status == 204 || status == 304) {
+            body = new byte[0];
+        }
+        else if (transferEncoding != null && transferEncoding.toLowerCase().contains("chunked")) {
+            body = readChunkedBody();
+        }
+        else if (contentLength != null) {
+            int length = parseLength(contentLength.trim(), 10);
+            if (length > m_maxBodySize) {
+                throw new SizeLimitExceededException(m_maxBodySize);
+            }
+            body = readFixedBody(length);
+        }
+        else {
+            // body is delimited by the end of the stream
+            body = readBodyToEnd();
+            keepAlive = false;
+        }
+
+        return new Response(status, getReason(statusLine), headers, body, keepAlive);
+    }
+
+    /**
+     * @return the status line of the next final response, informational responses are skipped
+     */
+    private String readStatusLine() throws IOException {
+        String statusLine;
+        int status;
+        do {
+            statusLine = readLine();
+            if (statusLine == null) {
+                throw new EOFException("Connection closed by remote node");
+            }
+            status = parseStatus(statusLine);
+            if (status >= 100 && status < 200) {
+                // skip informational responses including their headers
+                readHeaders();
+            }
+        }
+        while (status >= 100 && status < 200);
+        return statusLine;
+    }
+
+    private static String getReason(String statusLine) {
+        int space = statusLine.indexOf(' ', statusLine.indexOf(' ') + 1);
+        return space > 0 ? statusLine.substring(space + 1) : "";
+    }
+
+    private static int parseStatus(String statusLine) throws IOException {
+        int start = statusLine.indexOf(' ');
+        if (!statusLine.startsWith("HTTP/") || start < 0 || statusLine.length() < start + 4) {
+            throw new IOException("Invalid HTTP status line: " + statusLine);
+        }
+        return parseLength(statusLine.substring(start + 1, start + 4), 10);
+    }
+
+    private static int parseLength(String value, int radix) throws IOException {
+        int length;
+        try {
+            length = Integer.parseInt(value, radix);
+        }
+        catch (NumberFormatException e) {
+            throw new IOException("Invalid HTTP response value: " + value);
+        }
+        if (length < 0) {
+            throw new IOException("Invalid HTTP response value: " + value);
+        }
+        return length;
+    }
+
+    private Map<String, String> readHeaders() throws IOException {
+        Map<String, String> headers = new HashMap<String, String>();
+        String line;
+        while ((line = readLine()) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(), line.substring(colon + 1).trim());
+            }
+        }
+        if (line == null) {
+            throw new EOFException("Connection closed while reading headers");
+        }
+        return headers;
+    }
+
+    private String readLine() throws IOException {
+        StringBuilder sb = new StringBuilder(64);
+        int b;
+        while ((b = m_in.read()) != -1) {
+            if (b == '\n') {
+                int length = sb.length();
+                if (length > 0 && sb.charAt(length - 1) == '\r') {
+                    sb.setLength(length - 1);
+                }
+                return sb.toString();
+            }
+            sb.append((char) b);
+        }
+        return sb.length() == 0 ? null : sb.toString();
+    }
+
+    private byte[] readFixedBody(int length) throws IOException {
+        if (length > MAX_INITIAL_BODY_SIZE) {
+            // the length is announced by the remote node, only allocate for the data that actually arrives
+            ByteArrayOutputStream body = new ByteArrayOutputStream(MAX_INITIAL_BODY_SIZE);
+            readFixedBody(body, length);
+            return body.toByteArray();
+        }
+        byte[] body = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            int n = m_in.read(body, offset, length - offset);
+            if (n == -1) {
+                throw new EOFException("Connection closed while reading response body");
+            }
+            offset += n;
+        }
+        return body;
+    }
+
+    private void readFixedBody(ByteArrayOutputStream body, int length) throws IOException {
+        byte[] buffer = new byte[Math.min(length, BUFFER_SIZE)];
+        int remaining = length;
+        while (remaining > 0) {
+            int n = m_in.read(buffer, 0, Math.min(buffer.length, remaining));
+            if (n == -1) {
+                throw new EOFException("Connection closed while reading response body");
+            }
+            body.write(buffer, 0, n);
+            remaining -= n;
+        }
+    }
+
+    private byte[] readChunkedBody() throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        while (true) {
+            String line = readLine();
+            if (line == null) {
+                throw new EOFException("Connection closed while reading chunk size");
+            }
+            int extension = line.indexOf(';');
+            int size = parseLength((extension >= 0 ? line.substring(0, extension) : line).trim(), 16);
+            if (size == 0) {
+                // skip trailers
+                readHeaders();
+                return body.toByteArray();
+            }
+            if (size > m_maxBodySize - body.size()) {
+                throw new SizeLimitExceededException(m_maxBodySize);
+            }
+            readFixedBody(body, size);
+            readLine();
+        }
+    }
+
+    private byte[] readBodyToEnd() throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int n;
+        while ((n = m_in.read(buffer)) != -1) {
+            if (n > m_maxBodySize - body.size()) {
+                throw new SizeLimitExceededException(m_maxBodySize);
+            }
+            body.write(buffer, 0, n);
+        }
+        return body.toByteArray();
+    }
+
+    /**
+     * Reads a response body from the connection while it is consumed, either a body of known length, a chunked
+     * body or a body that ends with the connection.
+     */
+    final class BodyInputStream extends InputStream {
+
+        private final boolean m_chunked;
+        /** bytes left in the body or current chunk, -1 if the body ends with the connection */
+        private long m_remaining;
+        private boolean m_firstChunk = true;
+        private boolean m_complete;
+
+        BodyInputStream(boolean chunked, long length) {
+            m_chunked = chunked;
+            m_remaining = length;
+            m_complete = !chunked && length == 0;
+        }
+
+        /**
+         * @return <code>true</code> if the whole body was read
+         */
+        boolean isComplete() {
+            return m_complete;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n = read(b, 0, 1);
+            return n == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (m_complete) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+            if (m_chunked && m_remaining == 0 && !nextChunk()) {
+                return -1;
+            }
+            int n = m_in.read(b, off, m_remaining < 0 ? len : (int) Math.min(len, m_remaining));
+            if (n == -1) {
+                if (m_remaining < 0) {
+                    m_complete = true;
+                    return -1;
+                }
+                throw new EOFException("Connection closed while reading response body");
+            }
+            if (m_remaining > 0) {
+                m_remaining -= n;
+                if (!m_chunked && m_remaining == 0) {
+                    m_complete = true;
+                }
+            }
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            if (m_complete || m_remaining == 0) {
+                return 0;
+            }
+            int available = m_in.available();
+            return m_remaining < 0 ? available : (int) Math.min(available, m_remaining);
+        }
+
+        private boolean nextChunk() throws IOException {
+            if (!m_firstChunk) {
+                // the line break after the previous chunk
+                readLine();
+            }
+            m_firstChunk = false;
+            String line = readLine();
+            if (line == null) {
+                throw new EOFException("Connection closed while reading chunk size");
+            }
+            int extension = line.indexOf(';');
+            int size = parseLength((extension >= 0 ? line.substring(0, extension) : line).trim(), 16);
+            if (size == 0) {
+                // skip trailers
+                readHeaders();
+                m_complete = true;
+                return false;
+            }
+            m_remaining = size;
+            return true;
+        }
+    }
+
+    /**
+     * An HTTP response of which only the status line and headers are read.
+     */
+    static final class StreamingResponse {
+
+        private final int m_status;
+        private final String m_reason;
+        private final Map<String, String> m_headers;
+        private final BodyInputStream m_body;
+        private final boolean m_keepAlive;
+
+        StreamingResponse(int status, String reason, Map<String, String> headers, BodyInputStream body,
+            boolean keepAlive) {
+            m_status = status;
+            m_reason = reason;
+            m_headers = headers;
+            m_body = body;
+            m_keepAlive = keepAlive;
+        }
+
+        int getStatus() {
+            return m_status;
+        }
+
+        String getReason() {
+            return m_reason;
+        }
+
+        /**
+         * @param name the header name, case insensitive
+         * @return the header value, or <code>null</code> if not present
+         */
+        String getHeader(String name) {
+            return m_headers.get(name.toLowerCase());
+        }
+
+        BodyInputStream getBody() {
+            return m_body;
+        }
+
+        /**
+         * @return <code>true</code> if the connection can be reused once the body is read completely
+         */
+        boolean isKeepAlive() {
+            return m_keepAlive;
+        }
+    }
+
+    /**
+     * A fully read HTTP response.
+     */
+    static final class Response {
+
+        private final int m_status;
+        private final String m_reason;
+        private final Map<String, String> m_headers;
+        private final byte[] m_body;
+        private final boolean m_keepAlive;
+
+        Response(int status, String reason, Map<String, String> headers, byte[] body, boolean keepAlive) {
+            m_status = status;
+            m_reason = reason;
+            m_headers = headers;
+            m_body = body;
+            m_keepAlive = keepAlive;
+        }
+
+        int getStatus() {
+            return m_status;
+        }
+
+        String getReason() {
+            return m_reason;
+        }
+
+        /**
+         * @param name the header name, case insensitive
+         * @return the header value, or <code>null</code> if not present
+         */
+        String getHeader(String name) {
+            return m_headers.get(name.toLowerCase());
+        }
+
+        byte[] getBody() {
+            return m_body;
+        }
+
+        /**
+         * @return <code>true</code> if the connection can be reused for a next request
+         */
+        boolean isKeepAlive() {
+            return m_keepAlive;
+        }
+    }
+}
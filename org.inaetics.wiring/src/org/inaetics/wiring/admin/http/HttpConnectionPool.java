@@ -0,0 +1,148 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Pool of persistent {@link HttpConnection}s to one remote node (host:port). The pool is shared by all
+ * {@link HttpClientEndpoint}s that target the same node, limits the number of open connections and
+ * validates connections that have been idle for a while before handing them out again. Reusing connections matters
+ * most for TLS connections, whose handshake costs several round trips and an asymmetric key exchange.
+ *
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+final class HttpConnectionPool implements Closeable {
+
+    private final String m_host;
+    private final int m_port;
+    private final SSLSocketFactory m_sslSocketFactory;
+    private final HttpAdminConfiguration m_configuration;
+    private final Semaphore m_permits;
+
+    /** idle connections, most recently used first */
+    private final Deque<HttpConnection> m_idle = new ConcurrentLinkedDeque<HttpConnection>();
+
+    private volatile boolean m_closed;
+
+    /**
+     * @param host the remote host
+     * @param port the remote port
+     * @param configuration the admin configuration
+     * @param sslSocketFactory the factory of TLS connections, or <code>null</code> for plain HTTP connections
+     */
+    HttpConnectionPool(String host, int port, HttpAdminConfiguration configuration, SSLSocketFactory sslSocketFactory) {
+        m_host = host;
+        m_port = port;
+        m_sslSocketFactory = sslSocketFactory;
+        m_configuration = configuration;
+        m_permits = new Semaphore(Math.max(1, configuration.getMaxConnections()), true);
+    }
+
+    /**
+     * Returns a connection from the pool, or opens a new one if no valid idle connection is available.
+     * Blocks for at most the connect timeout if the maximum number of connections is in use.
+     * Every acquired connection must be given back with {@link #release(HttpConnection, boolean)}.
+     *
+     * @return the connection, never <code>null</code>
+     * @throws IOException if no connection could be obtained
+     */
+    HttpConnection acquire() throws IOException {
+        if (m_closed) {
+            throw new IOException("Connection pool for " + getKey() + " is closed");
+        }
+        try {
+            if (!m_permits.tryAcquire(m_configuration.getConnectTimeout(), TimeUnit.MILLISECONDS)) {
+                throw new IOException("Timeout waiting for a free connection to " + getKey());
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a free connection to " + getKey());
+        }
+
+        try {
+            HttpConnection connection;
+            while ((connection = m_idle.pollFirst()) != null) {
+                long idleTime = connection.getIdleTime();
+                if (idleTime > m_configuration.getIdleTimeout()
+                    || (idleTime > m_configuration.getValidateAfterInactivity() && connection.isStale())) {
+                    connection.close();
+                    continue;
+                }
+                connection.setReused(true);
+                return connection;
+            }
+            return new HttpConnection(m_host, m_port, m_configuration.getConnectTimeout(), m_sslSocketFactory,
+                m_configuration.getMaxBodySize());
+        }
+        catch (IOException | RuntimeException e) {
+            m_permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Gives back a connection that was obtained by {@link #acquire()}.
+     *
+     * @param connection the connection
+     * @param reusable <code>false</code> if the connection is broken or was closed by the remote node
+     */
+    void release(HttpConnection connection, boolean reusable) {
+        try {
+            if (reusable && !m_closed) {
+                m_idle.offerFirst(connection);
+                if (m_closed && m_idle.remove(connection)) {
+                    connection.close();
+                }
+            }
+            else {
+                connection.close();
+            }
+        }
+        finally {
+            m_permits.release();
+        }
+    }
+
+    /**
+     * Closes all idle connections that exceeded the idle timeout.
+     */
+    void evictIdleConnections() {
+        long idleTimeout = m_configuration.getIdleTimeout();
+        Iterator<HttpConnection> iter = m_idle.descendingIterator();
+        while (iter.hasNext()) {
+            HttpConnection connection = iter.next();
+            if (connection.getIdleTime() > idleTimeout && m_idle.remove(connection)) {
+                connection.close();
+            }
+        }
+    }
+
+    String getKey() {
+        return getKey(m_host, m_port);
+    }
+
+    static String getKey(String host, int port) {
+        return host + ":" + port;
+    }
+
+    @Override
+    public void close() {
+        m_closed = true;
+        HttpConnection connection;
+        while ((connection = m_idle.pollFirst()) != null) {
+            connection.close();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.osgi.framework.ServiceException;
+
+/**
+ * Wire format of batch requests, which carry several messages for the same wire in one HTTP request.
+ * <p>
+ * A batch request is marked by the {@link #HEADER} header holding the number of messages. Its body is a
+ * sequence of messages, each prefixed by its length as 4 byte integer. The response body holds one entry
+ * per message in the same order: a status byte, the length and the result or error message.
+ *
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+final class HttpMessageBatch {
+
+    static final String HEADER = "X-Wiring-Batch";
+
+    private static final byte STATUS_OK = 0;
+    private static final byte STATUS_ERROR = 1;
+
+    private final ByteArrayOutputStream m_bytes;
+    private final DataOutputStream m_out;
+
+    HttpMessageBatch(int sizeHint) {
+        m_bytes = new ByteArrayOutputStream(Math.max(32, sizeHint));
+        m_out = new DataOutputStream(m_bytes);
+    }
+
+    /**
+     * Adds a message to a batch request.
+     */
+    void addMessage(byte[] message) throws IOException {
+        m_out.writeInt(message.length);
+        m_out.write(message);
+    }
+
+    /**
+     * Adds the result of a message to a batch response.
+     */
+    void addResult(byte[] result) throws IOException {
+        m_out.writeByte(STATUS_OK);
+        addMessage(result != null ? result : new byte[0]);
+    }
+
+    /**
+     * Adds the failure of a message to a batch response.
+     */
+    void addError(String error) throws IOException {
+        m_out.writeByte(STATUS_ERROR);
+        addMessage(String.valueOf(error).getBytes(StandardCharsets.UTF_8));
+    }
+
+    byte[] toByteArray() {
+        return m_bytes.toByteArray();
+    }
+
+    /**
+     * Splits the body of a batch request into its messages.
+     * 
+     * @param body the request body
+     * @param count the number of messages announced in the batch header
+     * @return the messages
+     * @throws IOException if the body is malformed
+     */
+    static List<byte[]> readMessages(byte[] body, int count) throws IOException {
+        // every message takes at least its length, so a larger count can only come from a malformed header
+        if (count < 0 || count > body.length / 4) {
+            throw new IOException("Malformed batch: invalid count " + count);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(body);
+        List<byte[]> messages = new ArrayList<byte[]>(count);
+        for (int i = 0; i < count; i++) {
+            messages.add(readBytes(buffer));
+        }
+        if (buffer.hasRemaining()) {
+            throw new IOException("Malformed batch: unexpected trailing data");
+        }
+        return messages;
+    }
+
+    /**
+     * Completes the given futures with the entries of a batch response.
+     * 
+     * @param body the response body
+     * @param futures the futures, in the order the messages were added to the request
+     * @throws IOException if the body does not match the request, no future is completed in that case
+     */
+    static void completeResults(byte[] body, List<CompletableFuture<byte[]>> futures) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(body);
+        int count = futures.size();
+        boolean[] failed = new boolean[count];
+        byte[][] results = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            if (!buffer.hasRemaining()) {
+                throw new IOException("Malformed batch: missing entries");
+            }
+            failed[i] = buffer.get() == STATUS_ERROR;
+            results[i] = readBytes(buffer);
+        }
+        for (int i = 0; i < count; i++) {
+            if (failed[i]) {
+                futures.get(i).completeExceptionally(new ServiceException("Remote service invocation failed: "
+                    + new String(results[i], StandardCharsets.UTF_8), ServiceException.REMOTE));
+            }
+            else {
+                futures.get(i).complete(results[i]);
+            }
+        }
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < 4) {
+            throw new IOException("Malformed batch: missing length");
+        }
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("Malformed batch: invalid length " + length);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.http;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the messages of one {@link HttpClientEndpoint} that are submitted within the configured batch window
+ * and sends them as a single batch request. A batch is sent early once it reaches the configured maximum size.
+ *
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+final class HttpMessageBatcher {
+
+    private final HttpClientEndpoint m_endpoint;
+    private final HttpAdminConfiguration m_configuration;
+    private final ScheduledExecutorService m_scheduler;
+    private final Executor m_executor;
+
+    /** the batch that is currently collecting messages, guarded by this */
+    private Batch m_current;
+
+    HttpMessageBatcher(HttpClientEndpoint endpoint, HttpAdminConfiguration configuration,
+        ScheduledExecutorService scheduler, Executor executor) {
+        m_endpoint = endpoint;
+        m_configuration = configuration;
+        m_scheduler = scheduler;
+        m_executor = executor;
+    }
+
+    /**
+     * Adds a message to the current batch.
+     * 
+     * @param message the message
+     * @return the future result of the message
+     */
+    CompletableFuture<byte[]> submit(byte[] message) {
+        CompletableFuture<byte[]> future = new CompletableFuture<byte[]>();
+        Batch started = null;
+        Batch full = null;
+        synchronized (this) {
+            if (m_current == null) {
+                m_current = new Batch();
+                started = m_current;
+            }
+            m_current.add(message, future);
+            if (m_current.size() >= m_configuration.getBatchMaxSize()) {
+                full = m_current;
+                m_current = null;
+            }
+        }
+        if (full != null) {
+            dispatch(full);
+        }
+        else if (started != null) {
+            schedule(started);
+        }
+        return future;
+    }
+
+    private void schedule(final Batch batch) {
+        try {
+            m_scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flush(batch);
+                }
+            }, m_configuration.getBatchWindow(), TimeUnit.MILLISECONDS);
+        }
+        catch (RejectedExecutionException e) {
+            flush(batch);
+        }
+    }
+
+    private void flush(Batch batch) {
+        synchronized (this) {
+            if (m_current != batch) {
+                // already sent because it was full
+                return;
+            }
+            m_current = null;
+        }
+        dispatch(batch);
+    }
+
+    private void dispatch(final Batch batch) {
+        try {
+            m_executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    m_endpoint.sendBatch(batch.m_messages, batch.m_futures);
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            for (CompletableFuture<byte[]> future : batch.m_futures) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static final class Batch {
+
+        private final List<byte[]> m_messages = new ArrayList<byte[]>();
+        private final List<CompletableFuture<byte[]>> m_futures = new ArrayList<CompletableFuture<byte[]>>();
+
+        void add(byte[] message, CompletableFuture<byte[]> future) {
+            m_messages.add(message);
+            m_futures.add(future);
+        }
+
+        int size() {
+            return m_messages.size();
+        }
+    }
+}
@@ -3,17 +3,38 @@
  */
 package org.inaetics.wiring.admin.http;
 
+import static javax.servlet.http.HttpServletResponse.SC_ACCEPTED;
+import static javax.servlet.http.HttpServletResponse.SC_GATEWAY_TIMEOUT;
 import static javax.servlet.http.HttpServletResponse.SC_OK;
+import static javax.servlet.http.HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE;
+import static javax.servlet.http.HttpServletResponse.SC_SERVICE_UNAVAILABLE;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.inaetics.wiring.WiringEndpointDescription;
 import org.inaetics.wiring.base.IOUtil;
+import org.inaetics.wiring.base.PriorityDispatchQueue;
+import org.inaetics.wiring.base.SizeLimitExceededException;
+import org.inaetics.wiring.endpoint.StreamingWiringReceiver;
+import org.inaetics.wiring.endpoint.WiringDeadline;
+import org.inaetics.wiring.endpoint.WiringPriority;
 import org.inaetics.wiring.endpoint.WiringReceiver;
+import org.osgi.framework.ServiceException;
 
 /**
  * Servlet that represents a local wiring endpoint.
@@ -22,15 +43,76 @@ import org.inaetics.wiring.endpoint.WiringReceiver;
  */
 public final class HttpServerEndpoint {
 
-    private static final String MIME_TYPE = "text/plain;charset=utf-8";
+    private static final String MIME_TYPE = "application/octet-stream";
+    private static final int MIN_STREAM_BUFFER_SIZE = 512;
+    private static final int DEFAULT_STREAM_BUFFER_SIZE = 8192;
+    private static final int MAX_STREAM_BUFFER_SIZE = 64 * 1024;
+    private static final String RETRY_AFTER = "Retry-After";
+
+    /**
+     * Request header that marks a one-way message. Such a message is acknowledged with 202 as soon as it is queued,
+     * the receiver runs afterwards and its result is discarded.
+     */
+    static final String ONE_WAY_HEADER = "X-Wiring-OneWay";
+
+    /**
+     * Request header with the time in ms that the sender is still willing to wait for the result. A message that
+     * is still queued when that time has passed is answered with 504 instead of being passed to the receiver.
+     */
+    static final String DEADLINE_HEADER = "X-Wiring-Deadline";
+
+    /**
+     * Response header with the number of messages the endpoint can accept for the wire right now, i.e. the free
+     * dispatch threads and queue slots. Clients use it for flow control, see {@link CreditGate}.
+     */
+    static final String CREDITS_HEADER = "X-Wiring-Credits";
+
+    /**
+     * Request header with the name of the {@link WiringPriority} of the message, absent for normal priority. The
+     * message is queued in the dispatch lane of its priority, see {@link PriorityDispatchQueue}.
+     */
+    static final String PRIORITY_HEADER = "X-Wiring-Priority";
 
     private WiringEndpointDescription m_endpoint;
     private WiringReceiver m_receiver;
+    private HttpAdminConfiguration m_configuration;
+    private final ThreadPoolExecutor m_executor;
+    /** permits of the servlet threads that wait for a dispatched request, per priority */
+    private final Semaphore[] m_waiting;
     private ServerEndpointProblemListener m_problemListener;
 
-    public HttpServerEndpoint(WiringEndpointDescription endpoint, WiringReceiver receiver) {
+    public HttpServerEndpoint(WiringEndpointDescription endpoint, WiringReceiver receiver, HttpAdminConfiguration configuration) {
     	m_endpoint = endpoint;
     	m_receiver = receiver;
+    	m_configuration = configuration;
+    	m_executor = createExecutor(endpoint.getId(), configuration);
+    	m_waiting = new Semaphore[WiringPriority.values().length];
+    	for (int i = 0; i < m_waiting.length; i++) {
+    	    m_waiting[i] = new Semaphore(Math.max(1, configuration.getDispatchWaiting()));
+    	}
+    }
+
+    /**
+     * Creates the bounded executor that invokes the receiver. Servlet 2.5 has no asynchronous requests, so a
+     * request still blocks its servlet thread until it is processed; the number of those is limited separately by
+     * dispatchwaiting per priority, so that a slow receiver cannot occupy the whole servlet thread pool.
+     */
+    private static ThreadPoolExecutor createExecutor(String wireId, HttpAdminConfiguration configuration) {
+        int threads = configuration.getDispatchThreads();
+        if (threads <= 0) {
+            return null;
+        }
+        return PriorityDispatchQueue.createExecutor("wiring-http-dispatch-" + wireId, threads,
+            configuration.getDispatchQueueSize());
+    }
+
+    /**
+     * Stops dispatching messages of this endpoint.
+     */
+    public void close() {
+        if (m_executor != null) {
+            m_executor.shutdown();
+        }
     }
 
     /**
@@ -40,26 +122,405 @@ public final class HttpServerEndpoint {
         m_problemListener = problemListener;
     }
 
-    public void handleMessage(HttpServletRequest req, HttpServletResponse resp) throws Exception {
+    /**
+     * Passes a message of a sender in the same framework to the receiver, on the calling thread.
+     */
+    byte[] receive(byte[] message) throws Exception {
+        WiringDeadline deadline = WiringDeadline.current();
+        if (deadline != null && deadline.isExpired()) {
+            throw deadlineExpired();
+        }
+        return m_receiver.messageReceived(message);
+    }
+
+    /**
+     * Passes a message of a sender in the same framework to the receiver, on the dispatch executor of
+     * this endpoint. The future fails with a {@link RejectedExecutionException} if that is overloaded.
+     * 
+     * @param message the message
+     * @param fallback the executor to use if this endpoint has no dispatch executor
+     * @return the future result
+     */
+    CompletableFuture<byte[]> receiveAsync(final byte[] message, Executor fallback) {
+        final CompletableFuture<byte[]> future = new CompletableFuture<byte[]>();
+        final WiringDeadline deadline = WiringDeadline.current();
+        final WiringPriority priority = WiringPriority.current();
+        try {
+            (m_executor != null ? m_executor : fallback).execute(new PriorityDispatchQueue.Task<Void>(new Runnable() {
+                @Override
+                public void run() {
+                    if (deadline != null && deadline.isExpired()) {
+                        future.completeExceptionally(deadlineExpired());
+                        return;
+                    }
+                    WiringDeadline previous = WiringDeadline.attach(deadline);
+                    WiringPriority previousPriority = WiringPriority.attach(priority);
+                    try {
+                        future.complete(m_receiver.messageReceived(message));
+                    }
+                    catch (Throwable e) {
+                        future.completeExceptionally(new ServiceException("Remote service invocation failed: "
+                            + e.getMessage(), ServiceException.REMOTE, e));
+                    }
+                    finally {
+                        WiringPriority.detach(previousPriority);
+                        WiringDeadline.detach(previous);
+                    }
+                }
+            }, priority));
+        }
+        catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Queues a one-way message of a sender in the same framework on the dispatch executor of this endpoint.
+     * 
+     * @param message the message
+     * @param fallback the executor to use if this endpoint has no dispatch executor
+     * @return a future that is completed once the message is queued, or exceptionally with a
+     *         {@link RejectedExecutionException} if the endpoint is overloaded
+     */
+    CompletableFuture<Void> receiveOneWay(byte[] message, Executor fallback) {
+        CompletableFuture<Void> future = new CompletableFuture<Void>();
+        try {
+            (m_executor != null ? m_executor : fallback).execute(
+                createOneWayTask(message, WiringDeadline.current(), WiringPriority.current()));
+            future.complete(null);
+        }
+        catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    public void handleMessage(final HttpServletRequest req, final HttpServletResponse resp) throws Exception {
+
+        // the budget of the sender starts to run down as soon as the request arrives
+        final WiringDeadline deadline = getDeadline(req);
+        final WiringPriority priority = getPriority(req);
+
+        if (req.getHeader(ONE_WAY_HEADER) != null) {
+            handleOneWay(req, resp, deadline, priority);
+            return;
+        }
+
+        if (m_executor == null) {
+            processMessage(req, resp, deadline, priority);
+            return;
+        }
+
+        Semaphore waiting = m_waiting[priority.ordinal()];
+        if (!waiting.tryAcquire()) {
+            // too many servlet threads wait for this wire already
+            rejectOverloaded(resp);
+            return;
+        }
+        try {
+            PriorityDispatchQueue.Task<Void> future = new PriorityDispatchQueue.Task<Void>(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    processMessage(req, resp, deadline, priority);
+                    return null;
+                }
+            }, priority);
+            try {
+                m_executor.execute(future);
+            }
+            catch (RejectedExecutionException e) {
+                rejectOverloaded(resp);
+                return;
+            }
+
+            try {
+                future.get();
+            }
+            catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                }
+                throw e;
+            }
+            catch (InterruptedException e) {
+                future.cancel(true);
+                throw e;
+            }
+        }
+        finally {
+            waiting.release();
+        }
+    }
+
+    /**
+     * Rejects a request of an overloaded endpoint, so that the client backs off instead of tying up another
+     * servlet thread.
+     */
+    private void rejectOverloaded(HttpServletResponse resp) throws IOException {
+        resp.setHeader(RETRY_AFTER, String.valueOf(m_configuration.getRetryAfter()));
+        resp.setHeader(CREDITS_HEADER, "0");
+        resp.sendError(SC_SERVICE_UNAVAILABLE);
+    }
+
+    /**
+     * Reads a one-way message and acknowledges it once it is queued on the dispatch executor, without
+     * waiting for the receiver.
+     */
+    private void handleOneWay(HttpServletRequest req, HttpServletResponse resp, WiringDeadline deadline,
+        WiringPriority priority) throws Exception {
+
+        byte[] message;
+        InputStream in = req.getInputStream();
+        try {
+            byte[] body = readBody(req, in);
+            if (body == null) {
+                grantCredits(resp, false, false, priority);
+                resp.sendError(SC_REQUEST_ENTITY_TOO_LARGE);
+                return;
+            }
+            message = HttpCompression.decompress(req.getHeader(HttpCompression.CONTENT_ENCODING), body,
+                m_configuration.getMaxDecompressedSize());
+        }
+        finally {
+            IOUtil.closeSilently(in);
+        }
+
+        Runnable task = createOneWayTask(message, deadline, priority);
+        if (m_executor == null) {
+            task.run();
+        }
+        else {
+            try {
+                m_executor.execute(task);
+            }
+            catch (RejectedExecutionException e) {
+                rejectOverloaded(resp);
+                return;
+            }
+        }
+
+        grantCredits(resp, false, false, priority);
+        resp.setStatus(SC_ACCEPTED);
+        resp.setContentLength(0);
+    }
+
+    /**
+     * Reads the body of a request as it was sent, of at most maxbodysize bytes. A body that announces a larger
+     * length is rejected before any of it is read.
+     * 
+     * @return the body, or <code>null</code> if it is too large
+     */
+    private byte[] readBody(HttpServletRequest req, InputStream in) throws IOException {
+        try {
+            return IOUtil.readFully(in, req.getContentLength(), m_configuration.getMaxBodySize());
+        }
+        catch (SizeLimitExceededException e) {
+            return null;
+        }
+    }
+
+    private Runnable createOneWayTask(final byte[] message, final WiringDeadline deadline,
+        final WiringPriority priority) {
+        return new PriorityDispatchQueue.Task<Void>(new Runnable() {
+            @Override
+            public void run() {
+                if (deadline != null && deadline.isExpired()) {
+                    // expired while queued, drop it
+                    return;
+                }
+                WiringDeadline previous = WiringDeadline.attach(deadline);
+                WiringPriority previousPriority = WiringPriority.attach(priority);
+                try {
+                    m_receiver.messageReceived(message);
+                }
+                catch (Exception e) {
+                    // nobody waits for the result anymore
+                    if (m_problemListener != null) {
+                        m_problemListener.handleEndpointWarning(e);
+                    }
+                }
+                finally {
+                    WiringPriority.detach(previousPriority);
+                    WiringDeadline.detach(previous);
+                }
+            }
+        }, priority);
+    }
+
+    /**
+     * @return the deadline of the sender of the request, or <code>null</code> if it did not send one
+     */
+    private static WiringDeadline getDeadline(HttpServletRequest req) {
+        String remaining = req.getHeader(DEADLINE_HEADER);
+        if (remaining == null) {
+            return null;
+        }
+        try {
+            return WiringDeadline.after(Long.parseLong(remaining.trim()));
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the priority of the request, {@link WiringPriority#NORMAL} if it has none or an unknown one
+     */
+    private static WiringPriority getPriority(HttpServletRequest req) {
+        String name = req.getHeader(PRIORITY_HEADER);
+        if (name == null) {
+            return WiringPriority.NORMAL;
+        }
+        WiringPriority priority = WiringPriority.fromName(name.trim());
+        return priority != null ? priority : WiringPriority.NORMAL;
+    }
+
+    /**
+     * Grants the sender credits for the free capacity of the dispatch executor in the lane of the message. A
+     * two-way message also needs a waiting servlet thread, so its credits are capped by the free ones. Nothing is
+     * granted without a dispatch executor, since then the capacity is not bounded by the endpoint.
+     * 
+     * @param dispatched <code>true</code> if the calling dispatch thread is about to complete its message
+     * @param twoWay <code>true</code> if the message is a two-way message
+     * @param priority the priority of the message
+     */
+    private void grantCredits(HttpServletResponse resp, boolean dispatched, boolean twoWay, WiringPriority priority) {
+        ThreadPoolExecutor executor = m_executor;
+        if (executor == null) {
+            return;
+        }
+        int credits = PriorityDispatchQueue.getFreeCapacity(executor, priority);
+        if (twoWay) {
+            credits = Math.min(credits, m_waiting[priority.ordinal()].availablePermits());
+        }
+        credits += dispatched ? 1 : 0;
+        resp.setHeader(CREDITS_HEADER, String.valueOf(credits));
+    }
+
+    private ServiceException deadlineExpired() {
+        return new ServiceException("Remote service invocation failed: deadline of message for endpoint "
+            + m_endpoint.getId() + " expired", ServiceException.REMOTE);
+    }
+
+    private void processMessage(HttpServletRequest req, HttpServletResponse resp, WiringDeadline deadline,
+        WiringPriority priority) throws Exception {
+
+        if (deadline != null && deadline.isExpired()) {
+            // the sender gave up already, do not spend any more capacity on it
+            grantCredits(resp, true, true, priority);
+            resp.sendError(SC_GATEWAY_TIMEOUT);
+            return;
+        }
 
     	InputStream in = req.getInputStream();
     	OutputStream out = resp.getOutputStream();
+    	WiringDeadline previous = WiringDeadline.attach(deadline);
+    	WiringPriority previousPriority = WiringPriority.attach(priority);
 
     	try {
 
-        	String message = IOUtil.convertStreamToString(in, "UTF-8");
-			String result = m_receiver.messageReceived(message);
+        	if (m_receiver instanceof StreamingWiringReceiver && req.getHeader(HttpMessageBatch.HEADER) == null) {
+        		handleStream(req, resp, in, out, priority);
+        		return;
+        	}
+
+        	byte[] body = readBody(req, in);
+        	if (body == null) {
+        		grantCredits(resp, true, true, priority);
+        		resp.sendError(SC_REQUEST_ENTITY_TOO_LARGE);
+        		return;
+        	}
+        	byte[] message = HttpCompression.decompress(req.getHeader(HttpCompression.CONTENT_ENCODING), body,
+        		m_configuration.getMaxDecompressedSize());
+        	byte[] result;
+        	String batch = req.getHeader(HttpMessageBatch.HEADER);
+        	if (batch != null) {
+        		result = handleBatch(message, batch);
+        	}
+        	else {
+        		result = m_receiver.messageReceived(message);
+        		if (result == null) {
+        			result = new byte[0];
+        		}
+        	}
+
+        	String codec = HttpCompression.select(req.getHeader(HttpCompression.ACCEPT_ENCODING));
+        	if (codec != null && result.length >= m_configuration.getCompressionThreshold()) {
+        		result = HttpCompression.compress(codec, result);
+        		resp.setHeader(HttpCompression.CONTENT_ENCODING, codec);
+        	}
 
+            grantCredits(resp, true, true, priority);
             resp.setStatus(SC_OK);
             resp.setContentType(MIME_TYPE);
+            resp.setContentLength(result.length);
             
-            out.write(result.getBytes("UTF-8"));
+            out.write(result);
             
         }
         finally {
+            WiringPriority.detach(previousPriority);
+            WiringDeadline.detach(previous);
             IOUtil.closeSilently(in);
             IOUtil.closeSilently(out);
         }
     }
 
+    /**
+     * Hands the request body and the response stream directly to a streaming receiver. The response is
+     * committed as soon as the receiver writes to it, so a failure after that point cannot be signalled
+     * by the response status anymore.
+     */
+    private void handleStream(HttpServletRequest req, HttpServletResponse resp, InputStream in, OutputStream out,
+        WiringPriority priority) throws Exception {
+
+        int contentLength = req.getContentLength();
+        int bufferSize = contentLength < 0 ? DEFAULT_STREAM_BUFFER_SIZE
+            : Math.max(MIN_STREAM_BUFFER_SIZE, Math.min(contentLength, MAX_STREAM_BUFFER_SIZE));
+
+        InputStream message = new BufferedInputStream(
+            HttpCompression.decompress(req.getHeader(HttpCompression.CONTENT_ENCODING), in,
+                m_configuration.getMaxDecompressedSize()), bufferSize);
+
+        // the response is committed before the receiver is done, so its own dispatch slot is not granted
+        grantCredits(resp, false, true, priority);
+        resp.setStatus(SC_OK);
+        resp.setContentType(MIME_TYPE);
+
+        OutputStream response = new BufferedOutputStream(out, DEFAULT_STREAM_BUFFER_SIZE);
+        ((StreamingWiringReceiver) m_receiver).messageReceived(message, response);
+        response.flush();
+    }
+
+    /**
+     * Passes every message of a batch request to the receiver. A failing message does not affect the
+     * other messages of the batch, its error is returned in the batch response instead.
+     */
+    private byte[] handleBatch(byte[] body, String count) throws IOException {
+
+        List<byte[]> messages;
+        try {
+            messages = HttpMessageBatch.readMessages(body, Integer.parseInt(count));
+        }
+        catch (NumberFormatException e) {
+            throw new IOException("Invalid batch header: " + count);
+        }
+
+        HttpMessageBatch results = new HttpMessageBatch(body.length);
+        for (byte[] message : messages) {
+            try {
+                results.addResult(m_receiver.messageReceived(message));
+            }
+            catch (Exception e) {
+                if (m_problemListener != null) {
+                    m_problemListener.handleEndpointWarning(e);
+                }
+                results.addError(e.getMessage());
+            }
+        }
+        return results.toByteArray();
+    }
+
 }
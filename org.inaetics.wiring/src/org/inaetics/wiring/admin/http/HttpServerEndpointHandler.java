@@ -6,11 +6,8 @@ package org.inaetics.wiring.admin.http;
 import static javax.servlet.http.HttpServletResponse.SC_OK;
 
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.servlet.ServletException;
 import javax.servlet.ServletOutputStream;
@@ -31,9 +28,7 @@ import org.inaetics.wiring.endpoint.WiringReceiver;
 public final class HttpServerEndpointHandler extends AbstractComponentDelegate {
 
     private final Map<String, HttpServerEndpoint> m_handlers =
-    		new HashMap<String, HttpServerEndpoint>();
-    
-    private final ReentrantReadWriteLock m_lock = new ReentrantReadWriteLock();
+    		new ConcurrentHashMap<String, HttpServerEndpoint>();
 
     private final WiringAdminFactory m_factory;
     private final HttpAdminConfiguration m_configuration;
@@ -70,15 +65,9 @@ public final class HttpServerEndpointHandler extends AbstractComponentDelegate {
      */
     public HttpServerEndpoint addEndpoint(WiringEndpointDescription endpoint, WiringReceiver receiver) {
 
-        HttpServerEndpoint serverEndpoint = new HttpServerEndpoint(endpoint, receiver);
+        HttpServerEndpoint serverEndpoint = new HttpServerEndpoint(endpoint, receiver, m_configuration);
 
-        m_lock.writeLock().lock();
-        try {
-            m_handlers.put(endpoint.getId(), serverEndpoint);
-        }
-        finally {
-            m_lock.writeLock().unlock();
-        }
+        m_handlers.put(endpoint.getId(), serverEndpoint);
         return serverEndpoint;
     }
 
@@ -88,26 +77,46 @@ public final class HttpServerEndpointHandler extends AbstractComponentDelegate {
      * @param endpoint The Endpoint Description
      */
     public HttpServerEndpoint removeEndpoint(WiringEndpointDescription endpoint) {
-        HttpServerEndpoint serv;
-
-        m_lock.writeLock().lock();
-        try {
-            serv = m_handlers.remove(endpoint);
+        if (endpoint == null) {
+            return null;
         }
-        finally {
-            m_lock.writeLock().unlock();
+        HttpServerEndpoint serv = m_handlers.remove(endpoint.getId());
+        if (serv != null) {
+            serv.close();
         }
         return serv;
     }
 
-    private HttpServerEndpoint getHandler(String path) {
-        m_lock.readLock().lock();
-        try {
-        	return m_handlers.get(path);
+    HttpServerEndpoint getHandler(String path) {
+        return m_handlers.get(path);
+    }
+
+    /**
+     * Extracts the wire id from a request path of the form <code>[/]id[/]</code>, where the id consists of
+     * letters, digits, '-' and '_'. This runs for every request, hence no regular expression.
+     * 
+     * @param pathInfo the path info of the request
+     * @return the wire id, or <code>null</code> if the path is invalid
+     */
+    static String parseWireId(String pathInfo) {
+        int start = 0;
+        int end = pathInfo.length();
+        if (end > 0 && pathInfo.charAt(0) == '/') {
+            start++;
+        }
+        if (end > start && pathInfo.charAt(end - 1) == '/') {
+            end--;
         }
-        finally {
-            m_lock.readLock().unlock();
+        if (start >= end) {
+            return null;
         }
+        for (int i = start; i < end; i++) {
+            char c = pathInfo.charAt(i);
+            if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-' || c == '_')) {
+                return null;
+            }
+        }
+        return pathInfo.substring(start, end);
     }
 
     private String getServletAlias() {
@@ -133,21 +142,14 @@ public final class HttpServerEndpointHandler extends AbstractComponentDelegate {
         resp.setStatus(SC_OK);
         resp.setContentType(MIME_TYPE);
 
-        String response = "wires:\n";
-        
-        m_lock.readLock().lock();
-        try {
-            for (String wireId : m_handlers.keySet()) {
-            	response += wireId + "\n";
-            }
-        }
-        finally {
-            m_lock.readLock().unlock();
+        StringBuilder response = new StringBuilder("wires:\n");
+        for (String wireId : m_handlers.keySet()) {
+        	response.append(wireId).append('\n');
         }
 
     	ServletOutputStream outputStream = resp.getOutputStream();
     	try {
-    		outputStream.write(response.getBytes("UTF-8"));
+    		outputStream.write(response.toString().getBytes("UTF-8"));
     	}
         catch (Exception e) {
             logError("Server Endpoint Handler failed", e);
@@ -166,8 +168,6 @@ public final class HttpServerEndpointHandler extends AbstractComponentDelegate {
 
         private static final long serialVersionUID = 1L;
 
-        private final Pattern PATH_PATTERN = Pattern.compile("^\\/{0,1}([A-Za-z0-9-_]+)\\/{0,1}$");
-
         @Override
         protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
 
@@ -176,12 +176,11 @@ public final class HttpServerEndpointHandler extends AbstractComponentDelegate {
                 pathInfo = "";
             }
 
-            Matcher matcher = PATH_PATTERN.matcher(pathInfo);
-            if (!matcher.matches()) {
+            String path = parseWireId(pathInfo);
+            if (path == null) {
                 resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid path: " + pathInfo);
                 return;
             }
-            String path = matcher.group(1);
 
             HttpServerEndpoint handler = getHandler(path);
             if (handler != null) {
@@ -215,14 +214,12 @@ public final class HttpServerEndpointHandler extends AbstractComponentDelegate {
             }
 
             // handle requested endpoint
-            Matcher matcher = PATH_PATTERN.matcher(pathInfo);
-            if (!matcher.matches()) {
+            String endpointId = parseWireId(pathInfo);
+            if (endpointId == null) {
                 resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid path: " + pathInfo);
                 return;
             }
 
-            String endpointId = matcher.group(1);
-
             HttpServerEndpoint handler = getHandler(endpointId);
             if (handler != null) {
             	ServletOutputStream outputStream = resp.getOutputStream();
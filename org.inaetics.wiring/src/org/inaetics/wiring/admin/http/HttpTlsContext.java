@@ -0,0 +1,100 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.http;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.TrustManagerFactory;
+
+/**
+ * Creates the {@link SSLContext} of the secure connections to remote nodes from the configured key and trust store.
+ * <p>
+ * All secure connections of the admin share one context, so that its client session cache is shared as well: a new
+ * connection to a node that was connected before resumes the cached session with an abbreviated handshake, which
+ * skips the certificate exchange and the key agreement.
+ *
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+final class HttpTlsContext {
+
+    private HttpTlsContext() {
+    }
+
+    /**
+     * @param configuration the admin configuration
+     * @return the new context
+     * @throws IOException if a store could not be read
+     * @throws GeneralSecurityException if a store or its key could not be loaded
+     */
+    static SSLContext create(HttpAdminConfiguration configuration) throws IOException, GeneralSecurityException {
+        return create(configuration.getKeyStore(), configuration.getKeyStorePassword(), configuration.getTrustStore(),
+            configuration.getTrustStorePassword(), configuration.getKeyStoreType(), configuration.getSessionCacheSize(),
+            configuration.getSessionTimeout());
+    }
+
+    /**
+     * @param keyStorePath the key store path, or <code>null</code> if this node has no key
+     * @param keyStorePassword the key store password, or <code>null</code>
+     * @param trustStorePath the trust store path, or <code>null</code> to use the trust store of the JVM
+     * @param trustStorePassword the trust store password, or <code>null</code>
+     * @param type the type of both stores
+     * @param sessionCacheSize the maximum number of cached client sessions, 0 for no limit
+     * @param sessionTimeout the time in seconds a cached client session can be resumed
+     * @return the new context
+     * @throws IOException if a store could not be read
+     * @throws GeneralSecurityException if a store or its key could not be loaded
+     */
+    static SSLContext create(String keyStorePath, String keyStorePassword, String trustStorePath,
+        String trustStorePassword, String type, int sessionCacheSize, int sessionTimeout)
+        throws IOException, GeneralSecurityException {
+
+        KeyManager[] keyManagers = null;
+        if (keyStorePath != null) {
+            KeyStore keyStore = load(keyStorePath, type, keyStorePassword);
+            KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            keyManagerFactory.init(keyStore, toChars(keyStorePassword));
+            keyManagers = keyManagerFactory.getKeyManagers();
+        }
+
+        // without a trust store of our own, the trust store of the JVM is used
+        KeyStore trustStore = null;
+        if (trustStorePath != null) {
+            trustStore = load(trustStorePath, type, trustStorePassword);
+        }
+        TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagerFactory.init(trustStore);
+
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(keyManagers, trustManagerFactory.getTrustManagers(), null);
+
+        SSLSessionContext sessionContext = context.getClientSessionContext();
+        sessionContext.setSessionCacheSize(sessionCacheSize);
+        sessionContext.setSessionTimeout(sessionTimeout);
+        return context;
+    }
+
+    private static KeyStore load(String path, String type, String password) throws IOException, GeneralSecurityException {
+        KeyStore keyStore = KeyStore.getInstance(type);
+        InputStream in = new FileInputStream(path);
+        try {
+            keyStore.load(in, toChars(password));
+        }
+        finally {
+            in.close();
+        }
+        return keyStore;
+    }
+
+    private static char[] toChars(String password) {
+        return password != null ? password.toCharArray() : null;
+    }
+}
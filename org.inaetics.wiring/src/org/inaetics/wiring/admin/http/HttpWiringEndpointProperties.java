@@ -8,5 +8,7 @@ public interface HttpWiringEndpointProperties {
 	public static final String BASE = "inaetics.wiring.http.";
 	public static final String VERSION = BASE + "version";
 	public static final String URL = BASE + "url";
+	public static final String BATCH = BASE + "batch";
+	public static final String CODECS = BASE + "codecs";
 
 }
@@ -0,0 +1,85 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.http;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import org.inaetics.wiring.WiringEndpointDescription;
+import org.inaetics.wiring.endpoint.WiringSender;
+import org.osgi.framework.ServiceException;
+
+/**
+ * Sender for a wire that is exported by this framework. Messages are handed to the local
+ * {@link HttpServerEndpoint} directly, without serialization, sockets or the servlet container.
+ * Synchronous messages are handled on the calling thread, asynchronous and one-way ones on the dispatch
+ * executor of the wire.
+ * 
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+final class LoopbackWiringSender implements WiringSender {
+
+    private final HttpServerEndpointHandler m_handler;
+    private final WiringEndpointDescription m_endpoint;
+    private final Executor m_executor;
+
+    /**
+     * @param handler the local handler that exports the wire
+     * @param endpoint the endpoint description of the wire
+     * @param executor the executor for asynchronous messages if the wire has no dispatch executor
+     */
+    LoopbackWiringSender(HttpServerEndpointHandler handler, WiringEndpointDescription endpoint, Executor executor) {
+        m_handler = handler;
+        m_endpoint = endpoint;
+        m_executor = executor;
+    }
+
+    @Override
+    public byte[] sendMessage(byte[] message) throws Exception {
+        HttpServerEndpoint serverEndpoint = getServerEndpoint();
+        try {
+            return serverEndpoint.receive(message);
+        }
+        catch (Exception e) {
+            throw new ServiceException("Remote service invocation failed: " + e.getMessage(), ServiceException.REMOTE, e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<byte[]> sendMessageAsync(byte[] message) {
+        try {
+            return getServerEndpoint().receiveAsync(message, m_executor);
+        }
+        catch (Exception e) {
+            CompletableFuture<byte[]> future = new CompletableFuture<byte[]>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> sendOneWay(byte[] message) {
+        try {
+            return getServerEndpoint().receiveOneWay(message, m_executor);
+        }
+        catch (Exception e) {
+            CompletableFuture<Void> future = new CompletableFuture<Void>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
+    private HttpServerEndpoint getServerEndpoint() throws Exception {
+        HttpServerEndpoint serverEndpoint = m_handler.getHandler(m_endpoint.getId());
+        if (serverEndpoint == null) {
+            throw new Exception("local endpoint not found");
+        }
+        return serverEndpoint;
+    }
+
+    @Override
+    public String toString() {
+        return "LoopbackWiringSender [endpointId=" + m_endpoint.getId() + "]";
+    }
+}
@@ -0,0 +1,349 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.http;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Durable log of the one-way messages to one wire that could not be delivered, to be replayed in order once the wire
+ * is reachable again.
+ * <p>
+ * Messages are appended to memory-mapped segment files of a fixed size in the directory of the spool, a new segment is
+ * started once a message does not fit in the current one anymore. Every message is stored as its length plus one, the
+ * CRC32 of its content and the content itself, so that empty messages can be stored as well; a zero length or a
+ * checksum mismatch marks the end of the written part of a segment, so that a message that was torn by a crash is
+ * discarded on recovery. The position of the first message
+ * that was not acknowledged yet is kept in a mapped position file, segments that were replayed completely are deleted.
+ * <p>
+ * Only the mappings of the segment that is written and the segment that is read are held, the messages themselves stay
+ * in the page cache instead of on the heap. The log survives restarts of the process, not of the operating system,
+ * since the mappings are only forced to disk when a segment is completed.
+ *
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+final class MessageSpool implements Closeable {
+
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String POSITION_FILE = "position";
+    private static final int RECORD_HEADER = 8;
+
+    private final File m_directory;
+    private final int m_segmentSize;
+    private final int m_maxSegments;
+    private final CRC32 m_crc = new CRC32();
+    private final MappedByteBuffer m_position;
+
+    private long m_writeSegment;
+    private MappedByteBuffer m_writeBuffer;
+
+    private long m_readSegment;
+    private int m_readOffset;
+    private MappedByteBuffer m_readBuffer;
+
+    private boolean m_replaying;
+    private boolean m_closed;
+
+    /**
+     * Opens the spool in a directory, recovering the messages that are in it from an earlier run.
+     *
+     * @param directory the directory of the spool, created if it does not exist
+     * @param segmentSize the size of a segment in bytes
+     * @param maxSegments the maximum number of segments, messages are rejected once they are all filled
+     * @throws IOException if the spool could not be opened
+     */
+    MessageSpool(File directory, int segmentSize, int maxSegments) throws IOException {
+        m_directory = directory;
+        m_segmentSize = Math.max(segmentSize, 1024);
+        m_maxSegments = Math.max(maxSegments, 1);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create spool directory " + directory);
+        }
+
+        m_position = map(new File(directory, POSITION_FILE), 12);
+        long[] segments = listSegments();
+        m_readSegment = m_position.getLong(0);
+        m_readOffset = m_position.getInt(8);
+        if (segments.length == 0 || m_readSegment < segments[0] || m_readSegment > segments[segments.length - 1]) {
+            // no segments or no valid position, start at the first segment
+            m_readSegment = segments.length > 0 ? segments[0] : 0;
+            m_readOffset = 0;
+        }
+        for (long segment : segments) {
+            if (segment < m_readSegment) {
+                getSegmentFile(segment).delete();
+            }
+        }
+
+        m_writeSegment = segments.length > 0 ? segments[segments.length - 1] : m_readSegment;
+        m_writeBuffer = map(getSegmentFile(m_writeSegment), m_segmentSize);
+        int end = m_writeSegment == m_readSegment ? m_readOffset : 0;
+        byte[] recovered;
+        while ((recovered = readRecord(m_writeBuffer, end)) != null) {
+            end += RECORD_HEADER + recovered.length;
+        }
+        if (end + 4 <= m_writeBuffer.capacity()) {
+            // discard the remains of a message that was torn by a crash
+            m_writeBuffer.putInt(end, 0);
+        }
+        m_writeBuffer.position(end);
+        // skips segments that were replayed completely but not deleted yet
+        acknowledge(0);
+    }
+
+    /**
+     * Appends a message at the end of the spool.
+     *
+     * @param message the message
+     * @throws IOException if the message could not be stored, e.g. because the spool is full
+     */
+    synchronized void append(byte[] message) throws IOException {
+        checkOpen();
+        int size = RECORD_HEADER + message.length;
+        if (size > m_segmentSize) {
+            throw new IOException("Message of " + message.length + " bytes exceeds the spool segment size");
+        }
+        if (m_writeBuffer.remaining() < size) {
+            if (m_writeSegment - m_readSegment + 1 >= m_maxSegments) {
+                throw new IOException("Spool " + m_directory + " is full");
+            }
+            m_writeBuffer.force();
+            m_writeSegment++;
+            m_writeBuffer = map(getSegmentFile(m_writeSegment), m_segmentSize);
+        }
+        m_crc.reset();
+        m_crc.update(message, 0, message.length);
+        int offset = m_writeBuffer.position();
+        m_writeBuffer.position(offset + 4);
+        m_writeBuffer.putInt((int) m_crc.getValue());
+        m_writeBuffer.put(message);
+        if (m_writeBuffer.remaining() >= 4) {
+            // ends the data, in case the remains of a torn message follow
+            m_writeBuffer.putInt(m_writeBuffer.position(), 0);
+        }
+        // the length is written last, so that a partially written message is never seen as complete
+        m_writeBuffer.putInt(offset, message.length + 1);
+    }
+
+    /**
+     * Reads messages from the start of the spool without removing them.
+     *
+     * @param max the maximum number of messages
+     * @return the oldest messages that were not acknowledged yet, empty if the spool is empty
+     * @throws IOException if a segment could not be read
+     */
+    synchronized List<byte[]> peek(int max) throws IOException {
+        checkOpen();
+        List<byte[]> messages = new ArrayList<byte[]>(max);
+        long segment = m_readSegment;
+        int offset = m_readOffset;
+        MappedByteBuffer buffer = getReadBuffer();
+        while (messages.size() < max) {
+            byte[] message = readRecord(buffer, offset);
+            if (message == null) {
+                if (segment == m_writeSegment) {
+                    break;
+                }
+                segment++;
+                offset = 0;
+                buffer = segment == m_writeSegment ? m_writeBuffer : map(getSegmentFile(segment), m_segmentSize);
+                continue;
+            }
+            messages.add(message);
+            offset += RECORD_HEADER + message.length;
+        }
+        return messages;
+    }
+
+    /**
+     * Removes messages from the start of the spool, deleting the segments that were read completely.
+     *
+     * @param count the number of messages that were delivered
+     * @throws IOException if a segment could not be read
+     */
+    synchronized void acknowledge(int count) throws IOException {
+        checkOpen();
+        MappedByteBuffer buffer = getReadBuffer();
+        while (true) {
+            byte[] message = readRecord(buffer, m_readOffset);
+            if (message == null) {
+                // also moves past a segment that was read completely before, so that an empty spool is on the
+                // segment that is written
+                if (m_readSegment == m_writeSegment) {
+                    break;
+                }
+                File segmentFile = getSegmentFile(m_readSegment);
+                m_readSegment++;
+                m_readOffset = 0;
+                m_readBuffer = null;
+                buffer = getReadBuffer();
+                segmentFile.delete();
+                continue;
+            }
+            if (count == 0) {
+                break;
+            }
+            m_readOffset += RECORD_HEADER + message.length;
+            count--;
+        }
+        storePosition();
+    }
+
+    /**
+     * @return <code>true</code> if all messages were acknowledged
+     */
+    synchronized boolean isEmpty() {
+        return m_readSegment == m_writeSegment && m_readOffset == m_writeBuffer.position();
+    }
+
+    /**
+     * Marks the spool as being replayed, so that it is replayed by one task at a time.
+     *
+     * @return <code>false</code> if the spool is replayed already
+     */
+    synchronized boolean startReplay() {
+        if (m_replaying || m_closed) {
+            return false;
+        }
+        m_replaying = true;
+        return true;
+    }
+
+    synchronized void endReplay() {
+        m_replaying = false;
+    }
+
+    /**
+     * Closes the spool and deletes its directory, unless it still holds messages or is being replayed.
+     *
+     * @return <code>true</code> if the spool was deleted
+     */
+    synchronized boolean deleteIfEmpty() {
+        if (m_closed || m_replaying || !isEmpty()) {
+            return false;
+        }
+        m_closed = true;
+        File[] files = m_directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        m_directory.delete();
+        return true;
+    }
+
+    synchronized boolean isClosed() {
+        return m_closed;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!m_closed) {
+            m_closed = true;
+            m_writeBuffer.force();
+            m_position.force();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MessageSpool [directory=" + m_directory + "]";
+    }
+
+    private MappedByteBuffer getReadBuffer() throws IOException {
+        if (m_readSegment == m_writeSegment) {
+            return m_writeBuffer;
+        }
+        if (m_readBuffer == null) {
+            m_readBuffer = map(getSegmentFile(m_readSegment), m_segmentSize);
+        }
+        return m_readBuffer;
+    }
+
+    /**
+     * @return the content of the message at the offset, or <code>null</code> if there is no complete message
+     */
+    private byte[] readRecord(MappedByteBuffer buffer, int offset) {
+        if (offset + RECORD_HEADER > buffer.capacity()) {
+            return null;
+        }
+        int length = buffer.getInt(offset) - 1;
+        if (length < 0 || offset + RECORD_HEADER + length > buffer.capacity()) {
+            return null;
+        }
+        byte[] message = new byte[length];
+        ByteBuffer record = buffer.duplicate();
+        record.position(offset + RECORD_HEADER);
+        record.get(message);
+        m_crc.reset();
+        m_crc.update(message, 0, length);
+        if ((int) m_crc.getValue() != buffer.getInt(offset + 4)) {
+            return null;
+        }
+        return message;
+    }
+
+    private void storePosition() {
+        m_position.putLong(0, m_readSegment);
+        m_position.putInt(8, m_readOffset);
+    }
+
+    private void checkOpen() throws IOException {
+        if (m_closed) {
+            throw new IOException("Spool " + m_directory + " is closed");
+        }
+    }
+
+    private long[] listSegments() {
+        String[] names = m_directory.list(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        List<Long> segments = new ArrayList<Long>();
+        if (names != null) {
+            for (String name : names) {
+                try {
+                    segments.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+                }
+                catch (NumberFormatException e) {
+                    // not a segment
+                }
+            }
+        }
+        long[] result = new long[segments.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = segments.get(i);
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    private File getSegmentFile(long segment) {
+        return new File(m_directory, String.format("%016d%s", segment, SEGMENT_SUFFIX));
+    }
+
+    private static MappedByteBuffer map(File file, int size) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            return raf.getChannel().map(MapMode.READ_WRITE, 0, size);
+        }
+        finally {
+            // the mapping stays valid after the channel is closed
+            raf.close();
+        }
+    }
+}
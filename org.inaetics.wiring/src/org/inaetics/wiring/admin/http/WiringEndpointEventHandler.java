@@ -3,6 +3,9 @@
  */
 package org.inaetics.wiring.admin.http;
 
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.security.GeneralSecurityException;
 import java.util.Collections;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -42,7 +45,13 @@ public class WiringEndpointEventHandler extends AbstractComponentDelegate implem
 
 	private void endpointAdded(WiringEndpointDescription endpoint) {
 		m_importedEndpoints.add(endpoint);
-		m_clientFactory.addEndpoint(endpoint);
+		try {
+			m_clientFactory.addEndpoint(endpoint);
+		} catch (MalformedURLException e) {
+			logError("invalid endpoint url for %s", e, endpoint);
+		} catch (IOException | GeneralSecurityException e) {
+			logError("failed to set up secure connections for %s", e, endpoint);
+		}
 	}
 
 	private void endpointRemoved(WiringEndpointDescription endpoint) {
@@ -3,6 +3,9 @@
  */
 package org.inaetics.wiring.admin.http;
 
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+
 import org.inaetics.wiring.WiringEndpointDescription;
 import org.inaetics.wiring.endpoint.WiringSender;
 
@@ -24,10 +27,30 @@ public final class WiringSenderImpl implements WiringSender {
     }
 
 	@Override
-	public String sendMessage(String message) throws Exception {
+	public byte[] sendMessage(byte[] message) throws Exception {
 		return m_endpointFactory.sendMessage(m_endpoint.getId(), message);
 	}
 
+	@Override
+	public InputStream sendMessageStreaming(byte[] message) throws Exception {
+		return m_endpointFactory.sendMessageStreaming(m_endpoint.getId(), message);
+	}
+
+	@Override
+	public CompletableFuture<byte[]> sendMessageAsync(byte[] message) {
+		return m_endpointFactory.sendMessageAsync(m_endpoint.getId(), message);
+	}
+
+	@Override
+	public CompletableFuture<byte[]> sendIdempotentAsync(byte[] message) {
+		return m_endpointFactory.sendIdempotentAsync(m_endpoint.getId(), message);
+	}
+
+	@Override
+	public CompletableFuture<Void> sendOneWay(byte[] message) {
+		return m_endpointFactory.sendOneWay(m_endpoint, message);
+	}
+
 	@Override
 	public String toString() {
 		return "WiringSenderImpl [endpointId=" + m_endpoint.getId() + "]";
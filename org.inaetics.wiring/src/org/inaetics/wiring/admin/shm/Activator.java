@@ -0,0 +1,233 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.shm;
+
+import static org.inaetics.wiring.admin.shm.ShmAdminConstants.DIRECTORY_CONFIG_KEY;
+import static org.inaetics.wiring.admin.shm.ShmAdminConstants.DISPATCH_QUEUE_SIZE_CONFIG_KEY;
+import static org.inaetics.wiring.admin.shm.ShmAdminConstants.DISPATCH_THREADS_CONFIG_KEY;
+import static org.inaetics.wiring.admin.shm.ShmAdminConstants.HOST_ID_CONFIG_KEY;
+import static org.inaetics.wiring.admin.shm.ShmAdminConstants.NODE_CONFIG_KEY;
+import static org.inaetics.wiring.admin.shm.ShmAdminConstants.PROTOCOL_NAME;
+import static org.inaetics.wiring.admin.shm.ShmAdminConstants.PROTOCOL_VERSION;
+import static org.inaetics.wiring.admin.shm.ShmAdminConstants.READ_TIMEOUT_CONFIG_KEY;
+import static org.inaetics.wiring.admin.shm.ShmAdminConstants.SLOT_COUNT_CONFIG_KEY;
+import static org.inaetics.wiring.admin.shm.ShmAdminConstants.SLOT_SIZE_CONFIG_KEY;
+import static org.inaetics.wiring.admin.shm.ShmAdminConstants.ZONE_CONFIG_KEY;
+import static org.inaetics.wiring.base.ServiceUtil.getConfigIntValue;
+import static org.inaetics.wiring.base.ServiceUtil.getConfigStringValue;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Dictionary;
+import java.util.Hashtable;
+
+import org.apache.felix.dm.Component;
+import org.apache.felix.dm.DependencyActivatorBase;
+import org.apache.felix.dm.DependencyManager;
+import org.inaetics.wiring.WiringAdmin;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.service.cm.ConfigurationException;
+import org.osgi.service.cm.ManagedService;
+import org.osgi.service.log.LogService;
+
+/**
+ * Activator and configuration manager for the shared memory Wiring Admin service implementation.
+ * <p>
+ * Configuration can be provided through cm as well as system properties. The former take precedence and
+ * in addition some fallbacks and defaults are provided. See {@link ShmAdminConstants} for supported
+ * configuration properties.
+ * <p>
+ * Note that a change of the directory or host id will close all existing import- and export registrations.
+ *
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+public final class Activator extends DependencyActivatorBase implements ManagedService, ShmAdminConfiguration {
+
+    private static final String DEFAULT_DIRECTORY = new File(System.getProperty("java.io.tmpdir"), "inaetics-wiring-shm").getPath();
+    private static final String DEFAULT_HOST_ID = getLocalHostName();
+    private static final int DEFAULT_SLOT_COUNT = 256;
+    private static final int DEFAULT_SLOT_SIZE = 4096;
+    private static final int DEFAULT_READ_TIMEOUT = 60000;
+    private static final int DEFAULT_DISPATCH_THREADS = 8;
+    private static final int DEFAULT_DISPATCH_QUEUE_SIZE = 64;
+
+    private volatile BundleContext m_context;
+    private volatile DependencyManager m_dependencyManager;
+
+    private volatile Component m_configurationComponent;
+    private volatile Component m_adminComponent;
+
+    private volatile File m_directory;
+    private volatile String m_hostId;
+    private volatile int m_slotCount;
+    private volatile int m_slotSize;
+    private volatile int m_readTimeout;
+    private volatile int m_dispatchThreads;
+    private volatile int m_dispatchQueueSize;
+    private volatile String m_zone;
+    private volatile String m_node;
+
+    @Override
+    public void init(BundleContext context, DependencyManager manager) throws Exception {
+
+        m_context = context;
+        m_dependencyManager = manager;
+
+        m_directory = new File(getConfigStringValue(context, DIRECTORY_CONFIG_KEY, null, DEFAULT_DIRECTORY));
+        m_hostId = getConfigStringValue(context, HOST_ID_CONFIG_KEY, null, DEFAULT_HOST_ID);
+        m_slotCount = getConfigIntValue(context, SLOT_COUNT_CONFIG_KEY, null, DEFAULT_SLOT_COUNT);
+        m_slotSize = getConfigIntValue(context, SLOT_SIZE_CONFIG_KEY, null, DEFAULT_SLOT_SIZE);
+        m_readTimeout = getConfigIntValue(context, READ_TIMEOUT_CONFIG_KEY, null, DEFAULT_READ_TIMEOUT);
+        m_dispatchThreads = getConfigIntValue(context, DISPATCH_THREADS_CONFIG_KEY, null, DEFAULT_DISPATCH_THREADS);
+        m_dispatchQueueSize = getConfigIntValue(context, DISPATCH_QUEUE_SIZE_CONFIG_KEY, null, DEFAULT_DISPATCH_QUEUE_SIZE);
+        m_zone = getConfigStringValue(context, ZONE_CONFIG_KEY, null, "");
+        m_node = getConfigStringValue(context, NODE_CONFIG_KEY, null, "");
+
+        registerFactoryService();
+        registerConfigurationService();
+    }
+
+    @Override
+    public void destroy(BundleContext context, DependencyManager manager) throws Exception {
+
+        unregisterConfigurationService();
+        unregisterFactoryService();
+    }
+
+    @Override
+    public void updated(Dictionary<String, ?> properties) throws ConfigurationException {
+
+        // first parse to local variables, in order to make this method "transactional"
+        File directory = new File(getConfigStringValue(m_context, DIRECTORY_CONFIG_KEY, properties, DEFAULT_DIRECTORY));
+        String hostId = getConfigStringValue(m_context, HOST_ID_CONFIG_KEY, properties, DEFAULT_HOST_ID);
+        int slotCount = getConfigIntValue(m_context, SLOT_COUNT_CONFIG_KEY, properties, DEFAULT_SLOT_COUNT);
+        int slotSize = getConfigIntValue(m_context, SLOT_SIZE_CONFIG_KEY, properties, DEFAULT_SLOT_SIZE);
+        int readTimeout = getConfigIntValue(m_context, READ_TIMEOUT_CONFIG_KEY, properties, DEFAULT_READ_TIMEOUT);
+        int dispatchThreads = getConfigIntValue(m_context, DISPATCH_THREADS_CONFIG_KEY, properties, DEFAULT_DISPATCH_THREADS);
+        int dispatchQueueSize = getConfigIntValue(m_context, DISPATCH_QUEUE_SIZE_CONFIG_KEY, properties, DEFAULT_DISPATCH_QUEUE_SIZE);
+        String zone = getConfigStringValue(m_context, ZONE_CONFIG_KEY, properties, "");
+        String node = getConfigStringValue(m_context, NODE_CONFIG_KEY, properties, "");
+
+        boolean restart = !directory.equals(m_directory) || !hostId.equals(m_hostId);
+
+        m_slotCount = slotCount;
+        m_slotSize = slotSize;
+        m_readTimeout = readTimeout;
+        m_dispatchThreads = dispatchThreads;
+        m_dispatchQueueSize = dispatchQueueSize;
+        m_zone = zone;
+        m_node = node;
+
+        if (restart) {
+            m_directory = directory;
+            m_hostId = hostId;
+
+            unregisterFactoryService();
+            registerFactoryService();
+        }
+    }
+
+    private void registerConfigurationService() {
+        Dictionary<String, Object> properties = new Hashtable<String, Object>();
+        properties.put(Constants.SERVICE_PID, ShmAdminConstants.SERVICE_PID);
+
+        Component component = createComponent()
+            .setInterface(ManagedService.class.getName(), properties)
+            .setImplementation(this)
+            .setAutoConfig(DependencyManager.class, false)
+            .setAutoConfig(Component.class, false);
+
+        m_configurationComponent = component;
+        m_dependencyManager.add(component);
+    }
+
+    private void unregisterConfigurationService() {
+        Component component = m_configurationComponent;
+        m_configurationComponent = null;
+        if (component != null) {
+            m_dependencyManager.remove(component);
+        }
+    }
+
+    private void registerFactoryService() {
+
+        WiringAdminFactory factory = new WiringAdminFactory(this);
+
+        Dictionary<String, Object> properties = new Hashtable<String, Object>();
+        properties.put(ShmAdminConstants.ADMIN, true);
+        properties.put(ShmAdminConstants.ADMIN_TYPE, PROTOCOL_NAME + ";" + PROTOCOL_VERSION);
+
+        Component adminComponent = createComponent()
+            .setInterface(WiringAdmin.class.getName(), properties)
+            .setImplementation(factory)
+            .add(createServiceDependency().setService(LogService.class)
+                .setRequired(false));
+        m_adminComponent = adminComponent;
+        m_dependencyManager.add(adminComponent);
+    }
+
+    private void unregisterFactoryService() {
+        Component component = m_adminComponent;
+        m_adminComponent = null;
+        if (component != null) {
+            m_dependencyManager.remove(component);
+        }
+    }
+
+    private static String getLocalHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        }
+        catch (UnknownHostException e) {
+            return "localhost";
+        }
+    }
+
+    @Override
+    public File getDirectory() {
+        return m_directory;
+    }
+
+    @Override
+    public String getHostId() {
+        return m_hostId;
+    }
+
+    @Override
+    public int getSlotCount() {
+        return m_slotCount;
+    }
+
+    @Override
+    public int getSlotSize() {
+        return m_slotSize;
+    }
+
+    @Override
+    public int getReadTimeout() {
+        return m_readTimeout;
+    }
+
+    @Override
+    public int getDispatchThreads() {
+        return m_dispatchThreads;
+    }
+
+    @Override
+    public int getDispatchQueueSize() {
+        return m_dispatchQueueSize;
+    }
+
+    @Override
+    public String getZone() {
+        return m_zone;
+    }
+
+    @Override
+    public String getNode() {
+        return m_node;
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.shm;
+
+import java.io.File;
+
+/**
+ * Interface for accessing shared memory Admin configuration values.
+ *
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+public interface ShmAdminConfiguration {
+
+    /**
+     * returns the directory that holds the ring buffer files
+     * 
+     * @return the directory
+     */
+    public File getDirectory();
+
+    /**
+     * returns the id of the host this admin runs on
+     * 
+     * @return the host id
+     */
+    public String getHostId();
+
+    /**
+     * returns the number of slots per ring buffer
+     * 
+     * @return slot count
+     */
+    public int getSlotCount();
+
+    /**
+     * returns the size of a single ring buffer slot
+     * 
+     * @return slot size in bytes
+     */
+    public int getSlotSize();
+
+    /**
+     * returns the read timeout for the client endpoint
+     * 
+     * @return read timeout in ms
+     */
+    public int getReadTimeout();
+
+    /**
+     * returns the maximum number of threads per server endpoint that invoke the receiver
+     * 
+     * @return dispatch threads per wire
+     */
+    public int getDispatchThreads();
+
+    /**
+     * returns the maximum number of requests per server endpoint that wait for a dispatch thread
+     * 
+     * @return dispatch queue size per wire
+     */
+    public int getDispatchQueueSize();
+
+    /**
+     * returns the zone id
+     * 
+     * @return the zone id
+     */
+    public String getZone();
+    
+    /**
+     * returns the node id
+     * 
+     * @return the node id
+     */
+    public String getNode();    
+
+}
@@ -0,0 +1,71 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.shm;
+
+/**
+ * Compile time constants for the shared memory Wiring Admin.
+ *
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+public interface ShmAdminConstants {
+
+    /**
+     * Configuration PID
+     */
+    String SERVICE_PID = "org.inaetics.wiring.admin.shm";
+
+    /**
+     * Configuration property: directory that holds the ring buffer files, must be shared by all processes on the host
+     */
+    String DIRECTORY_CONFIG_KEY = SERVICE_PID + ".directory";
+
+    /**
+     * Configuration property: id of the host, endpoints are only imported by admins with the same host id
+     */
+    String HOST_ID_CONFIG_KEY = SERVICE_PID + ".hostid";
+
+    /**
+     * Configuration property: number of slots per ring buffer
+     */
+    String SLOT_COUNT_CONFIG_KEY = SERVICE_PID + ".slotcount";
+
+    /**
+     * Configuration property: size of a single ring buffer slot in bytes
+     */
+    String SLOT_SIZE_CONFIG_KEY = SERVICE_PID + ".slotsize";
+
+    /**
+     * Configuration property: timeout
+     */
+    String READ_TIMEOUT_CONFIG_KEY = SERVICE_PID + ".readtimeout";
+
+    /**
+     * Configuration property: maximum number of threads per server endpoint that invoke the receiver
+     */
+    String DISPATCH_THREADS_CONFIG_KEY = SERVICE_PID + ".dispatchthreads";
+
+    /**
+     * Configuration property: maximum number of requests per server endpoint that wait for a dispatch thread, further requests are rejected
+     */
+    String DISPATCH_QUEUE_SIZE_CONFIG_KEY = SERVICE_PID + ".dispatchqueuesize";
+
+    /**
+     * Configuration property: zone
+     */
+    String ZONE_CONFIG_KEY = SERVICE_PID + ".zone";
+
+    /**
+     * Configuration property: node
+     */
+    String NODE_CONFIG_KEY = SERVICE_PID + ".node";
+
+    /** Indicates that a service is actually a admin service, should have a value of "true". */
+    String ADMIN = "admin";
+    /** Indicates what kind of discovery service is provided. */
+    String ADMIN_TYPE = "admin.type";
+
+    String PROTOCOL_NAME = "inaetics.wiring.shm";
+    String PROTOCOL_VERSION = "1.0";
+    String SECURE = "no";
+}
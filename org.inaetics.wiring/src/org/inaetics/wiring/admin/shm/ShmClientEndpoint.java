@@ -0,0 +1,207 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.shm;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import org.inaetics.wiring.WiringEndpointDescription;
+import org.osgi.framework.ServiceException;
+
+/**
+ * Client side of a single wire to a server endpoint on the same host. The client creates its own pair of
+ * {@link ShmRing}s in the directory of the wire: a request ring that it writes and a response ring that the
+ * server writes. The request ring is moved into place last, which tells the server that the pair is ready.
+ * Requests are matched to their responses by correlation id, a daemon thread reads the response ring.
+ *
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+final class ShmClientEndpoint {
+
+    static final String REQUEST_SUFFIX = ".req";
+    static final String RESPONSE_SUFFIX = ".resp";
+
+    private final Map<Long, CompletableFuture<byte[]>> m_pending = new ConcurrentHashMap<Long, CompletableFuture<byte[]>>();
+    private final AtomicLong m_correlationIds = new AtomicLong();
+
+    private final WiringEndpointDescription m_endpoint;
+    private final ShmAdminConfiguration m_configuration;
+    private final ScheduledExecutorService m_scheduler;
+
+    private final File m_requestFile;
+    private final File m_responseFile;
+    private final ShmRing m_requestRing;
+    private final ShmRing m_responseRing;
+    private final Thread m_reader;
+
+    private volatile boolean m_closed;
+
+    ShmClientEndpoint(WiringEndpointDescription endpoint, File directory, ShmAdminConfiguration configuration,
+        ScheduledExecutorService scheduler) throws IOException {
+
+        m_endpoint = endpoint;
+        m_configuration = configuration;
+        m_scheduler = scheduler;
+
+        String name = UUID.randomUUID().toString();
+        m_requestFile = new File(directory, name + REQUEST_SUFFIX);
+        m_responseFile = new File(directory, name + RESPONSE_SUFFIX);
+
+        m_responseRing = ShmRing.create(m_responseFile, configuration.getSlotCount(), configuration.getSlotSize());
+        try {
+            File tempFile = new File(directory, name + ".tmp");
+            m_requestRing = ShmRing.create(tempFile, configuration.getSlotCount(), configuration.getSlotSize());
+            try {
+                Files.move(tempFile.toPath(), m_requestFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (IOException e) {
+                m_requestRing.close(true);
+                throw e;
+            }
+        }
+        catch (IOException e) {
+            m_responseRing.close(true);
+            throw e;
+        }
+
+        m_reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                readResponses();
+            }
+        }, "wiring-shm-client-" + endpoint.getId());
+        m_reader.setDaemon(true);
+        m_reader.start();
+    }
+
+    byte[] sendMessage(byte[] message) throws Exception {
+        try {
+            return sendMessageAsync(message).get();
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    CompletableFuture<byte[]> sendMessageAsync(byte[] message) {
+        final long correlationId = m_correlationIds.incrementAndGet();
+        final CompletableFuture<byte[]> future = new CompletableFuture<byte[]>();
+        m_pending.put(correlationId, future);
+
+        final int readTimeout = m_configuration.getReadTimeout();
+        final ScheduledFuture<?> timeout = m_scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                fail(correlationId, new TimeoutException("No response within " + readTimeout + " ms"));
+            }
+        }, readTimeout, TimeUnit.MILLISECONDS);
+        future.whenComplete(new BiConsumer<byte[], Throwable>() {
+            @Override
+            public void accept(byte[] result, Throwable exception) {
+                timeout.cancel(false);
+            }
+        });
+
+        try {
+            if (m_closed) {
+                throw new IOException("Client endpoint for wire " + m_endpoint.getId() + " closed");
+            }
+            synchronized (m_requestRing) {
+                m_requestRing.write(correlationId, 0, message, readTimeout);
+            }
+        }
+        catch (TimeoutException e) {
+            fail(correlationId, e);
+        }
+        catch (IOException e) {
+            fail(correlationId, e);
+            // the ring is closed, possibly in the middle of a request, so the server can not use it anymore
+            close();
+        }
+        return future;
+    }
+
+    /**
+     * Closes both rings, which ends the session on the server side, and fails all pending requests.
+     */
+    void close() {
+        if (m_closed) {
+            return;
+        }
+        m_closed = true;
+        synchronized (m_requestRing) {
+            m_requestRing.close(false);
+        }
+        m_responseRing.close(false);
+        m_reader.interrupt();
+        m_requestFile.delete();
+        m_responseFile.delete();
+        failAll(new IOException("Client endpoint for wire " + m_endpoint.getId() + " closed"));
+    }
+
+    private void readResponses() {
+        try {
+            while (!m_closed) {
+                ShmRing.Message response = m_responseRing.read(-1);
+                if (response == null) {
+                    continue;
+                }
+                if (response.isRejected()) {
+                    CompletableFuture<byte[]> future = m_pending.remove(response.getCorrelationId());
+                    if (future != null) {
+                        future.completeExceptionally(new RejectedExecutionException("Remote endpoint "
+                            + m_endpoint.getId() + " is overloaded"));
+                    }
+                }
+                else if (response.isError()) {
+                    fail(response.getCorrelationId(), new IOException(new String(response.getPayload(), StandardCharsets.UTF_8)));
+                }
+                else {
+                    CompletableFuture<byte[]> future = m_pending.remove(response.getCorrelationId());
+                    if (future != null) {
+                        future.complete(response.getPayload());
+                    }
+                }
+            }
+        }
+        catch (IOException e) {
+            failAll(new IOException("Wire " + m_endpoint.getId() + " closed by server endpoint", e));
+        }
+    }
+
+    private void fail(long correlationId, Throwable cause) {
+        CompletableFuture<byte[]> future = m_pending.remove(correlationId);
+        if (future != null) {
+            future.completeExceptionally(new ServiceException("Remote service invocation failed: " + cause.getMessage(),
+                ServiceException.REMOTE, cause));
+        }
+    }
+
+    private void failAll(Throwable cause) {
+        Iterator<Long> iter = m_pending.keySet().iterator();
+        while (iter.hasNext()) {
+            fail(iter.next(), cause);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.shm;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+import org.inaetics.wiring.WiringEndpointDescription;
+import org.inaetics.wiring.base.AbstractComponentDelegate;
+
+/**
+ * Provides a factory that creates a {@link ShmClientEndpoint} for each imported endpoint.
+ * 
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+public class ShmClientEndpointFactory extends AbstractComponentDelegate {
+
+	private final Map<String, ShmClientEndpoint> m_clients =
+			new ConcurrentHashMap<String, ShmClientEndpoint>();
+
+    private final ShmAdminConfiguration m_configuration;
+
+    private volatile ScheduledExecutorService m_scheduler;
+
+    public ShmClientEndpointFactory(WiringAdminFactory factory, ShmAdminConfiguration configuration) {
+    	super(factory);
+        m_configuration = configuration;
+    }
+
+    @Override
+    protected void startComponentDelegate() {
+        m_scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "wiring-shm-timeout");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    protected void stopComponentDelegate() {
+        for (ShmClientEndpoint client : m_clients.values()) {
+            client.close();
+        }
+        m_clients.clear();
+        m_scheduler.shutdownNow();
+    }
+
+    public WiringSenderImpl addEndpoint(WiringEndpointDescription endpoint) throws IOException {
+    	ShmClientEndpoint client = m_clients.get(endpoint.getId());
+    	if (client == null) {
+    		String path = endpoint.getProperty(ShmWiringEndpointProperties.PATH);
+    		File directory = path != null ? new File(path, endpoint.getId()) : null;
+    		if (directory == null || !directory.isDirectory()) {
+    			throw new IllegalArgumentException("Invalid endpoint path: " + directory);
+    		}
+    		client = new ShmClientEndpoint(endpoint, directory, m_configuration, m_scheduler);
+    		m_clients.put(endpoint.getId(), client);
+    	}
+		return new WiringSenderImpl(this, endpoint);
+    }
+    
+    public void removeEndpoint(WiringEndpointDescription endpoint) {
+    	ShmClientEndpoint client = m_clients.remove(endpoint.getId());
+    	if (client != null) {
+    		client.close();
+    	}
+    }
+
+    public byte[] sendMessage(String wireId, byte[] message) throws Exception {
+		ShmClientEndpoint shmClientEndpoint = m_clients.get(wireId);
+		if (shmClientEndpoint == null) {
+	    	throw new Exception("remote endpoint not found");
+		}			
+		return shmClientEndpoint.sendMessage(message);
+    }
+
+    public CompletableFuture<byte[]> sendMessageAsync(String wireId, byte[] message) {
+		ShmClientEndpoint shmClientEndpoint = m_clients.get(wireId);
+		if (shmClientEndpoint == null) {
+			CompletableFuture<byte[]> future = new CompletableFuture<byte[]>();
+			future.completeExceptionally(new Exception("remote endpoint not found"));
+			return future;
+		}
+		return shmClientEndpoint.sendMessageAsync(message);
+    }
+}
@@ -0,0 +1,486 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.shm;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single producer / single consumer ring of messages in a memory mapped file, shared between two processes
+ * on the same host.
+ * <p>
+ * The ring consists of a fixed number of fixed size slots. Every slot carries the sequence number it was
+ * written with, which is published last; the consumer waits until the slot of the next expected sequence
+ * carries that sequence. The consumer in turn publishes its position in the file header, so that the producer
+ * does not overwrite slots that were not read yet. Messages that do not fit into one slot are split over
+ * consecutive slots; a message that fits into the ring is only written once all of its slots are free, and its first
+ * slot is published last, so that the consumer never sees part of it. Both sides wait by spinning first, then
+ * yielding and finally parking with a growing timeout, since there is no way to signal a thread in another process.
+ * <p>
+ * The sequences and the closed flag are accessed with the ordered and volatile accesses of
+ * <code>sun.misc.Unsafe</code>, so that a slot is only published after its content and only released after it was
+ * read, on any hardware. Rings can not be created or opened on a VM that does not provide them.
+ * <p>
+ * Layout: header (magic, slot count, slot size, closed flag), the consumer sequence on its own cache line, then
+ * the slots. Each slot starts with its sequence (8 bytes), the correlation id (8), the total message length (4),
+ * the length of the chunk in this slot (4) and the message flags (4), followed by the chunk at offset 32.
+ *
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+final class ShmRing implements Closeable {
+
+    private static final int MAGIC = 0x494e5752; // "INWR"
+
+    private static final int MAGIC_OFFSET = 0;
+    private static final int SLOT_COUNT_OFFSET = 4;
+    private static final int SLOT_SIZE_OFFSET = 8;
+    private static final int CLOSED_OFFSET = 12;
+    private static final int CONSUMER_SEQUENCE_OFFSET = 64;
+    private static final int SLOTS_OFFSET = 128;
+
+    private static final int SLOT_SEQUENCE = 0;
+    private static final int SLOT_CORRELATION_ID = 8;
+    private static final int SLOT_TOTAL_LENGTH = 16;
+    private static final int SLOT_CHUNK_LENGTH = 20;
+    private static final int SLOT_FLAGS = 24;
+    private static final int SLOT_HEADER_SIZE = 32;
+
+    /** message flag: the payload is an error description rather than a result */
+    static final int FLAG_ERROR = 1;
+
+    /** message flag: the request was not processed because the wire is overloaded, the payload is empty */
+    static final int FLAG_REJECTED = 2;
+
+    private static final int SPIN_TRIES = 1000;
+    private static final int YIELD_TRIES = 100;
+    private static final long MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /** ordered and volatile accessors of <code>sun.misc.Unsafe</code>, <code>null</code> if it is not available */
+    private static final MethodHandle GET_LONG;
+    private static final MethodHandle GET_LONG_VOLATILE;
+    private static final MethodHandle PUT_ORDERED_LONG;
+    private static final MethodHandle GET_INT_VOLATILE;
+    private static final MethodHandle PUT_INT_VOLATILE;
+    private static final long ADDRESS_OFFSET;
+
+    static {
+        MethodHandle getLong = null;
+        MethodHandle getLongVolatile = null;
+        MethodHandle putOrderedLong = null;
+        MethodHandle getIntVolatile = null;
+        MethodHandle putIntVolatile = null;
+        long addressOffset = -1;
+        try {
+            // through reflection, so that neither the compiler nor the framework has to expose sun.misc
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe", true, null);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Object unsafe = theUnsafe.get(null);
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            addressOffset = (Long) unsafeClass.getMethod("objectFieldOffset", Field.class).invoke(unsafe,
+                Buffer.class.getDeclaredField("address"));
+            getLong = lookup.findVirtual(unsafeClass, "getLong",
+                MethodType.methodType(long.class, Object.class, long.class)).bindTo(unsafe);
+            getLongVolatile = lookup.findVirtual(unsafeClass, "getLongVolatile",
+                MethodType.methodType(long.class, Object.class, long.class)).bindTo(unsafe);
+            putOrderedLong = lookup.findVirtual(unsafeClass, "putOrderedLong",
+                MethodType.methodType(void.class, Object.class, long.class, long.class)).bindTo(unsafe);
+            getIntVolatile = lookup.findVirtual(unsafeClass, "getIntVolatile",
+                MethodType.methodType(int.class, Object.class, long.class)).bindTo(unsafe);
+            putIntVolatile = lookup.findVirtual(unsafeClass, "putIntVolatile",
+                MethodType.methodType(void.class, Object.class, long.class, int.class)).bindTo(unsafe);
+        }
+        catch (Exception | LinkageError e) {
+            getLong = null;
+        }
+        GET_LONG = getLong;
+        GET_LONG_VOLATILE = getLongVolatile;
+        PUT_ORDERED_LONG = putOrderedLong;
+        GET_INT_VOLATILE = getIntVolatile;
+        PUT_INT_VOLATILE = putIntVolatile;
+        ADDRESS_OFFSET = addressOffset;
+    }
+
+    private final File m_file;
+    private final RandomAccessFile m_raf;
+    private final MappedByteBuffer m_buffer;
+    /** view for bulk payload copies, only used by the owning side */
+    private final ByteBuffer m_view;
+    private final int m_slotCount;
+    private final int m_slotSize;
+    /** native address of the mapping */
+    private final long m_address;
+
+    /** next sequence to write (producer side) or read (consumer side), only used by the owning side */
+    private long m_sequence;
+    /** cached consumer sequence (producer side) */
+    private long m_consumerSequence;
+
+    private ShmRing(File file, RandomAccessFile raf, MappedByteBuffer buffer, int slotCount, int slotSize) {
+        m_file = file;
+        m_raf = raf;
+        m_buffer = buffer;
+        m_view = buffer.duplicate();
+        m_slotCount = slotCount;
+        m_slotSize = slotSize;
+        try {
+            m_address = (long) GET_LONG.invokeExact((Object) buffer, ADDRESS_OFFSET);
+        }
+        catch (Throwable e) {
+            throw new IllegalStateException("Failed to locate mapping of ring file " + file, e);
+        }
+    }
+
+    /**
+     * Creates a new ring file, replacing an existing file.
+     */
+    static ShmRing create(File file, int slotCount, int slotSize) throws IOException {
+        if (slotCount < 2 || slotSize <= SLOT_HEADER_SIZE || slotSize % 8 != 0) {
+            throw new IllegalArgumentException("Invalid ring dimensions: " + slotCount + " x " + slotSize);
+        }
+        checkSupported();
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Failed to delete stale ring file " + file);
+        }
+        long size = SLOTS_OFFSET + (long) slotCount * slotSize;
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(size);
+            MappedByteBuffer buffer = raf.getChannel().map(MapMode.READ_WRITE, 0, size);
+            buffer.putInt(SLOT_COUNT_OFFSET, slotCount);
+            buffer.putInt(SLOT_SIZE_OFFSET, slotSize);
+            ShmRing ring = new ShmRing(file, raf, buffer, slotCount, slotSize);
+            ring.putIntVolatile(CLOSED_OFFSET, 0);
+            ring.putOrderedLong(CONSUMER_SEQUENCE_OFFSET, 0);
+            for (int i = 0; i < slotCount; i++) {
+                // no slot may look like it holds sequence 0
+                ring.putOrderedLong(SLOTS_OFFSET + i * slotSize + SLOT_SEQUENCE, -1);
+            }
+            buffer.putInt(MAGIC_OFFSET, MAGIC);
+            return ring;
+        }
+        catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens an existing ring file that was created by the other side.
+     */
+    static ShmRing open(File file) throws IOException {
+        checkSupported();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, channel.size());
+            if (channel.size() < SLOTS_OFFSET || buffer.getInt(MAGIC_OFFSET) != MAGIC) {
+                throw new IOException("Not a ring file: " + file);
+            }
+            int slotCount = buffer.getInt(SLOT_COUNT_OFFSET);
+            int slotSize = buffer.getInt(SLOT_SIZE_OFFSET);
+            if (slotSize % 8 != 0 || channel.size() != SLOTS_OFFSET + (long) slotCount * slotSize) {
+                throw new IOException("Corrupt ring file: " + file);
+            }
+            ShmRing ring = new ShmRing(file, raf, buffer, slotCount, slotSize);
+            // a consumer that opens a ring continues where the previous one stopped
+            ring.m_sequence = ring.getLongVolatile(CONSUMER_SEQUENCE_OFFSET);
+            return ring;
+        }
+        catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    File getFile() {
+        return m_file;
+    }
+
+    /**
+     * Writes a message, waiting for free slots if the ring is full. Must only be called by the producer.
+     * <p>
+     * A message that fits into the ring is written as a whole or not at all. A larger message is streamed while the
+     * consumer reads it; if the consumer stalls in the middle of it, the ring is closed, since the consumer has no
+     * way to skip the chunks it already read.
+     * 
+     * @param correlationId the correlation id of the message
+     * @param flags the message flags
+     * @param message the message
+     * @param timeout the maximum time to wait for free slots in ms
+     * @throws TimeoutException if the consumer did not free enough slots in time, nothing was written
+     * @throws IOException if the ring was closed by either side
+     */
+    void write(long correlationId, int flags, byte[] message, long timeout) throws IOException, TimeoutException {
+        if (isClosed()) {
+            throw new IOException("Ring closed: " + m_file);
+        }
+        int chunkSize = m_slotSize - SLOT_HEADER_SIZE;
+        long slots = Math.max(1, (message.length + (long) chunkSize - 1) / chunkSize);
+        if (slots <= m_slotCount) {
+            awaitFreeSlots((int) slots, timeout);
+            long first = m_sequence;
+            int offset = 0;
+            for (long sequence = first; sequence < first + slots; sequence++) {
+                offset += writeSlot(sequence, correlationId, flags, message, offset);
+                if (sequence != first) {
+                    putOrderedLong(slotOffset(sequence) + SLOT_SEQUENCE, sequence);
+                }
+            }
+            // the consumer waits for the first slot, so this publishes the whole message at once
+            putOrderedLong(slotOffset(first) + SLOT_SEQUENCE, first);
+            m_sequence = first + slots;
+            return;
+        }
+        int offset = 0;
+        for (long i = 0; i < slots; i++) {
+            try {
+                awaitFreeSlots(1, timeout);
+            }
+            catch (TimeoutException e) {
+                if (i == 0) {
+                    throw e;
+                }
+                putIntVolatile(CLOSED_OFFSET, 1);
+                throw new IOException("Consumer stalled in the middle of a message, closed ring " + m_file, e);
+            }
+            offset += writeSlot(m_sequence, correlationId, flags, message, offset);
+            putOrderedLong(slotOffset(m_sequence) + SLOT_SEQUENCE, m_sequence);
+            m_sequence++;
+        }
+    }
+
+    /**
+     * Writes the header and the next chunk of a message into the slot of a sequence, without publishing it.
+     * 
+     * @return the length of the chunk
+     */
+    private int writeSlot(long sequence, long correlationId, int flags, byte[] message, int offset) {
+        int chunk = Math.min(m_slotSize - SLOT_HEADER_SIZE, message.length - offset);
+        int slot = slotOffset(sequence);
+        m_buffer.putLong(slot + SLOT_CORRELATION_ID, correlationId);
+        m_buffer.putInt(slot + SLOT_TOTAL_LENGTH, message.length);
+        m_buffer.putInt(slot + SLOT_CHUNK_LENGTH, chunk);
+        m_buffer.putInt(slot + SLOT_FLAGS, flags);
+        m_view.position(slot + SLOT_HEADER_SIZE);
+        m_view.put(message, offset, chunk);
+        return chunk;
+    }
+
+    /**
+     * Reads the next message, waiting until it is available. Must only be called by the consumer.
+     * 
+     * @param timeout the maximum time to wait in ms, or a negative value to wait until the ring is closed
+     * @return the message, or <code>null</code> if no message arrived within the timeout
+     * @throws IOException if the ring was closed by either side
+     */
+    Message read(long timeout) throws IOException {
+        if (!awaitSequence(m_sequence, timeout)) {
+            return null;
+        }
+        int slot = slotOffset(m_sequence);
+        long correlationId = m_buffer.getLong(slot + SLOT_CORRELATION_ID);
+        int totalLength = m_buffer.getInt(slot + SLOT_TOTAL_LENGTH);
+        int flags = m_buffer.getInt(slot + SLOT_FLAGS);
+        if (totalLength < 0) {
+            throw new IOException("Corrupt ring file: " + m_file);
+        }
+        byte[] message = new byte[totalLength];
+        int offset = 0;
+        do {
+            if (offset > 0 && !awaitSequence(m_sequence, -1)) {
+                return null;
+            }
+            slot = slotOffset(m_sequence);
+            int chunk = m_buffer.getInt(slot + SLOT_CHUNK_LENGTH);
+            if (chunk < 0 || chunk > totalLength - offset || chunk > m_slotSize - SLOT_HEADER_SIZE) {
+                throw new IOException("Corrupt ring file: " + m_file);
+            }
+            m_view.position(slot + SLOT_HEADER_SIZE);
+            m_view.get(message, offset, chunk);
+            offset += chunk;
+            m_sequence++;
+            // release the slot, only after it was read
+            putOrderedLong(CONSUMER_SEQUENCE_OFFSET, m_sequence);
+        }
+        while (offset < totalLength);
+        return new Message(correlationId, flags, message);
+    }
+
+    /**
+     * Marks this ring as closed for the other side and releases the mapping.
+     * 
+     * @param delete whether the ring file must be deleted
+     */
+    void close(boolean delete) {
+        putIntVolatile(CLOSED_OFFSET, 1);
+        m_buffer.force();
+        try {
+            m_raf.close();
+        }
+        catch (IOException e) {
+            // Ignore...
+        }
+        if (delete) {
+            m_file.delete();
+        }
+    }
+
+    @Override
+    public void close() {
+        close(false);
+    }
+
+    boolean isClosed() {
+        return getIntVolatile(CLOSED_OFFSET) != 0;
+    }
+
+    private int slotOffset(long sequence) {
+        return SLOTS_OFFSET + (int) (sequence % m_slotCount) * m_slotSize;
+    }
+
+    private void awaitFreeSlots(int slots, long timeout) throws IOException, TimeoutException {
+        if (m_sequence + slots - m_consumerSequence <= m_slotCount) {
+            return;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        int tries = 0;
+        while (true) {
+            m_consumerSequence = getLongVolatile(CONSUMER_SEQUENCE_OFFSET);
+            if (m_sequence + slots - m_consumerSequence <= m_slotCount) {
+                return;
+            }
+            if (isClosed()) {
+                throw new IOException("Ring closed: " + m_file);
+            }
+            if (System.nanoTime() - deadline > 0) {
+                throw new TimeoutException("No free slot in ring " + m_file);
+            }
+            backOff(tries++);
+        }
+    }
+
+    private boolean awaitSequence(long sequence, long timeout) throws IOException {
+        long deadline = timeout < 0 ? 0 : System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        int slot = slotOffset(sequence);
+        int tries = 0;
+        while (true) {
+            if (getLongVolatile(slot + SLOT_SEQUENCE) == sequence) {
+                return true;
+            }
+            if (isClosed()) {
+                throw new IOException("Ring closed: " + m_file);
+            }
+            if (timeout >= 0 && System.nanoTime() - deadline > 0) {
+                return false;
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Interrupted while reading ring " + m_file);
+            }
+            backOff(tries++);
+        }
+    }
+
+    private static void checkSupported() throws IOException {
+        if (GET_LONG == null) {
+            throw new IOException("Shared memory rings need sun.misc.Unsafe, which this VM does not provide");
+        }
+    }
+
+    private long getLongVolatile(int offset) {
+        try {
+            return (long) GET_LONG_VOLATILE.invokeExact((Object) null, m_address + offset);
+        }
+        catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void putOrderedLong(int offset, long value) {
+        try {
+            PUT_ORDERED_LONG.invokeExact((Object) null, m_address + offset, value);
+        }
+        catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private int getIntVolatile(int offset) {
+        try {
+            return (int) GET_INT_VOLATILE.invokeExact((Object) null, m_address + offset);
+        }
+        catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void putIntVolatile(int offset, int value) {
+        try {
+            PUT_INT_VOLATILE.invokeExact((Object) null, m_address + offset, value);
+        }
+        catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void backOff(int tries) {
+        if (tries < SPIN_TRIES) {
+            return;
+        }
+        if (tries < SPIN_TRIES + YIELD_TRIES) {
+            Thread.yield();
+            return;
+        }
+        int parks = tries - SPIN_TRIES - YIELD_TRIES;
+        LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, MIN_PARK_NANOS << Math.min(parks, 10)));
+    }
+
+    /**
+     * A message read from the ring.
+     */
+    static final class Message {
+
+        private final long m_correlationId;
+        private final int m_flags;
+        private final byte[] m_payload;
+
+        Message(long correlationId, int flags, byte[] payload) {
+            m_correlationId = correlationId;
+            m_flags = flags;
+            m_payload = payload;
+        }
+
+        long getCorrelationId() {
+            return m_correlationId;
+        }
+
+        boolean isError() {
+            return (m_flags & FLAG_ERROR) != 0;
+        }
+
+        boolean isRejected() {
+            return (m_flags & FLAG_REJECTED) != 0;
+        }
+
+        byte[] getPayload() {
+            return m_payload;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.shm;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeoutException;
+
+import org.inaetics.wiring.WiringEndpointDescription;
+import org.inaetics.wiring.base.AbstractComponentDelegate;
+import org.inaetics.wiring.base.PriorityDispatchQueue;
+import org.inaetics.wiring.endpoint.WiringReceiver;
+
+/**
+ * Wiring component that handles all server endpoints. Every exported wire gets a directory below the configured
+ * directory, in which clients create their ring pairs. An accept thread polls these directories for new clients
+ * and starts a session for each of them. A session reads the request ring of its client on a dedicated thread and
+ * invokes the receiver on the bounded executor of the wire, so that a client can have several messages in flight. A
+ * request that does not fit in the executor is answered with a {@link ShmRing#FLAG_REJECTED} response right away.
+ * 
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+public final class ShmServerEndpointHandler extends AbstractComponentDelegate {
+
+    private static final long ACCEPT_INTERVAL = 20;
+
+    private final Map<String, Wire> m_wires = new ConcurrentHashMap<String, Wire>();
+
+    private final ShmAdminConfiguration m_configuration;
+
+    private volatile Thread m_acceptThread;
+
+    public ShmServerEndpointHandler(WiringAdminFactory factory, ShmAdminConfiguration configuration) {
+        super(factory);
+        m_configuration = configuration;
+    }
+
+    @Override
+    protected void startComponentDelegate() {
+        File directory = m_configuration.getDirectory();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            logError("Failed to create directory %s", directory);
+            throw new IllegalStateException("Configuration problem: " + directory);
+        }
+
+        Thread acceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!Thread.currentThread().isInterrupted()) {
+                    for (Wire wire : m_wires.values()) {
+                        wire.accept();
+                    }
+                    try {
+                        Thread.sleep(ACCEPT_INTERVAL);
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }, "wiring-shm-accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+        m_acceptThread = acceptThread;
+    }
+
+    @Override
+    protected void stopComponentDelegate() {
+        m_acceptThread.interrupt();
+        m_acceptThread = null;
+        for (Wire wire : m_wires.values()) {
+            wire.close();
+        }
+        m_wires.clear();
+    }
+
+    /**
+     * Add a Server Endpoint.
+     * 
+     * @param endpoint The Endpoint Description
+     * @param receiver The Wiring Receiver
+     * @throws IOException if the directory of the wire can not be created
+     */
+    public void addEndpoint(WiringEndpointDescription endpoint, WiringReceiver receiver) throws IOException {
+        File directory = new File(m_configuration.getDirectory(), endpoint.getId());
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create directory " + directory);
+        }
+        ThreadPoolExecutor executor = PriorityDispatchQueue.createExecutor("wiring-shm-dispatch-" + endpoint.getId(),
+            Math.max(1, m_configuration.getDispatchThreads()), m_configuration.getDispatchQueueSize());
+        Wire previous = m_wires.put(endpoint.getId(), new Wire(endpoint.getId(), directory, receiver, executor));
+        if (previous != null) {
+            previous.m_executor.shutdown();
+        }
+    }
+
+    /**
+     * Remove a Server Endpoint.
+     * 
+     * @param endpoint The Endpoint Description
+     */
+    public void removeEndpoint(WiringEndpointDescription endpoint) {
+        Wire wire = m_wires.remove(endpoint.getId());
+        if (wire != null) {
+            wire.close();
+        }
+    }
+
+    /**
+     * An exported wire, the executor that invokes its receiver and the sessions of its clients.
+     */
+    private final class Wire {
+
+        private final Map<String, Session> m_sessions = new ConcurrentHashMap<String, Session>();
+
+        private final String m_wireId;
+        private final File m_directory;
+        private final WiringReceiver m_receiver;
+        private final ThreadPoolExecutor m_executor;
+
+        private volatile boolean m_closed;
+
+        Wire(String wireId, File directory, WiringReceiver receiver, ThreadPoolExecutor executor) {
+            m_wireId = wireId;
+            m_directory = directory;
+            m_receiver = receiver;
+            m_executor = executor;
+        }
+
+        void accept() {
+            File[] files = m_directory.listFiles();
+            if (files == null) {
+                return;
+            }
+            for (File file : files) {
+                String name = file.getName();
+                if (!name.endsWith(ShmClientEndpoint.REQUEST_SUFFIX)) {
+                    continue;
+                }
+                String client = name.substring(0, name.length() - ShmClientEndpoint.REQUEST_SUFFIX.length());
+                if (m_sessions.containsKey(client)) {
+                    continue;
+                }
+                try {
+                    Session session = new Session(this, client);
+                    m_sessions.put(client, session);
+                    if (m_closed) {
+                        session.close();
+                    }
+                    else {
+                        session.start();
+                    }
+                }
+                catch (IOException e) {
+                    logWarning("Failed to open rings of client %s on wire %s", e, client, m_wireId);
+                    file.delete();
+                    new File(m_directory, client + ShmClientEndpoint.RESPONSE_SUFFIX).delete();
+                }
+            }
+        }
+
+        void close() {
+            m_closed = true;
+            m_executor.shutdown();
+            for (Session session : m_sessions.values()) {
+                session.close();
+            }
+            File[] files = m_directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            m_directory.delete();
+        }
+    }
+
+    /**
+     * The connection of a single client to a wire.
+     */
+    private final class Session implements Runnable {
+
+        private final Wire m_wire;
+        private final String m_client;
+        private final ShmRing m_requestRing;
+        private final ShmRing m_responseRing;
+        private final Thread m_thread;
+
+        Session(Wire wire, String client) throws IOException {
+            m_wire = wire;
+            m_client = client;
+            m_requestRing = ShmRing.open(new File(wire.m_directory, client + ShmClientEndpoint.REQUEST_SUFFIX));
+            try {
+                m_responseRing = ShmRing.open(new File(wire.m_directory, client + ShmClientEndpoint.RESPONSE_SUFFIX));
+            }
+            catch (IOException e) {
+                m_requestRing.close(false);
+                throw e;
+            }
+            m_thread = new Thread(this, "wiring-shm-session-" + wire.m_wireId + "-" + client);
+            m_thread.setDaemon(true);
+        }
+
+        void start() {
+            m_thread.start();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    final ShmRing.Message request = m_requestRing.read(-1);
+                    if (request == null) {
+                        continue;
+                    }
+                    try {
+                        m_wire.m_executor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                try {
+                                    byte[] result = m_wire.m_receiver.messageReceived(request.getPayload());
+                                    respond(request.getCorrelationId(), 0, result != null ? result : new byte[0]);
+                                }
+                                catch (Exception e) {
+                                    logError("Server Endpoint Handler failed: %s", e, m_wire.m_wireId);
+                                    respondError(request.getCorrelationId(), e.getMessage());
+                                }
+                            }
+                        });
+                    }
+                    catch (RejectedExecutionException e) {
+                        if (m_wire.m_executor.isShutdown()) {
+                            respondError(request.getCorrelationId(), "Server endpoint is shutting down");
+                        }
+                        else {
+                            // overloaded, let the client back off instead of queueing without bound
+                            respond(request.getCorrelationId(), ShmRing.FLAG_REJECTED, new byte[0]);
+                        }
+                    }
+                }
+            }
+            catch (IOException e) {
+                // closed by either side
+            }
+            finally {
+                close();
+            }
+        }
+
+        void close() {
+            if (m_wire.m_sessions.remove(m_client, this)) {
+                m_thread.interrupt();
+                synchronized (this) {
+                    m_requestRing.close(true);
+                    m_responseRing.close(true);
+                }
+            }
+        }
+
+        private void respondError(long correlationId, String message) {
+            respond(correlationId, ShmRing.FLAG_ERROR, String.valueOf(message).getBytes(StandardCharsets.UTF_8));
+        }
+
+        private void respond(long correlationId, int flags, byte[] payload) {
+            try {
+                synchronized (this) {
+                    m_responseRing.write(correlationId, flags, payload, m_configuration.getReadTimeout());
+                }
+            }
+            catch (TimeoutException e) {
+                logWarning("Failed to respond to client %s on wire %s", e, m_client, m_wire.m_wireId);
+            }
+            catch (IOException e) {
+                // the ring is closed, possibly in the middle of a response, so the client can not use it anymore
+                logWarning("Failed to respond to client %s on wire %s", e, m_client, m_wire.m_wireId);
+                close();
+            }
+        }
+    }
+}
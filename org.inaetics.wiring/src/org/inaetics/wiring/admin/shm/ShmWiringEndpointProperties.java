@@ -0,0 +1,13 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.shm;
+
+public interface ShmWiringEndpointProperties {
+
+	public static final String BASE = "inaetics.wiring.shm.";
+	public static final String VERSION = BASE + "version";
+	public static final String HOST = BASE + "host";
+	public static final String PATH = BASE + "path";
+
+}
@@ -0,0 +1,97 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.shm;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.inaetics.wiring.WiringAdmin;
+import org.inaetics.wiring.base.AbstractComponent;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.ServiceFactory;
+import org.osgi.framework.ServiceRegistration;
+
+/**
+ * Factory for the Wiring Admin service implementation.
+ * 
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+public final class WiringAdminFactory extends AbstractComponent implements ServiceFactory<WiringAdmin> {
+
+    private final ConcurrentHashMap<Bundle, WiringAdminImpl> m_instances =
+        new ConcurrentHashMap<Bundle, WiringAdminImpl>();
+
+    private final ShmAdminConfiguration m_configuration;
+    
+    private final ShmServerEndpointHandler m_serverEndpointHandler;
+    private final ShmClientEndpointFactory m_clientEndpointFactory;
+
+    private volatile boolean m_started = false;
+
+    public WiringAdminFactory(ShmAdminConfiguration configuration) {
+        super("admin", "shm");
+        m_configuration = configuration;
+        m_serverEndpointHandler = new ShmServerEndpointHandler(this, m_configuration);
+        m_clientEndpointFactory = new ShmClientEndpointFactory(this, m_configuration);
+    }
+
+    @Override
+    protected void startComponent() throws Exception {
+    	
+    	if(m_started) return;
+    	m_started = true;
+        
+    	super.startComponent();
+
+        m_serverEndpointHandler.start();
+        m_clientEndpointFactory.start();
+    }
+
+    @Override
+    protected void stopComponent() throws Exception {
+    	
+    	if(!m_started) return;
+    	m_started = false;
+    	
+        m_serverEndpointHandler.stop();
+        m_clientEndpointFactory.stop();
+
+        super.stopComponent();
+    }
+
+    @Override
+    public WiringAdmin getService(Bundle bundle, ServiceRegistration<WiringAdmin> registration) {
+
+        WiringAdminImpl instance = new WiringAdminImpl(this, m_configuration);
+        try {
+            instance.start();
+            WiringAdminImpl previous = m_instances.put(bundle, instance);
+            assert previous == null; // framework should guard against this
+            return instance;
+        }
+        catch (Exception e) {
+            logError("Exception while instantiating admin instance!", e);
+            return null;
+        }
+    }
+
+    @Override
+    public void ungetService(Bundle bundle, ServiceRegistration<WiringAdmin> registration,
+    		WiringAdmin service) {
+
+        WiringAdminImpl instance = m_instances.remove(bundle);
+        try {
+            instance.stop();
+        }
+        catch (Exception e) {}
+    }
+
+    ShmServerEndpointHandler getServerEndpointHandler() {
+        return m_serverEndpointHandler;
+    }
+    
+    ShmClientEndpointFactory getClientEndpointFactory() {
+    	return m_clientEndpointFactory;
+    }
+
+}
@@ -0,0 +1,41 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.shm;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.inaetics.wiring.WiringEndpointDescription;
+import org.inaetics.wiring.endpoint.WiringSender;
+
+/**
+ * Wiring Endpoint instance implementation.
+ * 
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+public final class WiringSenderImpl implements WiringSender {
+
+    private final ShmClientEndpointFactory m_endpointFactory;
+    private final WiringEndpointDescription m_endpoint;
+
+    public WiringSenderImpl(ShmClientEndpointFactory endpointFactory, WiringEndpointDescription endpoint) {
+        m_endpointFactory = endpointFactory; 
+        m_endpoint = endpoint;
+    }
+
+	@Override
+	public byte[] sendMessage(byte[] message) throws Exception {
+		return m_endpointFactory.sendMessage(m_endpoint.getId(), message);
+	}
+
+	@Override
+	public CompletableFuture<byte[]> sendMessageAsync(byte[] message) {
+		return m_endpointFactory.sendMessageAsync(m_endpoint.getId(), message);
+	}
+
+	@Override
+	public String toString() {
+		return "WiringSenderImpl [endpointId=" + m_endpoint.getId() + "]";
+	}
+	
+}
@@ -0,0 +1,242 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.tcp;
+
+import static org.inaetics.wiring.admin.tcp.TcpAdminConstants.CONNECT_TIMEOUT_CONFIG_KEY;
+import static org.inaetics.wiring.admin.tcp.TcpAdminConstants.DISPATCH_QUEUE_SIZE_CONFIG_KEY;
+import static org.inaetics.wiring.admin.tcp.TcpAdminConstants.DISPATCH_THREADS_CONFIG_KEY;
+import static org.inaetics.wiring.admin.tcp.TcpAdminConstants.HOST_CONFIG_KEY;
+import static org.inaetics.wiring.admin.tcp.TcpAdminConstants.IO_THREADS_CONFIG_KEY;
+import static org.inaetics.wiring.admin.tcp.TcpAdminConstants.MAX_FRAME_SIZE_CONFIG_KEY;
+import static org.inaetics.wiring.admin.tcp.TcpAdminConstants.MAX_IN_FLIGHT_CONFIG_KEY;
+import static org.inaetics.wiring.admin.tcp.TcpAdminConstants.NODE_CONFIG_KEY;
+import static org.inaetics.wiring.admin.tcp.TcpAdminConstants.PORT_CONFIG_KEY;
+import static org.inaetics.wiring.admin.tcp.TcpAdminConstants.PROTOCOL_NAME;
+import static org.inaetics.wiring.admin.tcp.TcpAdminConstants.PROTOCOL_VERSION;
+import static org.inaetics.wiring.admin.tcp.TcpAdminConstants.READ_TIMEOUT_CONFIG_KEY;
+import static org.inaetics.wiring.admin.tcp.TcpAdminConstants.ZONE_CONFIG_KEY;
+import static org.inaetics.wiring.base.ServiceUtil.getConfigIntValue;
+import static org.inaetics.wiring.base.ServiceUtil.getConfigStringValue;
+
+import java.util.Dictionary;
+import java.util.Hashtable;
+
+import org.apache.felix.dm.Component;
+import org.apache.felix.dm.DependencyActivatorBase;
+import org.apache.felix.dm.DependencyManager;
+import org.inaetics.wiring.WiringAdmin;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.service.cm.ConfigurationException;
+import org.osgi.service.cm.ManagedService;
+import org.osgi.service.log.LogService;
+
+/**
+ * Activator and configuration manager for the TCP Wiring Admin service implementation.
+ * <p>
+ * Configuration can be provided through cm as well as system properties. The former take precedence and
+ * in addition some fallbacks and defaults are provided. See {@link TcpAdminConstants} for supported
+ * configuration properties.
+ * <p>
+ * Note that a change of the host, port or I/O threads will close all existing import- and export registrations.
+ *
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+public final class Activator extends DependencyActivatorBase implements ManagedService, TcpAdminConfiguration {
+
+    private static final int DEFAULT_PORT = 8100;
+    private static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+    private static final int DEFAULT_READ_TIMEOUT = 60000;
+    private static final int DEFAULT_MAX_IN_FLIGHT = 1024;
+    private static final int DEFAULT_MAX_FRAME_SIZE = 16 * 1024 * 1024;
+    private static final int DEFAULT_IO_THREADS = 0;
+    private static final int DEFAULT_DISPATCH_THREADS = 8;
+    private static final int DEFAULT_DISPATCH_QUEUE_SIZE = 64;
+
+    private volatile BundleContext m_context;
+    private volatile DependencyManager m_dependencyManager;
+
+    private volatile Component m_configurationComponent;
+    private volatile Component m_adminComponent;
+
+    private volatile String m_host;
+    private volatile int m_port;
+    private volatile int m_connectTimeout;
+    private volatile int m_readTimeout;
+    private volatile int m_maxInFlight;
+    private volatile int m_maxFrameSize;
+    private volatile int m_ioThreads;
+    private volatile int m_dispatchThreads;
+    private volatile int m_dispatchQueueSize;
+    private volatile String m_zone;
+    private volatile String m_node;
+
+    @Override
+    public void init(BundleContext context, DependencyManager manager) throws Exception {
+
+        m_context = context;
+        m_dependencyManager = manager;
+
+        m_host = getConfigStringValue(context, HOST_CONFIG_KEY, null, "localhost");
+        m_port = getConfigIntValue(context, PORT_CONFIG_KEY, null, DEFAULT_PORT);
+        m_connectTimeout = getConfigIntValue(context, CONNECT_TIMEOUT_CONFIG_KEY, null, DEFAULT_CONNECT_TIMEOUT);
+        m_readTimeout = getConfigIntValue(context, READ_TIMEOUT_CONFIG_KEY, null, DEFAULT_READ_TIMEOUT);
+        m_maxInFlight = getConfigIntValue(context, MAX_IN_FLIGHT_CONFIG_KEY, null, DEFAULT_MAX_IN_FLIGHT);
+        m_maxFrameSize = getConfigIntValue(context, MAX_FRAME_SIZE_CONFIG_KEY, null, DEFAULT_MAX_FRAME_SIZE);
+        m_ioThreads = getConfigIntValue(context, IO_THREADS_CONFIG_KEY, null, DEFAULT_IO_THREADS);
+        m_dispatchThreads = getConfigIntValue(context, DISPATCH_THREADS_CONFIG_KEY, null, DEFAULT_DISPATCH_THREADS);
+        m_dispatchQueueSize = getConfigIntValue(context, DISPATCH_QUEUE_SIZE_CONFIG_KEY, null, DEFAULT_DISPATCH_QUEUE_SIZE);
+        m_zone = getConfigStringValue(context, ZONE_CONFIG_KEY, null, "");
+        m_node = getConfigStringValue(context, NODE_CONFIG_KEY, null, "");
+
+        registerFactoryService();
+        registerConfigurationService();
+    }
+
+    @Override
+    public void destroy(BundleContext context, DependencyManager manager) throws Exception {
+
+        unregisterConfigurationService();
+        unregisterFactoryService();
+    }
+
+    @Override
+    public void updated(Dictionary<String, ?> properties) throws ConfigurationException {
+
+        // first parse to local variables, in order to make this method "transactional"
+        String host = getConfigStringValue(m_context, HOST_CONFIG_KEY, properties, "localhost");
+        int port = getConfigIntValue(m_context, PORT_CONFIG_KEY, properties, DEFAULT_PORT);
+        int connectTimeout = getConfigIntValue(m_context, CONNECT_TIMEOUT_CONFIG_KEY, properties, DEFAULT_CONNECT_TIMEOUT);
+        int readTimeout = getConfigIntValue(m_context, READ_TIMEOUT_CONFIG_KEY, properties, DEFAULT_READ_TIMEOUT);
+        int maxInFlight = getConfigIntValue(m_context, MAX_IN_FLIGHT_CONFIG_KEY, properties, DEFAULT_MAX_IN_FLIGHT);
+        int maxFrameSize = getConfigIntValue(m_context, MAX_FRAME_SIZE_CONFIG_KEY, properties, DEFAULT_MAX_FRAME_SIZE);
+        int ioThreads = getConfigIntValue(m_context, IO_THREADS_CONFIG_KEY, properties, DEFAULT_IO_THREADS);
+        int dispatchThreads = getConfigIntValue(m_context, DISPATCH_THREADS_CONFIG_KEY, properties, DEFAULT_DISPATCH_THREADS);
+        int dispatchQueueSize = getConfigIntValue(m_context, DISPATCH_QUEUE_SIZE_CONFIG_KEY, properties, DEFAULT_DISPATCH_QUEUE_SIZE);
+        String zone = getConfigStringValue(m_context, ZONE_CONFIG_KEY, properties, "");
+        String node = getConfigStringValue(m_context, NODE_CONFIG_KEY, properties, "");
+
+        boolean restart = !host.equals(m_host) || port != m_port || ioThreads != m_ioThreads;
+
+        m_connectTimeout = connectTimeout;
+        m_readTimeout = readTimeout;
+        m_maxInFlight = maxInFlight;
+        m_maxFrameSize = maxFrameSize;
+        m_dispatchThreads = dispatchThreads;
+        m_dispatchQueueSize = dispatchQueueSize;
+        m_zone = zone;
+        m_node = node;
+
+        if (restart) {
+            m_host = host;
+            m_port = port;
+            m_ioThreads = ioThreads;
+
+            unregisterFactoryService();
+            registerFactoryService();
+        }
+    }
+
+    private void registerConfigurationService() {
+        Dictionary<String, Object> properties = new Hashtable<String, Object>();
+        properties.put(Constants.SERVICE_PID, TcpAdminConstants.SERVICE_PID);
+
+        Component component = createComponent()
+            .setInterface(ManagedService.class.getName(), properties)
+            .setImplementation(this)
+            .setAutoConfig(DependencyManager.class, false)
+            .setAutoConfig(Component.class, false);
+
+        m_configurationComponent = component;
+        m_dependencyManager.add(component);
+    }
+
+    private void unregisterConfigurationService() {
+        Component component = m_configurationComponent;
+        m_configurationComponent = null;
+        if (component != null) {
+            m_dependencyManager.remove(component);
+        }
+    }
+
+    private void registerFactoryService() {
+
+        WiringAdminFactory factory = new WiringAdminFactory(this);
+
+        Dictionary<String, Object> properties = new Hashtable<String, Object>();
+        properties.put(TcpAdminConstants.ADMIN, true);
+        properties.put(TcpAdminConstants.ADMIN_TYPE, PROTOCOL_NAME + ";" + PROTOCOL_VERSION);
+
+        Component adminComponent = createComponent()
+            .setInterface(WiringAdmin.class.getName(), properties)
+            .setImplementation(factory)
+            .add(createServiceDependency().setService(LogService.class)
+                .setRequired(false));
+        m_adminComponent = adminComponent;
+        m_dependencyManager.add(adminComponent);
+    }
+
+    private void unregisterFactoryService() {
+        Component component = m_adminComponent;
+        m_adminComponent = null;
+        if (component != null) {
+            m_dependencyManager.remove(component);
+        }
+    }
+
+    @Override
+    public String getHost() {
+        return m_host;
+    }
+
+    @Override
+    public int getPort() {
+        return m_port;
+    }
+
+    @Override
+    public int getConnectTimeout() {
+        return m_connectTimeout;
+    }
+
+    @Override
+    public int getReadTimeout() {
+        return m_readTimeout;
+    }
+
+    @Override
+    public int getMaxInFlight() {
+        return m_maxInFlight;
+    }
+
+    @Override
+    public int getMaxFrameSize() {
+        return m_maxFrameSize;
+    }
+
+    @Override
+    public int getIoThreads() {
+        return m_ioThreads;
+    }
+
+    @Override
+    public int getDispatchThreads() {
+        return m_dispatchThreads;
+    }
+
+    @Override
+    public int getDispatchQueueSize() {
+        return m_dispatchQueueSize;
+    }
+
+    @Override
+    public String getZone() {
+        return m_zone;
+    }
+
+    @Override
+    public String getNode() {
+        return m_node;
+    }
+}
@@ -0,0 +1,237 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.tcp;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import org.osgi.framework.ServiceException;
+
+/**
+ * The single multiplexed connection to one remote node. All client endpoints that target the node share it;
+ * requests are matched to their responses by correlation id, so responses may arrive in any order.
+ * The connection is (re)established lazily on the next request after it was closed. When a channel is lost, only
+ * the requests that were written to that channel fail; requests on a channel that replaced it are not affected.
+ *
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+final class TcpClientConnection {
+
+    private final Map<Long, Pending> m_pending = new ConcurrentHashMap<Long, Pending>();
+    private final AtomicLong m_correlationIds = new AtomicLong();
+
+    private final String m_host;
+    private final int m_port;
+    private final TcpAdminConfiguration m_configuration;
+    private final Bootstrap m_bootstrap;
+
+    private ChannelFuture m_channelFuture;
+    private boolean m_closed;
+
+    TcpClientConnection(WiringAdminFactory factory, String host, int port, TcpAdminConfiguration configuration) {
+        m_host = host;
+        m_port = port;
+        m_configuration = configuration;
+        m_bootstrap = new Bootstrap()
+            .group(factory.getWorkerGroup())
+            .channel(NioSocketChannel.class)
+            .option(ChannelOption.TCP_NODELAY, true)
+            .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, configuration.getConnectTimeout())
+            .handler(new ChannelInitializer<SocketChannel>() {
+                @Override
+                protected void initChannel(SocketChannel channel) throws Exception {
+                    TcpFrameCodec.addTo(channel.pipeline(), m_configuration.getMaxFrameSize());
+                    channel.pipeline().addLast(new ClientChannelHandler());
+                }
+            });
+    }
+
+    /**
+     * Sends a request frame without blocking.
+     * 
+     * @param wireId the id of the remote wire
+     * @param payload the message
+     * @return the future response
+     */
+    CompletableFuture<byte[]> send(final String wireId, final byte[] payload) {
+        final long correlationId = m_correlationIds.incrementAndGet();
+        final CompletableFuture<byte[]> future = new CompletableFuture<byte[]>();
+        final Pending pending = new Pending(future);
+        m_pending.put(correlationId, pending);
+
+        ChannelFuture channelFuture;
+        try {
+            channelFuture = getChannelFuture();
+        }
+        catch (IOException e) {
+            fail(correlationId, e);
+            return future;
+        }
+
+        channelFuture.addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture connectFuture) throws Exception {
+                if (!connectFuture.isSuccess()) {
+                    fail(correlationId, connectFuture.cause());
+                    return;
+                }
+                Channel channel = connectFuture.channel();
+                pending.m_channel = channel;
+                final ScheduledFuture<?> timeout = channel.eventLoop().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        fail(correlationId, new TimeoutException("No response within " + m_configuration.getReadTimeout() + " ms"));
+                    }
+                }, m_configuration.getReadTimeout(), TimeUnit.MILLISECONDS);
+                future.whenComplete(new BiConsumer<byte[], Throwable>() {
+                    @Override
+                    public void accept(byte[] result, Throwable exception) {
+                        timeout.cancel(false);
+                    }
+                });
+                channel.writeAndFlush(new TcpFrame(TcpFrame.REQUEST, correlationId, wireId, payload)).addListener(
+                    new ChannelFutureListener() {
+                        @Override
+                        public void operationComplete(ChannelFuture writeFuture) throws Exception {
+                            if (!writeFuture.isSuccess()) {
+                                fail(correlationId, writeFuture.cause());
+                            }
+                        }
+                    });
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Closes the connection and fails all pending requests.
+     */
+    void close() {
+        ChannelFuture channelFuture;
+        synchronized (this) {
+            m_closed = true;
+            channelFuture = m_channelFuture;
+            m_channelFuture = null;
+        }
+        if (channelFuture != null) {
+            channelFuture.channel().close();
+        }
+        failAll(null, new IOException("Connection to " + m_host + ":" + m_port + " closed"));
+    }
+
+    private synchronized ChannelFuture getChannelFuture() throws IOException {
+        if (m_closed) {
+            throw new IOException("Connection to " + m_host + ":" + m_port + " closed");
+        }
+        ChannelFuture channelFuture = m_channelFuture;
+        if (channelFuture == null || (channelFuture.isDone()
+            && (!channelFuture.isSuccess() || !channelFuture.channel().isActive()))) {
+            channelFuture = m_bootstrap.connect(m_host, m_port);
+            m_channelFuture = channelFuture;
+        }
+        return channelFuture;
+    }
+
+    private void fail(long correlationId, Throwable cause) {
+        Pending pending = m_pending.remove(correlationId);
+        if (pending != null) {
+            pending.m_future.completeExceptionally(new ServiceException("Remote service invocation failed: "
+                + cause.getMessage(), ServiceException.REMOTE, cause));
+        }
+    }
+
+    /**
+     * Fails the pending requests that were written to the given channel, or all pending requests if it is
+     * <code>null</code>.
+     */
+    private void failAll(Channel channel, Throwable cause) {
+        Iterator<Map.Entry<Long, Pending>> iter = m_pending.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<Long, Pending> entry = iter.next();
+            if (channel == null || entry.getValue().m_channel == channel) {
+                fail(entry.getKey(), cause);
+            }
+        }
+    }
+
+    /**
+     * A request that waits for its response.
+     */
+    private static final class Pending {
+
+        private final CompletableFuture<byte[]> m_future;
+
+        /** the channel the request is written to, <code>null</code> while it is being connected */
+        private volatile Channel m_channel;
+
+        Pending(CompletableFuture<byte[]> future) {
+            m_future = future;
+        }
+    }
+
+    /**
+     * Internal channel handler that completes pending requests.
+     */
+    private class ClientChannelHandler extends SimpleChannelInboundHandler<TcpFrame> {
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, TcpFrame frame) throws Exception {
+            switch (frame.getType()) {
+                case TcpFrame.RESPONSE: {
+                    Pending pending = m_pending.remove(frame.getCorrelationId());
+                    if (pending != null) {
+                        pending.m_future.complete(frame.getPayload());
+                    }
+                    break;
+                }
+                case TcpFrame.ERROR:
+                    fail(frame.getCorrelationId(), new IOException(new String(frame.getPayload(), StandardCharsets.UTF_8)));
+                    break;
+                case TcpFrame.REJECTED: {
+                    // backpressure rather than a failure, like a 503 of the HTTP admin
+                    Pending pending = m_pending.remove(frame.getCorrelationId());
+                    if (pending != null) {
+                        pending.m_future.completeExceptionally(new RejectedExecutionException("Remote endpoint "
+                            + frame.getWireId() + " is overloaded"));
+                    }
+                    break;
+                }
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            failAll(ctx.channel(), new IOException("Connection to " + m_host + ":" + m_port + " lost"));
+            super.channelInactive(ctx);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+            ctx.close();
+        }
+    }
+}
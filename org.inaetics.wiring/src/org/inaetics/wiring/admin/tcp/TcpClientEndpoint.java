@@ -0,0 +1,61 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.tcp;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiConsumer;
+
+import org.inaetics.wiring.WiringEndpointDescription;
+
+/**
+ * Client side of a single remote wire. Messages are sent over the {@link TcpClientConnection} of the
+ * remote node, the number of messages in flight is bounded per endpoint.
+ *
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+public final class TcpClientEndpoint {
+
+    private final WiringEndpointDescription m_endpoint;
+    private final TcpClientConnection m_connection;
+    private final Semaphore m_inFlight;
+
+    TcpClientEndpoint(WiringEndpointDescription endpoint, TcpClientConnection connection, TcpAdminConfiguration configuration) {
+        m_endpoint = endpoint;
+        m_connection = connection;
+        m_inFlight = new Semaphore(Math.max(1, configuration.getMaxInFlight()));
+    }
+
+    byte[] sendMessage(byte[] message) throws Exception {
+        try {
+            return sendMessageAsync(message).get();
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    CompletableFuture<byte[]> sendMessageAsync(byte[] message) {
+        if (!m_inFlight.tryAcquire()) {
+            CompletableFuture<byte[]> future = new CompletableFuture<byte[]>();
+            future.completeExceptionally(new RejectedExecutionException("Too many messages in flight for wire "
+                + m_endpoint.getId()));
+            return future;
+        }
+        CompletableFuture<byte[]> future = m_connection.send(m_endpoint.getId(), message);
+        future.whenComplete(new BiConsumer<byte[], Throwable>() {
+            @Override
+            public void accept(byte[] result, Throwable exception) {
+                m_inFlight.release();
+            }
+        });
+        return future;
+    }
+}
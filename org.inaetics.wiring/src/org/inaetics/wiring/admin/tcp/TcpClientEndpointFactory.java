@@ -0,0 +1,92 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.tcp;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.inaetics.wiring.WiringEndpointDescription;
+import org.inaetics.wiring.base.AbstractComponentDelegate;
+
+/**
+ * Provides a factory that creates a {@link TcpClientEndpoint} for each imported endpoint. Client endpoints that
+ * target the same remote node share one {@link TcpClientConnection}.
+ * 
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+public class TcpClientEndpointFactory extends AbstractComponentDelegate {
+
+	private final Map<String, TcpClientEndpoint> m_clients =
+			new ConcurrentHashMap<String, TcpClientEndpoint>();
+
+	private final ConcurrentHashMap<String, TcpClientConnection> m_connections =
+			new ConcurrentHashMap<String, TcpClientConnection>();
+
+    private final WiringAdminFactory m_factory;
+    private final TcpAdminConfiguration m_configuration;
+
+    public TcpClientEndpointFactory(WiringAdminFactory factory, TcpAdminConfiguration configuration) {
+    	super(factory);
+    	m_factory = factory;
+        m_configuration = configuration;
+    }
+
+    @Override
+    protected void stopComponentDelegate() {
+        for (TcpClientConnection connection : m_connections.values()) {
+            connection.close();
+        }
+        m_connections.clear();
+    }
+
+    public WiringSenderImpl addEndpoint(WiringEndpointDescription endpoint) {
+    	TcpClientEndpoint client = m_clients.get(endpoint.getId());
+    	if (client == null) {
+    		URI uri = URI.create(endpoint.getProperty(TcpWiringEndpointProperties.URL));
+    		if (uri.getHost() == null || uri.getPort() == -1) {
+    			throw new IllegalArgumentException("Invalid endpoint url: " + uri);
+    		}
+    		client = new TcpClientEndpoint(endpoint, getConnection(uri.getHost(), uri.getPort()), m_configuration);
+    		m_clients.put(endpoint.getId(), client);
+    	}
+		return new WiringSenderImpl(this, endpoint);
+    }
+    
+    public void removeEndpoint(WiringEndpointDescription endpoint) {
+    	m_clients.remove(endpoint.getId());
+    }
+
+    public byte[] sendMessage(String wireId, byte[] message) throws Exception {
+		TcpClientEndpoint tcpClientEndpoint = m_clients.get(wireId);
+		if (tcpClientEndpoint == null) {
+	    	throw new Exception("remote endpoint not found");
+		}			
+		return tcpClientEndpoint.sendMessage(message);
+    }
+
+    public CompletableFuture<byte[]> sendMessageAsync(String wireId, byte[] message) {
+		TcpClientEndpoint tcpClientEndpoint = m_clients.get(wireId);
+		if (tcpClientEndpoint == null) {
+			CompletableFuture<byte[]> future = new CompletableFuture<byte[]>();
+			future.completeExceptionally(new Exception("remote endpoint not found"));
+			return future;
+		}
+		return tcpClientEndpoint.sendMessageAsync(message);
+    }
+
+    private TcpClientConnection getConnection(String host, int port) {
+        String key = host + ":" + port;
+        TcpClientConnection connection = m_connections.get(key);
+        if (connection == null) {
+            TcpClientConnection newConnection = new TcpClientConnection(m_factory, host, port, m_configuration);
+            connection = m_connections.putIfAbsent(key, newConnection);
+            if (connection == null) {
+                connection = newConnection;
+            }
+        }
+        return connection;
+    }
+}
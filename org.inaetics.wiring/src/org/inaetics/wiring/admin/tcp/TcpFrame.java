@@ -0,0 +1,53 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.tcp;
+
+/**
+ * A single message on a TCP wiring connection. On the wire every frame is prefixed by its length and
+ * carries a correlation id, so that responses can be matched to requests regardless of their order.
+ * <p>
+ * Layout after the 4 byte length prefix: type (1 byte), correlation id (8 bytes), wire id length
+ * (2 bytes), wire id (UTF-8) and the payload.
+ *
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+final class TcpFrame {
+
+    /** a request for the receiver of the given wire */
+    static final byte REQUEST = 1;
+    /** the response to the request with the same correlation id */
+    static final byte RESPONSE = 2;
+    /** the failure of the request with the same correlation id, the payload holds the error message */
+    static final byte ERROR = 3;
+    /** the request with the same correlation id was not processed because the wire is overloaded */
+    static final byte REJECTED = 4;
+
+    private final byte m_type;
+    private final long m_correlationId;
+    private final String m_wireId;
+    private final byte[] m_payload;
+
+    TcpFrame(byte type, long correlationId, String wireId, byte[] payload) {
+        m_type = type;
+        m_correlationId = correlationId;
+        m_wireId = wireId;
+        m_payload = payload;
+    }
+
+    byte getType() {
+        return m_type;
+    }
+
+    long getCorrelationId() {
+        return m_correlationId;
+    }
+
+    String getWireId() {
+        return m_wireId;
+    }
+
+    byte[] getPayload() {
+        return m_payload;
+    }
+}
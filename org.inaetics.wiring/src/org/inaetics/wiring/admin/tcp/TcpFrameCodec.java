@@ -0,0 +1,60 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.tcp;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.handler.codec.MessageToMessageCodec;
+
+/**
+ * Converts between length delimited frames and {@link TcpFrame}s.
+ *
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+final class TcpFrameCodec extends MessageToMessageCodec<ByteBuf, TcpFrame> {
+
+    private static final int LENGTH_FIELD_SIZE = 4;
+
+    /**
+     * Adds the framing handlers and this codec to the given pipeline.
+     * 
+     * @param pipeline the channel pipeline
+     * @param maxFrameSize the maximum size of a frame
+     */
+    static void addTo(ChannelPipeline pipeline, int maxFrameSize) {
+        pipeline.addLast(new LengthFieldBasedFrameDecoder(maxFrameSize, 0, LENGTH_FIELD_SIZE, 0, LENGTH_FIELD_SIZE));
+        pipeline.addLast(new LengthFieldPrepender(LENGTH_FIELD_SIZE));
+        pipeline.addLast(new TcpFrameCodec());
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, TcpFrame frame, List<Object> out) throws Exception {
+        byte[] wireId = frame.getWireId().getBytes(StandardCharsets.UTF_8);
+        byte[] payload = frame.getPayload();
+        ByteBuf buffer = ctx.alloc().buffer(1 + 8 + 2 + wireId.length + payload.length);
+        buffer.writeByte(frame.getType());
+        buffer.writeLong(frame.getCorrelationId());
+        buffer.writeShort(wireId.length);
+        buffer.writeBytes(wireId);
+        buffer.writeBytes(payload);
+        out.add(buffer);
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf buffer, List<Object> out) throws Exception {
+        byte type = buffer.readByte();
+        long correlationId = buffer.readLong();
+        byte[] wireId = new byte[buffer.readUnsignedShort()];
+        buffer.readBytes(wireId);
+        byte[] payload = new byte[buffer.readableBytes()];
+        buffer.readBytes(payload);
+        out.add(new TcpFrame(type, correlationId, new String(wireId, StandardCharsets.UTF_8), payload));
+    }
+}
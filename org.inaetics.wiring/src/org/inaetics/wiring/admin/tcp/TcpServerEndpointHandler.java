@@ -0,0 +1,186 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.tcp;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+
+import org.inaetics.wiring.WiringEndpointDescription;
+import org.inaetics.wiring.base.AbstractComponentDelegate;
+import org.inaetics.wiring.base.PriorityDispatchQueue;
+import org.inaetics.wiring.endpoint.WiringReceiver;
+
+/**
+ * Wiring component that handles all server endpoints. It listens on the configured port and dispatches
+ * incoming request frames to the receiver of the addressed wire. Receivers are invoked on a bounded executor per
+ * wire, so that a slow receiver blocks neither the Netty event loop nor the receivers of other wires. A request
+ * that does not fit in the executor of its wire is answered with a {@link TcpFrame#REJECTED} frame right away.
+ * 
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+public final class TcpServerEndpointHandler extends AbstractComponentDelegate {
+
+    private final Map<String, Wire> m_wires = new ConcurrentHashMap<String, Wire>();
+
+    private final WiringAdminFactory m_factory;
+    private final TcpAdminConfiguration m_configuration;
+
+    private volatile Channel m_serverChannel;
+
+    public TcpServerEndpointHandler(WiringAdminFactory factory, TcpAdminConfiguration configuration) {
+        super(factory);
+        m_factory = factory;
+        m_configuration = configuration;
+    }
+
+    @Override
+    protected void startComponentDelegate() {
+        try {
+            final ServerChannelHandler handler = new ServerChannelHandler();
+            ServerBootstrap bootstrap = new ServerBootstrap()
+                .group(m_factory.getBossGroup(), m_factory.getWorkerGroup())
+                .channel(NioServerSocketChannel.class)
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel channel) throws Exception {
+                        TcpFrameCodec.addTo(channel.pipeline(), m_configuration.getMaxFrameSize());
+                        channel.pipeline().addLast(handler);
+                    }
+                });
+            m_serverChannel = bootstrap.bind(m_configuration.getPort()).syncUninterruptibly().channel();
+        }
+        catch (Exception e) {
+            logError("Failed to initialize due to configuration problem!", e);
+            throw new IllegalStateException("Configuration problem", e);
+        }
+    }
+
+    @Override
+    protected void stopComponentDelegate() {
+        Channel serverChannel = m_serverChannel;
+        m_serverChannel = null;
+        if (serverChannel != null) {
+            serverChannel.close().syncUninterruptibly();
+        }
+        for (Wire wire : m_wires.values()) {
+            wire.m_executor.shutdown();
+        }
+        m_wires.clear();
+    }
+
+    /**
+     * Add a Server Endpoint.
+     * 
+     * @param endpoint The Endpoint Description
+     * @param receiver The Wiring Receiver
+     */
+    public void addEndpoint(WiringEndpointDescription endpoint, WiringReceiver receiver) {
+        ThreadPoolExecutor executor = PriorityDispatchQueue.createExecutor("wiring-tcp-dispatch-" + endpoint.getId(),
+            Math.max(1, m_configuration.getDispatchThreads()), m_configuration.getDispatchQueueSize());
+        Wire previous = m_wires.put(endpoint.getId(), new Wire(receiver, executor));
+        if (previous != null) {
+            previous.m_executor.shutdown();
+        }
+    }
+
+    /**
+     * Remove a Server Endpoint.
+     * 
+     * @param endpoint The Endpoint Description
+     */
+    public void removeEndpoint(WiringEndpointDescription endpoint) {
+        Wire wire = m_wires.remove(endpoint.getId());
+        if (wire != null) {
+            wire.m_executor.shutdown();
+        }
+    }
+
+    private static TcpFrame createErrorFrame(TcpFrame request, String message) {
+        return new TcpFrame(TcpFrame.ERROR, request.getCorrelationId(), request.getWireId(),
+            String.valueOf(message).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * An exported wire and the executor that invokes its receiver.
+     */
+    private static final class Wire {
+
+        private final WiringReceiver m_receiver;
+        private final ThreadPoolExecutor m_executor;
+
+        Wire(WiringReceiver receiver, ThreadPoolExecutor executor) {
+            m_receiver = receiver;
+            m_executor = executor;
+        }
+    }
+
+    /**
+     * Internal channel handler that handles all requests.
+     */
+    @Sharable
+    private class ServerChannelHandler extends SimpleChannelInboundHandler<TcpFrame> {
+
+        @Override
+        protected void channelRead0(final ChannelHandlerContext ctx, final TcpFrame frame) throws Exception {
+
+            if (frame.getType() != TcpFrame.REQUEST) {
+                logWarning("Unexpected frame type %s from %s", frame.getType(), ctx.channel().remoteAddress());
+                return;
+            }
+
+            final Wire wire = m_wires.get(frame.getWireId());
+            if (wire == null) {
+                ctx.writeAndFlush(createErrorFrame(frame, "Wire not found: " + frame.getWireId()));
+                return;
+            }
+
+            try {
+                wire.m_executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            byte[] result = wire.m_receiver.messageReceived(frame.getPayload());
+                            byte[] payload = result != null ? result : new byte[0];
+                            ctx.writeAndFlush(new TcpFrame(TcpFrame.RESPONSE, frame.getCorrelationId(), frame.getWireId(), payload));
+                        }
+                        catch (Exception e) {
+                            logError("Server Endpoint Handler failed: %s", e, frame.getWireId());
+                            ctx.writeAndFlush(createErrorFrame(frame, e.getMessage()));
+                        }
+                    }
+                });
+            }
+            catch (RejectedExecutionException e) {
+                if (wire.m_executor.isShutdown()) {
+                    ctx.writeAndFlush(createErrorFrame(frame, "Wire not found: " + frame.getWireId()));
+                }
+                else {
+                    // overloaded, let the client back off instead of queueing without bound
+                    ctx.writeAndFlush(new TcpFrame(TcpFrame.REJECTED, frame.getCorrelationId(), frame.getWireId(),
+                        new byte[0]));
+                }
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+            logWarning("Closing connection from %s", cause, ctx.channel().remoteAddress());
+            ctx.close();
+        }
+    }
+}
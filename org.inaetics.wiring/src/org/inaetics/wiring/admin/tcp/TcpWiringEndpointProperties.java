@@ -0,0 +1,12 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.tcp;
+
+public interface TcpWiringEndpointProperties {
+
+	public static final String BASE = "inaetics.wiring.tcp.";
+	public static final String VERSION = BASE + "version";
+	public static final String URL = BASE + "url";
+
+}
@@ -0,0 +1,97 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.websocket;
+
+/**
+ * Interface for accessing WebSocket Admin configuration values.
+ *
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+public interface WebSocketAdminConfiguration {
+
+    /**
+     * returns the host that is advertised to remote nodes
+     * 
+     * @return the host
+     */
+    public String getHost();
+
+    /**
+     * returns the port the server endpoint listens on
+     * 
+     * @return the port
+     */
+    public int getPort();
+
+    /**
+     * returns the path of the WebSocket endpoint
+     * 
+     * @return the path
+     */
+    public String getPath();
+
+    /**
+     * returns the connect timeout for the client endpoint
+     * 
+     * @return connect timeout in ms
+     */
+    public int getConnectTimeout();
+
+    /**
+     * returns the read timeout for the client endpoint
+     * 
+     * @return read timeout in ms
+     */
+    public int getReadTimeout();
+
+    /**
+     * returns the maximum number of messages in flight per client endpoint
+     * 
+     * @return max messages in flight
+     */
+    public int getMaxInFlight();
+
+    /**
+     * returns the maximum size of a single frame
+     * 
+     * @return max frame size in bytes
+     */
+    public int getMaxFrameSize();
+
+    /**
+     * returns the number of Netty event loop threads
+     * 
+     * @return number of I/O threads, 0 for the Netty default
+     */
+    public int getIoThreads();
+
+    /**
+     * returns the maximum number of threads per server endpoint that invoke the receiver
+     * 
+     * @return dispatch threads per wire
+     */
+    public int getDispatchThreads();
+
+    /**
+     * returns the maximum number of requests per server endpoint that wait for a dispatch thread
+     * 
+     * @return dispatch queue size per wire
+     */
+    public int getDispatchQueueSize();
+
+    /**
+     * returns the zone id
+     * 
+     * @return the zone id
+     */
+    public String getZone();
+    
+    /**
+     * returns the node id
+     * 
+     * @return the node id
+     */
+    public String getNode();    
+
+}
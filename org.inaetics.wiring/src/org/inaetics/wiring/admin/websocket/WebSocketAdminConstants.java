@@ -0,0 +1,93 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.websocket;
+
+import io.netty.util.AsciiString;
+
+/**
+ * Compile time constants for the WebSocket Wiring Admin.
+ *
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+public interface WebSocketAdminConstants {
+
+    /**
+     * Configuration PID
+     */
+    String SERVICE_PID = "org.inaetics.wiring.admin.websocket";
+
+    /**
+     * Configuration property: host that is advertised to remote nodes
+     */
+    String HOST_CONFIG_KEY = SERVICE_PID + ".host";
+
+    /**
+     * Configuration property: port
+     */
+    String PORT_CONFIG_KEY = SERVICE_PID + ".port";
+
+    /**
+     * Configuration property: path of the WebSocket endpoint
+     */
+    String PATH_CONFIG_KEY = SERVICE_PID + ".path";
+
+    /**
+     * Configuration property: connect timeout
+     */
+    String CONNECT_TIMEOUT_CONFIG_KEY = SERVICE_PID + ".connecttimeout";
+
+    /**
+     * Configuration property: timeout
+     */
+    String READ_TIMEOUT_CONFIG_KEY = SERVICE_PID + ".readtimeout";
+
+    /**
+     * Configuration property: maximum number of messages in flight per client endpoint
+     */
+    String MAX_IN_FLIGHT_CONFIG_KEY = SERVICE_PID + ".maxinflight";
+
+    /**
+     * Configuration property: maximum size of a single frame in bytes
+     */
+    String MAX_FRAME_SIZE_CONFIG_KEY = SERVICE_PID + ".maxframesize";
+
+    /**
+     * Configuration property: number of Netty event loop threads, 0 means Netty's default
+     */
+    String IO_THREADS_CONFIG_KEY = SERVICE_PID + ".iothreads";
+
+    /**
+     * Configuration property: maximum number of threads per server endpoint that invoke the receiver
+     */
+    String DISPATCH_THREADS_CONFIG_KEY = SERVICE_PID + ".dispatchthreads";
+
+    /**
+     * Configuration property: maximum number of requests per server endpoint that wait for a dispatch thread, further requests are rejected
+     */
+    String DISPATCH_QUEUE_SIZE_CONFIG_KEY = SERVICE_PID + ".dispatchqueuesize";
+
+    /**
+     * Configuration property: zone
+     */
+    String ZONE_CONFIG_KEY = SERVICE_PID + ".zone";
+
+    /**
+     * Configuration property: node
+     */
+    String NODE_CONFIG_KEY = SERVICE_PID + ".node";
+
+    /** Indicates that a service is actually a admin service, should have a value of "true". */
+    String ADMIN = "admin";
+    /** Indicates what kind of discovery service is provided. */
+    String ADMIN_TYPE = "admin.type";
+
+    String PROTOCOL_NAME = "inaetics.wiring.websocket";
+    String PROTOCOL_VERSION = "1.0";
+    String SECURE = "no";
+
+    /** Handshake header with the zone of the connecting node. */
+    AsciiString ZONE_HEADER = new AsciiString("X-Wiring-Zone");
+    /** Handshake header with the node id of the connecting node. */
+    AsciiString NODE_HEADER = new AsciiString("X-Wiring-Node");
+}
@@ -0,0 +1,82 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.websocket;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiConsumer;
+
+import org.inaetics.wiring.WiringEndpointDescription;
+
+/**
+ * Client side of a single remote wire. Messages are sent over the current {@link WebSocketConnection} with the
+ * remote node, the number of messages in flight is bounded per endpoint.
+ *
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+public final class WebSocketClientEndpoint {
+
+    private final WiringEndpointDescription m_endpoint;
+    private final WebSocketClientEndpointFactory m_endpointFactory;
+    private final Semaphore m_inFlight;
+
+    WebSocketClientEndpoint(WiringEndpointDescription endpoint, WebSocketClientEndpointFactory endpointFactory,
+        WebSocketAdminConfiguration configuration) {
+        m_endpoint = endpoint;
+        m_endpointFactory = endpointFactory;
+        m_inFlight = new Semaphore(Math.max(1, configuration.getMaxInFlight()));
+    }
+
+    WiringEndpointDescription getEndpoint() {
+        return m_endpoint;
+    }
+
+    byte[] sendMessage(byte[] message) throws Exception {
+        try {
+            return sendMessageAsync(message).get();
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    CompletableFuture<byte[]> sendMessageAsync(byte[] message) {
+        if (!m_inFlight.tryAcquire()) {
+            return rejected();
+        }
+        CompletableFuture<byte[]> future = m_endpointFactory.getConnection(m_endpoint).send(m_endpoint.getId(), message);
+        return release(future);
+    }
+
+    CompletableFuture<Void> sendOneWay(byte[] message) {
+        if (!m_inFlight.tryAcquire()) {
+            return rejected();
+        }
+        CompletableFuture<Void> future = m_endpointFactory.getConnection(m_endpoint).sendOneWay(m_endpoint.getId(), message);
+        return release(future);
+    }
+
+    private <T> CompletableFuture<T> release(CompletableFuture<T> future) {
+        future.whenComplete(new BiConsumer<T, Throwable>() {
+            @Override
+            public void accept(T result, Throwable exception) {
+                m_inFlight.release();
+            }
+        });
+        return future;
+    }
+
+    private <T> CompletableFuture<T> rejected() {
+        CompletableFuture<T> future = new CompletableFuture<T>();
+        future.completeExceptionally(new RejectedExecutionException("Too many messages in flight for wire "
+            + m_endpoint.getId()));
+        return future;
+    }
+}
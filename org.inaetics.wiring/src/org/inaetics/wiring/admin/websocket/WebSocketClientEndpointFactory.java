@@ -0,0 +1,348 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.websocket;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.websocketx.WebSocketClientProtocolHandler;
+import io.netty.handler.codec.http.websocketx.WebSocketFrameAggregator;
+import io.netty.handler.codec.http.websocketx.WebSocketVersion;
+
+import org.inaetics.wiring.WiringEndpointDescription;
+import org.inaetics.wiring.base.AbstractComponentDelegate;
+
+/**
+ * Provides a factory that creates a {@link WebSocketClientEndpoint} for each imported endpoint, and keeps one
+ * {@link WebSocketConnection} per remote node.
+ * <p>
+ * A connection that the remote node opened to this node is used just like one that this node opened, so wires work
+ * in both directions when only one of the nodes can open connections. For that reason a connection is opened to every
+ * remote node with a discovered or imported endpoint, and any connection to such a node that is lost, inbound or
+ * outbound, is reopened from this node.
+ *
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+public class WebSocketClientEndpointFactory extends AbstractComponentDelegate {
+
+    private static final int MAX_HANDSHAKE_SIZE = 65536;
+    private static final int RECONNECT_DELAY = 1000;
+
+	private final Map<String, WebSocketClientEndpoint> m_clients =
+			new ConcurrentHashMap<String, WebSocketClientEndpoint>();
+
+	/** connections by the key of their remote node, guarded by this */
+	private final Map<String, WebSocketConnection> m_connections = new HashMap<String, WebSocketConnection>();
+
+	/** urls of the discovered endpoints by endpoint id, by the key of their remote node, guarded by this */
+	private final Map<String, Map<String, String>> m_peers = new HashMap<String, Map<String, String>>();
+
+    private final WiringAdminFactory m_factory;
+    private final WebSocketAdminConfiguration m_configuration;
+
+    private volatile boolean m_stopped = true;
+
+    public WebSocketClientEndpointFactory(WiringAdminFactory factory, WebSocketAdminConfiguration configuration) {
+    	super(factory);
+    	m_factory = factory;
+        m_configuration = configuration;
+    }
+
+    @Override
+    protected void startComponentDelegate() {
+        m_stopped = false;
+        // connect to the nodes that were discovered before the event loops existed
+        synchronized (this) {
+            for (String peer : m_peers.keySet()) {
+                getConnection(peer, getPeerUri(peer));
+            }
+        }
+    }
+
+    @Override
+    protected void stopComponentDelegate() {
+        m_stopped = true;
+        List<WebSocketConnection> connections;
+        synchronized (this) {
+            connections = new ArrayList<WebSocketConnection>(m_connections.values());
+            m_connections.clear();
+        }
+        for (WebSocketConnection connection : connections) {
+            connection.close();
+        }
+    }
+
+    public WiringSenderImpl addEndpoint(WiringEndpointDescription endpoint) {
+    	WebSocketClientEndpoint client = m_clients.get(endpoint.getId());
+    	if (client == null) {
+    		URI uri = URI.create(endpoint.getProperty(WebSocketWiringEndpointProperties.URL));
+    		if (uri.getHost() == null || uri.getPort() == -1) {
+    			throw new IllegalArgumentException("Invalid endpoint url: " + uri);
+    		}
+    		client = new WebSocketClientEndpoint(endpoint, this, m_configuration);
+    		m_clients.put(endpoint.getId(), client);
+
+    		// open the connection right away, so that the remote node can use it as well
+    		getConnection(endpoint);
+    	}
+		return new WiringSenderImpl(this, endpoint);
+    }
+
+    public void removeEndpoint(WiringEndpointDescription endpoint) {
+    	m_clients.remove(endpoint.getId());
+    }
+
+    /**
+     * Registers a discovered endpoint of a remote node and opens a connection to that node if there is none.
+     *
+     * @param endpoint an endpoint of another node with a valid url
+     */
+    synchronized void addPeerEndpoint(WiringEndpointDescription endpoint) {
+        String peer = getPeerKey(endpoint.getZone(), endpoint.getNode());
+        Map<String, String> urls = m_peers.get(peer);
+        if (urls == null) {
+            urls = new HashMap<String, String>();
+            m_peers.put(peer, urls);
+        }
+        urls.put(endpoint.getId(), endpoint.getProperty(WebSocketWiringEndpointProperties.URL));
+        if (!m_stopped) {
+            getConnection(endpoint);
+        }
+    }
+
+    /**
+     * Forgets a discovered endpoint of a remote node. Once the last one is gone, a lost connection to the node is no
+     * longer reopened, unless endpoints of the node are still imported.
+     *
+     * @param endpoint an endpoint of another node
+     */
+    synchronized void removePeerEndpoint(WiringEndpointDescription endpoint) {
+        String peer = getPeerKey(endpoint.getZone(), endpoint.getNode());
+        Map<String, String> urls = m_peers.get(peer);
+        if (urls != null) {
+            urls.remove(endpoint.getId());
+            if (urls.isEmpty()) {
+                m_peers.remove(peer);
+            }
+        }
+    }
+
+    public byte[] sendMessage(String wireId, byte[] message) throws Exception {
+		WebSocketClientEndpoint webSocketClientEndpoint = m_clients.get(wireId);
+		if (webSocketClientEndpoint == null) {
+	    	throw new Exception("remote endpoint not found");
+		}
+		return webSocketClientEndpoint.sendMessage(message);
+    }
+
+    public CompletableFuture<byte[]> sendMessageAsync(String wireId, byte[] message) {
+		WebSocketClientEndpoint webSocketClientEndpoint = m_clients.get(wireId);
+		if (webSocketClientEndpoint == null) {
+			CompletableFuture<byte[]> future = new CompletableFuture<byte[]>();
+			future.completeExceptionally(new Exception("remote endpoint not found"));
+			return future;
+		}
+		return webSocketClientEndpoint.sendMessageAsync(message);
+    }
+
+    public CompletableFuture<Void> sendOneWay(String wireId, byte[] message) {
+		WebSocketClientEndpoint webSocketClientEndpoint = m_clients.get(wireId);
+		if (webSocketClientEndpoint == null) {
+			CompletableFuture<Void> future = new CompletableFuture<Void>();
+			future.completeExceptionally(new Exception("remote endpoint not found"));
+			return future;
+		}
+		return webSocketClientEndpoint.sendOneWay(message);
+    }
+
+    static String getPeerKey(String zone, String node) {
+        return zone + "/" + node;
+    }
+
+    /**
+     * Returns the connection with the node of the given endpoint, and opens it if there is none.
+     */
+    synchronized WebSocketConnection getConnection(WiringEndpointDescription endpoint) {
+        return getConnection(getPeerKey(endpoint.getZone(), endpoint.getNode()),
+            URI.create(endpoint.getProperty(WebSocketWiringEndpointProperties.URL)));
+    }
+
+    private synchronized WebSocketConnection getConnection(String peer, URI uri) {
+        WebSocketConnection connection = m_connections.get(peer);
+        if (connection == null || !connection.isOpen()) {
+            connection = connect(peer, uri);
+            m_connections.put(peer, connection);
+        }
+        return connection;
+    }
+
+    /**
+     * @return the url of a discovered or imported endpoint of the given node, or <code>null</code> if there is none
+     */
+    private synchronized URI getPeerUri(String peer) {
+        Map<String, String> urls = m_peers.get(peer);
+        if (urls != null && !urls.isEmpty()) {
+            return URI.create(urls.values().iterator().next());
+        }
+        for (WebSocketClientEndpoint client : m_clients.values()) {
+            WiringEndpointDescription endpoint = client.getEndpoint();
+            if (peer.equals(getPeerKey(endpoint.getZone(), endpoint.getNode()))) {
+                return URI.create(endpoint.getProperty(WebSocketWiringEndpointProperties.URL));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Makes a connection whose handshake is done available to the client endpoints of its remote node.
+     * <p>
+     * Both nodes open a connection as soon as they discover each other, so there are usually two connections between
+     * them. Both nodes keep the one that was opened by the node with the lower key and retire the other one. Until the
+     * preferred connection is established the other one is used, since the preferred one never succeeds if its node
+     * cannot reach the other node.
+     */
+    synchronized void addConnection(WebSocketConnection connection) {
+        if (m_stopped) {
+            connection.close();
+            return;
+        }
+        String peer = connection.getPeer();
+        WebSocketConnection current = m_connections.get(peer);
+        if (current == connection) {
+            return;
+        }
+        if (current == null || !current.isOpen()) {
+            m_connections.put(peer, connection);
+        }
+        else if (current.isInbound() == connection.isInbound() || isPreferred(connection)) {
+            // a connection opened by the same node replaces one that was lost without being noticed yet
+            m_connections.put(peer, connection);
+            current.retire();
+        }
+        else if (current.isEstablished()) {
+            connection.retire();
+        }
+        else {
+            // the preferred connection is still being opened, it takes over once it is established
+            m_connections.put(peer, connection);
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the connection was opened by the node with the lower key
+     */
+    private boolean isPreferred(WebSocketConnection connection) {
+        int order = getPeerKey(m_configuration.getZone(), m_configuration.getNode()).compareTo(connection.getPeer());
+        return connection.isInbound() ? order > 0 : order < 0;
+    }
+
+    /**
+     * Forgets a closed connection, and opens an outbound connection in its place if endpoints of its remote node are
+     * still discovered or imported.
+     */
+    void removeConnection(final WebSocketConnection connection) {
+        final String peer = connection.getPeer();
+        if (peer == null) {
+            return;
+        }
+        synchronized (this) {
+            if (m_connections.get(peer) != connection) {
+                return;
+            }
+            m_connections.remove(peer);
+        }
+        if (m_stopped) {
+            return;
+        }
+        m_factory.getWorkerGroup().schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (m_stopped) {
+                    return;
+                }
+                synchronized (WebSocketClientEndpointFactory.this) {
+                    URI uri = getPeerUri(peer);
+                    if (uri != null) {
+                        getConnection(peer, uri);
+                    }
+                }
+            }
+        }, RECONNECT_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the headers that identify this node in the handshake of an outbound connection
+     */
+    @SuppressWarnings("deprecation")
+    private HttpHeaders createHandshakeHeaders() {
+        // this Netty version deprecates every value setter, including the CharSequence ones its handshakers use
+        HttpHeaders headers = new DefaultHttpHeaders();
+        headers.add(WebSocketAdminConstants.ZONE_HEADER, m_configuration.getZone());
+        headers.add(WebSocketAdminConstants.NODE_HEADER, m_configuration.getNode());
+        return headers;
+    }
+
+    private WebSocketConnection connect(String peer, final URI uri) {
+        final WebSocketConnection connection = new WebSocketConnection(m_factory, m_configuration, peer, false);
+        final HttpHeaders headers = createHandshakeHeaders();
+
+        Bootstrap bootstrap = new Bootstrap()
+            .group(m_factory.getWorkerGroup())
+            .channel(NioSocketChannel.class)
+            .option(ChannelOption.TCP_NODELAY, true)
+            .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, m_configuration.getConnectTimeout())
+            .handler(new ChannelInitializer<SocketChannel>() {
+                @Override
+                protected void initChannel(SocketChannel channel) throws Exception {
+                    ChannelPipeline pipeline = channel.pipeline();
+                    pipeline.addLast(new HttpClientCodec());
+                    pipeline.addLast(new HttpObjectAggregator(MAX_HANDSHAKE_SIZE));
+                    pipeline.addLast(new WebSocketClientProtocolHandler(uri, WebSocketVersion.V13, null, false, headers,
+                        m_configuration.getMaxFrameSize()));
+                    pipeline.addLast(new WebSocketFrameAggregator(m_configuration.getMaxFrameSize()));
+                    pipeline.addLast(new WireFrameCodec());
+                    pipeline.addLast(connection.createConnectionHandler());
+                }
+            });
+
+        final ChannelFuture connectFuture = bootstrap.connect(uri.getHost(), uri.getPort());
+        connectFuture.addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                if (!future.isSuccess()) {
+                    connection.closed(future.cause());
+                }
+            }
+        });
+        // give up if the handshake does not complete in time
+        m_factory.getWorkerGroup().schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (!connection.isEstablished()) {
+                    connectFuture.channel().close();
+                    connection.close();
+                }
+            }
+        }, m_configuration.getConnectTimeout(), TimeUnit.MILLISECONDS);
+        return connection;
+    }
+}
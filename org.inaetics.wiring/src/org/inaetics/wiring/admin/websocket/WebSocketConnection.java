@@ -0,0 +1,331 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.websocket;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.websocketx.WebSocketClientProtocolHandler.ClientHandshakeStateEvent;
+import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler.ServerHandshakeStateEvent;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import org.osgi.framework.ServiceException;
+
+/**
+ * The WebSocket connection between this node and one remote node. It does not matter which of the two nodes opened
+ * the connection: both send requests and one-way messages to the wires of the other one, and answer the requests
+ * they receive. Client endpoints that target the remote node share the connection.
+ *
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+final class WebSocketConnection {
+
+    private final Map<Long, CompletableFuture<byte[]>> m_pending = new ConcurrentHashMap<Long, CompletableFuture<byte[]>>();
+    private final AtomicLong m_correlationIds = new AtomicLong();
+
+    /** completed with the channel once the WebSocket handshake is done */
+    private final CompletableFuture<Channel> m_channel = new CompletableFuture<Channel>();
+
+    private final WiringAdminFactory m_factory;
+    private final WebSocketAdminConfiguration m_configuration;
+    private final boolean m_inbound;
+
+    private volatile String m_peer;
+    private volatile boolean m_closed;
+    private volatile boolean m_retired;
+
+    /**
+     * @param factory the admin factory
+     * @param configuration the admin configuration
+     * @param peer the key of the remote node, or <code>null</code> for an inbound connection until the handshake
+     *        request identified the remote node
+     * @param inbound <code>true</code> if the remote node opened the connection
+     */
+    WebSocketConnection(WiringAdminFactory factory, WebSocketAdminConfiguration configuration, String peer,
+        boolean inbound) {
+        m_factory = factory;
+        m_configuration = configuration;
+        m_peer = peer;
+        m_inbound = inbound;
+    }
+
+    String getPeer() {
+        return m_peer;
+    }
+
+    boolean isInbound() {
+        return m_inbound;
+    }
+
+    /**
+     * @return <code>true</code> if the connection is open or still being opened
+     */
+    boolean isOpen() {
+        if (m_closed) {
+            return false;
+        }
+        Channel channel = m_channel.getNow(null);
+        return channel == null || channel.isActive();
+    }
+
+    /**
+     * @return <code>true</code> if the handshake is done and the connection is open
+     */
+    boolean isEstablished() {
+        Channel channel = m_channel.getNow(null);
+        return !m_closed && channel != null && channel.isActive();
+    }
+
+    /**
+     * @return the handler that reads the identity of the remote node from the handshake request of an inbound
+     *         connection
+     */
+    ChannelHandler createHandshakeHandler() {
+        return new HandshakeHandler();
+    }
+
+    /**
+     * @return the handler that processes the frames of this connection
+     */
+    ChannelHandler createConnectionHandler() {
+        return new ConnectionHandler();
+    }
+
+    /**
+     * Sends a request frame without blocking.
+     *
+     * @param wireId the id of the remote wire
+     * @param payload the message
+     * @return the future response
+     */
+    CompletableFuture<byte[]> send(final String wireId, final byte[] payload) {
+        final long correlationId = m_correlationIds.incrementAndGet();
+        final CompletableFuture<byte[]> future = new CompletableFuture<byte[]>();
+        m_pending.put(correlationId, future);
+
+        m_channel.whenComplete(new BiConsumer<Channel, Throwable>() {
+            @Override
+            public void accept(Channel channel, Throwable exception) {
+                if (exception != null) {
+                    fail(correlationId, exception);
+                    return;
+                }
+                final ScheduledFuture<?> timeout = channel.eventLoop().schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        fail(correlationId, new TimeoutException("No response within " + m_configuration.getReadTimeout() + " ms"));
+                    }
+                }, m_configuration.getReadTimeout(), TimeUnit.MILLISECONDS);
+                future.whenComplete(new BiConsumer<byte[], Throwable>() {
+                    @Override
+                    public void accept(byte[] result, Throwable exception) {
+                        timeout.cancel(false);
+                    }
+                });
+                channel.writeAndFlush(new WireFrame(WireFrame.REQUEST, correlationId, wireId, payload)).addListener(
+                    new ChannelFutureListener() {
+                        @Override
+                        public void operationComplete(ChannelFuture writeFuture) throws Exception {
+                            if (!writeFuture.isSuccess()) {
+                                fail(correlationId, writeFuture.cause());
+                            }
+                        }
+                    });
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Sends a one-way frame without blocking.
+     *
+     * @param wireId the id of the remote wire
+     * @param payload the message
+     * @return the future that is completed once the frame is written to the connection
+     */
+    CompletableFuture<Void> sendOneWay(final String wireId, final byte[] payload) {
+        final CompletableFuture<Void> future = new CompletableFuture<Void>();
+        m_channel.whenComplete(new BiConsumer<Channel, Throwable>() {
+            @Override
+            public void accept(Channel channel, Throwable exception) {
+                if (exception != null) {
+                    future.completeExceptionally(createException(exception));
+                    return;
+                }
+                channel.writeAndFlush(new WireFrame(WireFrame.ONE_WAY, 0, wireId, payload)).addListener(
+                    new ChannelFutureListener() {
+                        @Override
+                        public void operationComplete(ChannelFuture writeFuture) throws Exception {
+                            if (writeFuture.isSuccess()) {
+                                future.complete(null);
+                            }
+                            else {
+                                future.completeExceptionally(createException(writeFuture.cause()));
+                            }
+                        }
+                    });
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Closes the connection and fails all pending requests.
+     */
+    void close() {
+        Channel channel = m_channel.getNow(null);
+        if (channel != null) {
+            channel.close();
+        }
+        closed(new IOException("Connection to " + m_peer + " closed"));
+    }
+
+    /**
+     * Closes the connection once it is established and the requests that were sent over it are answered. A retired
+     * connection is no longer handed out to client endpoints.
+     */
+    void retire() {
+        m_retired = true;
+        closeIfRetired();
+    }
+
+    private void closeIfRetired() {
+        if (m_retired && m_pending.isEmpty() && isEstablished()) {
+            close();
+        }
+    }
+
+    /**
+     * Called once the connection could not be opened or was lost.
+     */
+    void closed(Throwable cause) {
+        m_closed = true;
+        m_channel.completeExceptionally(cause);
+        Iterator<Long> iter = m_pending.keySet().iterator();
+        while (iter.hasNext()) {
+            fail(iter.next(), cause);
+        }
+        m_factory.getClientEndpointFactory().removeConnection(this);
+    }
+
+    private void opened(Channel channel) {
+        if (m_closed) {
+            channel.close();
+            return;
+        }
+        m_channel.complete(channel);
+        if (m_retired) {
+            closeIfRetired();
+        }
+        else if (m_peer != null) {
+            m_factory.getClientEndpointFactory().addConnection(this);
+        }
+    }
+
+    private void fail(long correlationId, Throwable cause) {
+        CompletableFuture<byte[]> future = m_pending.remove(correlationId);
+        if (future != null) {
+            future.completeExceptionally(createException(cause));
+        }
+        closeIfRetired();
+    }
+
+    private static ServiceException createException(Throwable cause) {
+        return new ServiceException("Remote service invocation failed: " + cause.getMessage(), ServiceException.REMOTE,
+            cause);
+    }
+
+    /**
+     * Internal handler that reads the identity of the remote node from the handshake request and then removes itself.
+     */
+    private class HandshakeHandler extends ChannelInboundHandlerAdapter {
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            if (msg instanceof HttpRequest) {
+                HttpRequest request = (HttpRequest) msg;
+                String zone = request.headers().getAsString(WebSocketAdminConstants.ZONE_HEADER);
+                String node = request.headers().getAsString(WebSocketAdminConstants.NODE_HEADER);
+                if (zone != null && node != null) {
+                    m_peer = WebSocketClientEndpointFactory.getPeerKey(zone, node);
+                }
+                ctx.pipeline().remove(this);
+            }
+            ctx.fireChannelRead(msg);
+        }
+    }
+
+    /**
+     * Internal handler that dispatches requests to the local receivers and completes pending requests.
+     */
+    private class ConnectionHandler extends SimpleChannelInboundHandler<WireFrame> {
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, WireFrame frame) throws Exception {
+            switch (frame.getType()) {
+                case WireFrame.REQUEST:
+                case WireFrame.ONE_WAY:
+                    m_factory.getServerEndpointHandler().dispatch(ctx.channel(), frame);
+                    break;
+                case WireFrame.RESPONSE: {
+                    CompletableFuture<byte[]> future = m_pending.remove(frame.getCorrelationId());
+                    if (future != null) {
+                        future.complete(frame.getPayload());
+                    }
+                    break;
+                }
+                case WireFrame.ERROR:
+                    fail(frame.getCorrelationId(), new IOException(new String(frame.getPayload(), StandardCharsets.UTF_8)));
+                    break;
+                case WireFrame.REJECTED: {
+                    CompletableFuture<byte[]> future = m_pending.remove(frame.getCorrelationId());
+                    if (future != null) {
+                        future.completeExceptionally(new RejectedExecutionException("Remote endpoint "
+                            + frame.getWireId() + " is overloaded"));
+                    }
+                    break;
+                }
+                default:
+                    break;
+            }
+            closeIfRetired();
+        }
+
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+            if (evt == ServerHandshakeStateEvent.HANDSHAKE_COMPLETE || evt == ClientHandshakeStateEvent.HANDSHAKE_COMPLETE) {
+                opened(ctx.channel());
+            }
+            super.userEventTriggered(ctx, evt);
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            closed(new IOException("Connection to " + m_peer + " lost"));
+            super.channelInactive(ctx);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+            ctx.close();
+        }
+    }
+}
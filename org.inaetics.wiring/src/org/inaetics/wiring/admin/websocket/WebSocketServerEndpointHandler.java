@@ -0,0 +1,203 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.websocket;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.websocketx.WebSocketFrameAggregator;
+import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
+
+import org.inaetics.wiring.WiringEndpointDescription;
+import org.inaetics.wiring.base.AbstractComponentDelegate;
+import org.inaetics.wiring.base.PriorityDispatchQueue;
+import org.inaetics.wiring.endpoint.WiringReceiver;
+
+/**
+ * Wiring component that handles all server endpoints. It accepts WebSocket connections on the configured port and
+ * path, and dispatches the requests that arrive on any connection, inbound or outbound, to the receiver of the
+ * addressed wire. Receivers are invoked on a bounded executor per wire, so that a slow receiver blocks neither the
+ * Netty event loop nor the receivers of other wires. A request that does not fit in the executor of its wire is
+ * answered with a {@link WireFrame#REJECTED} frame right away.
+ *
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+public final class WebSocketServerEndpointHandler extends AbstractComponentDelegate {
+
+    private static final int MAX_HANDSHAKE_SIZE = 65536;
+
+    private final Map<String, Wire> m_wires = new ConcurrentHashMap<String, Wire>();
+
+    private final WiringAdminFactory m_factory;
+    private final WebSocketAdminConfiguration m_configuration;
+
+    private volatile Channel m_serverChannel;
+
+    public WebSocketServerEndpointHandler(WiringAdminFactory factory, WebSocketAdminConfiguration configuration) {
+        super(factory);
+        m_factory = factory;
+        m_configuration = configuration;
+    }
+
+    @Override
+    protected void startComponentDelegate() {
+        try {
+            ServerBootstrap bootstrap = new ServerBootstrap()
+                .group(m_factory.getBossGroup(), m_factory.getWorkerGroup())
+                .channel(NioServerSocketChannel.class)
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel channel) throws Exception {
+                        WebSocketConnection connection = new WebSocketConnection(m_factory, m_configuration, null, true);
+                        ChannelPipeline pipeline = channel.pipeline();
+                        pipeline.addLast(new HttpServerCodec());
+                        pipeline.addLast(new HttpObjectAggregator(MAX_HANDSHAKE_SIZE));
+                        pipeline.addLast(connection.createHandshakeHandler());
+                        pipeline.addLast(new WebSocketServerProtocolHandler(m_configuration.getPath(), null, false,
+                            m_configuration.getMaxFrameSize()));
+                        pipeline.addLast(new WebSocketFrameAggregator(m_configuration.getMaxFrameSize()));
+                        pipeline.addLast(new WireFrameCodec());
+                        pipeline.addLast(connection.createConnectionHandler());
+                    }
+                });
+            m_serverChannel = bootstrap.bind(m_configuration.getPort()).syncUninterruptibly().channel();
+        }
+        catch (Exception e) {
+            logError("Failed to initialize due to configuration problem!", e);
+            throw new IllegalStateException("Configuration problem", e);
+        }
+    }
+
+    @Override
+    protected void stopComponentDelegate() {
+        Channel serverChannel = m_serverChannel;
+        m_serverChannel = null;
+        if (serverChannel != null) {
+            serverChannel.close().syncUninterruptibly();
+        }
+        for (Wire wire : m_wires.values()) {
+            wire.m_executor.shutdown();
+        }
+        m_wires.clear();
+    }
+
+    /**
+     * Add a Server Endpoint.
+     *
+     * @param endpoint The Endpoint Description
+     * @param receiver The Wiring Receiver
+     */
+    public void addEndpoint(WiringEndpointDescription endpoint, WiringReceiver receiver) {
+        ThreadPoolExecutor executor = PriorityDispatchQueue.createExecutor("wiring-websocket-dispatch-"
+            + endpoint.getId(), Math.max(1, m_configuration.getDispatchThreads()), m_configuration.getDispatchQueueSize());
+        Wire previous = m_wires.put(endpoint.getId(), new Wire(receiver, executor));
+        if (previous != null) {
+            previous.m_executor.shutdown();
+        }
+    }
+
+    /**
+     * Remove a Server Endpoint.
+     *
+     * @param endpoint The Endpoint Description
+     */
+    public void removeEndpoint(WiringEndpointDescription endpoint) {
+        Wire wire = m_wires.remove(endpoint.getId());
+        if (wire != null) {
+            wire.m_executor.shutdown();
+        }
+    }
+
+    /**
+     * Invokes the receiver of a request or one-way frame and writes the response of a request to the channel
+     * it came from.
+     *
+     * @param channel the channel of the frame
+     * @param frame the request or one-way frame
+     */
+    void dispatch(final Channel channel, final WireFrame frame) {
+
+        final boolean oneWay = frame.getType() == WireFrame.ONE_WAY;
+        final Wire wire = m_wires.get(frame.getWireId());
+        if (wire == null) {
+            if (oneWay) {
+                logWarning("One-way message for unknown wire %s from %s", frame.getWireId(), channel.remoteAddress());
+            }
+            else {
+                channel.writeAndFlush(createErrorFrame(frame, "Wire not found: " + frame.getWireId()));
+            }
+            return;
+        }
+
+        try {
+            wire.m_executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        byte[] result = wire.m_receiver.messageReceived(frame.getPayload());
+                        if (!oneWay) {
+                            byte[] payload = result != null ? result : new byte[0];
+                            channel.writeAndFlush(new WireFrame(WireFrame.RESPONSE, frame.getCorrelationId(), frame.getWireId(), payload));
+                        }
+                    }
+                    catch (Exception e) {
+                        if (oneWay) {
+                            logWarning("Receiver failed to process one-way message: %s", e, frame.getWireId());
+                        }
+                        else {
+                            logError("Server Endpoint Handler failed: %s", e, frame.getWireId());
+                            channel.writeAndFlush(createErrorFrame(frame, e.getMessage()));
+                        }
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            if (oneWay) {
+                logWarning("Dropped one-way message for overloaded wire %s from %s", frame.getWireId(),
+                    channel.remoteAddress());
+            }
+            else if (wire.m_executor.isShutdown()) {
+                channel.writeAndFlush(createErrorFrame(frame, "Wire not found: " + frame.getWireId()));
+            }
+            else {
+                // overloaded, let the client back off instead of queueing without bound
+                channel.writeAndFlush(new WireFrame(WireFrame.REJECTED, frame.getCorrelationId(), frame.getWireId(),
+                    new byte[0]));
+            }
+        }
+    }
+
+    private static WireFrame createErrorFrame(WireFrame request, String message) {
+        return new WireFrame(WireFrame.ERROR, request.getCorrelationId(), request.getWireId(),
+            String.valueOf(message).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * An exported wire and the executor that invokes its receiver.
+     */
+    private static final class Wire {
+
+        private final WiringReceiver m_receiver;
+        private final ThreadPoolExecutor m_executor;
+
+        Wire(WiringReceiver receiver, ThreadPoolExecutor executor) {
+            m_receiver = receiver;
+            m_executor = executor;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.websocket;
+
+/**
+ * A single message on a WebSocket wiring connection, carried in one binary WebSocket frame. Both peers of a
+ * connection send requests and responses; a correlation id matches responses to the requests of the sending peer,
+ * regardless of their order.
+ * <p>
+ * Layout of the frame payload: type (1 byte), correlation id (8 bytes), wire id length (2 bytes), wire id (UTF-8)
+ * and the message. This is the layout of the TCP admin, without its length prefix.
+ *
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+final class WireFrame {
+
+    /** a request for the receiver of the given wire */
+    static final byte REQUEST = 1;
+    /** the response to the request with the same correlation id */
+    static final byte RESPONSE = 2;
+    /** the failure of the request with the same correlation id, the payload holds the error message */
+    static final byte ERROR = 3;
+    /** a message for the receiver of the given wire that is not answered */
+    static final byte ONE_WAY = 4;
+    /** the request with the same correlation id was not processed because the wire is overloaded */
+    static final byte REJECTED = 5;
+
+    private final byte m_type;
+    private final long m_correlationId;
+    private final String m_wireId;
+    private final byte[] m_payload;
+
+    WireFrame(byte type, long correlationId, String wireId, byte[] payload) {
+        m_type = type;
+        m_correlationId = correlationId;
+        m_wireId = wireId;
+        m_payload = payload;
+    }
+
+    byte getType() {
+        return m_type;
+    }
+
+    long getCorrelationId() {
+        return m_correlationId;
+    }
+
+    String getWireId() {
+        return m_wireId;
+    }
+
+    byte[] getPayload() {
+        return m_payload;
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.websocket;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageCodec;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+
+/**
+ * Converts between binary WebSocket frames and {@link WireFrame}s.
+ *
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+final class WireFrameCodec extends MessageToMessageCodec<BinaryWebSocketFrame, WireFrame> {
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, WireFrame frame, List<Object> out) throws Exception {
+        byte[] wireId = frame.getWireId().getBytes(StandardCharsets.UTF_8);
+        byte[] payload = frame.getPayload();
+        ByteBuf buffer = ctx.alloc().buffer(1 + 8 + 2 + wireId.length + payload.length);
+        buffer.writeByte(frame.getType());
+        buffer.writeLong(frame.getCorrelationId());
+        buffer.writeShort(wireId.length);
+        buffer.writeBytes(wireId);
+        buffer.writeBytes(payload);
+        out.add(new BinaryWebSocketFrame(buffer));
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, BinaryWebSocketFrame webSocketFrame, List<Object> out)
+        throws Exception {
+        ByteBuf buffer = webSocketFrame.content();
+        byte type = buffer.readByte();
+        long correlationId = buffer.readLong();
+        byte[] wireId = new byte[buffer.readUnsignedShort()];
+        buffer.readBytes(wireId);
+        byte[] payload = new byte[buffer.readableBytes()];
+        buffer.readBytes(payload);
+        out.add(new WireFrame(type, correlationId, new String(wireId, StandardCharsets.UTF_8), payload));
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.websocket;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+
+import org.inaetics.wiring.WiringAdmin;
+import org.inaetics.wiring.base.AbstractComponent;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.ServiceFactory;
+import org.osgi.framework.ServiceRegistration;
+
+/**
+ * Factory for the Wiring Admin service implementation. It owns the Netty event loops that are shared by
+ * the server endpoints and all client connections.
+ * 
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+public final class WiringAdminFactory extends AbstractComponent implements ServiceFactory<WiringAdmin> {
+
+    private final ConcurrentHashMap<Bundle, WiringAdminImpl> m_instances =
+        new ConcurrentHashMap<Bundle, WiringAdminImpl>();
+
+    private final WebSocketAdminConfiguration m_configuration;
+    
+    private final WebSocketServerEndpointHandler m_serverEndpointHandler;
+    private final WebSocketClientEndpointFactory m_clientEndpointFactory;
+    private final WiringEndpointEventHandler m_endpointEventHandler;
+
+    private volatile EventLoopGroup m_bossGroup;
+    private volatile EventLoopGroup m_workerGroup;
+    
+    private volatile boolean m_started = false;
+
+    public WiringAdminFactory(WebSocketAdminConfiguration configuration) {
+        super("admin", "websocket");
+        m_configuration = configuration;
+        m_serverEndpointHandler = new WebSocketServerEndpointHandler(this, m_configuration);
+        m_clientEndpointFactory = new WebSocketClientEndpointFactory(this, m_configuration);
+        m_endpointEventHandler = new WiringEndpointEventHandler(this, m_configuration);
+    }
+
+    @Override
+    protected void startComponent() throws Exception {
+    	
+    	if(m_started) return;
+    	m_started = true;
+        
+    	super.startComponent();
+
+    	m_bossGroup = new NioEventLoopGroup(1);
+    	m_workerGroup = new NioEventLoopGroup(m_configuration.getIoThreads());
+
+        m_serverEndpointHandler.start();
+        m_clientEndpointFactory.start();
+    }
+
+    @Override
+    protected void stopComponent() throws Exception {
+    	
+    	if(!m_started) return;
+    	m_started = false;
+    	
+        m_serverEndpointHandler.stop();
+        m_clientEndpointFactory.stop();
+
+        m_bossGroup.shutdownGracefully();
+        m_workerGroup.shutdownGracefully();
+
+        super.stopComponent();
+    }
+
+    @Override
+    public WiringAdmin getService(Bundle bundle, ServiceRegistration<WiringAdmin> registration) {
+
+        WiringAdminImpl instance = new WiringAdminImpl(this, m_configuration);
+        try {
+            instance.start();
+            WiringAdminImpl previous = m_instances.put(bundle, instance);
+            assert previous == null; // framework should guard against this
+            return instance;
+        }
+        catch (Exception e) {
+            logError("Exception while instantiating admin instance!", e);
+            return null;
+        }
+    }
+
+    @Override
+    public void ungetService(Bundle bundle, ServiceRegistration<WiringAdmin> registration,
+    		WiringAdmin service) {
+
+        WiringAdminImpl instance = m_instances.remove(bundle);
+        try {
+            instance.stop();
+        }
+        catch (Exception e) {}
+    }
+
+    EventLoopGroup getBossGroup() {
+        return m_bossGroup;
+    }
+
+    EventLoopGroup getWorkerGroup() {
+        return m_workerGroup;
+    }
+
+    WebSocketServerEndpointHandler getServerEndpointHandler() {
+        return m_serverEndpointHandler;
+    }
+    
+    WebSocketClientEndpointFactory getClientEndpointFactory() {
+    	return m_clientEndpointFactory;
+    }
+
+    WiringEndpointEventHandler getEndpointEventHandler() {
+        return m_endpointEventHandler;
+    }
+
+}
@@ -0,0 +1,71 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.websocket;
+
+import java.net.URI;
+
+import org.inaetics.wiring.WiringEndpointDescription;
+import org.inaetics.wiring.WiringEndpointEvent;
+import org.inaetics.wiring.WiringEndpointEventListener;
+import org.inaetics.wiring.base.AbstractComponentDelegate;
+
+/**
+ * Listens for the WebSocket endpoints of remote nodes, so that the {@link WebSocketClientEndpointFactory} can keep a
+ * connection to every discovered node, whether or not any of its endpoints is imported.
+ *
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+public final class WiringEndpointEventHandler extends AbstractComponentDelegate implements WiringEndpointEventListener {
+
+    private final WebSocketAdminConfiguration m_configuration;
+    private final WebSocketClientEndpointFactory m_clientFactory;
+
+    public WiringEndpointEventHandler(WiringAdminFactory factory, WebSocketAdminConfiguration configuration) {
+        super(factory);
+        m_configuration = configuration;
+        m_clientFactory = factory.getClientEndpointFactory();
+    }
+
+    @Override
+    public void endpointChanged(WiringEndpointEvent event) {
+        WiringEndpointDescription endpoint = event.getEndpoint();
+        if (!isRemotePeerEndpoint(endpoint)) {
+            return;
+        }
+        switch (event.getType()) {
+            case WiringEndpointEvent.ADDED:
+                m_clientFactory.addPeerEndpoint(endpoint);
+                break;
+            case WiringEndpointEvent.REMOVED:
+                m_clientFactory.removePeerEndpoint(endpoint);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the endpoint is a WebSocket endpoint of another node with a valid url
+     */
+    private boolean isRemotePeerEndpoint(WiringEndpointDescription endpoint) {
+        if (!WebSocketAdminConstants.PROTOCOL_NAME.equals(endpoint.getProtocolName())) {
+            return false;
+        }
+        if (m_configuration.getZone().equals(endpoint.getZone()) && m_configuration.getNode().equals(endpoint.getNode())) {
+            return false;
+        }
+        String url = endpoint.getProperty(WebSocketWiringEndpointProperties.URL);
+        try {
+            URI uri = url != null ? URI.create(url) : null;
+            if (uri != null && uri.getHost() != null && uri.getPort() != -1) {
+                return true;
+            }
+        }
+        catch (IllegalArgumentException e) {
+            // reported below
+        }
+        logWarning("Ignoring endpoint with invalid url %s: %s", url, endpoint);
+        return false;
+    }
+}
@@ -4,6 +4,7 @@
 package org.inaetics.wiring.base;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
@@ -17,6 +18,8 @@ import java.io.Writer;
  */
 public final class IOUtil {
 
+    private static final int MAX_INITIAL_BUFFER_SIZE = 64 * 1024;
+
     public static void closeSilently(Closeable resource) {
         if (resource != null) {
             try {
@@ -49,4 +52,71 @@ public final class IOUtil {
             return null;
         }
     }    
+
+    /**
+     * Reads the given stream until its end and closes it. The size hint usually comes from the sender, so at most
+     * {@value #MAX_INITIAL_BUFFER_SIZE} bytes are allocated for it up front; the buffer grows with the data that
+     * actually arrives.
+     * 
+     * @param is the stream to read
+     * @param sizeHint the expected number of bytes, or a negative value if unknown
+     * @param maxSize the maximum number of bytes to accept
+     * @return the content of the stream, or <code>null</code> if the stream is <code>null</code>
+     * @throws SizeLimitExceededException if the size hint or the content of the stream exceeds the maximum size
+     */
+    public static byte[] readFully(InputStream is, int sizeHint, int maxSize) throws IOException {
+
+        if (is == null) {
+            return null;
+        }
+        try {
+            if (sizeHint > maxSize) {
+                throw new SizeLimitExceededException(maxSize);
+            }
+            if (sizeHint >= 0 && sizeHint <= MAX_INITIAL_BUFFER_SIZE) {
+                // read directly into the result, only copy if the stream does not match the hint
+                byte[] result = new byte[sizeHint];
+                int offset = 0;
+                int n;
+                while (offset < sizeHint && (n = is.read(result, offset, sizeHint - offset)) != -1) {
+                    offset += n;
+                }
+                if (offset < sizeHint) {
+                    byte[] truncated = new byte[offset];
+                    System.arraycopy(result, 0, truncated, 0, offset);
+                    return truncated;
+                }
+                int next = is.read();
+                if (next == -1) {
+                    return result;
+                }
+                if (sizeHint == maxSize) {
+                    throw new SizeLimitExceededException(maxSize);
+                }
+                ByteArrayOutputStream out = new ByteArrayOutputStream(sizeHint + 1024);
+                out.write(result);
+                out.write(next);
+                copy(is, out, maxSize);
+                return out.toByteArray();
+            }
+            ByteArrayOutputStream out =
+                sizeHint < 0 ? new ByteArrayOutputStream() : new ByteArrayOutputStream(MAX_INITIAL_BUFFER_SIZE);
+            copy(is, out, maxSize);
+            return out.toByteArray();
+        }
+        finally {
+            is.close();
+        }
+    }
+
+    private static void copy(InputStream is, ByteArrayOutputStream out, int maxSize) throws IOException {
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = is.read(buffer)) != -1) {
+            if (n > maxSize - out.size()) {
+                throw new SizeLimitExceededException(maxSize);
+            }
+            out.write(buffer, 0, n);
+        }
+    }
 }
@@ -0,0 +1,390 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.base;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.inaetics.wiring.endpoint.WiringPriority;
+
+/**
+ * The queue of the dispatch executor of a server endpoint, with a bounded lane for every {@link WiringPriority}.
+ * Wiring admins create these executors with {@link #createExecutor(String, int, int)}, one per exported wire, so that
+ * a slow receiver only holds up the messages of its own wire.
+ * <p>
+ * Dispatch threads take the next message with weighted round robin: within a round every lane is served at most its
+ * weight in messages, higher lanes first, and a new round starts once no lane with waiting messages has weight left.
+ * While only urgent messages wait they are served right away; while all lanes are backlogged, every round serves
+ * 8 high, 4 normal and 1 bulk message, so that lower lanes still make progress. Since every lane has a capacity of its
+ * own, a saturated bulk lane does not get urgent messages rejected.
+ * <p>
+ * Tasks are assigned to a lane by wrapping them in a {@link Task}, other tasks go to the {@link WiringPriority#NORMAL}
+ * lane.
+ *
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+public final class PriorityDispatchQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+    private static final WiringPriority[] PRIORITIES = WiringPriority.values();
+    private static final int KEEP_ALIVE = 60;
+
+    private final int m_laneCapacity;
+    private final ReentrantLock m_lock = new ReentrantLock();
+    private final Condition m_notEmpty = m_lock.newCondition();
+    private final Condition m_notFull = m_lock.newCondition();
+
+    // guarded by m_lock
+    private final ArrayDeque<Runnable>[] m_lanes;
+    private final int[] m_served;
+    private int m_size;
+
+    /**
+     * @param laneCapacity the maximum number of waiting tasks per lane
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public PriorityDispatchQueue(int laneCapacity) {
+        m_laneCapacity = Math.max(1, laneCapacity);
+        m_lanes = new ArrayDeque[PRIORITIES.length];
+        for (int i = 0; i < m_lanes.length; i++) {
+            m_lanes[i] = new ArrayDeque<Runnable>();
+        }
+        m_served = new int[PRIORITIES.length];
+    }
+
+    /**
+     * Creates the bounded executor that invokes the receiver of a wire. Idle executors do not keep their threads.
+     * 
+     * @param name the name of the wire, used for the names of the dispatch threads
+     * @param threads the maximum number of dispatch threads, must be positive
+     * @param laneCapacity the maximum number of waiting tasks per lane, 0 to reject tasks while all threads are busy
+     * @return the executor, which throws a {@link java.util.concurrent.RejectedExecutionException} for a task that
+     *         does not fit
+     */
+    public static ThreadPoolExecutor createExecutor(final String name, int threads, int laneCapacity) {
+        BlockingQueue<Runnable> queue = laneCapacity > 0 ? new PriorityDispatchQueue(laneCapacity)
+            : new SynchronousQueue<Runnable>();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE, TimeUnit.SECONDS, queue,
+            new ThreadFactory() {
+                private final AtomicInteger m_count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, name + "-" + m_count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * @param executor an executor
+     * @param priority a priority
+     * @return the number of tasks of the priority the executor accepts right now, i.e. its idle threads and the free
+     *         slots in the lane of the priority
+     */
+    public static int getFreeCapacity(ThreadPoolExecutor executor, WiringPriority priority) {
+        int idle = executor.getMaximumPoolSize() - executor.getActiveCount();
+        BlockingQueue<Runnable> queue = executor.getQueue();
+        int capacity = queue instanceof PriorityDispatchQueue
+            ? ((PriorityDispatchQueue) queue).remainingCapacity(priority) : queue.remainingCapacity();
+        return capacity + Math.max(0, idle);
+    }
+
+    /**
+     * @param priority a priority
+     * @return the number of tasks that can be added to the lane of the priority without waiting
+     */
+    public int remainingCapacity(WiringPriority priority) {
+        m_lock.lock();
+        try {
+            return m_laneCapacity - m_lanes[priority.ordinal()].size();
+        }
+        finally {
+            m_lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        m_lock.lock();
+        try {
+            return m_laneCapacity * m_lanes.length - m_size;
+        }
+        finally {
+            m_lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        m_lock.lock();
+        try {
+            return m_size;
+        }
+        finally {
+            m_lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(Runnable task) {
+        ArrayDeque<Runnable> lane = m_lanes[getPriority(task).ordinal()];
+        m_lock.lock();
+        try {
+            if (lane.size() >= m_laneCapacity) {
+                return false;
+            }
+            enqueue(lane, task);
+            return true;
+        }
+        finally {
+            m_lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(Runnable task, long timeout, TimeUnit unit) throws InterruptedException {
+        ArrayDeque<Runnable> lane = m_lanes[getPriority(task).ordinal()];
+        long nanos = unit.toNanos(timeout);
+        m_lock.lockInterruptibly();
+        try {
+            while (lane.size() >= m_laneCapacity) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = m_notFull.awaitNanos(nanos);
+            }
+            enqueue(lane, task);
+            return true;
+        }
+        finally {
+            m_lock.unlock();
+        }
+    }
+
+    @Override
+    public void put(Runnable task) throws InterruptedException {
+        ArrayDeque<Runnable> lane = m_lanes[getPriority(task).ordinal()];
+        m_lock.lockInterruptibly();
+        try {
+            while (lane.size() >= m_laneCapacity) {
+                m_notFull.await();
+            }
+            enqueue(lane, task);
+        }
+        finally {
+            m_lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll() {
+        m_lock.lock();
+        try {
+            return dequeue();
+        }
+        finally {
+            m_lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        m_lock.lockInterruptibly();
+        try {
+            Runnable task;
+            while ((task = dequeue()) == null) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = m_notEmpty.awaitNanos(nanos);
+            }
+            return task;
+        }
+        finally {
+            m_lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable take() throws InterruptedException {
+        m_lock.lockInterruptibly();
+        try {
+            Runnable task;
+            while ((task = dequeue()) == null) {
+                m_notEmpty.await();
+            }
+            return task;
+        }
+        finally {
+            m_lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable peek() {
+        m_lock.lock();
+        try {
+            int lane = selectLane();
+            return lane >= 0 ? m_lanes[lane].peek() : null;
+        }
+        finally {
+            m_lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object task) {
+        m_lock.lock();
+        try {
+            for (ArrayDeque<Runnable> lane : m_lanes) {
+                if (lane.remove(task)) {
+                    m_size--;
+                    m_notFull.signalAll();
+                    return true;
+                }
+            }
+            return false;
+        }
+        finally {
+            m_lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c, int maxElements) {
+        m_lock.lock();
+        try {
+            int drained = 0;
+            Runnable task;
+            while (drained < maxElements && (task = dequeue()) != null) {
+                c.add(task);
+                drained++;
+            }
+            return drained;
+        }
+        finally {
+            m_lock.unlock();
+        }
+    }
+
+    /**
+     * @return an iterator over a snapshot of the waiting tasks, which does not support removal
+     */
+    @Override
+    public Iterator<Runnable> iterator() {
+        m_lock.lock();
+        try {
+            List<Runnable> tasks = new ArrayList<Runnable>(m_size);
+            for (ArrayDeque<Runnable> lane : m_lanes) {
+                tasks.addAll(lane);
+            }
+            return Collections.unmodifiableList(tasks).iterator();
+        }
+        finally {
+            m_lock.unlock();
+        }
+    }
+
+    private void enqueue(ArrayDeque<Runnable> lane, Runnable task) {
+        lane.add(task);
+        m_size++;
+        m_notEmpty.signal();
+    }
+
+    private Runnable dequeue() {
+        int lane = selectLane();
+        if (lane < 0) {
+            return null;
+        }
+        if (m_served[lane] >= PRIORITIES[lane].getWeight()) {
+            // every waiting lane used up its weight, start a new round
+            Arrays.fill(m_served, 0);
+        }
+        m_served[lane]++;
+        m_size--;
+        m_notFull.signalAll();
+        return m_lanes[lane].poll();
+    }
+
+    /**
+     * Selects the lane of the next task without changing the round, so that peeking does not affect the weighting.
+     *
+     * @return the lane of the next task, or <code>-1</code> if no task is waiting
+     */
+    private int selectLane() {
+        if (m_size == 0) {
+            return -1;
+        }
+        int first = -1;
+        for (int i = 0; i < m_lanes.length; i++) {
+            if (!m_lanes[i].isEmpty()) {
+                if (m_served[i] < PRIORITIES[i].getWeight()) {
+                    return i;
+                }
+                if (first < 0) {
+                    first = i;
+                }
+            }
+        }
+        // every waiting lane used up its weight, the next round starts with the highest waiting lane
+        return first;
+    }
+
+    private static WiringPriority getPriority(Runnable task) {
+        if (task instanceof Task) {
+            return ((Task<?>) task).getPriority();
+        }
+        return WiringPriority.NORMAL;
+    }
+
+    /**
+     * A task for the lane of a priority.
+     */
+    public static final class Task<V> extends FutureTask<V> {
+
+        private final WiringPriority m_priority;
+
+        public Task(Callable<V> callable, WiringPriority priority) {
+            super(callable);
+            m_priority = priority;
+        }
+
+        public Task(Runnable runnable, WiringPriority priority) {
+            super(runnable, null);
+            m_priority = priority;
+        }
+
+        /**
+         * @return the priority of the lane of this task
+         */
+        public WiringPriority getPriority() {
+            return m_priority;
+        }
+    }
+}
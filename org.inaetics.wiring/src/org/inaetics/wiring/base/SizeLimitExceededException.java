@@ -0,0 +1,23 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.base;
+
+import java.io.IOException;
+
+/**
+ * Signals that a message is larger than the maximum size its receiver accepts.
+ * 
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+public final class SizeLimitExceededException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @param maxSize the maximum size in bytes that was exceeded
+     */
+    public SizeLimitExceededException(long maxSize) {
+        super("Message exceeds the maximum size of " + maxSize + " bytes");
+    }
+}
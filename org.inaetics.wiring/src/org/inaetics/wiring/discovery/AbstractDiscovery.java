@@ -4,8 +4,10 @@
 package org.inaetics.wiring.discovery;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.inaetics.wiring.WiringEndpointDescription;
@@ -73,32 +75,56 @@ public abstract class AbstractDiscovery extends AbstractWiringEndpointPublishing
     }
  
     /**
-     * Set all discovered remote endpoints and invoke relevant listeners.
+     * Set all discovered remote endpoints and invoke relevant listeners. Only the difference with the endpoints that
+     * are discovered already is applied: listeners are not invoked for unchanged endpoints, and an endpoint whose
+     * description changed is removed and added again.
      * 
      * @param newEndpoints The Wiring Endpoint Description
      */
     protected final void setDiscoveredEndpoints(final List<WiringEndpointDescription> newEndpoints) {
 
-        // first remove old urls
+        Map<String, WiringEndpointDescription> newEndpointsById = new HashMap<>();
+        for (WiringEndpointDescription newEndpoint : newEndpoints) {
+            newEndpointsById.put(newEndpoint.getId(), newEndpoint);
+        }
+
+        // first remove old and changed endpoints
         List<WiringEndpointDescription> toRemove = new ArrayList<>();
         for (WiringEndpointDescription oldEndpoint : m_endpoints.values()) {
-            if (!newEndpoints.contains(oldEndpoint)) {
+            WiringEndpointDescription newEndpoint = newEndpointsById.get(oldEndpoint.getId());
+            if (newEndpoint == null || !isSameDescription(oldEndpoint, newEndpoint)) {
                 toRemove.add(oldEndpoint);
             }
         }
         for (WiringEndpointDescription removedEndpoint : toRemove) {
         	removeDiscoveredEndpoint(removedEndpoint);
         }
-        // add missing urls
-        Collection<WiringEndpointDescription> oldEndpoints = m_endpoints.values();
-        for (WiringEndpointDescription newEndpoint : newEndpoints) {
-            if (!oldEndpoints.contains(newEndpoint)) {
+        // add missing and changed endpoints
+        for (WiringEndpointDescription newEndpoint : newEndpointsById.values()) {
+            if (!m_endpoints.containsKey(newEndpoint.getId())) {
                 addDiscoveredEndpoint(newEndpoint);
             }
         }
 
     }
 
+    /**
+     * @return <code>true</code> if both descriptions describe the same endpoint in the same way, unlike
+     *         {@link WiringEndpointDescription#equals(Object)}, which only compares the ids
+     */
+    private static boolean isSameDescription(WiringEndpointDescription a, WiringEndpointDescription b) {
+        return Objects.equals(a.getId(), b.getId()) && Objects.equals(a.getZone(), b.getZone())
+            && Objects.equals(a.getNode(), b.getNode()) && Objects.equals(a.getProtocolName(), b.getProtocolName())
+            && Objects.equals(a.getProperties(), b.getProperties());
+    }
+
+    /**
+     * @return the remote endpoints that are currently discovered
+     */
+    protected final List<WiringEndpointDescription> getDiscoveredEndpoints() {
+        return new ArrayList<WiringEndpointDescription>(m_endpoints.values());
+    }
+
     /**
      * Register a newly discovered remote wiring endpoint and invoke relevant listeners. Concrete implementations must
      * call this method for every applicable remote registration they discover.
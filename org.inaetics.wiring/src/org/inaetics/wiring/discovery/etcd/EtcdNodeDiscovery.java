@@ -11,6 +11,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
@@ -19,6 +20,7 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 import mousio.client.promises.ResponsePromise;
 import mousio.client.promises.ResponsePromise.IsSimplePromiseResponseHandler;
 import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.requests.EtcdKeyPutRequest;
 import mousio.etcd4j.responses.EtcdException;
 import mousio.etcd4j.responses.EtcdKeyAction;
 import mousio.etcd4j.responses.EtcdKeysResponse;
@@ -29,6 +31,15 @@ import org.inaetics.wiring.discovery.AbstractDiscovery;
 
 /**
  * Etcd implementation of service node based discovery.
+ * <p>
+ * The published endpoints of a node are stored as <code>root/zone/node/id</code>. Only the node directory has a TTL,
+ * which is renewed periodically without touching the endpoints; when it expires, etcd removes all endpoints of the
+ * node at once. Watchers ignore the events of directories that are created or refreshed, and of keys that are written
+ * with an unchanged value.
+ * <p>
+ * The watch on the root directory resumes from the index after the last applied event, so that a transient watch
+ * error, e.g. a connection that was closed, does not lose or repeat events. Only when etcd cleared that index from its
+ * event history, the whole directory is read again, and its difference with the discovered endpoints is applied.
  * 
  * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
  */
@@ -41,6 +52,13 @@ public final class EtcdNodeDiscovery extends AbstractDiscovery {
     private static final String PROPERTY_PROTOCOL_NAME = "inaetics.wiring.config";
     
     private static final String PATH_SEP = "/";
+
+    // see https://github.com/coreos/etcd/blob/master/Documentation/v2/errorcode.md
+    private static final int ETCD_KEY_NOT_FOUND = 100;
+    private static final int ETCD_NODE_EXIST = 105;
+    private static final int ETCD_EVENT_INDEX_CLEARED = 401;
+
+    private static final int RETRY_DELAY = 1;
     private static final String PROP_SEP = "\n";
     private static final String PROP_ASSIGN = "=";
 
@@ -56,6 +74,11 @@ public final class EtcdNodeDiscovery extends AbstractDiscovery {
     
     private final Map<String, WiringEndpointDescription> m_publishedEndpoints = new HashMap<String, WiringEndpointDescription>();
     private final ReentrantReadWriteLock m_lock = new ReentrantReadWriteLock();
+
+    /** the etcd index of the last event or snapshot that was applied */
+    private volatile long m_lastIndex;
+    /** the number of watch errors since the last event */
+    private volatile int m_watchErrors;
     
     public EtcdNodeDiscovery(EtcdDiscoveryConfiguration configuration) {
         super(DISCOVERY_TYPE, configuration);
@@ -72,12 +95,13 @@ public final class EtcdNodeDiscovery extends AbstractDiscovery {
         logDebug("Connecting to %s", m_configuration.getConnectUrl());
         m_etcd = new EtcdClient(URI.create(m_configuration.getConnectUrl()));
         logDebug("Etcd version is %s", m_etcd.getVersion());
-        m_updater = new EtcdRegistrationUpdater();
 
         // set local node properties (without enpoints)
     	m_localEndpoint.setZone(m_configuration.getZone());
     	m_localEndpoint.setNode(m_configuration.getNode());
 
+        m_updater = new EtcdRegistrationUpdater();
+
         discoverEndpoints();
     }
 
@@ -104,8 +128,11 @@ public final class EtcdNodeDiscovery extends AbstractDiscovery {
         super.stopComponent();
     }
 
-    private void discoverEndpoints() throws Exception {
-        long index = 0l;
+    /**
+     * Reads all endpoints and applies their difference with the discovered endpoints, then watches for changes from
+     * the index of the snapshot on. Retried after a delay if etcd cannot be read.
+     */
+    private void discoverEndpoints() {
         try {
         	
         	// create dirs if not available yet...
@@ -118,26 +145,32 @@ public final class EtcdNodeDiscovery extends AbstractDiscovery {
 			}
         	
             EtcdKeysResponse response = m_etcd.getDir(rootPath).recursive().send().get();
-            index = getEtcdIndex(response);
+            long index = getEtcdIndex(response);
             logDebug("discovering endpoints at etcd index %s", index);
             
         	try {
-	            if (response.node.dir && response.node.nodes != null) {
-	                List<WiringEndpointDescription> nodes = getWiringEndpointDescriptions(response);
+	            if (response.node.dir) {
+	                List<WiringEndpointDescription> nodes = response.node.nodes != null
+	                	? getWiringEndpointDescriptions(response) : new ArrayList<WiringEndpointDescription>();
 	                setDiscoveredEndpoints(nodes);
 	            }
         	}
         	catch (Exception e) {
 				logWarning("Failed to set discovered endpoint(s)", e);
 			}
-            
-        }
-        catch (EtcdException e) {
-            logError("Could not discovery endpoints!", e);
-        }
-        finally {
+
+            m_lastIndex = index;
             setDirectoryWatch(index + 1);
         }
+        catch (Exception e) {
+            logError("Could not discover endpoints, retrying in %s s", e, RETRY_DELAY);
+            schedule(new Runnable() {
+            	@Override
+            	public void run() {
+            		discoverEndpoints();
+            	}
+            });
+        }
     }
 
     private List<WiringEndpointDescription> getWiringEndpointDescriptions(EtcdKeysResponse response) {
@@ -169,9 +202,25 @@ public final class EtcdNodeDiscovery extends AbstractDiscovery {
     
     private void handleDiscoveryNodeChange(EtcdKeysResponse response) throws Exception {
 
-    	long index = 0l;
         try {
-            index = response.node.modifiedIndex;
+            long index = response.node.modifiedIndex;
+            if (index > m_lastIndex) {
+            	m_lastIndex = index;
+            }
+
+            if (response.node.dir) {
+            	// zone and node directories are created and refreshed without changing any endpoint
+            	if (response.action == EtcdKeyAction.delete || response.action == EtcdKeyAction.expire) {
+            		logInfo("Handling removal of directory at etcd index %s, action %s, key %s", index, response.action.toString(), response.node.key);
+            		removeDiscoveredEndpoints(response.node.key);
+            	}
+            	return;
+            }
+            if (isRefresh(response)) {
+            	logDebug("Ignoring refresh at etcd index %s, key %s", index, response.node.key);
+            	return;
+            }
+
             logInfo("Handling endpoint change at etcd index %s, action %s, key %s", index, response.action.toString(), response.node.key);
             
             // new / updated node
@@ -194,10 +243,44 @@ public final class EtcdNodeDiscovery extends AbstractDiscovery {
             logError("Could not handle endpoint change!", e);
         }
         finally {
-            setDirectoryWatch(index + 1);
+            // an event that could not be handled is skipped, watching it again would fail again
+            setDirectoryWatch(m_lastIndex + 1);
         }
     }
     
+    /**
+     * @return <code>true</code> if the event only renewed the TTL of a key, e.g. with the refresh flag of etcd 2.3 or
+     *         by writing the same value again
+     */
+    private static boolean isRefresh(EtcdKeysResponse response) {
+    	if (response.action == EtcdKeyAction.delete || response.action == EtcdKeyAction.expire
+    			|| response.prevNode == null || response.node.value == null) {
+    		return false;
+    	}
+    	return response.node.value.equals(response.prevNode.value);
+    }
+
+    /**
+     * Removes the discovered endpoints below a zone or node directory that was deleted or expired.
+     * 
+     * @param directoryKey the key of the directory
+     */
+    private void removeDiscoveredEndpoints(String directoryKey) {
+    	String directory = directoryKey.substring(Math.min(directoryKey.length(), m_configuration.getRootPath().length()));
+    	if (directory.startsWith(PATH_SEP)) {
+    		directory = directory.substring(1);
+    	}
+    	if (directory.endsWith(PATH_SEP)) {
+    		directory = directory.substring(0, directory.length() - 1);
+    	}
+    	for (WiringEndpointDescription endpoint : getDiscoveredEndpoints()) {
+    		String location = endpoint.getZone() + PATH_SEP + endpoint.getNode();
+    		if (directory.isEmpty() || location.equals(directory) || location.startsWith(directory + PATH_SEP)) {
+    			removeDiscoveredEndpoint(endpoint);
+    		}
+    	}
+    }
+
     private WiringEndpointDescription getEndpointFromNode(EtcdNode etcdNode, boolean doGetEndpointProperties) {
 
     	String all = etcdNode.key.substring(m_configuration.getRootPath().length());
@@ -281,17 +364,38 @@ public final class EtcdNodeDiscovery extends AbstractDiscovery {
         logDebug("Setting watch for index %s", index);
         try {
             m_etcd.get(m_configuration.getRootPath())
-                .waitForChange((int) index)
+                .waitForChange(index)
                 .recursive()
                 .send()
                 .addListener(m_responseListener);
         }
         catch (IOException e) {
-            // TODO How do we recover from this?
-            logError("Failed to set new watch on discovery directory!", e);
+            logError("Failed to set new watch on discovery directory, retrying in %s s", e, RETRY_DELAY);
+            schedule(new Runnable() {
+            	@Override
+            	public void run() {
+            		setDirectoryWatch(m_lastIndex + 1);
+            	}
+            });
         }
     }
 
+    /**
+     * Runs a task after {@value #RETRY_DELAY} s, unless the discovery was stopped.
+     */
+    private void schedule(Runnable task) {
+    	ScheduledExecutorService executor = m_executor;
+    	if (executor == null) {
+    		return;
+    	}
+    	try {
+    		executor.schedule(task, RETRY_DELAY, TimeUnit.SECONDS);
+    	}
+    	catch (RejectedExecutionException e) {
+    		// stopped
+    	}
+    }
+
     private String getRootPath() {
     	String rootPath = m_configuration.getRootPath();
     	if (!rootPath.endsWith("/")) {
@@ -312,11 +416,19 @@ public final class EtcdNodeDiscovery extends AbstractDiscovery {
     	return getNodePath(endpoint) + endpoint.getId() + "/";
     }
 
+    /**
+     * Keeps the published endpoints registered. The endpoints have no TTL of their own, they live in the directory of
+     * this node, whose TTL is renewed with the refresh flag of etcd: that neither rewrites the endpoints nor notifies
+     * watchers, so that the load on etcd and the other nodes does not grow with the number of endpoints. If the
+     * directory expired anyway, e.g. because etcd was not reachable for longer than the TTL, it is registered again.
+     */
     private class EtcdRegistrationUpdater implements Runnable {
 
         private static final int ETCD_REGISTRATION_TTL = 30;
 
         private final ScheduledFuture<?> m_future;
+        private volatile boolean m_registered;
+        private boolean m_cleaned;
 
         public EtcdRegistrationUpdater() throws Exception {
             m_future =
@@ -324,25 +436,72 @@ public final class EtcdNodeDiscovery extends AbstractDiscovery {
                     TimeUnit.SECONDS);
         }
 
-        private void putPublishedEndpoints() throws Exception {
+        /**
+         * Creates the directory of this node and puts all published endpoints into it.
+         */
+        private void registerNode() throws Exception {
+
+        	String nodePath = getNodePath(m_localEndpoint);
 
         	m_lock.readLock().lock();
-        	
-        	for (WiringEndpointDescription endpoint : m_publishedEndpoints.values()) {
-        		putPublishedEndpoint(endpoint, false);
+        	try {
+        		if (!m_cleaned) {
+        			// endpoints of an earlier run of this node would not expire anymore
+        			try {
+        				m_etcd.deleteDir(nodePath).recursive().send().get();
+        			}
+        			catch (EtcdException e) {
+        				if (e.errorCode != ETCD_KEY_NOT_FOUND) {
+        					throw e;
+        				}
+        			}
+        			m_cleaned = true;
+        		}
+        		try {
+        			m_etcd.putDir(nodePath).ttl(ETCD_REGISTRATION_TTL).prevExist(false).send().get();
+        		}
+        		catch (EtcdException e) {
+        			if (e.errorCode != ETCD_NODE_EXIST) {
+        				throw e;
+        			}
+        			refreshNode();
+        		}
+        		for (WiringEndpointDescription endpoint : m_publishedEndpoints.values()) {
+        			putEndpoint(endpoint);
+        		}
+        		m_registered = true;
+        	}
+        	finally {
+        		m_lock.readLock().unlock();
         	}
-        	
-        	m_lock.readLock().unlock();
         }
 
-		public void putPublishedEndpoint(WiringEndpointDescription endpoint, boolean isAdded) throws Exception {
-			
-			String key = getEndpointPath(endpoint);
-			String value = getEndpointValue(endpoint);
-			
-        	m_etcd.put(key, value).prevExist(!isAdded).ttl(ETCD_REGISTRATION_TTL).send();
+        /**
+         * Renews the TTL of the directory of this node, without changing it.
+         * 
+         * @return <code>false</code> if the directory had no TTL, i.e. it expired and was created again implicitly by
+         *         putting an endpoint, without the other endpoints
+         */
+        private boolean refreshNode() throws Exception {
+        	EtcdKeyPutRequest request =
+        		m_etcd.putDir(getNodePath(m_localEndpoint)).ttl(ETCD_REGISTRATION_TTL).prevExist(true);
+        	// not supported by the etcd4j request builder, etcd before 2.3 ignores it and sends a regular update
+        	request.getRequestParams().put("refresh", "true");
+        	EtcdKeysResponse response = request.send().get();
+        	return response.prevNode == null || (response.prevNode.ttl != null && response.prevNode.ttl > 0);
         }
 
+		public void putPublishedEndpoint(WiringEndpointDescription endpoint) throws Exception {
+			// before the registration, the endpoint is put with all others
+			if (m_registered) {
+				putEndpoint(endpoint);
+			}
+        }
+
+		private void putEndpoint(WiringEndpointDescription endpoint) throws Exception {
+			m_etcd.put(getEndpointPath(endpoint), getEndpointValue(endpoint)).send();
+		}
+
 		private String getEndpointValue(WiringEndpointDescription endpoint) {
 			
 			String value = addProperty("", PROPERTY_PROTOCOL_NAME, endpoint.getProtocolName());
@@ -363,7 +522,21 @@ public final class EtcdNodeDiscovery extends AbstractDiscovery {
 		@Override
         public void run() {
             try {
-            	putPublishedEndpoints();
+            	if (m_registered) {
+            		try {
+            			if (refreshNode()) {
+            				return;
+            			}
+            		}
+            		catch (EtcdException e) {
+            			if (e.errorCode != ETCD_KEY_NOT_FOUND) {
+            				throw e;
+            			}
+            		}
+            		logWarning("Etcd registration of node %s expired, registering again", m_localEndpoint.getNode());
+            		m_registered = false;
+            	}
+            	registerNode();
             }
             catch (Exception e) {
                 logError("Etcd registration update failed", e);
@@ -382,10 +555,15 @@ public final class EtcdNodeDiscovery extends AbstractDiscovery {
         
         private void deleteLocalEndpoints() throws Exception {
         	m_lock.readLock().lock();
-        	for (WiringEndpointDescription endpoint : m_publishedEndpoints.values()) {
-        		deleteEndpoint(endpoint);
+        	try {
+        		for (WiringEndpointDescription endpoint : m_publishedEndpoints.values()) {
+        			deleteEndpoint(endpoint);
+        		}
+        		m_etcd.deleteDir(getNodePath(m_localEndpoint)).recursive().send();
+        	}
+        	finally {
+        		m_lock.readLock().unlock();
         	}
-        	m_lock.readLock().unlock();
         }
         
         public void deleteEndpoint(WiringEndpointDescription endpoint) throws Exception {
@@ -399,11 +577,32 @@ public final class EtcdNodeDiscovery extends AbstractDiscovery {
 		@Override
 		public void onResponse(ResponsePromise<EtcdKeysResponse> promise) {
 			try {
-				if (promise.getException() != null) {
-					logWarning("etcd watch received exception: %s", promise.getException().getMessage());
+				Throwable exception = promise.getException();
+				if (exception instanceof EtcdException
+						&& ((EtcdException) exception).errorCode == ETCD_EVENT_INDEX_CLEARED) {
+					// the events since the last applied one are lost, only a snapshot can catch up
+					logWarning("etcd watch index %s was cleared, rediscovering endpoints", m_lastIndex + 1);
+					m_watchErrors = 0;
 					discoverEndpoints();
 					return;
 				}
+				if (exception != null) {
+					logWarning("etcd watch received exception: %s", exception.getMessage());
+					// resume right away once, e.g. after a closed connection, and after a delay while etcd is down
+					if (m_watchErrors++ == 0) {
+						setDirectoryWatch(m_lastIndex + 1);
+					}
+					else {
+						schedule(new Runnable() {
+							@Override
+							public void run() {
+								setDirectoryWatch(m_lastIndex + 1);
+							}
+						});
+					}
+					return;
+				}
+				m_watchErrors = 0;
 				handleDiscoveryNodeChange(promise.get());
 			} catch (Exception e) {
 				logWarning("Could not get node(s)", e);
@@ -416,7 +615,7 @@ public final class EtcdNodeDiscovery extends AbstractDiscovery {
 		m_lock.writeLock().lock();
 		m_publishedEndpoints.put(endpoint.getId(), endpoint);
 		try {
-			m_updater.putPublishedEndpoint(endpoint, true);
+			m_updater.putPublishedEndpoint(endpoint);
 		} catch (Exception e) {
 			logError("error publishing endpoint %s", e, endpoint);
 		}
@@ -0,0 +1,41 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.endpoint;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A {@link WiringReceiver} that consumes messages as a stream, so that large messages do not have to be
+ * held in memory as a whole. Wiring admins that support streaming pass the request body and the response
+ * sink directly; all other admins fall back to the buffered methods, which are adapted to the stream.
+ */
+public interface StreamingWiringReceiver extends WiringReceiver {
+
+	/**
+	 * Handles a message. The response must be written to the given output stream before this method returns.
+	 * Neither stream must be closed by the receiver.
+	 * 
+	 * @param message the message
+	 * @param response the sink of the response
+	 * @throws Exception in case handling the message failed
+	 */
+	public void messageReceived(InputStream message, OutputStream response) throws Exception;
+
+	@Override
+	public default byte[] messageReceived(byte[] message) throws Exception {
+		ByteArrayOutputStream response = new ByteArrayOutputStream();
+		messageReceived(new ByteArrayInputStream(message), response);
+		return response.toByteArray();
+	}
+
+	@Override
+	public default String messageReceived(String message) throws Exception {
+		return new String(messageReceived(message.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+	}
+
+}
@@ -0,0 +1,238 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.endpoint;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breaker for a single remote endpoint, used by wiring admins for the endpoints they send messages to and by
+ * the users of a {@link WiringSender} for the services behind it.
+ * <p>
+ * The breaker keeps the outcomes of the last {@value #WINDOW_SIZE} calls. Once at least {@value #MIN_CALLS} of them
+ * are known and half or more failed, it opens and rejects all calls, so that callers fail immediately instead of
+ * waiting for a dead node. After the open time a single probe call is let through (half-open); its outcome closes
+ * or re-opens the breaker. Only the probe moves the breaker out of the open state: calls that were let through before
+ * the breaker opened and complete late do not affect it.
+ * <p>
+ * A breaker that is created with timeout bounds also tracks the latencies of the last {@value #LATENCY_WINDOW_SIZE}
+ * successful calls. They determine the adaptive timeout: a multiple of their 99th percentile, bounded by the minimum
+ * and maximum. Their 95th percentile is the delay after which a hedged request is sent to an equivalent endpoint.
+ */
+public final class WiringCircuitBreaker {
+
+	/**
+	 * The states of a breaker.
+	 */
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private static final int WINDOW_SIZE = 20;
+	private static final int MIN_CALLS = 5;
+	private static final int FAILURE_RATE_PERCENT = 50;
+	private static final int LATENCY_WINDOW_SIZE = 128;
+	private static final int MIN_LATENCY_SAMPLES = 32;
+	private static final int TIMEOUT_FACTOR = 4;
+
+	private final long m_openTime;
+	private final int m_minTimeout;
+	private final int m_maxTimeout;
+
+	/** outcomes of the last calls, <code>true</code> is a failure */
+	private final boolean[] m_outcomes = new boolean[WINDOW_SIZE];
+	private int m_outcomeCount;
+	private int m_outcomeIndex;
+	private int m_failureCount;
+
+	/** latencies of the last successful calls in ns */
+	private final long[] m_latencies = new long[LATENCY_WINDOW_SIZE];
+	private int m_latencyCount;
+	private int m_latencyIndex;
+
+	private State m_state = State.CLOSED;
+	private long m_openedAt;
+	/** the thread that makes the probe call of the half-open breaker, <code>null</code> if none */
+	private Thread m_probe;
+
+	private volatile int m_timeout;
+	private volatile long m_hedgeDelay = -1;
+
+	/**
+	 * Creates a breaker that does not track latencies.
+	 *
+	 * @param openTime the time in ms the breaker stays open before it lets a probe through
+	 */
+	public WiringCircuitBreaker(int openTime) {
+		this(openTime, 0, 0);
+	}
+
+	/**
+	 * @param openTime the time in ms the breaker stays open before it lets a probe through
+	 * @param minTimeout the lower bound of the adaptive timeout in ms
+	 * @param maxTimeout the upper bound of the adaptive timeout in ms, used until enough latencies are known
+	 */
+	public WiringCircuitBreaker(int openTime, int minTimeout, int maxTimeout) {
+		m_openTime = TimeUnit.MILLISECONDS.toNanos(openTime);
+		m_minTimeout = Math.min(minTimeout, maxTimeout);
+		m_maxTimeout = maxTimeout;
+		m_timeout = maxTimeout;
+	}
+
+	/**
+	 * Checks whether a call may be made. Every permitted call must be followed by a call to
+	 * {@link #recordSuccess(long)}, {@link #recordFailure()} or {@link #recordCancelled()} on the same thread, which
+	 * identifies the probe of the half-open breaker.
+	 *
+	 * @return <code>false</code> if the breaker is open
+	 */
+	public synchronized boolean allowRequest() {
+		switch (m_state) {
+			case CLOSED:
+				return true;
+			case OPEN:
+				if (System.nanoTime() - m_openedAt < m_openTime) {
+					return false;
+				}
+				m_state = State.HALF_OPEN;
+				m_probe = Thread.currentThread();
+				return true;
+			default:
+				if (m_probe != null) {
+					return false;
+				}
+				m_probe = Thread.currentThread();
+				return true;
+		}
+	}
+
+	/**
+	 * Records a call that reached the remote endpoint, without its latency.
+	 */
+	public void recordSuccess() {
+		recordSuccess(-1);
+	}
+
+	/**
+	 * Records a call that reached the remote endpoint.
+	 *
+	 * @param latency the latency of the call in ns, or a negative value if it must not be used for the timeout
+	 */
+	public synchronized void recordSuccess(long latency) {
+		if (m_state != State.CLOSED) {
+			if (!isProbe()) {
+				// a call that was let through before the breaker opened
+				return;
+			}
+			m_state = State.CLOSED;
+			m_probe = null;
+			resetOutcomes();
+		}
+		addOutcome(false);
+		if (latency >= 0 && m_maxTimeout > 0) {
+			m_latencies[m_latencyIndex] = latency;
+			m_latencyIndex = (m_latencyIndex + 1) % LATENCY_WINDOW_SIZE;
+			if (m_latencyCount < LATENCY_WINDOW_SIZE) {
+				m_latencyCount++;
+			}
+			if (m_latencyCount >= MIN_LATENCY_SAMPLES && m_latencyIndex % (LATENCY_WINDOW_SIZE / 8) == 0) {
+				updateLatencyBounds();
+			}
+		}
+	}
+
+	/**
+	 * Records a call that failed to reach the remote endpoint.
+	 *
+	 * @return <code>true</code> if this failure opened the breaker
+	 */
+	public synchronized boolean recordFailure() {
+		if (m_state != State.CLOSED) {
+			if (!isProbe()) {
+				// a call that was let through before the breaker opened
+				return false;
+			}
+			open();
+			return true;
+		}
+		addOutcome(true);
+		if (m_outcomeCount >= MIN_CALLS && m_failureCount * 100 >= FAILURE_RATE_PERCENT * m_outcomeCount) {
+			open();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Records a permitted call whose outcome says nothing about the remote endpoint, such as a call cut short by
+	 * the deadline of its caller. A probe of the half-open breaker is given up, so that the next call probes again.
+	 */
+	public synchronized void recordCancelled() {
+		if (isProbe()) {
+			m_probe = null;
+		}
+	}
+
+	public synchronized State getState() {
+		return m_state;
+	}
+
+	/**
+	 * @return the timeout for the next call in ms, <code>0</code> if the breaker does not track latencies
+	 */
+	public int getTimeout() {
+		return m_timeout;
+	}
+
+	/**
+	 * @return the 95th percentile of the latency in ns, or <code>-1</code> as long as too few latencies are known
+	 */
+	public long getHedgeDelay() {
+		return m_hedgeDelay;
+	}
+
+	private void open() {
+		m_state = State.OPEN;
+		m_openedAt = System.nanoTime();
+		m_probe = null;
+	}
+
+	/**
+	 * @return <code>true</code> if the calling thread makes the probe call of the half-open breaker
+	 */
+	private boolean isProbe() {
+		return m_state == State.HALF_OPEN && m_probe == Thread.currentThread();
+	}
+
+	private void addOutcome(boolean failure) {
+		if (m_outcomeCount == WINDOW_SIZE) {
+			if (m_outcomes[m_outcomeIndex]) {
+				m_failureCount--;
+			}
+		}
+		else {
+			m_outcomeCount++;
+		}
+		m_outcomes[m_outcomeIndex] = failure;
+		if (failure) {
+			m_failureCount++;
+		}
+		m_outcomeIndex = (m_outcomeIndex + 1) % WINDOW_SIZE;
+	}
+
+	private void resetOutcomes() {
+		m_outcomeCount = 0;
+		m_outcomeIndex = 0;
+		m_failureCount = 0;
+	}
+
+	private void updateLatencyBounds() {
+		long[] latencies = Arrays.copyOf(m_latencies, m_latencyCount);
+		Arrays.sort(latencies);
+		long p99 = latencies[(int) Math.ceil(latencies.length * 0.99) - 1];
+		long timeout = TimeUnit.NANOSECONDS.toMillis(p99) * TIMEOUT_FACTOR;
+		m_timeout = (int) Math.max(m_minTimeout, Math.min(m_maxTimeout, timeout));
+		m_hedgeDelay = latencies[(int) Math.ceil(latencies.length * 0.95) - 1];
+	}
+}
@@ -25,4 +25,37 @@ public interface WiringConstants {
 	 */
 	public static final String PROPERTY_SECURE = "inaetics.wiring.secure";
 	
+	/**
+	 * the group of equivalent receivers, e.g. the same service exported on several nodes.
+	 * Set on a wiring receiver, it is published with its endpoint and set on the imported wiring senders.
+	 */
+	public static final String PROPERTY_GROUP = "inaetics.wiring.group";
+	
+	/**
+	 * the policy that balances the messages of a group sender over the members of its group.
+	 * Only set on the wiring sender that represents a whole group. Possible values: "roundrobin",
+	 * "leastoutstanding", "poweroftwo"
+	 */
+	public static final String PROPERTY_BALANCING = "inaetics.wiring.balancing";
+	
+	/**
+	 * the topic a receiver subscribes to. Set on a wiring receiver, it is published with its endpoint and set on the
+	 * imported wiring senders. Messages sent with the topic sender are delivered to all receivers of the topic.
+	 */
+	public static final String PROPERTY_TOPIC = "inaetics.wiring.topic";
+	
+	/**
+	 * the policy of a topic sender for messages that do not fit in the queue of a slow subscriber anymore.
+	 * Only set on the wiring sender that represents a whole topic. Possible values: "dropoldest", "dropnewest",
+	 * "block"
+	 */
+	public static final String PROPERTY_OVERFLOW = "inaetics.wiring.overflow";
+	
+	/**
+	 * the name of a wire that stays the same when its node restarts. Set on a wiring receiver, it is published with its
+	 * endpoint and set on the imported wiring senders. Admins that spool one-way messages for unreachable wires replay
+	 * them to the endpoint with the same zone, node and name once it is discovered again.
+	 */
+	public static final String PROPERTY_DURABLE = "inaetics.wiring.durable";
+	
 }
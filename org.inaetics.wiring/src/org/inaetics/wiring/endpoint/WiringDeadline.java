@@ -0,0 +1,105 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.endpoint;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The point in time after which the result of a message is of no use anymore to the original caller.
+ * <p>
+ * A deadline is attached to the thread that sends or handles a message. Wiring admins send the remaining time
+ * along with a message, and attach it again to the thread that invokes the receiver, so that messages sent by
+ * the receiver inherit the remaining budget of the message it is handling. Messages whose deadline has passed
+ * are dropped instead of using capacity for work that nobody waits for anymore.
+ * <p>
+ * The deadline is based on {@link System#nanoTime()}, only the remaining time crosses node boundaries, so that
+ * deadlines do not depend on synchronized clocks.
+ */
+public final class WiringDeadline {
+
+	private static final ThreadLocal<WiringDeadline> CURRENT = new ThreadLocal<WiringDeadline>();
+
+	private final long m_nanos;
+
+	private WiringDeadline(long nanos) {
+		m_nanos = nanos;
+	}
+
+	/**
+	 * @param millis the time budget in milliseconds, from now
+	 * @return the deadline
+	 */
+	public static WiringDeadline after(long millis) {
+		return new WiringDeadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis));
+	}
+
+	/**
+	 * @return the deadline attached to the calling thread, or <code>null</code> if there is none
+	 */
+	public static WiringDeadline current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Attaches a deadline to the calling thread. Callers must restore the previous deadline with
+	 * {@link #detach(WiringDeadline)} once they are done, in a finally block.
+	 *
+	 * @param deadline the deadline, can be <code>null</code> to clear the deadline of the thread
+	 * @return the deadline that was attached before, can be <code>null</code>
+	 */
+	public static WiringDeadline attach(WiringDeadline deadline) {
+		WiringDeadline previous = CURRENT.get();
+		if (deadline != null) {
+			CURRENT.set(deadline);
+		}
+		else {
+			CURRENT.remove();
+		}
+		return previous;
+	}
+
+	/**
+	 * Restores the deadline that was attached to the calling thread before {@link #attach(WiringDeadline)}.
+	 *
+	 * @param previous the deadline returned by <code>attach</code>
+	 */
+	public static void detach(WiringDeadline previous) {
+		attach(previous);
+	}
+
+	/**
+	 * @param a a deadline, can be <code>null</code>
+	 * @param b a deadline, can be <code>null</code>
+	 * @return the earlier of both deadlines, <code>null</code> only if both are <code>null</code>
+	 */
+	public static WiringDeadline earliest(WiringDeadline a, WiringDeadline b) {
+		if (a == null) {
+			return b;
+		}
+		if (b == null) {
+			return a;
+		}
+		return a.m_nanos - b.m_nanos <= 0 ? a : b;
+	}
+
+	/**
+	 * @return the remaining time in milliseconds, zero or negative if the deadline has passed
+	 */
+	public long getRemaining() {
+		return TimeUnit.NANOSECONDS.toMillis(m_nanos - System.nanoTime());
+	}
+
+	/**
+	 * @return <code>true</code> if the deadline has passed
+	 */
+	public boolean isExpired() {
+		return m_nanos - System.nanoTime() <= 0;
+	}
+
+	@Override
+	public String toString() {
+		return "WiringDeadline [remaining=" + getRemaining() + "ms]";
+	}
+
+}
@@ -0,0 +1,102 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.endpoint;
+
+/**
+ * The priority class of a message.
+ * <p>
+ * Like a {@link WiringDeadline}, the priority is attached to the thread that sends or handles a message. Wiring
+ * admins send it along with a message and keep the messages of every priority in lanes of their own, so that a
+ * saturating bulk transfer does not hold up urgent messages on the same wire. Receivers are invoked with the priority
+ * of their message attached, so that the messages they send inherit it. Threads without a priority send their
+ * messages with {@link #NORMAL} priority.
+ * <p>
+ * Higher priorities are served first, but not exclusively: when messages of several priorities wait, every priority
+ * is served in proportion to its weight, so that lower priorities do not starve.
+ */
+public enum WiringPriority {
+
+	/** latency sensitive messages, e.g. interactive requests or control messages */
+	HIGH("high", 8),
+
+	/** the priority of messages that were sent without one */
+	NORMAL("normal", 4),
+
+	/** throughput oriented messages, e.g. bulk transfers or replays */
+	BULK("bulk", 1);
+
+	private static final ThreadLocal<WiringPriority> CURRENT = new ThreadLocal<WiringPriority>();
+
+	private final String m_name;
+	private final int m_weight;
+
+	private WiringPriority(String name, int weight) {
+		m_name = name;
+		m_weight = weight;
+	}
+
+	/**
+	 * @return the name of the priority on the wire
+	 */
+	public String getName() {
+		return m_name;
+	}
+
+	/**
+	 * @return the number of messages of this priority that are served for every message of weight 1 when messages
+	 *         of all priorities wait
+	 */
+	public int getWeight() {
+		return m_weight;
+	}
+
+	/**
+	 * @param name the name of a priority
+	 * @return the priority, or <code>null</code> if the name is unknown
+	 */
+	public static WiringPriority fromName(String name) {
+		for (WiringPriority priority : values()) {
+			if (priority.m_name.equalsIgnoreCase(name)) {
+				return priority;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the priority attached to the calling thread, {@link #NORMAL} if there is none
+	 */
+	public static WiringPriority current() {
+		WiringPriority priority = CURRENT.get();
+		return priority != null ? priority : NORMAL;
+	}
+
+	/**
+	 * Attaches a priority to the calling thread. Callers must restore the previous priority with
+	 * {@link #detach(WiringPriority)} once they are done, in a finally block.
+	 *
+	 * @param priority the priority, can be <code>null</code> to clear the priority of the thread
+	 * @return the priority that was attached before, can be <code>null</code>
+	 */
+	public static WiringPriority attach(WiringPriority priority) {
+		WiringPriority previous = CURRENT.get();
+		if (priority != null) {
+			CURRENT.set(priority);
+		}
+		else {
+			CURRENT.remove();
+		}
+		return previous;
+	}
+
+	/**
+	 * Restores the priority that was attached to the calling thread before {@link #attach(WiringPriority)}.
+	 *
+	 * @param previous the priority returned by <code>attach</code>
+	 */
+	public static void detach(WiringPriority previous) {
+		attach(previous);
+	}
+
+}
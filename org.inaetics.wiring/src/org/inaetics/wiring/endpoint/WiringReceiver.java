@@ -3,9 +3,25 @@
  */
 package org.inaetics.wiring.endpoint;
 
+import java.nio.charset.StandardCharsets;
+
 public interface WiringReceiver {
 
 	public String messageReceived(String message) throws Exception;
+
+	/**
+	 * Called by the wiring admins for every incoming message. By default the payload is decoded as
+	 * UTF-8 and passed to {@link #messageReceived(String)}. Receivers of binary payloads override this
+	 * method to avoid the charset conversions.
+	 * 
+	 * @param message the raw message
+	 * @return the raw response, can be <code>null</code> for an empty response
+	 * @throws Exception in case handling the message failed
+	 */
+	public default byte[] messageReceived(byte[] message) throws Exception {
+		String result = messageReceived(new String(message, StandardCharsets.UTF_8));
+		return result != null ? result.getBytes(StandardCharsets.UTF_8) : null;
+	}
 	
 	public void wiringEndpointAdded(String wireId);
 	public void wiringEndpointRemoved(String wireId);
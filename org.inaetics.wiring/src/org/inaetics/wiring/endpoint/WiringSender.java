@@ -3,9 +3,141 @@
  */
 package org.inaetics.wiring.endpoint;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 public interface WiringSender {
 
-	public String sendMessage(String message) throws Exception;
+	/**
+	 * Sends a message and waits for the response. The payload is passed to the remote receiver as is,
+	 * without any charset conversion.
+	 * 
+	 * @param message the message to send
+	 * @return the response
+	 * @throws Exception in case sending failed
+	 */
+	public byte[] sendMessage(byte[] message) throws Exception;
+
+	/**
+	 * Sends a message and returns the response as a stream. Admins that support streaming hand out the response
+	 * while it is still being received, with bounded buffering, so that a large response never has to fit in
+	 * memory; the default implementation buffers the complete response. The stream must be closed by the caller.
+	 * 
+	 * @param message the message to send
+	 * @return the response
+	 * @throws Exception in case sending failed
+	 */
+	public default InputStream sendMessageStreaming(byte[] message) throws Exception {
+		byte[] result = sendMessage(message);
+		return new ByteArrayInputStream(result != null ? result : new byte[0]);
+	}
+
+	/**
+	 * Sends a message without blocking the calling thread.
+	 * 
+	 * @param message the message to send
+	 * @return a future that is completed with the response, or exceptionally if sending failed or
+	 *         the wire has too many messages in flight
+	 */
+	public CompletableFuture<byte[]> sendMessageAsync(byte[] message);
+
+	/**
+	 * Sends a message that the receiver may safely process more than once. Admins that know equivalent receivers
+	 * (see {@link WiringConstants#PROPERTY_GROUP}) may hedge a slow message by sending it to another receiver as
+	 * well, and complete the future with the first response. The default implementation sends it once.
+	 * 
+	 * @param message the message to send
+	 * @return a future that is completed with the response, or exceptionally if sending failed
+	 */
+	public default CompletableFuture<byte[]> sendIdempotentAsync(byte[] message) {
+		return sendMessageAsync(message);
+	}
+
+	/**
+	 * Sends a message without waiting for the receiver to process it. The result of the receiver, and any
+	 * exception it throws, is discarded. Admins that support one-way messages acknowledge them as soon as the
+	 * remote endpoint has accepted them; the default implementation waits for the regular response.
+	 * 
+	 * @param message the message to send
+	 * @return a future that is completed once the message is accepted, or exceptionally if sending failed or
+	 *         the wire has too many messages in flight
+	 */
+	public default CompletableFuture<Void> sendOneWay(byte[] message) {
+		return sendMessageAsync(message).thenApply(new Function<byte[], Void>() {
+			@Override
+			public Void apply(byte[] result) {
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Sends a message with the given priority and waits for the response, see {@link WiringPriority}.
+	 */
+	public default byte[] sendMessage(byte[] message, WiringPriority priority) throws Exception {
+		WiringPriority previous = WiringPriority.attach(priority);
+		try {
+			return sendMessage(message);
+		}
+		finally {
+			WiringPriority.detach(previous);
+		}
+	}
+
+	/**
+	 * Sends a message with the given priority without blocking the calling thread, see {@link WiringPriority}.
+	 */
+	public default CompletableFuture<byte[]> sendMessageAsync(byte[] message, WiringPriority priority) {
+		WiringPriority previous = WiringPriority.attach(priority);
+		try {
+			return sendMessageAsync(message);
+		}
+		finally {
+			WiringPriority.detach(previous);
+		}
+	}
+
+	/**
+	 * Sends a message with the given priority without waiting for the receiver, see {@link WiringPriority}.
+	 */
+	public default CompletableFuture<Void> sendOneWay(byte[] message, WiringPriority priority) {
+		WiringPriority previous = WiringPriority.attach(priority);
+		try {
+			return sendOneWay(message);
+		}
+		finally {
+			WiringPriority.detach(previous);
+		}
+	}
+
+	/**
+	 * Sends a UTF-8 encoded text message, see {@link #sendMessage(byte[])}.
+	 */
+	public default String sendMessage(String message) throws Exception {
+		byte[] result = sendMessage(message.getBytes(StandardCharsets.UTF_8));
+		return result != null ? new String(result, StandardCharsets.UTF_8) : null;
+	}
+
+	/**
+	 * Sends a UTF-8 encoded text message without blocking the calling thread, see {@link #sendMessageAsync(byte[])}.
+	 */
+	public default CompletableFuture<String> sendMessageAsync(String message) {
+		return sendMessageAsync(message.getBytes(StandardCharsets.UTF_8)).thenApply(new Function<byte[], String>() {
+			@Override
+			public String apply(byte[] result) {
+				return result != null ? new String(result, StandardCharsets.UTF_8) : null;
+			}
+		});
+	}
+
+	/**
+	 * Sends a UTF-8 encoded text message without waiting for the receiver, see {@link #sendOneWay(byte[])}.
+	 */
+	public default CompletableFuture<Void> sendOneWay(String message) {
+		return sendOneWay(message.getBytes(StandardCharsets.UTF_8));
+	}
 	
 }
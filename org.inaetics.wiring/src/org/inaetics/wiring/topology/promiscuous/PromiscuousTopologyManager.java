@@ -28,6 +28,8 @@ import org.inaetics.wiring.endpoint.WiringConstants;
 import org.inaetics.wiring.endpoint.WiringReceiver;
 import org.inaetics.wiring.endpoint.WiringSender;
 import org.inaetics.wiring.endpoint.WiringTopologyManager;
+import org.inaetics.wiring.topology.promiscuous.WiringGroupSender.Balancing;
+import org.inaetics.wiring.topology.promiscuous.WiringTopicSender.Overflow;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceReference;
 import org.osgi.service.cm.ConfigurationException;
@@ -37,14 +39,28 @@ import org.osgi.service.cm.ManagedService;
  * {@link PromiscuousTopologyManager} implements a <i>Topology Manager</i> with of a promiscuous strategy. It will import
  * any discovered remote endpoints and export any locally available endpoints.<p>
  * 
+ * Imported endpoints of the same group ({@link WiringConstants#PROPERTY_GROUP}) are additionally registered as one
+ * {@link WiringGroupSender}, which balances messages over the group members using the configured policy.
+ * Imported endpoints of the same topic ({@link WiringConstants#PROPERTY_TOPIC}) are registered as one
+ * {@link WiringTopicSender}, which delivers every message to all subscribers of the topic.<p>
+ * 
  * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
  */
 public final class PromiscuousTopologyManager extends AbstractWiringEndpointPublishingComponent implements
     WiringAdminListener, WiringEndpointEventListener, ManagedService, WiringTopologyManager {
 
     public final static String SERVICE_PID = "org.amdatu.remote.topology.promiscuous";
+    public final static String CONFIG_BALANCING_KEY = "balancing";
+    public final static Balancing DEFAULT_BALANCING = Balancing.POWER_OF_TWO;
+    public final static String CONFIG_TOPIC_OVERFLOW_KEY = "topicoverflow";
+    public final static Overflow DEFAULT_TOPIC_OVERFLOW = Overflow.DROP_OLDEST;
+    public final static String CONFIG_TOPIC_QUEUE_SIZE_KEY = "topicqueuesize";
+    public final static int DEFAULT_TOPIC_QUEUE_SIZE = 64;
 
     private final Set<WiringReceiver> m_exportableReceivers = Collections.newSetFromMap(new ConcurrentHashMap<WiringReceiver, Boolean>());
+    private final Map<WiringReceiver, String> m_receiverGroups = new ConcurrentHashMap<WiringReceiver, String>();
+    private final Map<WiringReceiver, String> m_receiverTopics = new ConcurrentHashMap<WiringReceiver, String>();
+    private final Map<WiringReceiver, String> m_receiverDurableNames = new ConcurrentHashMap<WiringReceiver, String>();
     private final Map<WiringReceiver, Map<WiringAdmin, ExportRegistration>> m_exportedReceivers =
             new ConcurrentHashMap<WiringReceiver, Map<WiringAdmin, ExportRegistration>>();
 
@@ -55,6 +71,15 @@ public final class PromiscuousTopologyManager extends AbstractWiringEndpointPubl
     private final Map<ImportRegistration, Component> m_registeredSenders =
             new ConcurrentHashMap<ImportRegistration, Component>();
 
+    private final Map<String, WiringGroupSender> m_groupSenders = new HashMap<String, WiringGroupSender>();
+    private final Map<String, Component> m_registeredGroupSenders = new HashMap<String, Component>();
+    private volatile Balancing m_balancing = DEFAULT_BALANCING;
+
+    private final Map<String, WiringTopicSender> m_topicSenders = new HashMap<String, WiringTopicSender>();
+    private final Map<String, Component> m_registeredTopicSenders = new HashMap<String, Component>();
+    private volatile Overflow m_topicOverflow = DEFAULT_TOPIC_OVERFLOW;
+    private volatile int m_topicQueueSize = DEFAULT_TOPIC_QUEUE_SIZE;
+
     private final Set<WiringAdmin> m_wiringAdmins = Collections.newSetFromMap(new ConcurrentHashMap<WiringAdmin, Boolean>());
 
 	private volatile BundleContext m_context;
@@ -70,7 +95,60 @@ public final class PromiscuousTopologyManager extends AbstractWiringEndpointPubl
     public void updated(Dictionary<String, ?> configuration) throws ConfigurationException {
 
     	// TODO use filters as in RSA TM ?
-    
+
+        Balancing balancing = DEFAULT_BALANCING;
+        Object value = configuration != null ? configuration.get(CONFIG_BALANCING_KEY) : null;
+        if (value != null && !value.toString().trim().isEmpty()) {
+            balancing = Balancing.fromName(value.toString().trim());
+            if (balancing == null) {
+                throw new ConfigurationException(CONFIG_BALANCING_KEY, "unknown balancing policy: " + value);
+            }
+        }
+        Overflow topicOverflow = DEFAULT_TOPIC_OVERFLOW;
+        value = configuration != null ? configuration.get(CONFIG_TOPIC_OVERFLOW_KEY) : null;
+        if (value != null && !value.toString().trim().isEmpty()) {
+            topicOverflow = Overflow.fromName(value.toString().trim());
+            if (topicOverflow == null) {
+                throw new ConfigurationException(CONFIG_TOPIC_OVERFLOW_KEY, "unknown overflow policy: " + value);
+            }
+        }
+
+        int topicQueueSize = DEFAULT_TOPIC_QUEUE_SIZE;
+        value = configuration != null ? configuration.get(CONFIG_TOPIC_QUEUE_SIZE_KEY) : null;
+        if (value != null && !value.toString().trim().isEmpty()) {
+            try {
+                topicQueueSize = Integer.parseInt(value.toString().trim());
+            }
+            catch (NumberFormatException e) {
+                throw new ConfigurationException(CONFIG_TOPIC_QUEUE_SIZE_KEY, "invalid queue size: " + value, e);
+            }
+            if (topicQueueSize < 1) {
+                throw new ConfigurationException(CONFIG_TOPIC_QUEUE_SIZE_KEY, "queue size must be positive: " + value);
+            }
+        }
+
+        m_balancing = balancing;
+        m_topicOverflow = topicOverflow;
+        m_topicQueueSize = topicQueueSize;
+        synchronized (m_groupSenders) {
+            for (WiringGroupSender groupSender : m_groupSenders.values()) {
+                groupSender.setBalancing(balancing);
+                Component groupSenderComponent = m_registeredGroupSenders.get(groupSender.getGroup());
+                if (groupSenderComponent != null) {
+                    groupSenderComponent.setServiceProperties(getGroupSenderProperties(groupSender));
+                }
+            }
+        }
+        synchronized (m_topicSenders) {
+            for (WiringTopicSender topicSender : m_topicSenders.values()) {
+                topicSender.setOverflow(topicOverflow);
+                topicSender.setQueueSize(topicQueueSize);
+                Component topicSenderComponent = m_registeredTopicSenders.get(topicSender.getTopic());
+                if (topicSenderComponent != null) {
+                    topicSenderComponent.setServiceProperties(getTopicSenderProperties(topicSender));
+                }
+            }
+        }
     }
 
     // Dependency Manager callback method
@@ -89,6 +167,18 @@ public final class PromiscuousTopologyManager extends AbstractWiringEndpointPubl
     
     // Dependency Manager callback method
     public void wiringReceiverAdded(ServiceReference<WiringReceiver> reference, WiringReceiver receiver) {
+    	Object group = reference.getProperty(WiringConstants.PROPERTY_GROUP);
+    	if (group != null) {
+    		m_receiverGroups.put(receiver, group.toString());
+    	}
+    	Object topic = reference.getProperty(WiringConstants.PROPERTY_TOPIC);
+    	if (topic != null) {
+    		m_receiverTopics.put(receiver, topic.toString());
+    	}
+    	Object durable = reference.getProperty(WiringConstants.PROPERTY_DURABLE);
+    	if (durable != null) {
+    		m_receiverDurableNames.put(receiver, durable.toString());
+    	}
     	m_exportableReceivers.add(receiver);
     	exportEndpoints(receiver);
     }
@@ -96,6 +186,9 @@ public final class PromiscuousTopologyManager extends AbstractWiringEndpointPubl
     // Dependency Manager callback method
     public void wiringReceiverRemoved(ServiceReference<WiringReceiver> reference, WiringReceiver receiver) {
     	m_exportableReceivers.remove(receiver);
+    	m_receiverGroups.remove(receiver);
+    	m_receiverTopics.remove(receiver);
+    	m_receiverDurableNames.remove(receiver);
     	unExportEndpoints(receiver);
     }
     
@@ -161,6 +254,18 @@ public final class PromiscuousTopologyManager extends AbstractWiringEndpointPubl
 		adminMap.put(admin, exportRegistration);
 		
 		WiringEndpointDescription endpointDescription = exportRegistration.getExportReference().getEndpointDescription();
+		String group = m_receiverGroups.get(receiver);
+		if (group != null) {
+			endpointDescription.setProperty(WiringConstants.PROPERTY_GROUP, group);
+		}
+		String topic = m_receiverTopics.get(receiver);
+		if (topic != null) {
+			endpointDescription.setProperty(WiringConstants.PROPERTY_TOPIC, topic);
+		}
+		String durable = m_receiverDurableNames.get(receiver);
+		if (durable != null) {
+			endpointDescription.setProperty(WiringConstants.PROPERTY_DURABLE, durable);
+		}
 		
 		// notify endpoint listeners
 		endpointAdded(endpointDescription);
@@ -211,12 +316,113 @@ public final class PromiscuousTopologyManager extends AbstractWiringEndpointPubl
         String secureDescription = endpointDescription.getProperty(WiringConstants.PROPERTY_SECURE);
         String secureProperty = secureDescription != null ? secureDescription : "no";
         properties.put(WiringConstants.PROPERTY_SECURE, secureProperty);
+        String group = endpointDescription.getProperty(WiringConstants.PROPERTY_GROUP);
+        if (group != null) {
+        	properties.put(WiringConstants.PROPERTY_GROUP, group);
+        }
+        String topic = endpointDescription.getProperty(WiringConstants.PROPERTY_TOPIC);
+        if (topic != null) {
+        	properties.put(WiringConstants.PROPERTY_TOPIC, topic);
+        }
+        String durable = endpointDescription.getProperty(WiringConstants.PROPERTY_DURABLE);
+        if (durable != null) {
+        	properties.put(WiringConstants.PROPERTY_DURABLE, durable);
+        }
 
         Component wiringSenderComponent = m_manager.createComponent()
         	.setInterface(WiringSender.class.getName(), properties)
         	.setImplementation(wiringSender);
         m_manager.add(wiringSenderComponent);
         m_registeredSenders.put(registration, wiringSenderComponent);
+
+        if (group != null) {
+        	addGroupMember(group, wiringSender);
+        }
+        if (topic != null) {
+        	addTopicSubscriber(topic, wiringSender);
+        }
+	}
+
+	private void addGroupMember(String group, WiringSender wiringSender) {
+		synchronized (m_groupSenders) {
+			WiringGroupSender groupSender = m_groupSenders.get(group);
+			if (groupSender == null) {
+				groupSender = new WiringGroupSender(group, m_balancing);
+				m_groupSenders.put(group, groupSender);
+			}
+			groupSender.addMember(wiringSender);
+
+			if (!m_registeredGroupSenders.containsKey(group)) {
+				Component groupSenderComponent = m_manager.createComponent()
+					.setInterface(WiringSender.class.getName(), getGroupSenderProperties(groupSender))
+					.setImplementation(groupSender);
+				m_manager.add(groupSenderComponent);
+				m_registeredGroupSenders.put(group, groupSenderComponent);
+				logInfo("registered WiringSender for wire group %s", group);
+			}
+		}
+	}
+
+	private Dictionary<String, Object> getGroupSenderProperties(WiringGroupSender groupSender) {
+		Dictionary<String, Object> properties = new Hashtable<String, Object>();
+		properties.put(WiringConstants.PROPERTY_GROUP, groupSender.getGroup());
+		properties.put(WiringConstants.PROPERTY_BALANCING, groupSender.getBalancing().getName());
+		return properties;
+	}
+
+	private void removeGroupMember(String group, WiringSender wiringSender) {
+		synchronized (m_groupSenders) {
+			WiringGroupSender groupSender = m_groupSenders.get(group);
+			if (groupSender != null && groupSender.removeMember(wiringSender)) {
+				m_groupSenders.remove(group);
+				Component groupSenderComponent = m_registeredGroupSenders.remove(group);
+				if (groupSenderComponent != null) {
+					m_manager.remove(groupSenderComponent);
+					logInfo("unregistered WiringSender for wire group %s", group);
+				}
+			}
+		}
+	}
+	
+	private void addTopicSubscriber(String topic, WiringSender wiringSender) {
+		synchronized (m_topicSenders) {
+			WiringTopicSender topicSender = m_topicSenders.get(topic);
+			if (topicSender == null) {
+				topicSender = new WiringTopicSender(topic, m_topicOverflow, m_topicQueueSize);
+				m_topicSenders.put(topic, topicSender);
+			}
+			topicSender.addSubscriber(wiringSender);
+
+			if (!m_registeredTopicSenders.containsKey(topic)) {
+				Component topicSenderComponent = m_manager.createComponent()
+					.setInterface(WiringSender.class.getName(), getTopicSenderProperties(topicSender))
+					.setImplementation(topicSender);
+				m_manager.add(topicSenderComponent);
+				m_registeredTopicSenders.put(topic, topicSenderComponent);
+				logInfo("registered WiringSender for wire topic %s", topic);
+			}
+		}
+	}
+
+	private Dictionary<String, Object> getTopicSenderProperties(WiringTopicSender topicSender) {
+		Dictionary<String, Object> properties = new Hashtable<String, Object>();
+		properties.put(WiringConstants.PROPERTY_TOPIC, topicSender.getTopic());
+		properties.put(WiringConstants.PROPERTY_OVERFLOW, topicSender.getOverflow().getName());
+		return properties;
+	}
+
+	private void removeTopicSubscriber(String topic, WiringSender wiringSender) {
+		synchronized (m_topicSenders) {
+			WiringTopicSender topicSender = m_topicSenders.get(topic);
+			if (topicSender != null && topicSender.removeSubscriber(wiringSender)) {
+				m_topicSenders.remove(topic);
+				Component topicSenderComponent = m_registeredTopicSenders.remove(topic);
+				if (topicSenderComponent != null) {
+					m_manager.remove(topicSenderComponent);
+					logInfo("unregistered WiringSender for wire topic %s", topic);
+				}
+			}
+		}
 	}
 	
 	private void unExportEndpoints(WiringAdmin admin) {
@@ -283,6 +489,15 @@ public final class PromiscuousTopologyManager extends AbstractWiringEndpointPubl
 	private void unregisterService(ImportRegistration registration) {
 		Component component = m_registeredSenders.get(registration);
 		logInfo("unregistering WiringsSender %s", component.getService());
+		ImportReference importReference = registration.getImportReference();
+		String group = importReference.getEndpointDescription().getProperty(WiringConstants.PROPERTY_GROUP);
+		if (group != null) {
+			removeGroupMember(group, importReference.getWiringSender());
+		}
+		String topic = importReference.getEndpointDescription().getProperty(WiringConstants.PROPERTY_TOPIC);
+		if (topic != null) {
+			removeTopicSubscriber(topic, importReference.getWiringSender());
+		}
 		m_manager.remove(component);
 		m_registeredSenders.remove(registration);
 	}
@@ -0,0 +1,250 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.topology.promiscuous;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import org.inaetics.wiring.endpoint.WiringSender;
+
+/**
+ * A {@link WiringSender} that spreads messages over the imported senders of a group of equivalent receivers.
+ * Members join and leave while the group is in use, as their endpoints are discovered and removed.
+ *
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+public final class WiringGroupSender implements WiringSender {
+
+    /**
+     * The policies to select the member that receives the next message.
+     */
+    public enum Balancing {
+
+        /** the members take turns */
+        ROUND_ROBIN("roundrobin"),
+
+        /** the member with the fewest outstanding messages */
+        LEAST_OUTSTANDING("leastoutstanding"),
+
+        /** the member with fewer outstanding messages of two random members */
+        POWER_OF_TWO("poweroftwo");
+
+        private final String m_name;
+
+        private Balancing(String name) {
+            m_name = name;
+        }
+
+        public String getName() {
+            return m_name;
+        }
+
+        /**
+         * @param name the configured name
+         * @return the policy, or <code>null</code> if the name is unknown
+         */
+        public static Balancing fromName(String name) {
+            for (Balancing balancing : values()) {
+                if (balancing.m_name.equalsIgnoreCase(name)) {
+                    return balancing;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final String m_group;
+    private final List<Member> m_members = new CopyOnWriteArrayList<Member>();
+    private final AtomicInteger m_next = new AtomicInteger();
+
+    private volatile Balancing m_balancing;
+
+    public WiringGroupSender(String group, Balancing balancing) {
+        m_group = group;
+        m_balancing = balancing;
+    }
+
+    public String getGroup() {
+        return m_group;
+    }
+
+    public Balancing getBalancing() {
+        return m_balancing;
+    }
+
+    public void setBalancing(Balancing balancing) {
+        m_balancing = balancing;
+    }
+
+    public void addMember(WiringSender sender) {
+        m_members.add(new Member(sender));
+    }
+
+    /**
+     * @return <code>true</code> if the group has no members left
+     */
+    public boolean removeMember(WiringSender sender) {
+        for (Member member : m_members) {
+            if (member.m_sender == sender) {
+                m_members.remove(member);
+            }
+        }
+        return m_members.isEmpty();
+    }
+
+    @Override
+    public byte[] sendMessage(byte[] message) throws Exception {
+        Member member = select();
+        if (member == null) {
+            throw new Exception("no endpoints in wire group " + m_group);
+        }
+        member.m_outstanding.incrementAndGet();
+        try {
+            return member.m_sender.sendMessage(message);
+        }
+        finally {
+            member.m_outstanding.decrementAndGet();
+        }
+    }
+
+    @Override
+    public InputStream sendMessageStreaming(byte[] message) throws Exception {
+        final Member member = select();
+        if (member == null) {
+            throw new Exception("no endpoints in wire group " + m_group);
+        }
+        member.m_outstanding.incrementAndGet();
+        InputStream response;
+        try {
+            response = member.m_sender.sendMessageStreaming(message);
+        }
+        catch (Exception e) {
+            member.m_outstanding.decrementAndGet();
+            throw e;
+        }
+        // the message is outstanding until the caller is done with the response
+        return new FilterInputStream(response) {
+            private final AtomicBoolean m_closed = new AtomicBoolean();
+
+            @Override
+            public void close() throws IOException {
+                if (m_closed.compareAndSet(false, true)) {
+                    member.m_outstanding.decrementAndGet();
+                }
+                super.close();
+            }
+        };
+    }
+
+    @Override
+    public CompletableFuture<byte[]> sendMessageAsync(byte[] message) {
+        Member member = select();
+        if (member == null) {
+            return noMembers();
+        }
+        member.m_outstanding.incrementAndGet();
+        return track(member, member.m_sender.sendMessageAsync(message));
+    }
+
+    @Override
+    public CompletableFuture<byte[]> sendIdempotentAsync(byte[] message) {
+        Member member = select();
+        if (member == null) {
+            return noMembers();
+        }
+        member.m_outstanding.incrementAndGet();
+        return track(member, member.m_sender.sendIdempotentAsync(message));
+    }
+
+    @Override
+    public CompletableFuture<Void> sendOneWay(byte[] message) {
+        Member member = select();
+        if (member == null) {
+            return noMembers();
+        }
+        member.m_outstanding.incrementAndGet();
+        return track(member, member.m_sender.sendOneWay(message));
+    }
+
+    private Member select() {
+        Object[] members = m_members.toArray();
+        int size = members.length;
+        if (size == 0) {
+            return null;
+        }
+        if (size == 1) {
+            return (Member) members[0];
+        }
+        switch (m_balancing) {
+            case ROUND_ROBIN:
+                return (Member) members[(m_next.getAndIncrement() & Integer.MAX_VALUE) % size];
+            case LEAST_OUTSTANDING: {
+                // start at a rotating position, so that idle members share the load
+                int start = (m_next.getAndIncrement() & Integer.MAX_VALUE) % size;
+                Member least = null;
+                for (int i = 0; i < size; i++) {
+                    Member member = (Member) members[(start + i) % size];
+                    if (least == null || member.m_outstanding.get() < least.m_outstanding.get()) {
+                        least = member;
+                    }
+                }
+                return least;
+            }
+            default: {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                int first = random.nextInt(size);
+                int second = random.nextInt(size - 1);
+                if (second >= first) {
+                    second++;
+                }
+                Member a = (Member) members[first];
+                Member b = (Member) members[second];
+                return a.m_outstanding.get() <= b.m_outstanding.get() ? a : b;
+            }
+        }
+    }
+
+    private static <T> CompletableFuture<T> track(final Member member, CompletableFuture<T> future) {
+        future.whenComplete(new BiConsumer<T, Throwable>() {
+            @Override
+            public void accept(T result, Throwable exception) {
+                member.m_outstanding.decrementAndGet();
+            }
+        });
+        return future;
+    }
+
+    private <T> CompletableFuture<T> noMembers() {
+        CompletableFuture<T> future = new CompletableFuture<T>();
+        future.completeExceptionally(new Exception("no endpoints in wire group " + m_group));
+        return future;
+    }
+
+    @Override
+    public String toString() {
+        return "WiringGroupSender [group=" + m_group + ", balancing=" + m_balancing.getName() + ", members="
+            + m_members.size() + "]";
+    }
+
+    /**
+     * A member sender and the number of its messages that are not completed yet.
+     */
+    private static final class Member {
+
+        private final WiringSender m_sender;
+        private final AtomicInteger m_outstanding = new AtomicInteger();
+
+        Member(WiringSender sender) {
+            m_sender = sender;
+        }
+    }
+}
@@ -0,0 +1,358 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.topology.promiscuous;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import org.inaetics.wiring.endpoint.WiringPriority;
+import org.inaetics.wiring.endpoint.WiringSender;
+
+/**
+ * A {@link WiringSender} that publishes every message to all subscribers of a topic, the imported senders of the
+ * receivers that were exported with the same topic. Subscribers join and leave while the topic is in use, as their
+ * endpoints are discovered and removed.
+ * <p>
+ * Every subscriber has a bounded queue of its own that is delivered in order with one-way messages, one message at a
+ * time, while the subscribers are delivered in parallel. A slow subscriber does therefore not hold up the others nor
+ * the publisher; once its queue is full, the overflow policy decides what happens with further messages. All queues
+ * share the published byte array, which must not be modified after publishing. Messages are delivered with the
+ * {@link WiringPriority} of their publisher.
+ * <p>
+ * Publishing has no single response: the result of a message completes once it was delivered to, dropped for or
+ * failed for every subscriber. It fails if the delivery to any subscriber failed.
+ *
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+public final class WiringTopicSender implements WiringSender {
+
+    /**
+     * The policies for a message that does not fit in the queue of a slow subscriber anymore.
+     */
+    public enum Overflow {
+
+        /** the oldest queued message of the subscriber is dropped */
+        DROP_OLDEST("dropoldest"),
+
+        /** the new message is not queued for the subscriber */
+        DROP_NEWEST("dropnewest"),
+
+        /** the publisher waits until the subscriber has room again */
+        BLOCK("block");
+
+        private final String m_name;
+
+        private Overflow(String name) {
+            m_name = name;
+        }
+
+        public String getName() {
+            return m_name;
+        }
+
+        /**
+         * @param name the configured name
+         * @return the policy, or <code>null</code> if the name is unknown
+         */
+        public static Overflow fromName(String name) {
+            for (Overflow overflow : values()) {
+                if (overflow.m_name.equalsIgnoreCase(name)) {
+                    return overflow;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final byte[] NO_RESPONSE = new byte[0];
+
+    private final String m_topic;
+    private final List<Subscriber> m_subscribers = new CopyOnWriteArrayList<Subscriber>();
+    private final AtomicLong m_dropped = new AtomicLong();
+
+    private volatile Overflow m_overflow;
+    private volatile int m_queueSize;
+
+    public WiringTopicSender(String topic, Overflow overflow, int queueSize) {
+        m_topic = topic;
+        m_overflow = overflow;
+        m_queueSize = Math.max(1, queueSize);
+    }
+
+    public String getTopic() {
+        return m_topic;
+    }
+
+    public Overflow getOverflow() {
+        return m_overflow;
+    }
+
+    public void setOverflow(Overflow overflow) {
+        m_overflow = overflow;
+    }
+
+    public int getQueueSize() {
+        return m_queueSize;
+    }
+
+    public void setQueueSize(int queueSize) {
+        m_queueSize = Math.max(1, queueSize);
+    }
+
+    /**
+     * @return the number of messages that were dropped for slow subscribers
+     */
+    public long getDropped() {
+        return m_dropped.get();
+    }
+
+    public void addSubscriber(WiringSender sender) {
+        m_subscribers.add(new Subscriber(sender));
+    }
+
+    /**
+     * @return <code>true</code> if the topic has no subscribers left
+     */
+    public boolean removeSubscriber(WiringSender sender) {
+        for (Subscriber subscriber : m_subscribers) {
+            if (subscriber.m_sender == sender) {
+                m_subscribers.remove(subscriber);
+                subscriber.close();
+            }
+        }
+        return m_subscribers.isEmpty();
+    }
+
+    @Override
+    public byte[] sendMessage(byte[] message) throws Exception {
+        try {
+            publish(message).get();
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+        return NO_RESPONSE;
+    }
+
+    @Override
+    public CompletableFuture<byte[]> sendMessageAsync(byte[] message) {
+        return publish(message).thenApply(new Function<Void, byte[]>() {
+            @Override
+            public byte[] apply(Void result) {
+                return NO_RESPONSE;
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> sendOneWay(byte[] message) {
+        return publish(message);
+    }
+
+    /**
+     * Queues a message for all current subscribers.
+     *
+     * @param message the message, shared by all subscribers
+     * @return the future that completes once the message was handled for every subscriber
+     */
+    private CompletableFuture<Void> publish(byte[] message) {
+        Object[] subscribers = m_subscribers.toArray();
+        Publication publication = new Publication(message, subscribers.length);
+        for (Object subscriber : subscribers) {
+            ((Subscriber) subscriber).offer(publication);
+        }
+        return publication.m_future;
+    }
+
+    @Override
+    public String toString() {
+        return "WiringTopicSender [topic=" + m_topic + ", overflow=" + m_overflow.getName() + ", subscribers="
+            + m_subscribers.size() + ", dropped=" + m_dropped.get() + "]";
+    }
+
+    /**
+     * A published message and the number of subscribers it was not handled for yet.
+     */
+    private static final class Publication {
+
+        private final byte[] m_message;
+        private final WiringPriority m_priority = WiringPriority.current();
+        private final AtomicInteger m_remaining;
+        private final CompletableFuture<Void> m_future = new CompletableFuture<Void>();
+        private volatile Throwable m_failure;
+
+        Publication(byte[] message, int subscribers) {
+            m_message = message;
+            m_remaining = new AtomicInteger(subscribers);
+            if (subscribers == 0) {
+                m_future.complete(null);
+            }
+        }
+
+        /**
+         * @param failure the failure of the delivery to one subscriber, <code>null</code> if it was delivered or
+         *        dropped
+         */
+        void done(Throwable failure) {
+            if (failure != null && m_failure == null) {
+                m_failure = failure;
+            }
+            if (m_remaining.decrementAndGet() == 0) {
+                Throwable first = m_failure;
+                if (first != null) {
+                    m_future.completeExceptionally(first);
+                }
+                else {
+                    m_future.complete(null);
+                }
+            }
+        }
+    }
+
+    /**
+     * A subscriber sender with its queue of messages that are not delivered yet.
+     */
+    private final class Subscriber {
+
+        private final WiringSender m_sender;
+
+        // guarded by this
+        private final ArrayDeque<Publication> m_queue = new ArrayDeque<Publication>();
+        private boolean m_delivering;
+        private boolean m_closed;
+
+        Subscriber(WiringSender sender) {
+            m_sender = sender;
+        }
+
+        void offer(Publication publication) {
+            Publication dropped = null;
+            boolean deliver = false;
+            synchronized (this) {
+                if (m_queue.size() >= m_queueSize && !m_closed) {
+                    switch (m_overflow) {
+                        case DROP_NEWEST:
+                            dropped = publication;
+                            break;
+                        case DROP_OLDEST:
+                            dropped = m_queue.poll();
+                            break;
+                        default:
+                            boolean interrupted = false;
+                            while (m_queue.size() >= m_queueSize && !m_closed) {
+                                try {
+                                    wait();
+                                }
+                                catch (InterruptedException e) {
+                                    interrupted = true;
+                                }
+                            }
+                            if (interrupted) {
+                                Thread.currentThread().interrupt();
+                            }
+                            break;
+                    }
+                }
+                if (m_closed) {
+                    dropped = publication;
+                }
+                else if (dropped != publication) {
+                    m_queue.add(publication);
+                    if (!m_delivering) {
+                        m_delivering = true;
+                        deliver = true;
+                    }
+                }
+            }
+            if (dropped != null) {
+                m_dropped.incrementAndGet();
+                dropped.done(null);
+            }
+            if (deliver) {
+                deliver();
+            }
+        }
+
+        /**
+         * Delivers the queued messages one after the other, until the queue is empty. Deliveries that complete
+         * immediately are handled in the loop, the others continue from their completion.
+         */
+        void deliver() {
+            while (true) {
+                final Publication publication;
+                synchronized (this) {
+                    publication = m_queue.poll();
+                    if (publication == null) {
+                        m_delivering = false;
+                        return;
+                    }
+                    notifyAll();
+                }
+                CompletableFuture<Void> future;
+                try {
+                    future = m_sender.sendOneWay(publication.m_message, publication.m_priority);
+                }
+                catch (RuntimeException e) {
+                    future = new CompletableFuture<Void>();
+                    future.completeExceptionally(e);
+                }
+                if (future.isDone()) {
+                    publication.done(getFailure(future));
+                    continue;
+                }
+                future.whenComplete(new BiConsumer<Void, Throwable>() {
+                    @Override
+                    public void accept(Void result, Throwable exception) {
+                        publication.done(exception);
+                        deliver();
+                    }
+                });
+                return;
+            }
+        }
+
+        /**
+         * Drops all queued messages, called when the subscriber left the topic.
+         */
+        void close() {
+            ArrayDeque<Publication> queue;
+            synchronized (this) {
+                m_closed = true;
+                queue = new ArrayDeque<Publication>(m_queue);
+                m_queue.clear();
+                notifyAll();
+            }
+            for (Publication publication : queue) {
+                m_dropped.incrementAndGet();
+                publication.done(null);
+            }
+        }
+
+        private Throwable getFailure(CompletableFuture<Void> future) {
+            try {
+                future.join();
+                return null;
+            }
+            catch (CompletionException e) {
+                return e.getCause();
+            }
+            catch (CancellationException e) {
+                return e;
+            }
+        }
+    }
+}
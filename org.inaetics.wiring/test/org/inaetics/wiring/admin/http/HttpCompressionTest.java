@@ -0,0 +1,87 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the codecs and the decompression limit of {@link HttpCompression}.
+ *
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+public class HttpCompressionTest extends TestCase {
+
+    private static final String[] CODECS = { HttpCompression.LZF, HttpCompression.DEFLATE };
+
+    public void testBodiesRoundTrip() throws Exception {
+        byte[] data = new byte[100000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 7);
+        }
+        for (String codec : CODECS) {
+            byte[] compressed = HttpCompression.compress(codec, data);
+            assertTrue(codec, Arrays.equals(data, HttpCompression.decompress(codec, compressed, data.length)));
+            assertTrue(codec, Arrays.equals(data, readFully(
+                HttpCompression.decompress(codec, new ByteArrayInputStream(compressed), data.length))));
+        }
+    }
+
+    public void testBodyExceedingLimitIsRejected() throws Exception {
+        // compresses very well, like a decompression bomb
+        byte[] data = new byte[1024 * 1024];
+        for (String codec : CODECS) {
+            byte[] compressed = HttpCompression.compress(codec, data);
+            try {
+                HttpCompression.decompress(codec, compressed, data.length - 1);
+                fail(codec + " body exceeds the limit");
+            }
+            catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    public void testStreamExceedingLimitIsRejected() throws Exception {
+        byte[] data = new byte[1024 * 1024];
+        for (String codec : CODECS) {
+            InputStream in = HttpCompression.decompress(codec,
+                new ByteArrayInputStream(HttpCompression.compress(codec, data)), data.length - 1);
+            try {
+                readFully(in);
+                fail(codec + " stream exceeds the limit");
+            }
+            catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    public void testUncompressedBodyIsNotLimited() throws Exception {
+        byte[] data = new byte[16];
+        assertSame(data, HttpCompression.decompress(null, data, 1));
+        assertSame(data, HttpCompression.decompress("identity", data, 1));
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            byte[] result = new byte[0];
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                byte[] grown = Arrays.copyOf(result, result.length + n);
+                System.arraycopy(buffer, 0, grown, result.length, n);
+                result = grown;
+            }
+            return result;
+        }
+        finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests how {@link HttpConnection} reads the bodies of responses of a remote node.
+ *
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+public class HttpConnectionTest extends TestCase {
+
+    private static final int TIMEOUT = 5000;
+    private static final int MAX_BODY_SIZE = 1024 * 1024;
+
+    public void testFixedBody() throws Exception {
+        byte[] body = createData(200000);
+        byte[] response = post(concat(header("Content-Length: " + body.length), body));
+        assertTrue(Arrays.equals(body, response));
+    }
+
+    public void testChunkedBody() throws Exception {
+        byte[] response = post(ascii("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n3\r\nabc\r\n2\r\nde\r\n0\r\n\r\n"));
+        assertEquals("abcde", new String(response, StandardCharsets.US_ASCII));
+    }
+
+    public void testNegativeLengthIsRejected() throws Exception {
+        assertRejected(header("Content-Length: -1"));
+        assertRejected(ascii("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n-1\r\n"));
+    }
+
+    public void testLengthExceedingLimitIsRejected() throws Exception {
+        assertRejected(header("Content-Length: 2147483647"));
+        assertRejected(header("Content-Length: " + (MAX_BODY_SIZE + 1)));
+        assertRejected(ascii("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n7fffffff\r\n"));
+    }
+
+    public void testAnnouncedLengthIsNotAllocated() throws Exception {
+        // the remote node announces the maximum but closes the connection after a few bytes
+        try {
+            post(concat(header("Content-Length: " + MAX_BODY_SIZE), createData(100)));
+            fail("body is truncated");
+        }
+        catch (IOException e) {
+            // expected
+        }
+    }
+
+    private void assertRejected(byte[] response) throws Exception {
+        try {
+            post(response);
+            fail("response is invalid: " + new String(response, StandardCharsets.US_ASCII));
+        }
+        catch (IOException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Posts a request to a server that answers with the given raw response and closes the connection.
+     */
+    private static byte[] post(final byte[] response) throws Exception {
+        final ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try (Socket socket = server.accept()) {
+                    InputStream in = socket.getInputStream();
+                    // skip the request, which ends with its one byte body
+                    int b;
+                    int crlf = 0;
+                    while (crlf < 4 && (b = in.read()) != -1) {
+                        crlf = (b == '\r' || b == '\n') ? crlf + 1 : 0;
+                    }
+                    in.read();
+                    OutputStream out = socket.getOutputStream();
+                    out.write(response);
+                    out.flush();
+                }
+                catch (IOException e) {
+                    // the test fails on the client side
+                }
+            }
+        });
+        thread.start();
+        HttpConnection connection = null;
+        try {
+            connection = new HttpConnection("localhost", server.getLocalPort(), TIMEOUT, null, MAX_BODY_SIZE);
+            return connection.post("localhost", "/", null, new byte[1], TIMEOUT).getBody();
+        }
+        finally {
+            if (connection != null) {
+                connection.close();
+            }
+            thread.join();
+            server.close();
+        }
+    }
+
+    private static byte[] header(String header) {
+        return ascii("HTTP/1.1 200 OK\r\n" + header + "\r\n\r\n");
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    private static byte[] createData(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.http;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import junit.framework.TestCase;
+
+import org.osgi.framework.ServiceException;
+
+/**
+ * Tests the wire format of {@link HttpMessageBatch}.
+ *
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+public class HttpMessageBatchTest extends TestCase {
+
+    public void testMessagesRoundTrip() throws Exception {
+        byte[][] messages = { "first".getBytes("UTF-8"), new byte[0], "third".getBytes("UTF-8") };
+        HttpMessageBatch batch = new HttpMessageBatch(0);
+        for (byte[] message : messages) {
+            batch.addMessage(message);
+        }
+
+        List<byte[]> read = HttpMessageBatch.readMessages(batch.toByteArray(), messages.length);
+        assertEquals(messages.length, read.size());
+        for (int i = 0; i < messages.length; i++) {
+            assertTrue("message " + i, Arrays.equals(messages[i], read.get(i)));
+        }
+    }
+
+    public void testResultsCompleteFutures() throws Exception {
+        HttpMessageBatch batch = new HttpMessageBatch(0);
+        batch.addResult("ok".getBytes("UTF-8"));
+        batch.addError("failed");
+        batch.addResult(null);
+
+        List<CompletableFuture<byte[]>> futures = Arrays.asList(new CompletableFuture<byte[]>(),
+            new CompletableFuture<byte[]>(), new CompletableFuture<byte[]>());
+        HttpMessageBatch.completeResults(batch.toByteArray(), futures);
+
+        assertEquals("ok", new String(futures.get(0).get(), "UTF-8"));
+        try {
+            futures.get(1).get();
+            fail("expected the second message to fail");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ServiceException);
+            assertTrue(e.getCause().getMessage().contains("failed"));
+        }
+        assertEquals(0, futures.get(2).get().length);
+    }
+
+    public void testMissingResultsCompleteNothing() throws Exception {
+        HttpMessageBatch batch = new HttpMessageBatch(0);
+        batch.addResult(new byte[1]);
+
+        List<CompletableFuture<byte[]>> futures = Arrays.asList(new CompletableFuture<byte[]>(),
+            new CompletableFuture<byte[]>());
+        try {
+            HttpMessageBatch.completeResults(batch.toByteArray(), futures);
+            fail("expected a malformed batch");
+        }
+        catch (IOException e) {
+            // expected
+        }
+        assertFalse(futures.get(0).isDone());
+        assertFalse(futures.get(1).isDone());
+    }
+
+    public void testNegativeCountIsRejected() throws Exception {
+        assertMalformed(new byte[8], -1);
+    }
+
+    public void testCountLargerThanBodyIsRejected() throws Exception {
+        assertMalformed(new byte[8], 3);
+        assertMalformed(new byte[8], Integer.MAX_VALUE);
+        assertMalformed(new byte[0], 1);
+    }
+
+    public void testCountSmallerThanBodyIsRejected() throws Exception {
+        HttpMessageBatch batch = new HttpMessageBatch(0);
+        batch.addMessage(new byte[2]);
+        batch.addMessage(new byte[2]);
+        assertMalformed(batch.toByteArray(), 1);
+    }
+
+    public void testInvalidMessageLengthIsRejected() throws Exception {
+        HttpMessageBatch batch = new HttpMessageBatch(0);
+        batch.addMessage(new byte[2]);
+        byte[] body = batch.toByteArray();
+        body[3] = 100;
+        assertMalformed(body, 1);
+    }
+
+    private static void assertMalformed(byte[] body, int count) {
+        try {
+            HttpMessageBatch.readMessages(body, count);
+            fail("expected count " + count + " to be rejected for a body of " + body.length + " bytes");
+        }
+        catch (IOException e) {
+            // expected
+        }
+    }
+}
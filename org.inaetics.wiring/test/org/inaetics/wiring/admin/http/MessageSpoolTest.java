@@ -0,0 +1,189 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.http;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the storing, the replaying and the recovery of {@link MessageSpool}.
+ *
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+public class MessageSpoolTest extends TestCase {
+
+    private static final int SEGMENT_SIZE = 1024;
+
+    private File m_directory;
+    private MessageSpool m_spool;
+
+    @Override
+    protected void setUp() throws Exception {
+        m_directory = File.createTempFile("spool", "");
+        m_directory.delete();
+        m_spool = new MessageSpool(m_directory, SEGMENT_SIZE, 4);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        m_spool.close();
+        File[] files = m_directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        m_directory.delete();
+    }
+
+    public void testEmptyMessagesAreReplayed() throws Exception {
+        m_spool.append(message(3, 'a'));
+        m_spool.append(new byte[0]);
+        m_spool.append(message(5, 'b'));
+        m_spool.append(new byte[0]);
+
+        List<byte[]> messages = m_spool.peek(10);
+        assertEquals(4, messages.size());
+        assertTrue(Arrays.equals(message(3, 'a'), messages.get(0)));
+        assertEquals(0, messages.get(1).length);
+        assertTrue(Arrays.equals(message(5, 'b'), messages.get(2)));
+        assertEquals(0, messages.get(3).length);
+
+        m_spool.acknowledge(2);
+        assertFalse(m_spool.isEmpty());
+        m_spool.acknowledge(2);
+        assertTrue(m_spool.isEmpty());
+        assertTrue(m_spool.peek(10).isEmpty());
+    }
+
+    public void testEmptyMessagesSurviveReopen() throws Exception {
+        m_spool.append(new byte[0]);
+        m_spool.append(message(7, 'a'));
+        m_spool.append(new byte[0]);
+        m_spool.acknowledge(1);
+
+        reopen();
+        List<byte[]> messages = m_spool.peek(10);
+        assertEquals(2, messages.size());
+        assertTrue(Arrays.equals(message(7, 'a'), messages.get(0)));
+        assertEquals(0, messages.get(1).length);
+
+        m_spool.append(message(2, 'b'));
+        assertEquals(3, m_spool.peek(10).size());
+    }
+
+    public void testEmptyMessagesAcrossSegments() throws Exception {
+        int count = 3 * SEGMENT_SIZE / 8;
+        for (int i = 0; i < count; i++) {
+            m_spool.append(new byte[0]);
+        }
+        int replayed = 0;
+        while (!m_spool.isEmpty()) {
+            List<byte[]> messages = m_spool.peek(100);
+            assertFalse("spool is not empty but has nothing to replay", messages.isEmpty());
+            m_spool.acknowledge(messages.size());
+            replayed += messages.size();
+        }
+        assertEquals(count, replayed);
+    }
+
+    public void testTornMessageIsDiscardedOnRecovery() throws Exception {
+        m_spool.append(message(4, 'a'));
+        m_spool.append(message(16, 'b'));
+        m_spool.close();
+
+        // corrupts the content of the last message, as if the crash happened before it was written completely
+        RandomAccessFile segment = new RandomAccessFile(segmentFile(), "rw");
+        try {
+            segment.seek(8 + 4 + 8 + 10);
+            segment.write(0);
+        }
+        finally {
+            segment.close();
+        }
+
+        m_spool = new MessageSpool(m_directory, SEGMENT_SIZE, 4);
+        List<byte[]> messages = m_spool.peek(10);
+        assertEquals(1, messages.size());
+        assertTrue(Arrays.equals(message(4, 'a'), messages.get(0)));
+
+        // a shorter message takes the place of the torn one, its remains are not read as a message
+        m_spool.append(new byte[0]);
+        m_spool.append(message(2, 'c'));
+        reopen();
+        messages = m_spool.peek(10);
+        assertEquals(3, messages.size());
+        assertEquals(0, messages.get(1).length);
+        assertTrue(Arrays.equals(message(2, 'c'), messages.get(2)));
+    }
+
+    public void testMessageWithoutLengthIsDiscardedOnRecovery() throws Exception {
+        m_spool.append(message(4, 'a'));
+        m_spool.append(message(4, 'b'));
+        m_spool.close();
+
+        // clears the length of the last message, as if the crash happened before it was published
+        RandomAccessFile segment = new RandomAccessFile(segmentFile(), "rw");
+        try {
+            segment.seek(8 + 4);
+            segment.writeInt(0);
+        }
+        finally {
+            segment.close();
+        }
+
+        m_spool = new MessageSpool(m_directory, SEGMENT_SIZE, 4);
+        assertEquals(1, m_spool.peek(10).size());
+        m_spool.acknowledge(1);
+        assertTrue(m_spool.isEmpty());
+    }
+
+    public void testEmptySpoolIsDeleted() throws Exception {
+        m_spool.append(message(3, 'a'));
+        assertFalse("holds a message", m_spool.deleteIfEmpty());
+        assertTrue(m_directory.isDirectory());
+
+        m_spool.acknowledge(1);
+        assertTrue(m_spool.startReplay());
+        assertFalse("is replayed", m_spool.deleteIfEmpty());
+        m_spool.endReplay();
+
+        assertTrue(m_spool.deleteIfEmpty());
+        assertTrue(m_spool.isClosed());
+        assertFalse(m_directory.exists());
+        try {
+            m_spool.append(message(3, 'b'));
+            fail("spool is deleted");
+        }
+        catch (IOException e) {
+            // expected
+        }
+    }
+
+    private void reopen() throws Exception {
+        m_spool.close();
+        m_spool = new MessageSpool(m_directory, SEGMENT_SIZE, 4);
+    }
+
+    private File segmentFile() {
+        File[] segments = m_directory.listFiles();
+        for (File segment : segments) {
+            if (segment.getName().endsWith(".log")) {
+                return segment;
+            }
+        }
+        throw new IllegalStateException("No segment in " + m_directory);
+    }
+
+    private static byte[] message(int length, char fill) {
+        byte[] message = new byte[length];
+        Arrays.fill(message, (byte) fill);
+        return message;
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.admin.shm;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeoutException;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the framing, the publishing and the closing of {@link ShmRing}.
+ *
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+public class ShmRingTest extends TestCase {
+
+    private static final int SLOT_COUNT = 4;
+    private static final int SLOT_SIZE = 64;
+    /** payload bytes per slot */
+    private static final int CHUNK_SIZE = SLOT_SIZE - 32;
+
+    private File m_file;
+    private ShmRing m_producer;
+    private ShmRing m_consumer;
+
+    @Override
+    protected void setUp() throws Exception {
+        m_file = File.createTempFile("shmring", ".ring");
+        m_producer = ShmRing.create(m_file, SLOT_COUNT, SLOT_SIZE);
+        m_consumer = ShmRing.open(m_file);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        m_consumer.close(false);
+        m_producer.close(true);
+    }
+
+    public void testMessagesOfAnySizeRoundTrip() throws Exception {
+        byte[][] messages = { new byte[0], message(1, 'a'), message(CHUNK_SIZE, 'b'), message(3 * CHUNK_SIZE + 1, 'c') };
+        for (int i = 0; i < messages.length; i++) {
+            m_producer.write(i, ShmRing.FLAG_ERROR, messages[i], 100);
+            ShmRing.Message read = m_consumer.read(100);
+            assertEquals(i, read.getCorrelationId());
+            assertTrue(read.isError());
+            assertFalse(read.isRejected());
+            assertTrue("message " + i, Arrays.equals(messages[i], read.getPayload()));
+        }
+        assertNull(m_consumer.read(10));
+    }
+
+    public void testTimeoutPublishesNothing() throws Exception {
+        m_producer.write(1, 0, message(CHUNK_SIZE, 'a'), 100);
+        m_producer.write(2, 0, message(CHUNK_SIZE, 'b'), 100);
+        m_producer.write(3, 0, message(CHUNK_SIZE, 'c'), 100);
+
+        // needs two slots, only one is free
+        try {
+            m_producer.write(4, 0, message(2 * CHUNK_SIZE, 'd'), 20);
+            fail("expected a timeout");
+        }
+        catch (TimeoutException e) {
+            // expected
+        }
+
+        assertEquals(1, m_consumer.read(100).getCorrelationId());
+        assertEquals(2, m_consumer.read(100).getCorrelationId());
+        assertEquals(3, m_consumer.read(100).getCorrelationId());
+        assertNull("no part of the timed out message may be visible", m_consumer.read(20));
+
+        byte[] message = message(2 * CHUNK_SIZE, 'e');
+        m_producer.write(5, 0, message, 100);
+        ShmRing.Message read = m_consumer.read(100);
+        assertEquals(5, read.getCorrelationId());
+        assertTrue(Arrays.equals(message, read.getPayload()));
+    }
+
+    public void testMessageLargerThanRingIsStreamed() throws Exception {
+        final byte[] message = message(10 * CHUNK_SIZE + 7, 'x');
+        final Exception[] failure = new Exception[1];
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    m_producer.write(1, 0, message, 5000);
+                }
+                catch (Exception e) {
+                    failure[0] = e;
+                }
+            }
+        });
+        producer.start();
+        ShmRing.Message read = m_consumer.read(5000);
+        producer.join(5000);
+        assertNull(failure[0]);
+        assertTrue(Arrays.equals(message, read.getPayload()));
+    }
+
+    public void testStallInTheMiddleOfMessageClosesRing() throws Exception {
+        try {
+            m_producer.write(1, 0, message(10 * CHUNK_SIZE, 'x'), 20);
+            fail("expected the ring to be closed");
+        }
+        catch (IOException e) {
+            // expected
+        }
+        assertTrue(m_producer.isClosed());
+        assertTrue(m_consumer.isClosed());
+        try {
+            m_consumer.read(-1);
+            fail("expected the ring to be closed");
+        }
+        catch (IOException e) {
+            // expected, the consumer can not complete the message
+        }
+    }
+
+    public void testClosedRingRejectsWrites() throws Exception {
+        m_consumer.close(false);
+        try {
+            m_producer.write(1, 0, message(1, 'a'), 100);
+            fail("expected the ring to be closed");
+        }
+        catch (IOException e) {
+            // expected
+        }
+    }
+
+    public void testReopenedConsumerContinuesAtReleasedSlot() throws Exception {
+        m_producer.write(1, 0, message(1, 'a'), 100);
+        m_producer.write(2, 0, message(1, 'b'), 100);
+        assertEquals(1, m_consumer.read(100).getCorrelationId());
+
+        ShmRing consumer = ShmRing.open(m_file);
+        try {
+            assertEquals(2, consumer.read(100).getCorrelationId());
+        }
+        finally {
+            consumer.close(false);
+        }
+    }
+
+    private static byte[] message(int length, char fill) {
+        byte[] message = new byte[length];
+        Arrays.fill(message, (byte) fill);
+        return message;
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.base;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the size hint and the size limit of {@link IOUtil#readFully(java.io.InputStream, int, int)}.
+ *
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+public class IOUtilTest extends TestCase {
+
+    public void testStreamMatchingHint() throws Exception {
+        byte[] data = createData(1000);
+        assertTrue(Arrays.equals(data, IOUtil.readFully(new ByteArrayInputStream(data), data.length, 1000)));
+    }
+
+    public void testStreamDifferingFromHint() throws Exception {
+        byte[] data = createData(100000);
+        assertTrue("shorter", Arrays.equals(data, IOUtil.readFully(new ByteArrayInputStream(data), 200000, 200000)));
+        assertTrue("longer", Arrays.equals(data, IOUtil.readFully(new ByteArrayInputStream(data), 10, 200000)));
+        assertTrue("unknown", Arrays.equals(data, IOUtil.readFully(new ByteArrayInputStream(data), -1, 200000)));
+    }
+
+    public void testHugeHintIsNotAllocated() throws Exception {
+        // would need 2 GB if the hint was allocated up front
+        byte[] result = IOUtil.readFully(new ByteArrayInputStream(new byte[0]), Integer.MAX_VALUE, Integer.MAX_VALUE);
+        assertEquals(0, result.length);
+    }
+
+    public void testHintExceedingLimitIsRejected() throws Exception {
+        try {
+            IOUtil.readFully(new ByteArrayInputStream(new byte[0]), 1001, 1000);
+            fail("hint exceeds the limit");
+        }
+        catch (SizeLimitExceededException e) {
+            // expected
+        }
+    }
+
+    public void testStreamExceedingLimitIsRejected() throws Exception {
+        byte[] data = createData(100000);
+        int[] hints = { -1, 1000, 99999 };
+        for (int hint : hints) {
+            try {
+                IOUtil.readFully(new ByteArrayInputStream(data), hint, 99999);
+                fail("stream exceeds the limit with hint " + hint);
+            }
+            catch (SizeLimitExceededException e) {
+                // expected
+            }
+        }
+        data = createData(1001);
+        try {
+            IOUtil.readFully(new ByteArrayInputStream(data), 1000, 1000);
+            fail("stream exceeds the limit and the hint");
+        }
+        catch (SizeLimitExceededException e) {
+            // expected
+        }
+    }
+
+    private static byte[] createData(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+}
@@ -0,0 +1,176 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.base;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.inaetics.wiring.endpoint.WiringPriority;
+
+/**
+ * Tests the lanes and the weighted round robin of {@link PriorityDispatchQueue}.
+ *
+ * @author <a href="mailto:amdatu-developers@amdatu.org">Amdatu Project Team</a>
+ */
+public class PriorityDispatchQueueTest extends TestCase {
+
+    private static final Runnable NOOP = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    public void testBacklogIsServedByWeight() throws Exception {
+        PriorityDispatchQueue queue = new PriorityDispatchQueue(100);
+        for (int i = 0; i < 30; i++) {
+            for (WiringPriority priority : WiringPriority.values()) {
+                assertTrue(queue.offer(task(priority)));
+            }
+        }
+
+        // every round serves 8 high, 4 normal and 1 bulk message, higher lanes first
+        for (int round = 0; round < 2; round++) {
+            List<WiringPriority> served = poll(queue, 13);
+            for (int i = 0; i < 13; i++) {
+                WiringPriority expected = i < 8 ? WiringPriority.HIGH : i < 12 ? WiringPriority.NORMAL : WiringPriority.BULK;
+                assertEquals("message " + i + " of round " + round, expected, served.get(i));
+            }
+        }
+    }
+
+    public void testUrgentMessageOvertakesBacklog() throws Exception {
+        PriorityDispatchQueue queue = new PriorityDispatchQueue(100);
+        for (int i = 0; i < 10; i++) {
+            queue.offer(task(WiringPriority.BULK));
+        }
+        assertEquals(WiringPriority.BULK, priorityOf(queue.poll()));
+
+        queue.offer(task(WiringPriority.HIGH));
+        assertEquals(WiringPriority.HIGH, priorityOf(queue.poll()));
+        assertEquals(WiringPriority.BULK, priorityOf(queue.poll()));
+        assertEquals(8, queue.size());
+    }
+
+    public void testLowerLanesDoNotStarve() throws Exception {
+        PriorityDispatchQueue queue = new PriorityDispatchQueue(1000);
+        for (int i = 0; i < 100; i++) {
+            queue.offer(task(WiringPriority.HIGH));
+        }
+        queue.offer(task(WiringPriority.BULK));
+
+        List<WiringPriority> served = poll(queue, 9);
+        assertTrue(served.contains(WiringPriority.BULK));
+    }
+
+    public void testPeekDoesNotStartNewRound() throws Exception {
+        PriorityDispatchQueue queue = new PriorityDispatchQueue(100);
+        for (int i = 0; i < 20; i++) {
+            queue.offer(task(WiringPriority.HIGH));
+        }
+        poll(queue, 8);
+
+        // the high lane used up its weight, so a bulk message that arrives after peeking is served first
+        assertEquals(WiringPriority.HIGH, priorityOf(queue.peek()));
+        assertEquals(WiringPriority.HIGH, priorityOf(queue.peek()));
+        queue.offer(task(WiringPriority.BULK));
+        assertEquals(WiringPriority.BULK, priorityOf(queue.peek()));
+        assertEquals(WiringPriority.BULK, priorityOf(queue.poll()));
+        assertEquals(WiringPriority.HIGH, priorityOf(queue.poll()));
+    }
+
+    public void testTasksWithoutPriorityUseNormalLane() throws Exception {
+        PriorityDispatchQueue queue = new PriorityDispatchQueue(1);
+        assertTrue(queue.offer(NOOP));
+        assertFalse(queue.offer(task(WiringPriority.NORMAL)));
+        assertEquals(0, queue.remainingCapacity(WiringPriority.NORMAL));
+        assertEquals(1, queue.remainingCapacity(WiringPriority.HIGH));
+        assertEquals(2, queue.remainingCapacity());
+    }
+
+    public void testFullLaneDoesNotBlockOtherLanes() throws Exception {
+        PriorityDispatchQueue queue = new PriorityDispatchQueue(2);
+        assertTrue(queue.offer(task(WiringPriority.BULK)));
+        assertTrue(queue.offer(task(WiringPriority.BULK)));
+        assertFalse(queue.offer(task(WiringPriority.BULK)));
+        assertFalse(queue.offer(task(WiringPriority.BULK), 10, TimeUnit.MILLISECONDS));
+        assertTrue(queue.offer(task(WiringPriority.HIGH)));
+        assertEquals(3, queue.size());
+    }
+
+    public void testDrainToFollowsRoundRobin() throws Exception {
+        PriorityDispatchQueue queue = new PriorityDispatchQueue(10);
+        queue.offer(task(WiringPriority.BULK));
+        queue.offer(task(WiringPriority.NORMAL));
+        queue.offer(task(WiringPriority.HIGH));
+
+        List<Runnable> drained = new ArrayList<Runnable>();
+        assertEquals(3, queue.drainTo(drained));
+        assertEquals(WiringPriority.HIGH, priorityOf(drained.get(0)));
+        assertEquals(WiringPriority.NORMAL, priorityOf(drained.get(1)));
+        assertEquals(WiringPriority.BULK, priorityOf(drained.get(2)));
+        assertNull(queue.poll());
+        assertNull(queue.poll(1, TimeUnit.MILLISECONDS));
+    }
+
+    public void testExecutorRejectsWhenLaneIsFull() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        ThreadPoolExecutor executor = PriorityDispatchQueue.createExecutor("test", 1, 1);
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    try {
+                        release.await();
+                    }
+                    catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            assertEquals(1, PriorityDispatchQueue.getFreeCapacity(executor, WiringPriority.BULK));
+
+            executor.execute(task(WiringPriority.BULK));
+            assertEquals(0, PriorityDispatchQueue.getFreeCapacity(executor, WiringPriority.BULK));
+            try {
+                executor.execute(task(WiringPriority.BULK));
+                fail("bulk lane is full");
+            }
+            catch (RejectedExecutionException e) {
+                // expected
+            }
+            executor.execute(task(WiringPriority.HIGH));
+        }
+        finally {
+            release.countDown();
+            executor.shutdown();
+        }
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    private static PriorityDispatchQueue.Task<Void> task(WiringPriority priority) {
+        return new PriorityDispatchQueue.Task<Void>(NOOP, priority);
+    }
+
+    private static List<WiringPriority> poll(PriorityDispatchQueue queue, int count) throws InterruptedException {
+        List<WiringPriority> served = new ArrayList<WiringPriority>();
+        for (int i = 0; i < count; i++) {
+            served.add(priorityOf(queue.take()));
+        }
+        return served;
+    }
+
+    private static WiringPriority priorityOf(Runnable task) {
+        return task instanceof PriorityDispatchQueue.Task ? ((PriorityDispatchQueue.Task<?>) task).getPriority()
+            : WiringPriority.NORMAL;
+    }
+}
@@ -0,0 +1,196 @@
+/**
+ * Licensed under Apache License v2. See LICENSE for more information.
+ */
+package org.inaetics.wiring.endpoint;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.inaetics.wiring.endpoint.WiringCircuitBreaker.State;
+
+/**
+ * Tests the state transitions and the latency tracking of {@link WiringCircuitBreaker}.
+ */
+public class WiringCircuitBreakerTest extends TestCase {
+
+	private static final int OPEN_TIME = 50;
+
+	public void testStaysClosedBelowMinimumCalls() throws Exception {
+		WiringCircuitBreaker breaker = new WiringCircuitBreaker(OPEN_TIME);
+		for (int i = 0; i < 4; i++) {
+			assertTrue(breaker.allowRequest());
+			assertFalse(breaker.recordFailure());
+		}
+		assertEquals(State.CLOSED, breaker.getState());
+	}
+
+	public void testOpensAtHalfFailures() throws Exception {
+		WiringCircuitBreaker breaker = new WiringCircuitBreaker(OPEN_TIME);
+		for (int i = 0; i < 5; i++) {
+			breaker.recordSuccess();
+		}
+		for (int i = 0; i < 4; i++) {
+			assertFalse(breaker.recordFailure());
+		}
+		assertTrue("the fifth failure of ten calls opens the breaker", breaker.recordFailure());
+		assertEquals(State.OPEN, breaker.getState());
+		assertFalse(breaker.allowRequest());
+		assertFalse("an open breaker is opened only once", breaker.recordFailure());
+	}
+
+	public void testOldOutcomesLeaveTheWindow() throws Exception {
+		WiringCircuitBreaker breaker = new WiringCircuitBreaker(OPEN_TIME);
+		for (int i = 0; i < 9; i++) {
+			breaker.recordFailure();
+			breaker.recordSuccess();
+			breaker.recordSuccess();
+		}
+		// a third of the calls failed
+		assertEquals(State.CLOSED, breaker.getState());
+		for (int i = 0; i < 20; i++) {
+			breaker.recordSuccess();
+		}
+		for (int i = 0; i < 9; i++) {
+			assertFalse(breaker.recordFailure());
+		}
+		assertTrue(breaker.recordFailure());
+	}
+
+	public void testHalfOpenLetsOneProbeThrough() throws Exception {
+		WiringCircuitBreaker breaker = open();
+		Thread.sleep(OPEN_TIME + 10);
+
+		assertTrue(breaker.allowRequest());
+		assertEquals(State.HALF_OPEN, breaker.getState());
+		assertFalse("only one probe at a time", breaker.allowRequest());
+	}
+
+	public void testSuccessfulProbeClosesBreaker() throws Exception {
+		WiringCircuitBreaker breaker = open();
+		Thread.sleep(OPEN_TIME + 10);
+
+		assertTrue(breaker.allowRequest());
+		breaker.recordSuccess();
+		assertEquals(State.CLOSED, breaker.getState());
+		assertTrue(breaker.allowRequest());
+		// the failures before opening are forgotten, 3 failures and the probe are too few calls to open
+		for (int i = 0; i < 3; i++) {
+			assertFalse(breaker.recordFailure());
+		}
+	}
+
+	public void testFailedProbeReopensBreaker() throws Exception {
+		WiringCircuitBreaker breaker = open();
+		Thread.sleep(OPEN_TIME + 10);
+
+		assertTrue(breaker.allowRequest());
+		assertTrue(breaker.recordFailure());
+		assertEquals(State.OPEN, breaker.getState());
+		assertFalse(breaker.allowRequest());
+	}
+
+	public void testCancelledProbeLetsNextCallProbe() throws Exception {
+		WiringCircuitBreaker breaker = open();
+		Thread.sleep(OPEN_TIME + 10);
+
+		assertTrue(breaker.allowRequest());
+		breaker.recordCancelled();
+		assertEquals(State.HALF_OPEN, breaker.getState());
+		assertTrue(breaker.allowRequest());
+		assertFalse(breaker.allowRequest());
+	}
+
+	public void testLateResultsWhileOpenAreIgnored() throws Exception {
+		WiringCircuitBreaker breaker = new WiringCircuitBreaker(OPEN_TIME);
+		for (int i = 0; i < 8; i++) {
+			assertTrue(breaker.allowRequest());
+		}
+		// five of the eight calls in flight fail and open the breaker, then the others complete
+		for (int i = 0; i < 5; i++) {
+			breaker.recordFailure();
+		}
+		assertEquals(State.OPEN, breaker.getState());
+		breaker.recordSuccess();
+		assertFalse(breaker.recordFailure());
+		breaker.recordCancelled();
+		assertEquals(State.OPEN, breaker.getState());
+		assertFalse(breaker.allowRequest());
+	}
+
+	public void testLateResultsWhileHalfOpenAreIgnored() throws Exception {
+		final WiringCircuitBreaker breaker = open();
+		Thread.sleep(OPEN_TIME + 10);
+
+		final CountDownLatch probing = new CountDownLatch(1);
+		final CountDownLatch completing = new CountDownLatch(1);
+		final boolean[] allowed = new boolean[1];
+		Thread probe = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				allowed[0] = breaker.allowRequest();
+				probing.countDown();
+				try {
+					completing.await();
+				}
+				catch (InterruptedException e) {
+					return;
+				}
+				breaker.recordSuccess();
+			}
+		});
+		probe.start();
+		probing.await();
+		assertTrue(allowed[0]);
+		assertEquals(State.HALF_OPEN, breaker.getState());
+
+		// calls of this thread were let through before the breaker opened
+		breaker.recordSuccess();
+		assertEquals(State.HALF_OPEN, breaker.getState());
+		assertFalse(breaker.recordFailure());
+		assertEquals(State.HALF_OPEN, breaker.getState());
+		breaker.recordCancelled();
+		assertFalse("the probe is still in flight", breaker.allowRequest());
+
+		completing.countDown();
+		probe.join();
+		assertEquals(State.CLOSED, breaker.getState());
+	}
+
+	public void testTimeoutFollowsLatencies() throws Exception {
+		WiringCircuitBreaker breaker = new WiringCircuitBreaker(OPEN_TIME, 10, 1000);
+		assertEquals(1000, breaker.getTimeout());
+		assertEquals(-1, breaker.getHedgeDelay());
+
+		for (int i = 0; i < 128; i++) {
+			breaker.recordSuccess(TimeUnit.MILLISECONDS.toNanos(20));
+		}
+		assertEquals(80, breaker.getTimeout());
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(20), breaker.getHedgeDelay());
+
+		for (int i = 0; i < 128; i++) {
+			breaker.recordSuccess(TimeUnit.MILLISECONDS.toNanos(1));
+		}
+		assertEquals("bounded by the minimum", 10, breaker.getTimeout());
+	}
+
+	public void testBreakerWithoutBoundsDoesNotTrackLatencies() throws Exception {
+		WiringCircuitBreaker breaker = new WiringCircuitBreaker(OPEN_TIME);
+		for (int i = 0; i < 128; i++) {
+			breaker.recordSuccess(TimeUnit.MILLISECONDS.toNanos(20));
+		}
+		assertEquals(0, breaker.getTimeout());
+		assertEquals(-1, breaker.getHedgeDelay());
+	}
+
+	private static WiringCircuitBreaker open() {
+		WiringCircuitBreaker breaker = new WiringCircuitBreaker(OPEN_TIME);
+		for (int i = 0; i < 5; i++) {
+			assertTrue(breaker.allowRequest());
+			breaker.recordFailure();
+		}
+		assertEquals(State.OPEN, breaker.getState());
+		return breaker;
+	}
+}